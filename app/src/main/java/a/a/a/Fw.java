@@ -125,6 +125,7 @@ public class Fw extends qA {
                 jC.a(sc_id).a(projectFileBean.getJavaName(), 1, viewBean.type, viewBean.id, "onClick");
             }
         }
+        jC.invalidateUsages(projectFileBean);
     }
 
     public void d() {
@@ -1,5 +1,6 @@
 package a.a.a;
 
+import android.util.LruCache;
 import android.util.Pair;
 
 import com.besome.sketch.beans.BlockBean;
@@ -7,6 +8,7 @@ import com.besome.sketch.beans.BlockBean;
 import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +24,25 @@ import mod.pranav.viewbinding.ViewBindingBuilder;
 public class Fx {
 
     private static final Pattern PARAM_PATTERN = Pattern.compile("%m(?!\\.[\\w]+)");
+    private static final Pattern SPEC_PARAM_PATTERN = Pattern.compile("%[bdsm]");
+    private static final Pattern PARAM_TYPE_PATTERN = Pattern.compile("%\\w+(?:\\.\\w+)?|%\\w"); // Supports %m.word.word, %m.word and %word
+    /**
+     * How many entries each of the block spec and code caches keeps at most, so that they don't keep
+     * growing while Custom Blocks get edited. Comfortably more than all built-in blocks.
+     */
+    private static final int MAX_CACHED_BLOCKS = 2048;
+    /**
+     * Positions of plain <code>%m</code> parameters, keyed by block spec.
+     */
+    private static final LruCache<String, int[]> selectorParamPositions = new LruCache<>(MAX_CACHED_BLOCKS);
+    /**
+     * Parameter types, keyed by block spec.
+     */
+    private static final LruCache<String, List<String>> paramsTypesCache = new LruCache<>(MAX_CACHED_BLOCKS);
+    /**
+     * Parsed Custom Block code, keyed by the code's format string.
+     */
+    private static final LruCache<String, CodeTemplate> codeTemplates = new LruCache<>(MAX_CACHED_BLOCKS);
     public final boolean isViewBindingEnabled;
     private final ArrayList<String> viewParamsTypes = new ArrayList<>(List.of(
             "%m.view", "%m.layout", "%m.textview", "%m.button", "%m.edittext", "%m.imageview", "%m.recyclerview",
@@ -36,7 +57,11 @@ public class Fx {
     public String activityName;
     public jq buildConfig;
     public ArrayList<BlockBean> eventBlocks;
-    public Map<String, BlockBean> blockMap;
+    /**
+     * Blocks indexed by their numeric ID. IDs too large for it are in {@link #otherBlocks}.
+     */
+    private BlockBean[] blockTable;
+    private Map<Integer, BlockBean> otherBlocks;
 
     public Fx(String activityName, jq buildConfig, ArrayList<BlockBean> eventBlocks, boolean isViewBindingEnabled) {
         this.activityName = activityName;
@@ -46,64 +71,115 @@ public class Fx {
     }
 
     public String a() {
-        blockMap = new HashMap<>();
         ArrayList<BlockBean> beans = eventBlocks;
 
         if (beans != null && !beans.isEmpty()) {
-            for (BlockBean bean : eventBlocks) {
-                blockMap.put(bean.id, bean);
-            }
-
+            buildBlockTable(beans);
             return generateBlock(eventBlocks.get(0), "");
         } else {
             return "";
         }
     }
 
-    public final String generateBlock(BlockBean bean, String var2) {
-        ArrayList<String> params = getBlockParams(bean);
+    private void buildBlockTable(ArrayList<BlockBean> beans) {
+        // Block IDs are usually small and dense, but a table for arbitrary IDs could get huge
+        int tableSize = beans.size() * 4 + 64;
+        blockTable = new BlockBean[tableSize];
+        otherBlocks = new HashMap<>();
+        for (BlockBean bean : beans) {
+            int id = parseBlockId(bean.id);
+            if (id < 0) continue;
+            if (id < tableSize) {
+                blockTable[id] = bean;
+            } else {
+                otherBlocks.put(id, bean);
+            }
+        }
+    }
 
-        String opcode = getBlockCode(bean, params);
+    private static int parseBlockId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        String code = opcode;
+    private BlockBean getBlock(int id) {
+        if (id < 0) return null;
+        return id < blockTable.length ? blockTable[id] : otherBlocks.get(id);
+    }
 
-        if (b(bean.opCode, var2)) {
-            code = "(" + opcode + ")";
-        }
+    /**
+     * Generates the code of a block and every block after it. Blocks after it are generated in a loop
+     * instead of recursively, so that long events neither overflow the stack nor get copied over and over.
+     */
+    public final String generateBlock(BlockBean bean, String var2) {
+        StringBuilder code = new StringBuilder();
+        BlockBean current = bean;
+        String parentOpcode = var2;
+
+        while (true) {
+            ArrayList<String> params = getBlockParams(current);
+            String opcode = getBlockCode(current, params);
+
+            boolean parenthesize = b(current.opCode, parentOpcode);
+            if (parenthesize) {
+                code.append('(').append(opcode).append(')');
+            } else {
+                code.append(opcode);
+            }
 
-        if (bean.nextBlock >= 0) {
-            code += (code.isEmpty() ? "" : "\r\n") + a(String.valueOf(bean.nextBlock), moreBlock);
+            if (current.nextBlock < 0) break;
+            if (parenthesize || !opcode.isEmpty()) {
+                code.append("\r\n");
+            }
+            parentOpcode = moreBlock;
+            current = getBlock(current.nextBlock);
+            if (current == null) break;
         }
 
-        return code;
+        return code.toString();
     }
 
     private boolean hasEmptySelectorParam(ArrayList<String> params, String spec) {
-        var matcher = PARAM_PATTERN.matcher(spec);
-        if (!matcher.find()) {
-            var paramMatcher = Pattern.compile("%[bdsm]").matcher(spec);
+        for (int position : getSelectorParamPositions(spec)) {
+            if (position >= params.size()) {
+                continue;
+            }
+            var param = params.get(position);
+            if (param == null || param.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Positions of plain <code>%m</code> parameters among all parameters of a spec,
+     * none if the spec has a <code>%m</code> parameter without a type
+     */
+    private static int[] getSelectorParamPositions(String spec) {
+        int[] positions = selectorParamPositions.get(spec);
+        if (positions != null) return positions;
+
+        ArrayList<Integer> selectorParamPositions = new ArrayList<>();
+        if (!PARAM_PATTERN.matcher(spec).find()) {
+            var paramMatcher = SPEC_PARAM_PATTERN.matcher(spec);
             int count = 0;
-            ArrayList<Integer> selectorParamPositions = new ArrayList<>();
             while (paramMatcher.find()) {
-                String param = paramMatcher.group();
-                if ("%m".equals(param)) {
+                if ("%m".equals(paramMatcher.group())) {
                     selectorParamPositions.add(count);
                 }
                 count++;
             }
-            if (!selectorParamPositions.isEmpty()) {
-                for (int position : selectorParamPositions) {
-                    if (position >= params.size()) {
-                        continue;
-                    }
-                    var param = params.get(position);
-                    if (param == null || param.isEmpty()) {
-                        return true;
-                    }
-                }
-            }
         }
-        return false;
+        positions = new int[selectorParamPositions.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = selectorParamPositions.get(i);
+        }
+        Fx.selectorParamPositions.put(spec, positions);
+        return positions;
     }
 
     private String escapeString(String input) {
@@ -175,7 +251,8 @@ public class Fx {
     }
 
     public final String a(String blockId, String var2) {
-        return !blockMap.containsKey(blockId) ? "" : generateBlock(blockMap.get(blockId), var2);
+        BlockBean bean = getBlock(parseBlockId(blockId));
+        return bean == null ? "" : generateBlock(bean, var2);
     }
 
     public final boolean b(String var1, String var2) {
@@ -184,7 +261,7 @@ public class Fx {
 
     public ArrayList<String> getBlockParams(BlockBean bean) {
         ArrayList<String> params = new ArrayList<>();
-        ArrayList<String> paramsTypes = extractParamsTypes(bean.spec);
+        List<String> paramsTypes = extractParamsTypes(bean.spec);
         for (int i = 0; i < bean.parameters.size(); i++) {
             String param = getParamValue(bean.parameters.get(i), viewParamsTypes.contains(paramsTypes.get(i)));
             int type = getBlockType(bean, i);
@@ -202,16 +279,20 @@ public class Fx {
         }
     }
 
-    private ArrayList<String> extractParamsTypes(String input) {
+    private List<String> extractParamsTypes(String input) {
+        List<String> cached = paramsTypesCache.get(input);
+        if (cached != null) return cached;
+
         ArrayList<String> matches = new ArrayList<>();
-        Pattern pattern = Pattern.compile("%\\w+(?:\\.\\w+)?|%\\w"); // Supports %m.word.word, %m.word and %word
-        Matcher matcher = pattern.matcher(input);
+        Matcher matcher = PARAM_TYPE_PATTERN.matcher(input);
 
         while (matcher.find()) {
             matches.add(matcher.group().toLowerCase());
         }
 
-        return matches;
+        List<String> paramsTypes = Collections.unmodifiableList(matches);
+        paramsTypesCache.put(input, paramsTypes);
+        return paramsTypes;
     }
 
     private String getBlockCode(BlockBean bean, ArrayList<String> params) {
@@ -223,7 +304,7 @@ public class Fx {
                     opcode = bean.type;
                     moreBlock = "_" + (space < 0 ? bean.spec : bean.spec.substring(0, space)) + "()" + ReturnMoreblockManager.getMbEnd(bean.type);
                 } else {
-                    ArrayList<String> paramsTypes = extractParamsTypes(bean.spec);
+                    List<String> paramsTypes = extractParamsTypes(bean.spec);
                     opcode = "_" + bean.spec.substring(0, space) + "(";
                     boolean hasStringParam = false;
 
@@ -1396,7 +1477,7 @@ public class Fx {
 
     private String getCodeExtraBlock(BlockBean blockBean, String var2) {
         ArrayList<String> parameters = new ArrayList<>();
-        ArrayList<String> paramsTypes = extractParamsTypes(blockBean.spec);
+        List<String> paramsTypes = extractParamsTypes(blockBean.spec);
 
         for (int i = 0; i < blockBean.parameters.size(); i++) {
             String parameterValue = getParamValue(blockBean.parameters.get(i), viewParamsTypes.contains(paramsTypes.get(i)));
@@ -1455,10 +1536,15 @@ public class Fx {
 
         String formattedCode;
         if (!parameters.isEmpty()) {
-            try {
-                formattedCode = String.format(blockInfo.getCode(), parameters.toArray(new Object[0]));
-            } catch (Exception e) {
-                formattedCode = "/* Failed to resolve Custom Block's code: " + e + " */";
+            CodeTemplate template = CodeTemplate.of(blockInfo.getCode());
+            if (template != null && template.canFormat(parameters)) {
+                formattedCode = template.format(parameters);
+            } else {
+                try {
+                    formattedCode = String.format(blockInfo.getCode(), parameters.toArray(new Object[0]));
+                } catch (Exception e) {
+                    formattedCode = "/* Failed to resolve Custom Block's code: " + e + " */";
+                }
             }
         } else {
             formattedCode = blockInfo.getCode();
@@ -1484,4 +1570,110 @@ public class Fx {
 
         return blockType;
     }
+
+    /**
+     * Custom Block code parsed once, to be filled in without {@link String#format(String, Object...)}.
+     * Only supports <code>%s</code>, <code>%1$s</code>, <code>%%</code> and <code>%n</code>, other code gets
+     * formatted by {@link String#format(String, Object...)}.
+     */
+    private static final class CodeTemplate {
+        /**
+         * Marks code that {@link CodeTemplate} can't format.
+         */
+        private static final CodeTemplate UNSUPPORTED = new CodeTemplate(new String[0], new int[0], -1);
+
+        /**
+         * Literal text, with {@link #argumentIndexes} between them.
+         */
+        private final String[] texts;
+        private final int[] argumentIndexes;
+        private final int highestArgumentIndex;
+
+        private CodeTemplate(String[] texts, int[] argumentIndexes, int highestArgumentIndex) {
+            this.texts = texts;
+            this.argumentIndexes = argumentIndexes;
+            this.highestArgumentIndex = highestArgumentIndex;
+        }
+
+        /**
+         * @return The parsed code, or {@code null} if it contains other format specifiers
+         */
+        private static CodeTemplate of(String code) {
+            if (code == null) return null;
+            CodeTemplate template = codeTemplates.get(code);
+            if (template == null) {
+                template = parse(code);
+                codeTemplates.put(code, template);
+            }
+            return template == UNSUPPORTED ? null : template;
+        }
+
+        private static CodeTemplate parse(String code) {
+            ArrayList<String> texts = new ArrayList<>();
+            ArrayList<Integer> argumentIndexes = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            int ordinaryIndex = 0;
+            int highestArgumentIndex = -1;
+
+            for (int i = 0; i < code.length(); i++) {
+                char c = code.charAt(i);
+                if (c != '%') {
+                    text.append(c);
+                    continue;
+                }
+                if (++i >= code.length()) return UNSUPPORTED;
+
+                c = code.charAt(i);
+                int argumentIndex;
+                if (c == '%') {
+                    text.append('%');
+                    continue;
+                } else if (c == 'n') {
+                    text.append(System.lineSeparator());
+                    continue;
+                } else if (c == 's') {
+                    argumentIndex = ordinaryIndex++;
+                } else if (c >= '1' && c <= '9') {
+                    int end = i;
+                    while (end < code.length() && Character.isDigit(code.charAt(end))) end++;
+                    if (end + 1 >= code.length() || code.charAt(end) != '$' || code.charAt(end + 1) != 's'
+                            || end - i > 5) {
+                        return UNSUPPORTED;
+                    }
+                    argumentIndex = Integer.parseInt(code.substring(i, end)) - 1;
+                    i = end + 1;
+                } else {
+                    return UNSUPPORTED;
+                }
+
+                texts.add(text.toString());
+                text.setLength(0);
+                argumentIndexes.add(argumentIndex);
+                highestArgumentIndex = Math.max(highestArgumentIndex, argumentIndex);
+            }
+            texts.add(text.toString());
+
+            int[] indexes = new int[argumentIndexes.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = argumentIndexes.get(i);
+            }
+            return new CodeTemplate(texts.toArray(new String[0]), indexes, highestArgumentIndex);
+        }
+
+        /**
+         * @return If there are enough arguments, otherwise {@link String#format(String, Object...)} should
+         * report the missing one
+         */
+        private boolean canFormat(List<String> arguments) {
+            return highestArgumentIndex < arguments.size();
+        }
+
+        private String format(List<String> arguments) {
+            StringBuilder code = new StringBuilder();
+            for (int i = 0; i < argumentIndexes.length; i++) {
+                code.append(texts[i]).append(arguments.get(argumentIndexes[i]));
+            }
+            return code.append(texts[texts.length - 1]).toString();
+        }
+    }
 }
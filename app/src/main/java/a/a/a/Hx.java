@@ -30,14 +30,14 @@ public class Hx {
     public String k = "";
     public String l = "";
 
-    public Hx(jq jq, ProjectFileBean projectFileBean, eC eC) {
+    public Hx(jq jq, ProjectFileBean projectFileBean, eC eC, ProjectDataSnapshot projectData) {
         this.jq = jq;
         this.projectFileBean = projectFileBean;
 
         ProjectSettings projectSettings = new ProjectSettings(jq.sc_id);
         isViewBindingEnabled = projectSettings.getValue(ProjectSettings.SETTING_ENABLE_VIEWBINDING, "false").equals("true");
 
-        ArrayList<ViewBean> views = new ArrayList<>(eC.d(projectFileBean.getXmlName()));
+        ArrayList<ViewBean> views = new ArrayList<>(projectData.getViews(projectFileBean.getXmlName()));
         if (projectFileBean.hasActivityOption(ProjectFileBean.OPTION_ACTIVITY_FAB)) {
             ViewBean fab = eC.h(projectFileBean.getXmlName());
             views.add(fab);
@@ -46,8 +46,7 @@ public class Hx {
             viewEvents.add(new Event(this, isViewBindingEnabled ? "binding." + ViewBindingBuilder.generateParameterFromId(view.id) : view.id, view.getClassInfo(), isViewBindingEnabled));
         }
 
-        ArrayList<ComponentBean> components = eC.e(projectFileBean.getJavaName());
-        for (ComponentBean componentBean : components) {
+        for (ComponentBean componentBean : projectData.getComponents(projectFileBean.getJavaName())) {
             int type = componentBean.type;
             if (type == ComponentBean.COMPONENT_TYPE_FIREBASE_AUTH || type == ComponentBean.COMPONENT_TYPE_INTERSTITIAL_AD) {
                 authEvents.add(new Event(this, componentBean.componentId, componentBean.getClassInfo(), isViewBindingEnabled));
@@ -57,13 +56,12 @@ public class Hx {
         }
 
         if (projectFileBean.hasActivityOption(ProjectFileBean.OPTION_ACTIVITY_DRAWER)) {
-            ArrayList<ViewBean> drawerViews = eC.d(projectFileBean.getDrawerXmlName());
-            for (ViewBean view : drawerViews) {
+            for (ViewBean view : projectData.getViews(projectFileBean.getDrawerXmlName())) {
                 drawerViewEvents.add(new Event(this, isViewBindingEnabled ? "binding.drawer." + ViewBindingBuilder.generateParameterFromId(view.id) : "_drawer_" + view.id, view.getClassInfo(), isViewBindingEnabled));
             }
         }
 
-        a(eC.g(projectFileBean.getJavaName()), eC.b(projectFileBean.getJavaName()));
+        a(eC.g(projectFileBean.getJavaName()), projectData.getBlocks(projectFileBean.getJavaName()));
     }
 
     public String getOnActivityResultSwitchCases() {
@@ -131,7 +129,7 @@ public class Hx {
         }
     }
 
-    private void a(ArrayList<EventBean> events, HashMap<String, ArrayList<BlockBean>> logicBlocks) {
+    private void a(ArrayList<EventBean> events, Map<String, ArrayList<BlockBean>> logicBlocks) {
         for (EventBean eventBean : events) {
             ArrayList<BlockBean> eventLogicBlocks = logicBlocks.get(eventBean.targetId + "_" + eventBean.eventName);
             String eventLogic = (eventLogicBlocks == null || eventLogicBlocks.isEmpty()) ? "" :
@@ -1,6 +1,6 @@
 package a.a.a;
 
-import static dev.aldi.sayuti.block.ExtraBlockFile.getExtraBlockData;
+import static dev.aldi.sayuti.block.ExtraBlockFile.getExtraBlocksByName;
 
 import android.text.TextUtils;
 import android.util.Pair;
@@ -38,6 +38,7 @@ public class Jx {
     private final String packageName;
     private final ProjectFileBean projectFileBean;
     private final eC projectDataManager;
+    private final ProjectDataSnapshot projectData;
     private final jq buildConfig;
     private final Ox ox;
     private final Boolean isViewBindingEnabled;
@@ -80,22 +81,30 @@ public class Jx {
      */
     private final ArrayList<String> filePickerRequestCodes = new ArrayList<>();
 
-    private final ArrayList<HashMap<String, Object>> extraBlocks;
+    private final Map<String, HashMap<String, Object>> extraBlocks;
     private Hx eventManager;
     private ArrayList<String> imports = new ArrayList<>();
     private String onCreateEventCode = "";
     private Material3LibraryManager materialLibraryManager;
 
     public Jx(jq jqVar, ProjectFileBean projectFileBean, eC eCVar) {
+        this(jqVar, projectFileBean, eCVar, ProjectDataSnapshot.of(eCVar, projectFileBean));
+    }
+
+    /**
+     * @param projectData The project's data, shared by all Activities generated during a build
+     */
+    public Jx(jq jqVar, ProjectFileBean projectFileBean, eC eCVar, ProjectDataSnapshot projectData) {
         packageName = jqVar.packageName;
         this.projectFileBean = projectFileBean;
         projectDataManager = eCVar;
+        this.projectData = projectData;
         buildConfig = jqVar;
         mll = new ManageLocalLibrary(eCVar.a);
         settings = new ProjectSettings(eCVar.a);
         permissionManager = new PermissionManager(eCVar.a, projectFileBean.getJavaName());
         ox = new Ox(buildConfig, projectFileBean);
-        extraBlocks = getExtraBlockData();
+        extraBlocks = getExtraBlocksByName();
         isViewBindingEnabled = settings.getValue(ProjectSettings.SETTING_ENABLE_VIEWBINDING, BuildSettings.SETTING_GENERIC_VALUE_FALSE)
                 .equals(BuildSettings.SETTING_GENERIC_VALUE_TRUE);
         materialLibraryManager = new Material3LibraryManager(projectDataManager.a);
@@ -112,7 +121,7 @@ public class Jx {
     }
 
     private void extraVariables() {
-        for (Map.Entry<String, ArrayList<BlockBean>> blocks : jC.a(projectDataManager.a).b(projectFileBean.getJavaName()).entrySet()) {
+        for (Map.Entry<String, ArrayList<BlockBean>> blocks : projectData.getBlocks(projectFileBean.getJavaName()).entrySet()) {
             for (BlockBean block : blocks.getValue()) {
                 switch (block.opCode) {
                     case "addCustomVariable":
@@ -524,8 +533,7 @@ public class Jx {
             eventManager.addLifecycleEvent("onBackPressed", "DrawerLayout", "_drawer");
         }
 
-        ArrayList<ViewBean> beans = projectDataManager.d(projectFileBean.getXmlName());
-        for (ViewBean next : beans) {
+        for (ViewBean next : projectData.getViews(projectFileBean.getXmlName())) {
             if (next.type == ViewBean.VIEW_TYPE_WIDGET_MAPVIEW) {
                 eventManager.addLifecycleEvent("onStart", "MapView", next.id);
                 eventManager.addLifecycleEvent("onResume", "MapView", next.id);
@@ -917,7 +925,7 @@ public class Jx {
     }
 
     private void initializeEventsCodeGenerator() {
-        eventManager = new Hx(buildConfig, projectFileBean, projectDataManager);
+        eventManager = new Hx(buildConfig, projectFileBean, projectDataManager, projectData);
         addImports(eventManager.getImports());
     }
 
@@ -925,81 +933,74 @@ public class Jx {
      * Adds imports for blocks used in the currently generated Activity.
      */
     private void addImportsForBlocks() {
-        for (Map.Entry<String, ArrayList<BlockBean>> entry : projectDataManager.b(projectFileBean.getJavaName()).entrySet()) {
-            for (BlockBean blockBean : entry.getValue()) {
-                switch (blockBean.opCode) {
-                    case "toStringWithDecimal":
-                    case "toStringFormat":
-                        addImport("java.text.DecimalFormat");
-                        break;
+        // Every opcode once, as adding the same imports again wouldn't change anything
+        for (String opCode : projectData.getOpcodes(projectFileBean.getJavaName())) {
+            switch (opCode) {
+                case "toStringWithDecimal":
+                case "toStringFormat":
+                    addImport("java.text.DecimalFormat");
+                    break;
 
-                    case "strToListMap":
-                    case "strToListStr":
-                    case "strToMap":
-                    case "GsonStringToListString":
-                    case "GsonStringToListNumber":
-                        addImport("com.google.gson.Gson");
-                        addImport("com.google.gson.reflect.TypeToken");
-                        break;
+                case "strToListMap":
+                case "strToListStr":
+                case "strToMap":
+                case "GsonStringToListString":
+                case "GsonStringToListNumber":
+                    addImport("com.google.gson.Gson");
+                    addImport("com.google.gson.reflect.TypeToken");
+                    break;
 
-                    case "mapToStr":
-                    case "listMapToStr":
-                    case "GsonListTojsonString":
-                        addImport("com.google.gson.Gson");
-                        break;
+                case "mapToStr":
+                case "listMapToStr":
+                case "GsonListTojsonString":
+                    addImport("com.google.gson.Gson");
+                    break;
 
-                    case "setTypeface":
-                        addImport("android.graphics.Typeface");
-                        break;
+                case "setTypeface":
+                    addImport("android.graphics.Typeface");
+                    break;
 
-                    case "copyToClipboard":
-                        addImport("android.content.ClipData");
-                        addImport("android.content.ClipboardManager");
-                        break;
+                case "copyToClipboard":
+                    addImport("android.content.ClipData");
+                    addImport("android.content.ClipboardManager");
+                    break;
 
-                    case "fileutilGetLastSegmentPath":
-                        addImport("android.net.Uri");
-                        break;
+                case "fileutilGetLastSegmentPath":
+                    addImport("android.net.Uri");
+                    break;
 
-                    case "setImageUrl":
-                        addImport("com.bumptech.glide.Glide");
-                        break;
+                case "setImageUrl":
+                    addImport("com.bumptech.glide.Glide");
+                    break;
 
-                    case "interstitialAdLoad":
-                    case "rewardedVideoAdLoad":
-                        addImport("com.google.android.gms.ads.AdRequest");
-                        addImport("com.google.android.gms.ads.LoadAdError");
-                        break;
-                    default:
-                        var block = getExtraBlockByName(blockBean.opCode);
-                        if (block != null && block.containsKey("imports")) {
-                            var imports = block.get("imports").toString().split("\n");
-                            for (String importCode : imports) {
-                                addImport(importCode);
-                            }
+                case "interstitialAdLoad":
+                case "rewardedVideoAdLoad":
+                    addImport("com.google.android.gms.ads.AdRequest");
+                    addImport("com.google.android.gms.ads.LoadAdError");
+                    break;
+                default:
+                    var block = getExtraBlockByName(opCode);
+                    if (block != null && block.containsKey("imports")) {
+                        var imports = block.get("imports").toString().split("\n");
+                        for (String importCode : imports) {
+                            addImport(importCode);
                         }
-                        break;
-                }
+                    }
+                    break;
             }
         }
     }
 
     private Map<String, Object> getExtraBlockByName(String name) {
-        for (Map<String, Object> block : extraBlocks) {
-            if (block.containsKey("name") && block.get("name").toString().equals(name)) {
-                return block;
-            }
-        }
-        return null;
+        return extraBlocks.get(name);
     }
 
     /**
      * Handles the Activity's Drawer Views and Components
      */
     private void addDrawerComponentInitializer() {
-        ArrayList<ViewBean> viewBeans = projectDataManager.d(projectFileBean.getXmlName());
         if (!isViewBindingEnabled) {
-            for (ViewBean viewBean : viewBeans) {
+            for (ViewBean viewBean : projectData.getViews(projectFileBean.getXmlName())) {
                 if (!viewBean.convert.equals("include")) {
                     Set<String> toNotAdd = ox.readAttributesToReplace(viewBean);
                     if (!toNotAdd.contains("android:id")) {
@@ -1008,8 +1009,7 @@ public class Jx {
                 }
             }
             if (projectFileBean.hasActivityOption(ProjectFileBean.OPTION_ACTIVITY_DRAWER)) {
-                ArrayList<ViewBean> drawerBeans = projectDataManager.d(projectFileBean.getDrawerXmlName());
-                for (ViewBean viewBean : drawerBeans) {
+                for (ViewBean viewBean : projectData.getViews(projectFileBean.getDrawerXmlName())) {
                     if (!viewBean.convert.equals("include")) {
                         Set<String> toNotAdd = ox.readAttributesToReplace(viewBean);
                         if (!toNotAdd.contains("android:id")) {
@@ -1019,8 +1019,7 @@ public class Jx {
                 }
             }
         }
-        ArrayList<ComponentBean> componentBeans = projectDataManager.e(projectFileBean.getJavaName());
-        for (ComponentBean componentBean : componentBeans) {
+        for (ComponentBean componentBean : projectData.getComponents(projectFileBean.getJavaName())) {
             componentInitializers.add(getComponentBeanInitializer(componentBean));
         }
     }
@@ -1030,7 +1029,7 @@ public class Jx {
      */
     private void addRequestCodeConstants() {
         int startValue = 100;
-        for (ComponentBean next : projectDataManager.e(projectFileBean.getJavaName())) {
+        for (ComponentBean next : projectData.getComponents(projectFileBean.getJavaName())) {
             switch (next.type) {
                 case ComponentBean.COMPONENT_TYPE_CAMERA:
                 case ComponentBean.COMPONENT_TYPE_FILE_PICKER:
@@ -1059,7 +1058,7 @@ public class Jx {
         for (Pair<Integer, String> next2 : projectDataManager.j(javaName)) {
             lists.add(getListDeclarationAndAddImports(next2.first, next2.second));
         }
-        for (ViewBean viewBean : projectDataManager.d(projectFileBean.getXmlName())) {
+        for (ViewBean viewBean : projectData.getViews(projectFileBean.getXmlName())) {
             if (!viewBean.convert.equals("include")) {
                 Set<String> toNotAdd = ox.readAttributesToReplace(viewBean);
                 if (!toNotAdd.contains("android:id")) {
@@ -1072,7 +1071,7 @@ public class Jx {
         }
 
         if (projectFileBean.hasActivityOption(ProjectFileBean.OPTION_ACTIVITY_DRAWER)) {
-            for (ViewBean viewBean : projectDataManager.d(projectFileBean.getDrawerXmlName())) {
+            for (ViewBean viewBean : projectData.getViews(projectFileBean.getDrawerXmlName())) {
                 if (!viewBean.convert.equals("include")) {
                     Set<String> toNotAdd = ox.readAttributesToReplace(viewBean);
                     if (!toNotAdd.contains("android:id")) {
@@ -1084,39 +1083,15 @@ public class Jx {
                 }
             }
         }
-        ArrayList<ComponentBean> componentBeans = projectDataManager.e(javaName);
-        for (ComponentBean bean : componentBeans) {
+        for (ComponentBean bean : projectData.getComponents(javaName)) {
             components.add(getComponentDeclarationAndAddImports(bean));
         }
 
-        boolean hasTimer = false;
-        boolean hasFirebaseDB = false;
-        boolean hasFirebaseStorage = false;
-        boolean hasInterstitialAd = false;
-        boolean hasRewardedVideoAd = false;
-        for (ComponentBean bean : componentBeans) {
-            switch (bean.type) {
-                case ComponentBean.COMPONENT_TYPE_TIMERTASK:
-                    hasTimer = true;
-                    break;
-
-                case ComponentBean.COMPONENT_TYPE_FIREBASE:
-                    hasFirebaseDB = true;
-                    break;
-
-                case ComponentBean.COMPONENT_TYPE_FIREBASE_STORAGE:
-                    hasFirebaseStorage = true;
-                    break;
-
-                case ComponentBean.COMPONENT_TYPE_INTERSTITIAL_AD:
-                    hasInterstitialAd = true;
-                    break;
-
-                case ComponentBean.COMPONENT_TYPE_REWARDED_VIDEO_AD:
-                    hasRewardedVideoAd = true;
-                    break;
-            }
-        }
+        boolean hasTimer = projectData.hasComponent(javaName, ComponentBean.COMPONENT_TYPE_TIMERTASK);
+        boolean hasFirebaseDB = projectData.hasComponent(javaName, ComponentBean.COMPONENT_TYPE_FIREBASE);
+        boolean hasFirebaseStorage = projectData.hasComponent(javaName, ComponentBean.COMPONENT_TYPE_FIREBASE_STORAGE);
+        boolean hasInterstitialAd = projectData.hasComponent(javaName, ComponentBean.COMPONENT_TYPE_INTERSTITIAL_AD);
+        boolean hasRewardedVideoAd = projectData.hasComponent(javaName, ComponentBean.COMPONENT_TYPE_REWARDED_VIDEO_AD);
         if (hasTimer) {
             fieldsWithStaticInitializers.add(Lx.getComponentFieldCode("Timer"));
         }
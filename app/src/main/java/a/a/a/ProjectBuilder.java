@@ -37,37 +37,52 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import mod.agus.jcoderz.dex.Dex;
-import mod.agus.jcoderz.dex.FieldId;
-import mod.agus.jcoderz.dex.MethodId;
-import mod.agus.jcoderz.dex.ProtoId;
 import mod.agus.jcoderz.dx.command.dexer.DxContext;
 import mod.agus.jcoderz.dx.command.dexer.Main;
 import mod.agus.jcoderz.dx.merge.CollisionPolicy;
 import mod.agus.jcoderz.dx.merge.DexMerger;
 import mod.agus.jcoderz.editor.library.ExtLibSelected;
 import mod.agus.jcoderz.editor.manage.library.locallibrary.ManageLocalLibrary;
+import mod.alucard.tn.apksigner.ApkSigner;
 import mod.hey.studios.build.BuildSettings;
 import mod.hey.studios.compiler.kotlin.KotlinCompilerBridge;
+import mod.hey.studios.compiler.kotlin.KotlinCompilerUtil;
 import mod.hey.studios.project.ProjectSettings;
 import mod.hey.studios.project.proguard.ProguardHandler;
+import mod.hey.studios.project.stringfog.StringfogHandler;
 import mod.hey.studios.util.SystemLogPrinter;
 import mod.jbk.build.BuildProgressReceiver;
 import mod.jbk.build.BuiltInLibraries;
+import mod.jbk.build.apk.ApkWriter;
 import mod.jbk.build.compiler.dex.DexCompiler;
+import mod.jbk.build.compiler.dex.DexMergePlanner;
+import mod.jbk.build.compiler.dex.LibraryDexCache;
 import mod.jbk.build.compiler.resource.ResourceCompiler;
+import mod.jbk.build.incremental.BuildState;
+import mod.jbk.build.incremental.IndexingEclipseCompiler;
+import mod.jbk.build.incremental.JavaDependencyIndex;
+import mod.jbk.build.incremental.InputFingerprint;
 import mod.jbk.util.LogUtil;
-import mod.jbk.util.TestkeySignBridge;
 import mod.pranav.build.JarBuilder;
 import mod.pranav.build.R8Compiler;
 import mod.pranav.viewbinding.ViewBindingBuilder;
@@ -82,6 +97,10 @@ import proguard.ProGuard;
 
 public class ProjectBuilder {
     public static final String TAG = "AppBuilder";
+    /**
+     * Number of types Dx may keep interned between builds, see {@link Main#trimInternTables(int)}.
+     */
+    private static final int DX_MAX_INTERNED_TYPES = 200_000;
 
     private final File aapt2Binary;
     private final Context context;
@@ -96,6 +115,15 @@ public class ProjectBuilder {
     private BuildProgressReceiver progressReceiver;
     private boolean buildAppBundle = false;
     private ArrayList<File> dexesToAddButNotMerge = new ArrayList<>();
+    /**
+     * Manifest of stage inputs of the last build, or <code>null</code> if this is a full build.
+     */
+    private BuildState buildState;
+    /**
+     * Fingerprint of the classes in {@link yq#compiledClassesPath} as recorded while compiling them,
+     * or <code>null</code> if it's unknown or something other than the Java compiler changed the classes.
+     */
+    private String compiledClassesFingerprint;
 
     /**
      * Timestamp keeping track of when compiling the project's resources started, needed for stats of how long compiling took.
@@ -174,6 +202,63 @@ public class ProjectBuilder {
         return true;
     }
 
+    /**
+     * Makes this builder reuse outputs of the previous build, skipping stages whose inputs haven't
+     * changed since. The project's {@link yq#binDirectoryPath} and {@link yq#rJavaDirectoryPath}
+     * must not have been deleted before building for this to be of any use.
+     */
+    public void enableIncrementalBuild() {
+        buildState = new BuildState(yq.binDirectoryPath);
+
+        /* Generating files tells which of them changed, so stages don't hash generated files, but get invalidated
+           right away. That way a build canceled before those stages still runs them next time. */
+        if (hasGeneratedChanges(yq.resDirectoryPath, yq.assetsPath, yq.androidManifestPath)) {
+            buildState.invalidate(BuildState.STAGE_RESOURCES);
+        }
+        if (hasGeneratedChanges(yq.javaFilesPath)) {
+            buildState.invalidate(BuildState.STAGE_JAVA);
+        }
+
+        if (!areClassStagesIncremental()) {
+            /* Kotlin, StringFog and ProGuard work on bin/classes in place, start from scratch */
+            FileUtil.deleteFile(yq.compiledClassesPath);
+            FileUtil.makeDir(yq.compiledClassesPath);
+            buildState.invalidate(BuildState.STAGE_JAVA);
+        }
+    }
+
+    public boolean isIncrementalBuild() {
+        return buildState != null;
+    }
+
+    /**
+     * @return If any file {@link yq} generated inside one of {@code paths}, or at one of them, changed or got removed
+     */
+    private boolean hasGeneratedChanges(String... paths) {
+        for (Set<String> files : List.of(yq.getChangedFiles(), yq.getRemovedFiles())) {
+            for (String file : files) {
+                for (String path : paths) {
+                    String absolutePath = new File(path).getAbsolutePath();
+                    if (file.equals(absolutePath) || file.startsWith(absolutePath + File.separator)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return If compiled classes of the previous build can be reused, which isn't the case if
+     * Kotlin, StringFog or ProGuard modify {@link yq#compiledClassesPath} during the build.
+     */
+    private boolean areClassStagesIncremental() {
+        return buildState != null
+                && !KotlinCompilerUtil.areAnyKtFilesPresent(this)
+                && !proguard.isShrinkingEnabled()
+                && !new StringfogHandler(yq.sc_id).isStringfogEnabled();
+    }
+
     /**
      * Compile resources and log time needed.
      *
@@ -181,15 +266,111 @@ public class ProjectBuilder {
      */
     public void compileResources() throws Exception {
         timestampResourceCompilationStarted = System.currentTimeMillis();
+        String fingerprint = null;
+        if (buildState != null) {
+            fingerprint = getResourcesFingerprint();
+            if (buildState.isUpToDate(BuildState.STAGE_RESOURCES, fingerprint)
+                    && new File(yq.resourcesApkPath).exists()) {
+                LogUtil.d(TAG, "Skipped compiling resources as their inputs haven't changed");
+                return;
+            }
+            buildState.invalidate(BuildState.STAGE_RESOURCES);
+            /* Don't keep R.java files of libraries that aren't used anymore */
+            FileUtil.deleteFile(yq.rJavaDirectoryPath);
+            FileUtil.makeDir(yq.rJavaDirectoryPath);
+        }
+
         ResourceCompiler compiler = new ResourceCompiler(
                 this,
                 aapt2Binary,
                 buildAppBundle,
                 progressReceiver);
         compiler.compile();
+        if (buildState != null) {
+            buildState.markBuilt(BuildState.STAGE_RESOURCES, fingerprint);
+        }
         LogUtil.d(TAG, "Compiling resources took " + (System.currentTimeMillis() - timestampResourceCompilationStarted) + " ms");
     }
 
+    private String getResourcesFingerprint() throws IOException {
+        /* Changes to generated files invalidate the stage in enableIncrementalBuild() */
+        Set<String> generatedFiles = yq.getGeneratedFiles();
+        InputFingerprint fingerprint = new InputFingerprint()
+                .addDirectoryContents(yq.resDirectoryPath, new File(yq.resDirectoryPath), generatedFiles)
+                .addDirectoryContents(yq.assetsPath, new File(yq.assetsPath), generatedFiles)
+                .addFileStamp(new File(fpu.getPathResource(yq.sc_id)))
+                .addFileStamp(new File(fpu.getPathAssets(yq.sc_id)))
+                .addString("minSdk", String.valueOf(settings.getMinSdkVersion()))
+                .addString("targetSdk", settings.getValue(ProjectSettings.SETTING_TARGET_SDK_VERSION, ""))
+                .addString("versionCode", yq.versionCode)
+                .addString("versionName", yq.versionName)
+                .addString("androidJar", androidJarPath)
+                .addString("appBundle", String.valueOf(buildAppBundle))
+                .addString("extraPackages", getLibraryPackageNames());
+        if (!generatedFiles.contains(new File(yq.androidManifestPath).getAbsolutePath())) {
+            fingerprint.addFileContents(new File(yq.androidManifestPath));
+        }
+        for (Jp library : builtInLibraryManager.getLibraries()) {
+            fingerprint.addString("builtInLibrary", library.getName());
+        }
+        for (String localLibraryResDirectory : mll.getResLocalLibrary()) {
+            fingerprint.addFileStamp(new File(localLibraryResDirectory));
+        }
+        for (String localLibraryAssetsDirectory : mll.getAssets()) {
+            fingerprint.addFileStamp(new File(localLibraryAssetsDirectory));
+        }
+        return fingerprint.get();
+    }
+
+    private String getJavaFingerprint() throws IOException {
+        /* Changes to generated files invalidate the stage in enableIncrementalBuild() */
+        return new InputFingerprint()
+                .addDirectoryContents(yq.javaFilesPath, new File(yq.javaFilesPath), yq.getGeneratedFiles())
+                .addDirectoryContents(new File(yq.rJavaDirectoryPath))
+                .addFileStamp(new File(fpu.getPathJava(yq.sc_id)))
+                .addFileStamp(new File(fpu.getPathBroadcast(yq.sc_id)))
+                .addFileStamp(new File(fpu.getPathService(yq.sc_id)))
+                .addString("environment", getJavaEnvironmentFingerprint())
+                .get();
+    }
+
+    /**
+     * @return Fingerprint of everything Java files get compiled with, other than the Java files themselves
+     */
+    private String getJavaEnvironmentFingerprint() {
+        InputFingerprint fingerprint = new InputFingerprint()
+                .addString("javaVersion", build_settings.getValue(BuildSettings.SETTING_JAVA_VERSION, BuildSettings.SETTING_JAVA_VERSION_1_7))
+                .addString("noWarnings", build_settings.getValue(BuildSettings.SETTING_NO_WARNINGS, BuildSettings.SETTING_GENERIC_VALUE_TRUE));
+        addClasspathStamps(fingerprint);
+        return fingerprint.get();
+    }
+
+    private String getDexFingerprint() throws IOException {
+        InputFingerprint fingerprint = new InputFingerprint()
+                .addString("dexer", build_settings.getValue(BuildSettings.SETTING_DEXER, BuildSettings.SETTING_DEXER_DX))
+                .addString("minSdk", String.valueOf(settings.getMinSdkVersion()));
+        if (proguard.isShrinkingEnabled()) {
+            fingerprint.addFileContents(new File(yq.proguardClassesPath));
+        } else if (compiledClassesFingerprint != null) {
+            /* No need to hash all classes again, the compiler hashed them while writing them */
+            fingerprint.addString("classes", compiledClassesFingerprint);
+        } else {
+            fingerprint.addDirectoryContents(new File(yq.compiledClassesPath));
+        }
+        addClasspathStamps(fingerprint);
+        return fingerprint.get();
+    }
+
+    private void addClasspathStamps(InputFingerprint fingerprint) {
+        String classpath = getClasspath();
+        fingerprint.addString("classpath", classpath);
+        for (String classpathEntry : classpath.split(":")) {
+            if (!classpathEntry.isEmpty() && !classpathEntry.equals(yq.compiledClassesPath)) {
+                fingerprint.addFileStamp(new File(classpathEntry));
+            }
+        }
+    }
+
     public void generateViewBinding() throws IOException, SAXException {
         if (settings.getValue(ProjectSettings.SETTING_ENABLE_VIEWBINDING, ProjectSettings.SETTING_GENERIC_VALUE_FALSE)
                 .equals(ProjectSettings.SETTING_GENERIC_VALUE_FALSE)) {
@@ -224,9 +405,23 @@ public class ProjectBuilder {
      * @throws Exception Thrown if the compiler had any problems compiling
      */
     public void createDexFilesFromClasses() throws Exception {
-        FileUtil.makeDir(yq.binDirectoryPath + File.separator + "dex");
+        String dexOutputPath = yq.binDirectoryPath + File.separator + "dex";
+        FileUtil.makeDir(dexOutputPath);
         if (proguard.isShrinkingEnabled() && proguard.isR8Enabled()) return;
 
+        String fingerprint = null;
+        if (buildState != null) {
+            fingerprint = getDexFingerprint();
+            if (buildState.isUpToDate(BuildState.STAGE_DEX, fingerprint)
+                    && !FileUtil.listFiles(dexOutputPath, "dex").isEmpty()) {
+                LogUtil.d(TAG, "Skipped dexing as compiled classes haven't changed");
+                return;
+            }
+            buildState.invalidate(BuildState.STAGE_DEX);
+            FileUtil.deleteFile(dexOutputPath);
+            FileUtil.makeDir(dexOutputPath);
+        }
+
         if (isD8Enabled()) {
             long savedTimeMillis = System.currentTimeMillis();
             try {
@@ -240,8 +435,8 @@ public class ProjectBuilder {
             long savedTimeMillis = System.currentTimeMillis();
             List<String> args = Arrays.asList(
                     "--debug",
-                    "--verbose",
                     "--multi-dex",
+                    "--num-threads=" + Runtime.getRuntime().availableProcessors(),
                     "--output=" + yq.binDirectoryPath + File.separator + "dex",
                     proguard.isShrinkingEnabled() ? yq.proguardClassesPath : yq.compiledClassesPath
             );
@@ -249,7 +444,8 @@ public class ProjectBuilder {
             try {
                 LogUtil.d(TAG, "Running Dx with these arguments: " + args);
 
-                Main.clearInternTables();
+                /* Types interned by earlier builds stay valid, only clear them once there are too many */
+                Main.trimInternTables(DX_MAX_INTERNED_TYPES);
                 Main.Arguments arguments = new Main.Arguments();
                 Method parseMethod = Main.Arguments.class.getDeclaredMethod("parse", String[].class);
                 parseMethod.setAccessible(true);
@@ -262,6 +458,10 @@ public class ProjectBuilder {
                 throw e;
             }
         }
+
+        if (buildState != null) {
+            buildState.markBuilt(BuildState.STAGE_DEX, fingerprint);
+        }
     }
 
     public String getClasspath() {
@@ -365,124 +565,39 @@ public class ProjectBuilder {
      * @throws Exception Thrown if merging had problems
      */
     private Collection<File> dexLibraries(File outputDirectory, List<File> dexes) throws Exception {
-        int lastDexNumber = 1;
-        String nextMergedDexFilename;
+        List<DexMergePlanner.MergedDex> plan = new DexMergePlanner().plan(dexes);
         Collection<File> resultDexFiles = new LinkedList<>();
-        LinkedList<Dex> dexObjects = new LinkedList<>();
-        Iterator<File> toMergeIterator = dexes.iterator();
-
-        List<FieldId> mergedDexFields;
-        List<MethodId> mergedDexMethods;
-        List<ProtoId> mergedDexProtos;
-        List<Integer> mergedDexTypes;
-
-        {
-            // Closable gets closed automatically
-            Dex firstDex = new Dex(new FileInputStream(toMergeIterator.next()));
-            dexObjects.add(firstDex);
-            mergedDexFields = new LinkedList<>(firstDex.fieldIds());
-            mergedDexMethods = new LinkedList<>(firstDex.methodIds());
-            mergedDexProtos = new LinkedList<>(firstDex.protoIds());
-            mergedDexTypes = new LinkedList<>(firstDex.typeIds());
-        }
-
-        while (toMergeIterator.hasNext()) {
-            File dexFile = toMergeIterator.next();
-            nextMergedDexFilename = lastDexNumber == 1 ? "classes.dex" : "classes" + lastDexNumber + ".dex";
-
-            // Closable gets closed automatically
-            Dex dex = new Dex(new FileInputStream(dexFile));
-
-            boolean canMerge = true;
-            List<FieldId> newDexFieldIds = new LinkedList<>();
-            List<MethodId> newDexMethodIds = new LinkedList<>();
-            List<ProtoId> newDexProtoIds = new LinkedList<>();
-            List<Integer> newDexTypeIds = new LinkedList<>();
-
-            bruh:
-            {
-                for (FieldId fieldId : dex.fieldIds()) {
-                    if (!mergedDexFields.contains(fieldId)) {
-                        if (mergedDexFields.size() + newDexFieldIds.size() + 1 > 0xffff) {
-                            LogUtil.d(TAG, "Can't merge DEX file to " + nextMergedDexFilename +
-                                    " because it has too many new field IDs. "
-                                    + nextMergedDexFilename + " will have " + mergedDexFields.size() + " field IDs");
-                            canMerge = false;
-                            break bruh;
-                        } else {
-                            newDexFieldIds.add(fieldId);
-                        }
-                    }
-                }
-
-                for (MethodId methodId : dex.methodIds()) {
-                    if (!newDexMethodIds.contains(methodId)) {
-                        if (mergedDexMethods.size() + newDexMethodIds.size() + 1 > 0xffff) {
-                            LogUtil.d(TAG, "Can't merge DEX file to " + nextMergedDexFilename +
-                                    " because it has too many new method IDs. "
-                                    + nextMergedDexFilename + " will have " + mergedDexMethods.size() + " method IDs");
-                            canMerge = false;
-                            break bruh;
-                        } else {
-                            newDexMethodIds.add(methodId);
-                        }
-                    }
-                }
+        for (DexMergePlanner.MergedDex mergedDex : plan) {
+            LogUtil.d(TAG, "Merging " + mergedDex.getInputFiles().size() + " DEX file(s) to " + mergedDex);
+            resultDexFiles.add(new File(outputDirectory, mergedDex.getFilename()));
+        }
 
-                for (ProtoId protoId : dex.protoIds()) {
-                    if (!newDexProtoIds.contains(protoId)) {
-                        if (mergedDexProtos.size() + newDexProtoIds.size() + 1 > 0xffff) {
-                            LogUtil.d(TAG, "Can't merge DEX file to " + nextMergedDexFilename +
-                                    " because it has too many new proto IDs. "
-                                    + nextMergedDexFilename + " will have " + mergedDexProtos.size() + " proto IDs");
-                            canMerge = false;
-                            break bruh;
-                        } else {
-                            newDexProtoIds.add(protoId);
-                        }
-                    }
+        if (plan.size() == 1) {
+            mergeDex(outputDirectory, plan.get(0));
+        } else {
+            // Output DEX files don't depend on each other, so merge them at the same time
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(plan.size(), Runtime.getRuntime().availableProcessors()));
+            try {
+                List<Future<?>> merges = new ArrayList<>(plan.size());
+                for (DexMergePlanner.MergedDex mergedDex : plan) {
+                    merges.add(executor.submit(() -> {
+                        mergeDex(outputDirectory, mergedDex);
+                        return null;
+                    }));
                 }
-
-                for (Integer typeId : dex.typeIds()) {
-                    if (!newDexTypeIds.contains(typeId)) {
-                        if (mergedDexTypes.size() + newDexProtoIds.size() + 1 > 0xffff) {
-                            LogUtil.d(TAG, "Can't merge DEX file to " + nextMergedDexFilename +
-                                    " because it has too many new type IDs. "
-                                    + nextMergedDexFilename + " will have " + mergedDexTypes.size() + " type IDs");
-                            canMerge = false;
-                            break bruh;
-                        } else {
-                            newDexTypeIds.add(typeId);
-                        }
+                for (Future<?> merge : merges) {
+                    try {
+                        merge.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception exception) throw exception;
+                        throw e;
                     }
                 }
+            } finally {
+                executor.shutdownNow();
             }
-
-            if (canMerge) {
-                LogUtil.d(TAG, "Merging DEX #" + dexes.indexOf(dexFile) + " as well to " + nextMergedDexFilename);
-                dexObjects.add(dex);
-                mergedDexFields.addAll(newDexFieldIds);
-                mergedDexMethods.addAll(newDexMethodIds);
-                mergedDexProtos.addAll(newDexProtoIds);
-                mergedDexTypes.addAll(newDexTypeIds);
-            } else {
-                File target = new File(outputDirectory, nextMergedDexFilename);
-                mergeDexes(target, dexObjects);
-                resultDexFiles.add(target);
-                dexObjects.clear();
-                dexObjects.add(dex);
-
-                mergedDexFields = new ArrayList<>(dex.fieldIds());
-                mergedDexMethods = new ArrayList<>(dex.methodIds());
-                mergedDexProtos = new ArrayList<>(dex.protoIds());
-                mergedDexTypes = new ArrayList<>(dex.typeIds());
-                lastDexNumber++;
-            }
-        }
-        if (!dexObjects.isEmpty()) {
-            File file = new File(outputDirectory, lastDexNumber == 1 ? "classes.dex" : "classes" + lastDexNumber + ".dex");
-            mergeDexes(file, dexObjects);
-            resultDexFiles.add(file);
         }
 
         return resultDexFiles;
@@ -507,6 +622,101 @@ public class ProjectBuilder {
     public void compileJavaCode() throws zy, IOException {
         long savedTimeMillis = System.currentTimeMillis();
 
+        /* Avoid "package ;" line in that file causing issues while compiling */
+        File rJavaFileWithoutPackage = new File(yq.rJavaDirectoryPath, "R.java");
+        if (rJavaFileWithoutPackage.exists() && !rJavaFileWithoutPackage.delete()) {
+            LogUtil.w(TAG, "Failed to delete file " + rJavaFileWithoutPackage.getAbsolutePath());
+        }
+
+        compiledClassesFingerprint = null;
+        String fingerprint = null;
+        JavaDependencyIndex index = null;
+        if (areClassStagesIncremental()) {
+            fingerprint = getJavaFingerprint();
+            if (buildState.isUpToDate(BuildState.STAGE_JAVA, fingerprint)
+                    && !FileUtil.listFilesRecursively(new File(yq.compiledClassesPath), ".class").isEmpty()) {
+                LogUtil.d(TAG, "Skipped compiling Java files as their inputs haven't changed");
+                compiledClassesFingerprint = buildState.getOutputFingerprint(BuildState.STAGE_JAVA);
+                return;
+            }
+            buildState.invalidate(BuildState.STAGE_JAVA);
+            index = JavaDependencyIndex.load(yq.binDirectoryPath, getJavaEnvironmentFingerprint());
+        } else {
+            /* Classes compiled now won't match the index */
+            JavaDependencyIndex.delete(yq.binDirectoryPath);
+        }
+
+        if (index != null && !index.isEmpty()
+                && !FileUtil.listFilesRecursively(new File(yq.compiledClassesPath), ".class").isEmpty()) {
+            /* Compile only changed Java files and the ones depending on them, against the other classes */
+            JavaDependencyIndex incrementalIndex = index;
+            index.compile(getJavaSourceFiles(), new File(yq.compiledClassesPath), sourceFiles -> {
+                ArrayList<String> sourcePaths = new ArrayList<>();
+                for (File sourceFile : sourceFiles) {
+                    sourcePaths.add(sourceFile.getAbsolutePath());
+                }
+                runEclipseCompiler(sourcePaths, getClasspath() + ":" + yq.compiledClassesPath, incrementalIndex);
+            });
+        } else {
+            if (index != null) {
+                /* Don't keep classes of removed source files */
+                FileUtil.deleteFile(yq.compiledClassesPath);
+                FileUtil.makeDir(yq.compiledClassesPath);
+                index.clear();
+                for (File sourceFile : getJavaSourceFiles()) {
+                    index.add(sourceFile);
+                }
+            }
+            runEclipseCompiler(getJavaSourceDirectories(), getClasspath(), index);
+            if (index != null) {
+                index.save();
+            }
+        }
+
+        LogUtil.d(TAG, "Compiling Java files took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
+        if (fingerprint != null) {
+            compiledClassesFingerprint = index.getOutputFingerprint();
+            buildState.markBuilt(BuildState.STAGE_JAVA, fingerprint, compiledClassesFingerprint);
+        }
+    }
+
+    /**
+     * @return Directories with the project's Java files, generated and custom ones
+     */
+    private ArrayList<String> getJavaSourceDirectories() {
+        ArrayList<String> directories = new ArrayList<>();
+        directories.add(yq.javaFilesPath);
+        directories.add(yq.rJavaDirectoryPath);
+        String pathJava = fpu.getPathJava(yq.sc_id);
+        if (FileUtil.isExistFile(pathJava)) {
+            directories.add(pathJava);
+        }
+        String pathBroadcast = fpu.getPathBroadcast(yq.sc_id);
+        if (FileUtil.isExistFile(pathBroadcast)) {
+            directories.add(pathBroadcast);
+        }
+        String pathService = fpu.getPathService(yq.sc_id);
+        if (FileUtil.isExistFile(pathService)) {
+            directories.add(pathService);
+        }
+        return directories;
+    }
+
+    private List<File> getJavaSourceFiles() {
+        List<File> sourceFiles = new ArrayList<>();
+        for (String directory : getJavaSourceDirectories()) {
+            sourceFiles.addAll(FileUtil.listFilesRecursively(new File(directory), ".java"));
+        }
+        return sourceFiles;
+    }
+
+    /**
+     * Runs Eclipse Compiler on Java files or directories of them.
+     *
+     * @param index Where to record what the Java files compiled to, {@code null} if not needed
+     * @throws zy Thrown if the Java files didn't compile
+     */
+    private void runEclipseCompiler(ArrayList<String> inputs, String classpath, JavaDependencyIndex index) throws zy, IOException {
         class EclipseOutOutputStream extends OutputStream {
 
             private final StringBuffer mBuffer = new StringBuffer();
@@ -551,38 +761,20 @@ public class ProjectBuilder {
             args.add("-d");
             args.add(yq.compiledClassesPath);
             args.add("-cp");
-            args.add(getClasspath());
+            args.add(classpath);
             args.add("-proc:none");
-            args.add(yq.javaFilesPath);
-            args.add(yq.rJavaDirectoryPath);
-            String pathJava = fpu.getPathJava(yq.sc_id);
-            if (FileUtil.isExistFile(pathJava)) {
-                args.add(pathJava);
-            }
-            String pathBroadcast = fpu.getPathBroadcast(yq.sc_id);
-            if (FileUtil.isExistFile(pathBroadcast)) {
-                args.add(pathBroadcast);
-            }
-            String pathService = fpu.getPathService(yq.sc_id);
-            if (FileUtil.isExistFile(pathService)) {
-                args.add(pathService);
-            }
-
-            /* Avoid "package ;" line in that file causing issues while compiling */
-            File rJavaFileWithoutPackage = new File(yq.rJavaDirectoryPath, "R.java");
-            if (rJavaFileWithoutPackage.exists() && !rJavaFileWithoutPackage.delete()) {
-                LogUtil.w(TAG, "Failed to delete file " + rJavaFileWithoutPackage.getAbsolutePath());
-            }
+            args.addAll(inputs);
 
             /* Start compiling */
-            org.eclipse.jdt.internal.compiler.batch.Main main = new org.eclipse.jdt.internal.compiler.batch.Main(outWriter, errWriter, false, null, null);
+            org.eclipse.jdt.internal.compiler.batch.Main main = index == null
+                    ? new org.eclipse.jdt.internal.compiler.batch.Main(outWriter, errWriter, false, null, null)
+                    : new IndexingEclipseCompiler(outWriter, errWriter, index);
             LogUtil.d(TAG, "Running Eclipse compiler with these arguments: " + args);
             main.compile(args.toArray(new String[0]));
 
             LogUtil.d(TAG, "System.out of Eclipse compiler: " + outOutputStream.getOut());
             if (main.globalErrorsCount <= 0) {
                 LogUtil.d(TAG, "System.err of Eclipse compiler: " + errOutputStream.getOut());
-                LogUtil.d(TAG, "Compiling Java files took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
             } else {
                 LogUtil.e(TAG, "Failed to compile Java files");
                 throw new zy(errOutputStream.getOut());
@@ -591,45 +783,20 @@ public class ProjectBuilder {
     }
 
     public void buildApk() throws By {
-        String firstDexPath = dexesToAddButNotMerge.isEmpty() ? yq.classesDexPath : dexesToAddButNotMerge.remove(0).getAbsolutePath();
+        LinkedHashMap<String, File> dexFiles = getDexFilesToPackage();
         try {
-            ApkBuilder apkBuilder = new ApkBuilder(new File(yq.unsignedUnalignedApkPath), new File(yq.resourcesApkPath), new File(firstDexPath), null, null, System.out);
-
-            for (Jp library : builtInLibraryManager.getLibraries()) {
-                apkBuilder.addResourcesFromJar(BuiltInLibraries.getLibraryClassesJarPath(library.getName()));
-            }
+            ApkBuilder apkBuilder = new ApkBuilder(new File(yq.unsignedUnalignedApkPath), new File(yq.resourcesApkPath), dexFiles.remove("classes.dex"), null, null, System.out);
 
-            for (String jarPath : mll.getJarLocalLibrary().split(":")) {
-                if (!jarPath.trim().isEmpty()) {
-                    apkBuilder.addResourcesFromJar(new File(jarPath));
-                }
+            for (File jar : getJavaResourceJars()) {
+                apkBuilder.addResourcesFromJar(jar);
             }
 
-            /* Add project's native libraries */
-            File nativeLibrariesDirectory = new File(fpu.getPathNativelibs(yq.sc_id));
-            if (nativeLibrariesDirectory.exists()) {
+            for (File nativeLibrariesDirectory : getNativeLibraryDirectories()) {
                 apkBuilder.addNativeLibraries(nativeLibrariesDirectory);
             }
 
-            /* Add Local libraries' native libraries */
-            for (String nativeLibraryDirectory : mll.getNativeLibs()) {
-                apkBuilder.addNativeLibraries(new File(nativeLibraryDirectory));
-            }
-
-            if (dexesToAddButNotMerge.isEmpty()) {
-                List<String> dexFiles = FileUtil.listFiles(yq.binDirectoryPath, "dex");
-                for (String dexFile : dexFiles) {
-                    if (!Uri.fromFile(new File(dexFile)).getLastPathSegment().equals("classes.dex")) {
-                        apkBuilder.addFile(new File(dexFile), Uri.parse(dexFile).getLastPathSegment());
-                    }
-                }
-            } else {
-                int dexNumber = 2;
-
-                for (File dexFile : dexesToAddButNotMerge) {
-                    apkBuilder.addFile(dexFile, "classes" + dexNumber + ".dex");
-                    dexNumber++;
-                }
+            for (Map.Entry<String, File> dexFile : dexFiles.entrySet()) {
+                apkBuilder.addFile(dexFile.getValue(), dexFile.getKey());
             }
 
             apkBuilder.setDebugMode(false);
@@ -647,6 +814,111 @@ public class ProjectBuilder {
                 (System.currentTimeMillis() - timestampResourceCompilationStarted) + " ms");
     }
 
+    /**
+     * Builds the APK and signs it with testkey in a single pass, without writing an unsigned APK first.
+     * The APK is aligned already, so it doesn't need to be zipaligned.
+     * <p>
+     * Incremental debug builds patch the APK of the previous build, only writing entries that changed.
+     *
+     * @param outputPath Path to write the signed APK to, like {@link yq#finalToInstallApkPath}
+     */
+    public void buildSignedApk(String outputPath) throws By {
+        long savedTimeMillis = System.currentTimeMillis();
+        File output = new File(outputPath);
+        File index = isIncrementalBuild() && yq.N.isDebugBuild ? new File(yq.binDirectoryPath, "apk_index.json") : null;
+        try (ApkWriter writer = new ApkWriter(output, ApkSigner.loadTestKeyPrivateKey(),
+                Collections.singletonList(ApkSigner.loadTestKeyCertificate()), settings.getMinSdkVersion(), index)) {
+            /* Entries that change rarely come first, so that they stay in place when patching the APK */
+            for (File nativeLibrariesDirectory : getNativeLibraryDirectories()) {
+                writer.addNativeLibraries(nativeLibrariesDirectory);
+            }
+
+            for (File jar : getJavaResourceJars()) {
+                writer.addZipEntries(jar, ApkWriter.EntryFilter.JAVA_RESOURCES);
+            }
+
+            /* Libraries' DEX files come before the project's, if they don't get merged */
+            for (Map.Entry<String, File> dexFile : getDexFilesToPackage().entrySet()) {
+                writer.addFile(dexFile.getValue(), dexFile.getKey());
+            }
+
+            writer.addZipEntries(new File(yq.resourcesApkPath), null);
+            writer.finish();
+        } catch (ApkWriter.DuplicateEntryException e) {
+            output.delete();
+            String message = "Duplicate files from two libraries detected \r\n";
+            message += "File1: " + e.getFirstSource() + " \r\n";
+            message += "File2: " + e.getSecondSource() + " \r\n";
+            message += "Archive path: " + e.getName();
+            throw new By(message);
+        } catch (IOException | GeneralSecurityException e) {
+            output.delete();
+            LogUtil.e(TAG, "Failed to build signed APK", e);
+            throw new By("Couldn't build signed APK: " + e.getMessage());
+        }
+        LogUtil.d(TAG, "Building and signing the APK took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
+        LogUtil.d(TAG, "Time passed since starting to compile resources until building the signed APK: " +
+                (System.currentTimeMillis() - timestampResourceCompilationStarted) + " ms");
+    }
+
+    /**
+     * @return DEX files to add to the APK, keyed by their path inside it, starting with <code>classes.dex</code>
+     */
+    private LinkedHashMap<String, File> getDexFilesToPackage() {
+        LinkedHashMap<String, File> dexFiles = new LinkedHashMap<>();
+        if (dexesToAddButNotMerge.isEmpty()) {
+            dexFiles.put("classes.dex", new File(yq.classesDexPath));
+            for (String dexFile : FileUtil.listFiles(yq.binDirectoryPath, "dex")) {
+                String filename = Uri.fromFile(new File(dexFile)).getLastPathSegment();
+                if (!filename.equals("classes.dex")) {
+                    dexFiles.put(filename, new File(dexFile));
+                }
+            }
+        } else {
+            int dexNumber = 1;
+            for (File dexFile : dexesToAddButNotMerge) {
+                dexFiles.put(dexNumber == 1 ? "classes.dex" : "classes" + dexNumber + ".dex", dexFile);
+                dexNumber++;
+            }
+        }
+        return dexFiles;
+    }
+
+    /**
+     * @return JARs whose Java resources need to be added to the APK, of built-in and local libraries
+     */
+    private List<File> getJavaResourceJars() {
+        List<File> jars = new ArrayList<>();
+        for (Jp library : builtInLibraryManager.getLibraries()) {
+            jars.add(BuiltInLibraries.getLibraryClassesJarPath(library.getName()));
+        }
+
+        for (String jarPath : mll.getJarLocalLibrary().split(":")) {
+            if (!jarPath.trim().isEmpty()) {
+                jars.add(new File(jarPath));
+            }
+        }
+        return jars;
+    }
+
+    /**
+     * @return Directories with ABI directories of native libraries, of the project and local libraries
+     */
+    private List<File> getNativeLibraryDirectories() {
+        List<File> directories = new ArrayList<>();
+        /* Add project's native libraries */
+        File nativeLibrariesDirectory = new File(fpu.getPathNativelibs(yq.sc_id));
+        if (nativeLibrariesDirectory.exists()) {
+            directories.add(nativeLibrariesDirectory);
+        }
+
+        /* Add Local libraries' native libraries */
+        for (String nativeLibraryDirectory : mll.getNativeLibs()) {
+            directories.add(new File(nativeLibraryDirectory));
+        }
+        return directories;
+    }
+
     /**
      * Either merges DEX files to as few as possible, or adds list of DEX files to add to the APK to
      * {@link #dexesToAddButNotMerge}.
@@ -714,6 +986,7 @@ public class ProjectBuilder {
             }
         }
 
+        int libraryDexesCount = dexes.size();
         for (String file : FileUtil.listFiles(yq.binDirectoryPath + File.separator + "dex", "dex")) {
             dexes.add(new File(file));
         }
@@ -721,7 +994,30 @@ public class ProjectBuilder {
         LogUtil.d(TAG, "Will merge these " + dexes.size() + " DEX files to classes.dex: " + dexes);
 
         if (settings.getMinSdkVersion() < 21 || !yq.N.isDebugBuild) {
-            dexLibraries(new File(yq.binDirectoryPath), dexes);
+            String fingerprint = null;
+            if (buildState != null) {
+                InputFingerprint inputs = new InputFingerprint();
+                for (File dex : dexes) {
+                    inputs.addFileStamp(dex);
+                }
+                fingerprint = inputs.get();
+                if (buildState.isUpToDate(BuildState.STAGE_DEX_MERGE, fingerprint)
+                        && new File(yq.classesDexPath).exists()) {
+                    LogUtil.d(TAG, "Skipped merging DEX files as none of them changed");
+                    return;
+                }
+                buildState.invalidate(BuildState.STAGE_DEX_MERGE);
+                /* Previously merged DEX files would otherwise end up in the APK */
+                for (String mergedDex : FileUtil.listFiles(yq.binDirectoryPath, "dex")) {
+                    FileUtil.deleteFile(mergedDex);
+                }
+            }
+            List<File> toMerge = new ArrayList<>(getMergedLibraryDexes(dexes.subList(0, libraryDexesCount)));
+            toMerge.addAll(dexes.subList(libraryDexesCount, dexes.size()));
+            dexLibraries(new File(yq.binDirectoryPath), toMerge);
+            if (buildState != null) {
+                buildState.markBuilt(BuildState.STAGE_DEX_MERGE, fingerprint);
+            }
             LogUtil.d(TAG, "Merging DEX files took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
         } else {
             dexesToAddButNotMerge = dexes;
@@ -729,6 +1025,31 @@ public class ProjectBuilder {
         }
     }
 
+    /**
+     * @return Library DEX files merged together, from {@link LibraryDexCache} if they've been merged before.
+     * The original DEX files if merging or caching failed.
+     */
+    private List<File> getMergedLibraryDexes(List<File> libraryDexes) {
+        if (libraryDexes.size() < 2) return libraryDexes;
+
+        LibraryDexCache cache = new LibraryDexCache();
+        try {
+            String key = cache.getKey(libraryDexes);
+            List<File> cached = cache.get(key);
+            if (cached != null) {
+                LogUtil.d(TAG, "Using cached merged DEX files of " + libraryDexes.size() + " library DEX files");
+                return cached;
+            }
+
+            File entryDirectory = cache.newEntryDirectory(key);
+            dexLibraries(entryDirectory, libraryDexes);
+            return cache.put(key, entryDirectory);
+        } catch (Exception e) {
+            LogUtil.e(TAG, "Couldn't use cached merged library DEX files, merging all DEX files at once", e);
+            return libraryDexes;
+        }
+    }
+
     /**
      * Extracts AAPT2 binaries (if they need to be extracted).
      *
@@ -752,6 +1073,25 @@ public class ProjectBuilder {
         }
     }
 
+    /**
+     * @return Names of every built-in library the build needs, including MultiDex and HTTP legacy if used.
+     * Only valid after {@link #buildBuiltInLibraryInformation()}.
+     */
+    public List<String> getRequiredBuiltInLibraryNames() {
+        List<String> names = new ArrayList<>();
+        if (settings.getMinSdkVersion() < 21) {
+            names.add(BuiltInLibraries.ANDROIDX_MULTIDEX);
+        }
+        if (!build_settings.getValue(BuildSettings.SETTING_NO_HTTP_LEGACY, ProjectSettings.SETTING_GENERIC_VALUE_FALSE)
+                .equals(ProjectSettings.SETTING_GENERIC_VALUE_TRUE)) {
+            names.add(BuiltInLibraries.HTTP_LEGACY_ANDROID_28);
+        }
+        for (Jp library : builtInLibraryManager.getLibraries()) {
+            names.add(library.getName());
+        }
+        return names;
+    }
+
     /**
      * Checks if we need to extract any library/dependency from assets to filesDir,
      * and extracts them, if needed. Also initializes used built-in libraries.
@@ -802,13 +1142,14 @@ public class ProjectBuilder {
         return builtInLibraryManager;
     }
 
-    /**
-     * Sign the debug APK file with testkey.
-     * <p>
-     * This method uses apksigner, but kellinwood's zipsigner as fallback.
-     */
-    public void signDebugApk() throws GeneralSecurityException, IOException, ClassNotFoundException, IllegalAccessException, InstantiationException {
-        TestkeySignBridge.signWithTestkey(yq.unsignedUnalignedApkPath, yq.finalToInstallApkPath);
+    private void mergeDex(File outputDirectory, DexMergePlanner.MergedDex mergedDex) throws IOException {
+        File target = new File(outputDirectory, mergedDex.getFilename());
+        if (mergedDex.getInputFiles().size() == 1) {
+            // Nothing to merge it with, e.g. an already merged part of cached library DEX files
+            Files.copy(mergedDex.getInputFiles().get(0).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            mergeDexes(target, mergedDex.getInputs());
+        }
     }
 
     private void mergeDexes(File target, List<Dex> dexes) throws IOException {
@@ -0,0 +1,151 @@
+package a.a.a;
+
+import com.besome.sketch.beans.BlockBean;
+import com.besome.sketch.beans.ComponentBean;
+import com.besome.sketch.beans.ProjectFileBean;
+import com.besome.sketch.beans.ViewBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Views, Components and blocks of a project's files, read from {@link eC} once per build,
+ * so that metadata initialization and source generation don't have to look them up again for every walk.
+ * <p>
+ * Collections are unmodifiable and the snapshot never changes, so it's safe to share between threads
+ * generating files in parallel. The beans themselves are the project's, and must not be modified.
+ */
+public class ProjectDataSnapshot {
+
+    private final Map<String, List<ViewBean>> viewsByLayout = new HashMap<>();
+    private final Map<String, List<ComponentBean>> componentsByJava = new HashMap<>();
+    private final Map<String, Map<Integer, List<ComponentBean>>> componentsByType = new HashMap<>();
+    private final Map<String, Map<String, ArrayList<BlockBean>>> blocksByEvent = new HashMap<>();
+    private final Map<String, Map<String, List<BlockBean>>> blocksByOpcode = new HashMap<>();
+
+    /**
+     * @param activities  Activities to read layouts (including Drawer ones), Components and blocks of
+     * @param customViews Custom Views to read layouts of
+     */
+    public ProjectDataSnapshot(eC projectDataManager, List<ProjectFileBean> activities, List<ProjectFileBean> customViews) {
+        for (ProjectFileBean customView : customViews) {
+            addLayout(projectDataManager, customView.getXmlName());
+        }
+        for (ProjectFileBean activity : activities) {
+            addLayout(projectDataManager, activity.getXmlName());
+            if (activity.hasActivityOption(ProjectFileBean.OPTION_ACTIVITY_DRAWER)) {
+                addLayout(projectDataManager, activity.getDrawerXmlName());
+            }
+            addComponents(projectDataManager, activity.getJavaName());
+            addBlocks(projectDataManager, activity.getJavaName());
+        }
+    }
+
+    /**
+     * @return A snapshot of only a single Activity's data
+     */
+    public static ProjectDataSnapshot of(eC projectDataManager, ProjectFileBean activity) {
+        return new ProjectDataSnapshot(projectDataManager, List.of(activity), List.of());
+    }
+
+    private void addLayout(eC projectDataManager, String xmlName) {
+        if (viewsByLayout.containsKey(xmlName)) return;
+        ArrayList<ViewBean> views = projectDataManager.d(xmlName);
+        viewsByLayout.put(xmlName, views == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(views)));
+    }
+
+    private void addComponents(eC projectDataManager, String javaName) {
+        if (componentsByJava.containsKey(javaName)) return;
+        ArrayList<ComponentBean> components = projectDataManager.e(javaName);
+        if (components == null) components = new ArrayList<>();
+
+        Map<Integer, List<ComponentBean>> byType = new HashMap<>();
+        for (ComponentBean component : components) {
+            byType.computeIfAbsent(component.type, type -> new ArrayList<>()).add(component);
+        }
+        byType.replaceAll((type, list) -> Collections.unmodifiableList(list));
+
+        componentsByJava.put(javaName, Collections.unmodifiableList(new ArrayList<>(components)));
+        componentsByType.put(javaName, Collections.unmodifiableMap(byType));
+    }
+
+    private void addBlocks(eC projectDataManager, String javaName) {
+        if (blocksByEvent.containsKey(javaName)) return;
+        HashMap<String, ArrayList<BlockBean>> events = projectDataManager.b(javaName);
+
+        // Keep the order of events and blocks, so that walking either index sees blocks in the same order
+        Map<String, ArrayList<BlockBean>> byEvent = new LinkedHashMap<>();
+        Map<String, List<BlockBean>> byOpcode = new LinkedHashMap<>();
+        if (events != null) {
+            for (Map.Entry<String, ArrayList<BlockBean>> event : events.entrySet()) {
+                ArrayList<BlockBean> blocks = event.getValue() == null ? new ArrayList<>() : new ArrayList<>(event.getValue());
+                byEvent.put(event.getKey(), blocks);
+                for (BlockBean block : blocks) {
+                    byOpcode.computeIfAbsent(block.opCode, opCode -> new ArrayList<>()).add(block);
+                }
+            }
+        }
+        byOpcode.replaceAll((opCode, list) -> Collections.unmodifiableList(list));
+
+        blocksByEvent.put(javaName, Collections.unmodifiableMap(byEvent));
+        blocksByOpcode.put(javaName, Collections.unmodifiableMap(byOpcode));
+    }
+
+    /**
+     * @return Views of a layout, in the order {@link eC#d(String)} returns them
+     */
+    public List<ViewBean> getViews(String xmlName) {
+        List<ViewBean> views = viewsByLayout.get(xmlName);
+        return views == null ? List.of() : views;
+    }
+
+    /**
+     * @return Components of an Activity, in the order {@link eC#e(String)} returns them
+     */
+    public List<ComponentBean> getComponents(String javaName) {
+        List<ComponentBean> components = componentsByJava.get(javaName);
+        return components == null ? List.of() : components;
+    }
+
+    /**
+     * @return Components of an Activity of a given type
+     */
+    public List<ComponentBean> getComponents(String javaName, int type) {
+        Map<Integer, List<ComponentBean>> byType = componentsByType.get(javaName);
+        List<ComponentBean> components = byType == null ? null : byType.get(type);
+        return components == null ? List.of() : components;
+    }
+
+    public boolean hasComponent(String javaName, int type) {
+        return !getComponents(javaName, type).isEmpty();
+    }
+
+    /**
+     * @return Blocks of an Activity, keyed by event, like {@link eC#b(String)} returns them.
+     * The lists are {@link ArrayList}s only to be passed to {@link Fx}, and must not be modified either.
+     */
+    public Map<String, ArrayList<BlockBean>> getBlocks(String javaName) {
+        Map<String, ArrayList<BlockBean>> blocks = blocksByEvent.get(javaName);
+        return blocks == null ? Map.of() : blocks;
+    }
+
+    /**
+     * @return Blocks of an Activity, keyed by opcode, in the order opcodes first appear in {@link #getBlocks(String)}
+     */
+    public Map<String, List<BlockBean>> getBlocksByOpcode(String javaName) {
+        Map<String, List<BlockBean>> blocks = blocksByOpcode.get(javaName);
+        return blocks == null ? Map.of() : blocks;
+    }
+
+    /**
+     * @return Opcodes of blocks used in an Activity, in the order they first appear in {@link #getBlocks(String)}
+     */
+    public Set<String> getOpcodes(String javaName) {
+        return getBlocksByOpcode(javaName).keySet();
+    }
+}
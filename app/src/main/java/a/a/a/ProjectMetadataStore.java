@@ -0,0 +1,280 @@
+package a.a.a;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mod.jbk.util.LogUtil;
+import pro.sketchware.SketchApplication;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Metadata of all projects, so that listing them or looking one up doesn't read and decrypt
+ * every <code>project</code> file again.
+ * <p>
+ * Decoded project files are kept in memory, and are read again once a file's modification time or size changed,
+ * e.g. because a backup got restored. Fields the projects list needs are also saved to an index in the app's
+ * files directory, so that listing projects after starting the app only decrypts files that changed since.
+ * <p>
+ * {@link lC} writes its saves through to the store. Maps returned are copies, and may be modified by callers.
+ */
+public class ProjectMetadataStore {
+
+    private static final String TAG = "ProjectMetadataStore";
+    private static final String INDEX_FILENAME = "project_list_index.json";
+    private static final int INDEX_VERSION = 1;
+    /**
+     * Keys the projects list shows, sorts and searches by, as well as the ones {@link lC#b(String, HashMap)}
+     * saves, so that saving a summary returned by {@link #getProjectSummaries()} doesn't lose any values.
+     */
+    private static final List<String> SUMMARY_KEYS = List.of(
+            "sc_id", "proj_type", "my_ws_name", "my_app_name", "my_sc_pkg_name",
+            "sc_ver_code", "sc_ver_name", "sketchware_ver", "custom_icon", "isIconAdaptive",
+            "color_accent", "color_primary", "color_primary_dark", "color_control_highlight", "color_control_normal");
+
+    private static ProjectMetadataStore instance;
+
+    private final Map<String, Entry> projects = new ConcurrentHashMap<>();
+    private final Map<String, IndexedProject> index = new ConcurrentHashMap<>();
+    private final File indexFile;
+    /**
+     * Whether {@link #index} changed since it was saved last
+     */
+    private volatile boolean indexChanged;
+
+    private ProjectMetadataStore(File indexFile) {
+        this.indexFile = indexFile;
+        if (indexFile.isFile()) {
+            try {
+                SavedIndex saved = new Gson().fromJson(FileUtil.readFile(indexFile.getAbsolutePath()), SavedIndex.class);
+                if (saved != null && saved.version == INDEX_VERSION && saved.projects != null) {
+                    index.putAll(saved.projects);
+                }
+            } catch (Exception e) {
+                LogUtil.w(TAG, "Couldn't read project list index, reading all projects", e);
+            }
+        }
+    }
+
+    public static synchronized ProjectMetadataStore getInstance() {
+        if (instance == null) {
+            instance = new ProjectMetadataStore(new File(SketchApplication.getContext().getFilesDir(), INDEX_FILENAME));
+        }
+        return instance;
+    }
+
+    /**
+     * @return All projects' metadata, like their <code>project</code> files contain it
+     */
+    public ArrayList<HashMap<String, Object>> getProjects() {
+        ArrayList<HashMap<String, Object>> projects = new ArrayList<>();
+        for (File projectFile : listProjectFiles()) {
+            Entry entry = read(projectFile.getParentFile().getName(), projectFile);
+            if (entry != null) {
+                projects.add(new HashMap<>(entry.project));
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * @return All projects' metadata, but only with the values the projects list needs
+     * (see {@link #SUMMARY_KEYS}), which usually don't need any project file to be decrypted
+     */
+    public ArrayList<HashMap<String, Object>> getProjectSummaries() {
+        ArrayList<HashMap<String, Object>> summaries = new ArrayList<>();
+        Set<String> found = new HashSet<>();
+        for (File projectFile : listProjectFiles()) {
+            String scId = projectFile.getParentFile().getName();
+            long lastModified = projectFile.lastModified();
+            long length = projectFile.length();
+            found.add(scId);
+
+            Entry cached = projects.get(scId);
+            if (cached != null && cached.matches(lastModified, length)) {
+                summaries.add(cached.getSummary());
+                continue;
+            }
+            IndexedProject indexed = index.get(scId);
+            if (indexed != null && indexed.matches(lastModified, length)) {
+                try {
+                    summaries.add(vB.a(indexed.summary));
+                    continue;
+                } catch (Exception e) {
+                    LogUtil.w(TAG, "Invalid index entry of project " + scId, e);
+                }
+            }
+
+            Entry entry = read(scId, projectFile);
+            if (entry != null) {
+                summaries.add(entry.getSummary());
+            } else if (index.remove(scId) != null) {
+                indexChanged = true;
+            }
+        }
+        if (index.keySet().retainAll(found)) {
+            indexChanged = true;
+        }
+        if (indexChanged) {
+            saveIndex();
+        }
+        return summaries;
+    }
+
+    /**
+     * @return A project's metadata, or {@code null} if it doesn't exist or couldn't be read
+     */
+    public HashMap<String, Object> getProject(String sc_id) {
+        File projectDirectory = new File(wq.c(sc_id));
+        if (!projectDirectory.exists()) {
+            return null;
+        }
+        Entry entry = read(sc_id, new File(projectDirectory, "project"));
+        return entry == null ? null : new HashMap<>(entry.project);
+    }
+
+    /**
+     * Updates a project after its <code>project</code> file was written.
+     *
+     * @param json The metadata written, before encryption
+     */
+    public void onSaved(String sc_id, String json) {
+        File projectFile = new File(wq.c(sc_id), "project");
+        try {
+            HashMap<String, Object> project = vB.a(json);
+            if (yB.c(project, "sc_id").equals(sc_id)) {
+                Entry entry = new Entry(projectFile.lastModified(), projectFile.length(), project);
+                projects.put(sc_id, entry);
+                index.put(sc_id, entry.toIndexedProject());
+            } else {
+                projects.remove(sc_id);
+                index.remove(sc_id);
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "Couldn't update saved project " + sc_id, e);
+            projects.remove(sc_id);
+            index.remove(sc_id);
+        }
+        saveIndex();
+    }
+
+    /**
+     * Forgets about a deleted project.
+     */
+    public void onDeleted(String sc_id) {
+        projects.remove(sc_id);
+        if (index.remove(sc_id) != null) {
+            saveIndex();
+        }
+    }
+
+    private List<File> listProjectFiles() {
+        List<File> projectFiles = new ArrayList<>();
+        File[] directories = new File(wq.n()).listFiles();
+        if (directories != null) {
+            for (File directory : directories) {
+                File projectFile = new File(directory, "project");
+                if (projectFile.exists()) {
+                    projectFiles.add(projectFile);
+                }
+            }
+        }
+        return projectFiles;
+    }
+
+    /**
+     * @return The project's metadata, decrypted again if the file changed since, or {@code null} if it
+     * couldn't be read or belongs to another project
+     */
+    private Entry read(String sc_id, File projectFile) {
+        long lastModified = projectFile.lastModified();
+        long length = projectFile.length();
+        Entry cached = projects.get(sc_id);
+        if (cached != null && cached.matches(lastModified, length)) {
+            return cached;
+        }
+
+        try {
+            oB fileUtil = new oB();
+            HashMap<String, Object> project = vB.a(fileUtil.a(fileUtil.h(projectFile.getAbsolutePath())));
+            if (!yB.c(project, "sc_id").equals(sc_id)) {
+                projects.remove(sc_id);
+                return null;
+            }
+            Entry entry = new Entry(lastModified, length, project);
+            projects.put(sc_id, entry);
+            index.put(sc_id, entry.toIndexedProject());
+            indexChanged = true;
+            return entry;
+        } catch (Throwable e) {
+            LogUtil.e(TAG, "Couldn't read project " + sc_id, e);
+            projects.remove(sc_id);
+            return null;
+        }
+    }
+
+    private synchronized void saveIndex() {
+        indexChanged = false;
+        SavedIndex saved = new SavedIndex();
+        saved.version = INDEX_VERSION;
+        saved.projects = new HashMap<>(index);
+        FileUtil.writeFile(indexFile.getAbsolutePath(), new Gson().toJson(saved));
+    }
+
+    private static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final HashMap<String, Object> project;
+
+        private Entry(long lastModified, long length, HashMap<String, Object> project) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.project = project;
+        }
+
+        private boolean matches(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+
+        private HashMap<String, Object> getSummary() {
+            HashMap<String, Object> summary = new HashMap<>();
+            for (String key : SUMMARY_KEYS) {
+                if (project.containsKey(key)) {
+                    summary.put(key, project.get(key));
+                }
+            }
+            return summary;
+        }
+
+        private IndexedProject toIndexedProject() {
+            IndexedProject indexed = new IndexedProject();
+            indexed.lastModified = lastModified;
+            indexed.length = length;
+            // Saved the way project files are, so that values come back with the same types
+            indexed.summary = vB.a(getSummary());
+            return indexed;
+        }
+    }
+
+    private static class IndexedProject {
+        private long lastModified;
+        private long length;
+        private String summary;
+
+        private boolean matches(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length && summary != null;
+        }
+    }
+
+    private static class SavedIndex {
+        private int version;
+        private HashMap<String, IndexedProject> projects;
+    }
+}
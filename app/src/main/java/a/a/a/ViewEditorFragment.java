@@ -355,6 +355,7 @@ public class ViewEditorFragment extends qA {
                     jC.a(sc_id).c.put(projectFileBean.getXmlName(), historyViewBean.getAddedData());
                     i();
                 }
+                jC.invalidateUsages(projectFileBean);
             }
             invalidateOptionsMenu();
         }
@@ -424,6 +425,7 @@ public class ViewEditorFragment extends qA {
                     jC.a(sc_id).c.put(projectFileBean.getXmlName(), historyViewBean.getRemovedData());
                     i();
                 }
+                jC.invalidateUsages(projectFileBean);
             }
             invalidateOptionsMenu();
         }
@@ -23,6 +23,8 @@ import com.besome.sketch.beans.ProjectFileBean;
 import com.besome.sketch.editor.LogicEditorActivity;
 import com.besome.sketch.editor.component.AddComponentBottomSheet;
 import com.besome.sketch.editor.component.ComponentEventButton;
+import com.besome.sketch.editor.logic.ProjectUsageIndex;
+import com.besome.sketch.editor.logic.ProjectUsagesDialog;
 import com.besome.sketch.lib.base.CollapsibleViewHolder;
 import com.besome.sketch.lib.ui.CollapsibleButton;
 
@@ -150,6 +152,15 @@ public class br extends qA implements View.OnClickListener {
                 binding = itemBinding;
             }
 
+            private void deleteComponent(ComponentBean bean, int position) {
+                jC.a(sc_id).b(projectFile.getJavaName(), bean);
+                // Removing a Component removes or clears the blocks using it
+                jC.invalidateUsages(projectFile);
+                bean.isConfirmation = false;
+                notifyItemRemoved(position);
+                notifyItemRangeChanged(position, getItemCount());
+            }
+
             void bind(ComponentBean componentBean) {
                 binding.componentOption
                         .getDeleteButton()
@@ -170,10 +181,15 @@ public class br extends qA implements View.OnClickListener {
                             setAnimateNextTransformation(true);
                             notifyItemChanged(lastSelectedItem);
                         } else if (id == R.id.confirm_yes) {
-                            jC.a(sc_id).b(projectFile.getJavaName(), bean);
-                            bean.isConfirmation = false;
-                            notifyItemRemoved(lastSelectedItem);
-                            notifyItemRangeChanged(lastSelectedItem, getItemCount());
+                            if (jC.getUsageIndex(sc_id).isUsedInBlocks(ProjectUsageIndex.KIND_COMPONENT, bean.componentId, projectFile.getJavaName(), null)) {
+                                ProjectUsagesDialog.create(requireContext(), sc_id, ProjectUsageIndex.KIND_COMPONENT, bean.componentId)
+                                        .setTitle(xB.b().a(requireContext(), R.string.component_message_delete_used_component))
+                                        .setPositiveButton(xB.b().a(requireContext(), R.string.common_word_delete), (dialog, which) -> deleteComponent(bean, lastSelectedItem))
+                                        .setNegativeButton(xB.b().a(requireContext(), R.string.common_word_cancel), null)
+                                        .show();
+                            } else {
+                                deleteComponent(bean, lastSelectedItem);
+                            }
                         }
                     }
                 });
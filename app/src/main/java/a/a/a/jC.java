@@ -1,22 +1,31 @@
 package a.a.a;
 
+import com.besome.sketch.beans.BlockBean;
+import com.besome.sketch.beans.ProjectFileBean;
+import com.besome.sketch.editor.logic.ProjectUsageIndex;
+
+import java.util.ArrayList;
+
 public class jC {
 
     public static eC a;
     public static hC b;
     public static kC c;
     public static iC d;
+    private static ProjectUsageIndex usageIndex;
 
     public static void a() {
         a = null;
         b = null;
         c = null;
         d = null;
+        usageIndex = null;
     }
 
     public static void b() {
         a.i();
         a = null;
+        usageIndex = null;
     }
 
     public static void c() {
@@ -125,4 +134,57 @@ public class jC {
         }
         return a;
     }
+
+    /**
+     * @return The usage index of the project's blocks and views, built the first time it's needed after loading
+     * the project, with files added to or removed from the project since then taken into account
+     */
+    public static synchronized ProjectUsageIndex getUsageIndex(String str) {
+        eC projectDataManager = a(str);
+        hC fileManager = b(str);
+        ArrayList<String> javaFileNames = new ArrayList<>();
+        ArrayList<String> xmlFileNames = new ArrayList<>();
+        for (ProjectFileBean activity : fileManager.b()) {
+            javaFileNames.add(activity.getJavaName());
+            xmlFileNames.add(activity.getXmlName());
+        }
+        for (ProjectFileBean customView : fileManager.c()) {
+            xmlFileNames.add(customView.getXmlName());
+        }
+        if (usageIndex == null || usageIndex.getProjectDataManager() != projectDataManager) {
+            usageIndex = new ProjectUsageIndex(projectDataManager, javaFileNames, xmlFileNames);
+        } else {
+            usageIndex.setFiles(javaFileNames, xmlFileNames);
+        }
+        return usageIndex;
+    }
+
+    /**
+     * Replaces the usages of an event's blocks after they got saved, if the usage index has been built.
+     */
+    public static synchronized void updateUsages(String javaFileName, String eventName, ArrayList<BlockBean> blocks) {
+        if (usageIndex != null) {
+            usageIndex.updateEvent(javaFileName, eventName, blocks);
+        }
+    }
+
+    /**
+     * Marks a file's views, and an Activity's blocks too, to be indexed again with the next usage lookup.
+     * Does nothing if the usage index hasn't been built yet.
+     */
+    public static synchronized void invalidateUsages(ProjectFileBean projectFile) {
+        if (usageIndex != null && projectFile != null) {
+            usageIndex.invalidateLayout(projectFile.getXmlName());
+            usageIndex.invalidateBlocks(projectFile.getJavaName());
+        }
+    }
+
+    /**
+     * Marks all files to be indexed again with the next usage lookup, for edits that can touch any file.
+     */
+    public static synchronized void invalidateUsages() {
+        if (usageIndex != null) {
+            usageIndex.invalidateAll();
+        }
+    }
 }
@@ -239,14 +239,14 @@ public class jq {
     /**
      * @return True if the permission was registered on the project.
      */
-    public boolean hasPermission(int permission) {
+    public synchronized boolean hasPermission(int permission) {
         return (q & permission) == permission;
     }
 
     /**
      * Registers a permission for the entire project.
      */
-    public void addPermission(int permission) {
+    public synchronized void addPermission(int permission) {
         q = permission | q;
     }
 
@@ -263,7 +263,7 @@ public class jq {
     /**
      * Registers a permission for an Activity.
      */
-    public void addPermission(String activityName, int permission) {
+    public synchronized void addPermission(String activityName, int permission) {
         if (!w.containsKey(activityName)) {
             w.put(activityName, new a());
         }
@@ -274,7 +274,7 @@ public class jq {
     /**
      * @return The permissions object for the Activity
      */
-    public a a(String activityName) {
+    public synchronized a a(String activityName) {
         if (!w.containsKey(activityName)) {
             w.put(activityName, new a());
         }
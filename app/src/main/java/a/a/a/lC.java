@@ -12,33 +12,13 @@ public class lC {
     public static DB a;
 
     public static ArrayList<HashMap<String, Object>> a() {
-        String str = "project";
-        ArrayList<HashMap<String, Object>> arrayList = new ArrayList<>();
-        oB oBVar = new oB();
-        File[] listFiles = new File(wq.n()).listFiles();
-        if (listFiles == null) {
-            return arrayList;
-        }
-        for (File file : listFiles) {
-            try {
-                if (new File(file, str).exists()) {
-                    String path = file.getAbsolutePath() + File.separator + str;
-                    HashMap<String, Object> a = vB.a(oBVar.a(oBVar.h(path)));
-                    if (yB.c(a, "sc_id").equals(file.getName())) {
-                        arrayList.add(a);
-                    }
-                }
-            } catch (Throwable e) {
-                Log.e("ERROR", e.getMessage(), e);
-            }
-        }
-        return arrayList;
+        return ProjectMetadataStore.getInstance().getProjects();
     }
 
     public static HashMap<String, Object> a(String str) {
-        for (HashMap<String, Object> stringObjectHashMap : a()) {
+        for (HashMap<String, Object> stringObjectHashMap : ProjectMetadataStore.getInstance().getProjectSummaries()) {
             if (yB.c(stringObjectHashMap, "my_sc_pkg_name").equals(str) && yB.b(stringObjectHashMap, "proj_type") == 1) {
-                return stringObjectHashMap;
+                return b(yB.c(stringObjectHashMap, "sc_id"));
             }
         }
         return null;
@@ -88,6 +68,7 @@ public class lC {
             stringBuilder.append("D04_");
             stringBuilder.append(str);
             new DB(context, stringBuilder.toString()).a();
+            ProjectMetadataStore.getInstance().onDeleted(str);
         }
     }
 
@@ -102,12 +83,12 @@ public class lC {
         if (!file.exists()) {
             file.mkdirs();
         }
-        str = wq.c(str);
-        str = str + File.separator + "project";
+        String path = wq.c(str) + File.separator + "project";
         String a = vB.a(hashMap);
         oB oBVar = new oB();
         try {
-            oBVar.a(str, oBVar.d(a));
+            oBVar.a(path, oBVar.d(a));
+            ProjectMetadataStore.getInstance().onSaved(str, a);
         } catch (Throwable e) {
             Log.e("ERROR", e.getMessage(), e);
         }
@@ -115,36 +96,14 @@ public class lC {
 
     public static String b() {
         int parseInt = Integer.parseInt("600") + 1;
-        for (HashMap<String, Object> stringObjectHashMap : a()) {
+        for (HashMap<String, Object> stringObjectHashMap : ProjectMetadataStore.getInstance().getProjectSummaries()) {
             parseInt = Math.max(parseInt, Integer.parseInt(yB.c(stringObjectHashMap, "sc_id")) + 1);
         }
         return String.valueOf(parseInt);
     }
 
     public static HashMap<String, Object> b(String str) {
-        Throwable e;
-        oB oBVar = new oB();
-        HashMap<String, Object> hashMap = null;
-        try {
-            String c = wq.c(str);
-            if (!new File(c).exists()) {
-                return null;
-            }
-            String path = c + File.separator + "project";
-            HashMap<String, Object> a = vB.a(oBVar.a(oBVar.h(path)));
-            try {
-                return !yB.c(a, "sc_id").equals(str) ? null : a;
-            } catch (Exception e2) {
-                e = e2;
-                hashMap = a;
-                Log.e("ERROR", e.getMessage(), e);
-                return hashMap;
-            }
-        } catch (Exception e3) {
-            e = e3;
-            Log.e("ERROR", e.getMessage(), e);
-            return hashMap;
-        }
+        return ProjectMetadataStore.getInstance().getProject(str);
     }
 
     public static void b(String str, HashMap<String, Object> hashMap) {
@@ -153,8 +112,8 @@ public class lC {
             String path = file + File.separator + "project";
             oB fileUtil = new oB();
             try {
-                HashMap<String, Object> a = vB.a(fileUtil.a(fileUtil.h(path)));
-                if (yB.c(a, "sc_id").equals(str)) {
+                HashMap<String, Object> a = ProjectMetadataStore.getInstance().getProject(str);
+                if (a != null) {
                     if (hashMap.containsKey("isIconAdaptive")) {
                         a.put("isIconAdaptive", hashMap.get("isIconAdaptive"));
                     }
@@ -172,7 +131,9 @@ public class lC {
                     a.put("color_primary_dark", hashMap.get("color_primary_dark"));
                     a.put("color_control_highlight", hashMap.get("color_control_highlight"));
                     a.put("color_control_normal", hashMap.get("color_control_normal"));
-                    fileUtil.a(path, fileUtil.d(vB.a(a)));
+                    String json = vB.a(a);
+                    fileUtil.a(path, fileUtil.d(json));
+                    ProjectMetadataStore.getInstance().onSaved(str, json);
                 }
             } catch (Throwable e) {
                 Log.e("DEBUG", e.getMessage(), e);
@@ -181,7 +142,7 @@ public class lC {
     }
 
     public static String c() {
-        ArrayList<HashMap<String, Object>> var0 = a();
+        ArrayList<HashMap<String, Object>> var0 = ProjectMetadataStore.getInstance().getProjectSummaries();
         ArrayList<Integer> projectIndices = new ArrayList<>();
 
         for (HashMap<String, Object> stringObjectHashMap : var0) {
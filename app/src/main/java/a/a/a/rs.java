@@ -205,6 +205,7 @@ public class rs extends qA implements View.OnClickListener, MoreblockImporterDia
             bB.b(requireContext(), xB.b().a(requireContext(), R.string.logic_editor_message_currently_used_block), 0).show();
         } else {
             jC.a(sc_id).n(currentActivity.getJavaName(), moreBlock.targetId);
+            jC.invalidateUsages(currentActivity);
             bB.a(requireContext(), xB.b().a(requireContext(), R.string.common_message_complete_delete), 0).show();
             events.get(getPaletteIndex()).remove(position);
             eventAdapter.notifyItemRemoved(position);
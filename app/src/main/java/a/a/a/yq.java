@@ -17,19 +17,35 @@ import com.besome.sketch.beans.ViewBean;
 import com.besome.sketch.editor.manage.library.material3.Material3LibraryManager;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import mod.hey.studios.build.BuildSettings;
+import mod.hey.studios.editor.manage.block.v2.BlockLoader;
 import mod.hey.studios.project.ProjectSettings;
 import mod.hey.studios.util.ProjectFile;
 import mod.hilal.saif.blocks.CommandBlock;
+import mod.hilal.saif.blocks.CommandPlan;
+import mod.jbk.util.LogUtil;
 import mod.pranav.viewbinding.ViewBindingBuilder;
 import pro.sketchware.SketchApplication;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.utility.FileUtil;
 import pro.sketchware.xml.XmlBuilder;
 import pro.sketchware.xml.XmlBuilderHelper;
@@ -183,6 +199,37 @@ public class yq {
     public final String importedSoundsPath;
     private final oB fileUtil;
     private final Context context;
+    /**
+     * Absolute paths of all files written by {@link #writeIfChanged(String, String)} during the last
+     * {@link #b(hC, eC, iC, BuiltInLibraryManager)}, whether their content changed or not.
+     */
+    private final Set<String> generatedFiles = new HashSet<>();
+    /**
+     * Absolute paths of files whose content changed (or which got created) during the last
+     * {@link #b(hC, eC, iC, BuiltInLibraryManager)}.
+     */
+    private final Set<String> changedFiles = new LinkedHashSet<>();
+    /**
+     * Absolute paths of generated files of the previous build that weren't generated again.
+     */
+    private final Set<String> removedFiles = new LinkedHashSet<>();
+    /**
+     * The previous build's <code>app</code> directory while generating incrementally, otherwise <code>null</code>.
+     *
+     * @see #beginIncrementalGeneration()
+     */
+    private File previousGeneratedFilesDirectory;
+    /**
+     * The project's Views, Components and blocks as of the last metadata initialization,
+     * shared by everything generating source code afterwards.
+     */
+    private ProjectDataSnapshot projectData;
+    /**
+     * XML commands the last {@link #a(hC, eC, BuiltInLibraryManager)} applied to the files it generated.
+     * The temporary commands file is gone by the time {@link #b(hC, eC, iC, BuiltInLibraryManager)}
+     * generates its other files.
+     */
+    private CommandPlan sourceCommands = CommandPlan.EMPTY;
 
     public final HashMap<String, Object> metadata;
 
@@ -298,12 +345,12 @@ public class yq {
      * Generates top-level build.gradle, build.gradle for module ':app' and settings.gradle files.
      */
     public void h() {
-        fileUtil.b(projectMyscPath + File.separator + "app" + File.separator + "build.gradle",
+        writeIfChanged(projectMyscPath + File.separator + "app" + File.separator + "build.gradle",
                 Lx.getBuildGradleString(VAR_DEFAULT_TARGET_SDK_VERSION, VAR_DEFAULT_MIN_SDK_VERSION, projectSettings.getValue(ProjectSettings.SETTING_TARGET_SDK_VERSION, String.valueOf(VAR_DEFAULT_TARGET_SDK_VERSION)), N, projectSettings.getValue(ProjectSettings.SETTING_ENABLE_VIEWBINDING, ProjectSettings.SETTING_GENERIC_VALUE_FALSE).equals(ProjectSettings.SETTING_GENERIC_VALUE_TRUE)));
-        fileUtil.b(projectMyscPath + File.separator + "settings.gradle", Lx.a());
-        fileUtil.b(projectMyscPath + File.separator + "build.gradle", Lx.c("8.7.0", "4.4.2"));
+        writeIfChanged(projectMyscPath + File.separator + "settings.gradle", Lx.a());
+        writeIfChanged(projectMyscPath + File.separator + "build.gradle", Lx.c("8.7.0", "4.4.2"));
 
-        fileUtil.b(projectMyscPath + File.separator + "gradle.properties", """
+        writeIfChanged(projectMyscPath + File.separator + "gradle.properties", """
                 android.enableR8.fullMode=false
                 android.enableJetifier=true
                 android.useAndroidX=true
@@ -350,7 +397,7 @@ public class yq {
 
     public void cf(String content) {
         try {
-            fileUtil.b(resDirectoryPath + File.separator + "mipmap-anydpi-v26" + File.separator + "ic_launcher.xml", content);
+            writeIfChanged(resDirectoryPath + File.separator + "mipmap-anydpi-v26" + File.separator + "ic_launcher.xml", content);
         } catch (Exception e2) {
             e2.printStackTrace();
         }
@@ -365,7 +412,7 @@ public class yq {
 
         String javaDir = FileUtil.getExternalStorageDir() + "/.sketchware/data/" + sc_id + "/files/java/";
         if (!new File(javaDir, "DebugActivity.java").exists()) {
-            fileUtil.b(javaFilesPath + File.separator
+            writeIfChanged(javaFilesPath + File.separator
                             + packageNameAsFolders + File.separator
                             + "DebugActivity.java",
                     PACKAGE_PLACEHOLDER_PATTERN.matcher(fileUtil.b(
@@ -405,7 +452,7 @@ public class yq {
                         .replace("import android.util.Log;", "import android.util.Log;\nimport com.google.android.material.color.DynamicColors;");
             }
 
-            fileUtil.b(javaFilesPath + File.separator
+            writeIfChanged(javaFilesPath + File.separator
                             + packageNameAsFolders + File.separator
                             + "SketchApplication.java",
                     sketchApplicationFileContent);
@@ -424,7 +471,7 @@ public class yq {
                             customApplicationClassName.substring(1) + ".getContext()");
                 }
 
-                fileUtil.b(javaFilesPath + File.separator
+                writeIfChanged(javaFilesPath + File.separator
                         + packageNameAsFolders + File.separator
                         + "SketchLogger.java", sketchLoggerFileContent);
             }
@@ -436,21 +483,148 @@ public class yq {
      * <pre>
      *     {@link yq#javaFilesPath} + File.separator + {@link yq#packageNameAsFolders}
      * </pre>, while AndroidManifest.xml gets saved to {@link yq#androidManifestPath}.
+     * <p>
+     * The file only gets written if its content differs from what's already there.
+     *
+     * @see #writeIfChanged(String, String)
      */
     public void a(String fileName, String fileContent) {
         if (fileName.endsWith("java")) {
-            fileUtil.b(javaFilesPath + File.separator + packageNameAsFolders + File.separator + fileName, fileContent);
+            writeIfChanged(javaFilesPath + File.separator + packageNameAsFolders + File.separator + fileName, fileContent);
         } else if (fileName.equals("AndroidManifest.xml")) {
-            fileUtil.b(androidManifestPath, fileContent);
+            writeIfChanged(androidManifestPath, fileContent);
         } else if (fileName.equals("colors.xml") || fileName.equals("styles.xml") || fileName.equals("strings.xml")) {
-            fileUtil.b(resDirectoryPath + File.separator + "values" + File.separator + fileName, fileContent);
+            writeIfChanged(resDirectoryPath + File.separator + "values" + File.separator + fileName, fileContent);
         } else if (fileName.equals("provider_paths.xml")) {
-            fileUtil.b(resDirectoryPath + File.separator + "xml" + File.separator + fileName, fileContent);
+            writeIfChanged(resDirectoryPath + File.separator + "xml" + File.separator + fileName, fileContent);
         } else {
-            fileUtil.b(layoutFilesPath + File.separator + fileName, fileContent);
+            writeIfChanged(layoutFilesPath + File.separator + fileName, fileContent);
+        }
+    }
+
+    /**
+     * Writes a generated file, unless it already has exactly that content. Unchanged files keep
+     * their timestamps, and don't cost a write to external storage.
+     * <p>
+     * While generating incrementally, unchanged files of the previous build get moved back into place.
+     */
+    private void writeIfChanged(String path, String content) {
+        File target = new File(path);
+        generatedFiles.add(target.getAbsolutePath());
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (hasContent(target, bytes)) {
+            return;
+        }
+
+        if (previousGeneratedFilesDirectory != null) {
+            File previous = getPreviousGeneratedFile(target);
+            if (previous != null && hasContent(previous, bytes)) {
+                File parent = target.getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                if (previous.renameTo(target)) {
+                    return;
+                }
+            }
+        }
+
+        fileUtil.b(target.getAbsolutePath(), content);
+        changedFiles.add(target.getAbsolutePath());
+    }
+
+    private static boolean hasContent(File file, byte[] content) {
+        if (!file.isFile() || file.length() != content.length) {
+            return false;
+        }
+        try {
+            return Arrays.equals(Files.readAllBytes(file.toPath()), content);
+        } catch (IOException e) {
+            return false;
         }
     }
 
+    private File getGeneratedFilesDirectory() {
+        return new File(projectMyscPath, "app");
+    }
+
+    /**
+     * @return The file at the same location as {@code file} inside the previous build's generated
+     * files, or <code>null</code> if {@code file} isn't a generated file.
+     */
+    private File getPreviousGeneratedFile(File file) {
+        String root = getGeneratedFilesDirectory().getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        return new File(previousGeneratedFilesDirectory, path.substring(root.length()));
+    }
+
+    /**
+     * Makes the following file generation start out with an empty <code>app</code> directory, like
+     * a full build does, but keeps the previous build's generated files around until
+     * {@link #finishIncrementalGeneration()} so that unchanged ones can be reused with their timestamps.
+     */
+    public void beginIncrementalGeneration() {
+        File generatedFilesDirectory = getGeneratedFilesDirectory();
+        File previous = new File(projectMyscPath, "app.prev");
+        FileUtil.deleteFile(previous.getAbsolutePath());
+        if (generatedFilesDirectory.exists() && !generatedFilesDirectory.renameTo(previous)) {
+            LogUtil.w("yq", "Couldn't keep previously generated files, regenerating all of them");
+            FileUtil.deleteFile(generatedFilesDirectory.getAbsolutePath());
+        }
+        previousGeneratedFilesDirectory = previous.exists() ? previous : null;
+        generatedFiles.clear();
+        changedFiles.clear();
+        removedFiles.clear();
+    }
+
+    /**
+     * Records previously generated files that weren't generated again as removed, and deletes
+     * what's left of the previous build's <code>app</code> directory.
+     *
+     * @see #getRemovedFiles()
+     */
+    public void finishIncrementalGeneration() {
+        if (previousGeneratedFilesDirectory == null) return;
+
+        String root = previousGeneratedFilesDirectory.getAbsolutePath() + File.separator;
+        for (File previous : FileUtil.listFilesRecursively(previousGeneratedFilesDirectory, "")) {
+            File current = new File(getGeneratedFilesDirectory(), previous.getAbsolutePath().substring(root.length()));
+            if (!current.exists()) {
+                removedFiles.add(current.getAbsolutePath());
+            }
+        }
+        FileUtil.deleteFile(previousGeneratedFilesDirectory.getAbsolutePath());
+        previousGeneratedFilesDirectory = null;
+        LogUtil.d("yq", changedFiles.size() + " generated file(s) changed, " + removedFiles.size() + " removed");
+    }
+
+    /**
+     * @return Absolute paths of all files generated by the last {@link #b(hC, eC, iC, BuiltInLibraryManager)},
+     * including unchanged ones. Other files in the same directories, such as copied images, aren't included.
+     */
+    public Set<String> getGeneratedFiles() {
+        return Collections.unmodifiableSet(generatedFiles);
+    }
+
+    /**
+     * @return Absolute paths of generated files that were written because their content changed or
+     * because they're new, since the last {@link #b(hC, eC, iC, BuiltInLibraryManager)}.
+     */
+    public Set<String> getChangedFiles() {
+        return Collections.unmodifiableSet(changedFiles);
+    }
+
+    /**
+     * @return Absolute paths of files the previous build generated, but the last one didn't.
+     * Only populated when generating incrementally.
+     */
+    public Set<String> getRemovedFiles() {
+        return Collections.unmodifiableSet(removedFiles);
+    }
+
     /**
      * Initialize project metadata
      */
@@ -492,8 +666,9 @@ public class yq {
             N.addPermission(jq.PERMISSION_ACCESS_NETWORK_STATE);
             N.setupGoogleMap(googleMaps);
         }
+        projectData = new ProjectDataSnapshot(projectDataManager, projectFileManager.b(), projectFileManager.c());
         for (ProjectFileBean customView : projectFileManager.c()) {
-            for (ViewBean viewBean : eC.a(projectDataManager.d(customView.getXmlName()))) {
+            for (ViewBean viewBean : projectData.getViews(customView.getXmlName())) {
                 var classNameParts = viewBean.convert.split("\\.");
                 var className = classNameParts[classNameParts.length - 1];
                 switch (className) {
@@ -511,7 +686,7 @@ public class yq {
             if (activity.hasActivityOption(ProjectFileBean.OPTION_ACTIVITY_DRAWER)) {
                 N.a(activity.getActivityName()).hasDrawer = true;
             }
-            for (ComponentBean component : projectDataManager.e(activity.getJavaName())) {
+            for (ComponentBean component : projectData.getComponents(activity.getJavaName())) {
                 switch (component.type) {
                     case ComponentBean.COMPONENT_TYPE_CAMERA, 35 -> {
                         N.g = true;
@@ -571,7 +746,7 @@ public class yq {
                 }
             }
 
-            for (ViewBean view : eC.a(projectDataManager.d(activity.getXmlName()))) {
+            for (ViewBean view : projectData.getViews(activity.getXmlName())) {
                 var classNameParts = view.convert.split("\\.");
                 var className = classNameParts[classNameParts.length - 1];
                 switch (className) {
@@ -585,7 +760,7 @@ public class yq {
                 }
             }
 
-            for (Map.Entry<String, ArrayList<BlockBean>> entry : projectDataManager.b(activity.getJavaName()).entrySet()) {
+            for (Map.Entry<String, ArrayList<BlockBean>> entry : projectData.getBlocks(activity.getJavaName()).entrySet()) {
                 for (BlockBean block : entry.getValue()) {
                     switch (block.opCode) {
                         case "FirebaseDynamicLink setDataHost":
@@ -680,6 +855,10 @@ public class yq {
      * Generates the project's files, such as layouts, Java files, but also build.gradle and secrets.xml.
      */
     public void b(hC projectFileManager, eC projectDataManger, iC projectLibraryManager, BuiltInLibraryManager builtInLibraryManager) {
+        if (previousGeneratedFilesDirectory == null) {
+            generatedFiles.clear();
+            changedFiles.clear();
+        }
         ArrayList<SrcCodeBean> srcCodeBeans = a(projectFileManager, projectDataManger, builtInLibraryManager);
         if (N.u) {
             XmlBuilder pathsTag = new XmlBuilder("paths");
@@ -689,7 +868,7 @@ public class yq {
             externalPathTag.addAttribute("", "path", ".");
             pathsTag.addChildNode(externalPathTag);
             srcCodeBeans.add(new SrcCodeBean("provider_paths.xml",
-                    CommandBlock.applyCommands("xml/provider_paths.xml", pathsTag.toCode())));
+                    sourceCommands.apply("xml/provider_paths.xml", pathsTag.toCode())));
         }
 
         for (SrcCodeBean bean : srcCodeBeans) {
@@ -725,8 +904,8 @@ public class yq {
                 mx.addString("google_maps_key", projectLibraryManager.e().data, false);
             }
             String filePath = "values/secrets.xml";
-            fileUtil.b(resDirectoryPath + File.separator + filePath,
-                    CommandBlock.applyCommands(filePath, mx.toCode()));
+            writeIfChanged(resDirectoryPath + File.separator + filePath,
+                    sourceCommands.apply(filePath, mx.toCode()));
         }
         h();
     }
@@ -737,6 +916,7 @@ public class yq {
     public ArrayList<SrcCodeBean> a(hC projectFileManager, eC projectDataManager, BuiltInLibraryManager builtInLibraryManager) {
         a(SketchApplication.getContext());
         CommandBlock.x();
+        BlockLoader.refreshIfChanged();
 
         String javaDir = FileUtil.getExternalStorageDir() + "/.sketchware/data/" + sc_id + "/files/java/";
         String layoutDir = FileUtil.getExternalStorageDir() + "/.sketchware/data/" + sc_id + "/files/resource/layout/";
@@ -753,66 +933,86 @@ public class yq {
             layoutFiles = Arrays.asList(files);
         }
 
-        // Generate Activities unless a custom version of it exists already
-        // at /Internal storage/.sketchware/data/<sc_id>/files/java/
-        ArrayList<SrcCodeBean> srcCodeBeans = new ArrayList<>();
-        for (ProjectFileBean activity : projectFileManager.b()) {
-            if (!javaFiles.contains(new File(javaDir + activity.getJavaName()))) {
-                srcCodeBeans.add(new SrcCodeBean(activity.getJavaName(),
-                        new Jx(N, activity, projectDataManager).generateCode(isAndroidStudioExport, sc_id)));
-            }
+        ExecutorService executor = null;
+        if (new BuildSettings(sc_id).isParallelSourceGenerationEnabled()) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            LogUtil.d("yq", "Generating source code on up to " + threads + " threads");
+            executor = Executors.newFixedThreadPool(threads);
         }
 
-        var path = wq.b(sc_id) + "/command";
-        var newXMLCommand = Boolean.parseBoolean(projectSettings.getValue(ProjectSettings.SETTING_NEW_XML_COMMAND, ProjectSettings.SETTING_GENERIC_VALUE_FALSE));
-        if (newXMLCommand && FileUtil.isExistFile(path)) {
-            FileUtil.copyFile(path, FileUtil.getExternalStorageDir().concat("/.sketchware/temp/commands"));
-        }
+        // Views, Components and blocks don't change while generating, so only read them once
+        ProjectDataSnapshot projectData = this.projectData != null ? this.projectData
+                : new ProjectDataSnapshot(projectDataManager, projectFileManager.b(), projectFileManager.c());
+        ArrayList<SrcCodeBean> srcCodeBeans = new ArrayList<>();
+        CommandPlan commands;
+        try {
+            // Generate Activities unless a custom version of it exists already
+            // at /Internal storage/.sketchware/data/<sc_id>/files/java/
+            List<Callable<List<SrcCodeBean>>> activityTasks = new ArrayList<>();
+            for (ProjectFileBean activity : projectFileManager.b()) {
+                if (!javaFiles.contains(new File(javaDir + activity.getJavaName()))) {
+                    activityTasks.add(() -> List.of(new SrcCodeBean(activity.getJavaName(),
+                            new Jx(N, activity, projectDataManager, projectData).generateCode(isAndroidStudioExport, sc_id))));
+                }
+            }
+            if (executor == null) {
+                for (List<SrcCodeBean> beans : runInOrder(null, activityTasks)) {
+                    srcCodeBeans.addAll(beans);
+                }
+            } else {
+                // XML command blocks of Activities must end up in the commands file in Activity order,
+                // so collect them per task and write them in the order the tasks were submitted
+                List<Callable<Pair<List<SrcCodeBean>, ArrayList<HashMap<String, Object>>>>> deferringTasks = new ArrayList<>();
+                for (Callable<List<SrcCodeBean>> task : activityTasks) {
+                    deferringTasks.add(() -> {
+                        List<SrcCodeBean> beans;
+                        ArrayList<HashMap<String, Object>> xmlCommands;
+                        CommandBlock.deferXmlCommands();
+                        try {
+                            beans = task.call();
+                        } finally {
+                            xmlCommands = CommandBlock.takeDeferredXmlCommands();
+                        }
+                        return new Pair<>(beans, xmlCommands);
+                    });
+                }
+                for (Pair<List<SrcCodeBean>, ArrayList<HashMap<String, Object>>> result : runInOrder(executor, deferringTasks)) {
+                    srcCodeBeans.addAll(result.first);
+                    CommandBlock.writeXmlCommands(result.second);
+                }
+            }
 
-        var viewBindingBuilder = new ViewBindingBuilder(List.of(), new File("."), packageName);
+            var path = wq.b(sc_id) + "/command";
+            var newXMLCommand = Boolean.parseBoolean(projectSettings.getValue(ProjectSettings.SETTING_NEW_XML_COMMAND, ProjectSettings.SETTING_GENERIC_VALUE_FALSE));
+            if (newXMLCommand && FileUtil.isExistFile(path)) {
+                FileUtil.copyFile(path, FileUtil.getExternalStorageDir().concat("/.sketchware/temp/commands"));
+            }
 
-        // Generate layouts unless a custom version of it exists already
-        // at /Internal storage/.sketchware/data/<sc_id>/files/resource/layout/
-        ArrayList<ProjectFileBean> regularLayouts = projectFileManager.b();
-        for (ProjectFileBean layout : regularLayouts) {
-            String xmlName = layout.getXmlName();
-            Ox ox = new Ox(N, layout);
-            ox.a(eC.a(projectDataManager.d(xmlName)), projectDataManager.h(xmlName));
-            var ogFile = new File(layoutDir + xmlName);
-            if (!layoutFiles.contains(ogFile)) {
-                srcCodeBeans.add(new SrcCodeBean(xmlName, CommandBlock.applyCommands(xmlName, ox.b())));
-
-                if (isViewBindingEnable()) {
-                    var privFile = new File(context.getCacheDir(), xmlName);
-                    FileUtil.writeFile(privFile.getAbsolutePath(), CommandBlock.applyCommands(xmlName, ox.b()));
-                    var code = viewBindingBuilder.generateBindingForLayout(privFile);
-                    srcCodeBeans.add(new SrcCodeBean(
-                            ViewBindingBuilder.generateFileNameForLayout(xmlName.replace(".xml", "")) + ".java",
-                            CommandBlock.applyCommands(xmlName, code)
-                    ));
+            // The commands file doesn't change anymore while layouts get generated
+            commands = CommandBlock.loadCommandPlan();
+            sourceCommands = commands;
+            var viewBindingBuilder = new ViewBindingBuilder(List.of(), new File("."), packageName);
+
+            // Generate layouts unless a custom version of it exists already
+            // at /Internal storage/.sketchware/data/<sc_id>/files/resource/layout/
+            List<Callable<List<SrcCodeBean>>> layoutTasks = new ArrayList<>();
+            for (ProjectFileBean layout : projectFileManager.b()) {
+                if (!layoutFiles.contains(new File(layoutDir + layout.getXmlName()))) {
+                    layoutTasks.add(() -> generateLayout(layout, false, projectDataManager, viewBindingBuilder, commands));
                 }
             }
-        }
-
-        ArrayList<ProjectFileBean> customViewFiles = projectFileManager.c();
-        for (ProjectFileBean customViewFile : customViewFiles) {
-            String xmlName = customViewFile.getXmlName();
-            Ox ox = new Ox(N, customViewFile);
-            ox.a(eC.a(projectDataManager.d(xmlName)));
-            var ogFile = new File(layoutDir + xmlName);
-            if (!layoutFiles.contains(ogFile)) {
-                srcCodeBeans.add(new SrcCodeBean(xmlName, CommandBlock.applyCommands(xmlName, ox.b())));
-
-                if (isViewBindingEnable()) {
-                    var privFile = new File(context.getCacheDir(), xmlName);
-                    FileUtil.writeFile(privFile.getAbsolutePath(), CommandBlock.applyCommands(xmlName, ox.b()));
-                    var code = viewBindingBuilder.generateBindingForLayout(privFile);
-                    srcCodeBeans.add(new SrcCodeBean(
-                            ViewBindingBuilder.generateFileNameForLayout(xmlName.replace(".xml", "")) + ".java",
-                            CommandBlock.applyCommands(xmlName, code)
-                    ));
+            for (ProjectFileBean customViewFile : projectFileManager.c()) {
+                if (!layoutFiles.contains(new File(layoutDir + customViewFile.getXmlName()))) {
+                    layoutTasks.add(() -> generateLayout(customViewFile, true, projectDataManager, viewBindingBuilder, commands));
                 }
             }
+            for (List<SrcCodeBean> beans : runInOrder(executor, layoutTasks)) {
+                srcCodeBeans.addAll(beans);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
 
         Ix ix = new Ix(N, projectFileManager.b(), builtInLibraryManager);
@@ -856,14 +1056,78 @@ public class yq {
             }
         }
 
-        srcCodeBeans.add(new SrcCodeBean("AndroidManifest.xml", CommandBlock.applyCommands("AndroidManifest.xml", ix.a())));
-        srcCodeBeans.add(new SrcCodeBean("styles.xml", getXMLStyle()));
-        srcCodeBeans.add(new SrcCodeBean("colors.xml", getXMLColor()));
-        srcCodeBeans.add(new SrcCodeBean("strings.xml", getXMLString()));
+        srcCodeBeans.add(new SrcCodeBean("AndroidManifest.xml", commands.apply("AndroidManifest.xml", ix.a())));
+        srcCodeBeans.add(new SrcCodeBean("styles.xml", getXMLStyle(commands)));
+        srcCodeBeans.add(new SrcCodeBean("colors.xml", getXMLColor(commands)));
+        srcCodeBeans.add(new SrcCodeBean("strings.xml", getXMLString(commands)));
         CommandBlock.x();
         return srcCodeBeans;
     }
 
+    /**
+     * Runs tasks either on the calling thread ({@code executor} being {@code null}) or on an executor,
+     * and returns their results in the order of {@code tasks} either way.
+     */
+    private static <T> List<T> runInOrder(ExecutorService executor, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (executor == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                List<Future<T>> futures = new ArrayList<>(tasks.size());
+                for (Callable<T> task : tasks) {
+                    futures.add(executor.submit(task));
+                }
+                for (Future<T> future : futures) {
+                    results.add(future.get());
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof Error error) throw error;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating source code", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return results;
+    }
+
+    /**
+     * Generates a layout, and its View Binding class if enabled.
+     */
+    private List<SrcCodeBean> generateLayout(ProjectFileBean layout, boolean isCustomView, eC projectDataManager,
+                                             ViewBindingBuilder viewBindingBuilder, CommandPlan commands) {
+        String xmlName = layout.getXmlName();
+        Ox ox = new Ox(N, layout);
+        if (isCustomView) {
+            ox.a(eC.a(projectDataManager.d(xmlName)));
+        } else {
+            ox.a(eC.a(projectDataManager.d(xmlName)), projectDataManager.h(xmlName));
+        }
+        String code = commands.apply(xmlName, ox.b());
+
+        List<SrcCodeBean> beans = new ArrayList<>(2);
+        beans.add(new SrcCodeBean(xmlName, code));
+        if (isViewBindingEnable()) {
+            var privFile = new File(context.getCacheDir(), xmlName);
+            FileUtil.writeFile(privFile.getAbsolutePath(), code);
+            var bindingCode = viewBindingBuilder.generateBindingForLayout(privFile);
+            beans.add(new SrcCodeBean(
+                    ViewBindingBuilder.generateFileNameForLayout(xmlName.replace(".xml", "")) + ".java",
+                    commands.apply(xmlName, bindingCode)
+            ));
+        }
+        return beans;
+    }
+
     private boolean isViewBindingEnable() {
         return generateDataBindingClasses && projectSettings.getValue(ProjectSettings.SETTING_ENABLE_VIEWBINDING, ProjectSettings.SETTING_GENERIC_VALUE_FALSE).equals(ProjectSettings.SETTING_GENERIC_VALUE_TRUE);
     }
@@ -881,6 +1145,7 @@ public class yq {
         boolean isManifestFile = filename.equals("AndroidManifest.xml");
         ArrayList<ProjectFileBean> files = new ArrayList<>(projectFileManager.b());
         files.addAll(new ArrayList<>(projectFileManager.c()));
+        CommandPlan commands = CommandPlan.EMPTY;
         if (isXmlFile) {
             var path = wq.b(sc_id) + "/command";
             var newXMLCommand = Boolean.parseBoolean(projectSettings.getValue(ProjectSettings.SETTING_NEW_XML_COMMAND, ProjectSettings.SETTING_GENERIC_VALUE_FALSE));
@@ -894,17 +1159,18 @@ public class yq {
                     CommandBlock.CBForXml(new Jx(N, file, projectDataManager).generateCode(isAndroidStudioExport, sc_id));
                 }
             }
+            commands = CommandBlock.loadCommandPlan();
         }
 
         switch (filename) {
             case "strings.xml" -> {
-                return getXMLString();
+                return getXMLString(commands);
             }
             case "colors.xml" -> {
-                return getXMLColor();
+                return getXMLColor(commands);
             }
             case "styles.xml" -> {
-                return getXMLStyle();
+                return getXMLStyle(commands);
             }
         }
 
@@ -913,7 +1179,7 @@ public class yq {
             builder.buildBuiltInLibraryInformation();
             Ix ix = new Ix(N, projectFileManager.b(), builder.getBuiltInLibraryManager());
             ix.setYq(this);
-            return CommandBlock.applyCommands("AndroidManifest.xml", ix.a());
+            return commands.apply("AndroidManifest.xml", ix.a());
         }
 
         for (ProjectFileBean file : files) {
@@ -923,7 +1189,7 @@ public class yq {
                 } else if (isXmlFile) {
                     Ox xmlGenerator = new Ox(N, file);
                     xmlGenerator.a(eC.a(projectDataManager.d(filename)), projectDataManager.h(filename));
-                    return CommandBlock.applyCommands(filename, xmlGenerator.b());
+                    return commands.apply(filename, xmlGenerator.b());
                 }
             }
         }
@@ -931,20 +1197,41 @@ public class yq {
         return "";
     }
 
+    private ValuesResourceRepository.ValuesFile getValuesFile(String fileName) {
+        ValuesResourceRepository repository = ValuesResourceRepository.getInstance(sc_id);
+        return repository.getFile(repository.getFilePath("values", fileName));
+    }
+
+    /**
+     * @param commands Commands to apply to a generated file, or <code>null</code> to only load them
+     *                 if a file actually gets generated
+     */
+    private static String applyCommands(CommandPlan commands, String fileName, String content) {
+        return commands != null ? commands.apply(fileName, content) : CommandBlock.applyCommands(fileName, content);
+    }
+
     public String getXMLString() {
-        String filePath = wq.b(sc_id) + "/files/resource/values/strings.xml";
-        if (FileUtil.isExistFile(filePath)) {
-            return FileUtil.readFile(filePath);
+        return getXMLString(null);
+    }
+
+    private String getXMLString(CommandPlan commands) {
+        ValuesResourceRepository.ValuesFile valuesFile = getValuesFile("strings.xml");
+        if (valuesFile.exists()) {
+            return valuesFile.getContent();
         }
         XmlBuilderHelper stringsFileBuilder = new XmlBuilderHelper();
         stringsFileBuilder.addNonTranslatableString("app_name", applicationName);
-        return CommandBlock.applyCommands("strings.xml", stringsFileBuilder.toCode());
+        return applyCommands(commands, "strings.xml", stringsFileBuilder.toCode());
     }
 
     public String getXMLColor() {
-        String filePath = wq.b(sc_id) + "/files/resource/values/colors.xml";
-        if (FileUtil.isExistFile(filePath)) {
-            return FileUtil.readFile(filePath);
+        return getXMLColor(null);
+    }
+
+    private String getXMLColor(CommandPlan commands) {
+        ValuesResourceRepository.ValuesFile valuesFile = getValuesFile("colors.xml");
+        if (valuesFile.exists()) {
+            return valuesFile.getContent();
         }
         XmlBuilderHelper colorsFileBuilder = new XmlBuilderHelper();
         colorsFileBuilder.addColor("colorPrimary", String.format("#%06X", colorPrimary & 0xffffff));
@@ -952,13 +1239,17 @@ public class yq {
         colorsFileBuilder.addColor("colorAccent", String.format("#%06X", colorAccent & 0xffffff));
         colorsFileBuilder.addColor("colorControlHighlight", String.format("#%06X", colorControlHighlight & 0xffffff));
         colorsFileBuilder.addColor("colorControlNormal", String.format("#%06X", colorControlNormal & 0xffffff));
-        return CommandBlock.applyCommands("colors.xml", colorsFileBuilder.toCode());
+        return applyCommands(commands, "colors.xml", colorsFileBuilder.toCode());
     }
 
     public String getXMLStyle() {
-        String filePath = wq.b(sc_id) + "/files/resource/values/styles.xml";
-        if (FileUtil.isExistFile(filePath)) {
-            return FileUtil.readFile(filePath);
+        return getXMLStyle(null);
+    }
+
+    private String getXMLStyle(CommandPlan commands) {
+        ValuesResourceRepository.ValuesFile valuesFile = getValuesFile("styles.xml");
+        if (valuesFile.exists()) {
+            return valuesFile.getContent();
         }
         Material3LibraryManager material3LibraryManager = new Material3LibraryManager(sc_id);
         if (material3LibraryManager.isMaterial3Enabled()) {
@@ -975,7 +1266,7 @@ public class yq {
             stylesFileBuilder.addStyle("AppTheme.DebugActivity", "AppTheme");
             stylesFileBuilder.addItemToStyle("AppTheme.DebugActivity", "windowActionBar", "true");
             stylesFileBuilder.addItemToStyle("AppTheme.DebugActivity", "windowNoTitle", "false");
-            return CommandBlock.applyCommands("styles.xml", stylesFileBuilder.toCode());
+            return applyCommands(commands, "styles.xml", stylesFileBuilder.toCode());
         } else if (N.g) {
             boolean useNewMaterialComponentsTheme = projectSettings.getValue(ProjectSettings.SETTING_ENABLE_BRIDGELESS_THEMES,
                     BuildSettings.SETTING_GENERIC_VALUE_FALSE).equals(BuildSettings.SETTING_GENERIC_VALUE_TRUE);
@@ -1001,7 +1292,7 @@ public class yq {
             stylesFileBuilder.addItemToStyle("AppTheme.DebugActivity", "actionBarTheme", "@style/Widget.MaterialComponents.ActionBar.Primary");
             stylesFileBuilder.addItemToStyle("AppTheme.DebugActivity", "windowActionBar", "true");
             stylesFileBuilder.addItemToStyle("AppTheme.DebugActivity", "windowNoTitle", "false");
-            return CommandBlock.applyCommands("styles.xml", stylesFileBuilder.toCode());
+            return applyCommands(commands, "styles.xml", stylesFileBuilder.toCode());
         } else {
             XmlBuilderHelper stylesFileBuilder = new XmlBuilderHelper();
             stylesFileBuilder.addStyle("AppTheme", "@android:style/Theme.Material.Light.DarkActionBar");
@@ -1025,7 +1316,7 @@ public class yq {
             stylesFileBuilder.addStyle("NoStatusBar", "AppTheme");
             stylesFileBuilder.addItemToStyle("NoStatusBar", "android:windowFullscreen", "true");
             stylesFileBuilder.addStyle("AppTheme.DebugActivity", "AppTheme");
-            return CommandBlock.applyCommands("styles.xml", stylesFileBuilder.toCode());
+            return applyCommands(commands, "styles.xml", stylesFileBuilder.toCode());
         }
     }
 }
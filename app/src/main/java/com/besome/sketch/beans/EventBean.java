@@ -71,6 +71,7 @@ public class EventBean extends CollapsibleBean implements Parcelable {
         eC a2 = jC.a(sc_id);
         String javaName = projectFileBean.getJavaName();
         a2.k(javaName, event.targetId + "_" + event.eventName);
+        jC.invalidateUsages(projectFileBean);
     }
 
     public static int getEventTypeBgRes(int eventType) {
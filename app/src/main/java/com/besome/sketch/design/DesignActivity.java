@@ -56,6 +56,7 @@ import com.besome.sketch.editor.manage.image.ManageImageActivity;
 import com.besome.sketch.editor.manage.library.ManageLibraryActivity;
 import com.besome.sketch.editor.manage.sound.ManageSoundActivity;
 import com.besome.sketch.editor.manage.view.ManageViewActivity;
+import com.besome.sketch.editor.view.DesignImageLoader;
 import com.besome.sketch.lib.base.BaseAppCompatActivity;
 import com.besome.sketch.lib.ui.CustomViewPager;
 import com.besome.sketch.tools.CompileLogActivity;
@@ -98,6 +99,7 @@ import mod.agus.jcoderz.editor.manage.permission.ManagePermissionActivity;
 import mod.agus.jcoderz.editor.manage.resource.ManageResourceActivity;
 import mod.hey.studios.activity.managers.assets.ManageAssetsActivity;
 import mod.hey.studios.activity.managers.java.ManageJavaActivity;
+import mod.hey.studios.build.BuildSettings;
 import mod.hey.studios.compiler.kotlin.KotlinCompilerBridge;
 import mod.hey.studios.project.custom_blocks.CustomBlocksDialog;
 import mod.hey.studios.project.proguard.ManageProguardActivity;
@@ -470,7 +472,7 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
                 return;
             }
 
-            BuildTask buildTask = new BuildTask(this);
+            BuildTask buildTask = new BuildTask(this, false);
             currentBuildTask = buildTask;
             buildTask.execute();
         });
@@ -518,6 +520,17 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
             toViewCodeEditor();
             return true;
         });
+        bottomMenu.add(Menu.NONE, 8, Menu.NONE, "Clean build").setOnMenuItemClickListener(item -> {
+            if (currentBuildTask != null && !currentBuildTask.canceled) {
+                SketchwareUtil.toast("A build is already running");
+                return true;
+            }
+
+            BuildTask buildTask = new BuildTask(this, true);
+            currentBuildTask = buildTask;
+            buildTask.execute();
+            return true;
+        });
 
         xmlLayoutOrientation = findViewById(R.id.img_orientation);
         viewPager = findViewById(R.id.viewpager);
@@ -605,6 +618,10 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(buildCancelReceiver);
+        if (isFinishing()) {
+            // Cached images belong to this project, keep them if it only gets recreated
+            DesignImageLoader.getInstance().clear();
+        }
     }
 
     @Override
@@ -772,6 +789,7 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
                     jC.a(sc_id).c(jC.d(sc_id));
                     jC.a(sc_id).a(jC.d(sc_id));
                 }
+                jC.invalidateUsages();
                 refresh();
                 B = false;
                 v.dismiss();
@@ -1036,12 +1054,17 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
         private final LinearLayout progressContainer;
         private final TextView progressText;
         private final LinearProgressIndicator progressBar;
+        /**
+         * If outputs of previous builds should be discarded even if incremental builds are enabled.
+         */
+        private final boolean forceCleanBuild;
         public volatile boolean canceled;
         private volatile boolean isBuildFinished;
         private boolean isShowingNotification = false;
 
-        public BuildTask(DesignActivity activity) {
+        public BuildTask(DesignActivity activity, boolean forceCleanBuild) {
             super(activity);
+            this.forceCleanBuild = forceCleanBuild;
             notificationManager = (NotificationManager) activity.getSystemService(Context.NOTIFICATION_SERVICE);
             btnRun = activity.btnRun;
             progressContainer = activity.findViewById(R.id.progress_container);
@@ -1074,8 +1097,15 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
             try {
                 var q = activity.q;
                 var sc_id = DesignActivity.sc_id;
-                onProgress("Deleting temporary files...", 1);
-                FileUtil.deleteFile(q.projectMyscPath);
+                boolean incrementalBuild = !forceCleanBuild && new BuildSettings(sc_id).isIncrementalBuildEnabled();
+                if (incrementalBuild) {
+                    /* Keep bin/ and gen/ with outputs of the last build, only regenerate sources */
+                    onProgress("Preparing incremental build...", 1);
+                    q.beginIncrementalGeneration();
+                } else {
+                    onProgress("Deleting temporary files...", 1);
+                    FileUtil.deleteFile(q.projectMyscPath);
+                }
 
                 q.c(activity.getApplicationContext());
                 q.a();
@@ -1111,8 +1141,14 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
                 q.a(libraryManager, fileManager, dataManager);
                 builder.buildBuiltInLibraryInformation();
                 q.b(fileManager, dataManager, libraryManager, builder.getBuiltInLibraryManager());
-                q.f();
-                q.e();
+                if (incrementalBuild) {
+                    q.finishIncrementalGeneration();
+                    q.e();
+                    builder.enableIncrementalBuild();
+                } else {
+                    q.f();
+                    q.e();
+                }
 
                 builder.maybeExtractAapt2();
                 if (canceled) {
@@ -1120,7 +1156,7 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
                 }
 
                 onProgress("Extracting built-in libraries...", 3);
-                BuiltInLibraries.extractCompileAssets(this);
+                BuiltInLibraries.extractCompileAssets(builder.getRequiredBuiltInLibraryNames(), this);
                 if (canceled) {
                     return;
                 }
@@ -1173,13 +1209,7 @@ public class DesignActivity extends BaseAppCompatActivity implements View.OnClic
                 }
 
                 onProgress("Building APK...", 19);
-                builder.buildApk();
-                if (canceled) {
-                    return;
-                }
-
-                onProgress("Signing APK...", 20);
-                builder.signDebugApk();
+                builder.buildSignedApk(builder.yq.finalToInstallApkPath);
                 if (canceled) {
                     return;
                 }
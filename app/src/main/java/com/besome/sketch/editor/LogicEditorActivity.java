@@ -62,6 +62,8 @@ import com.besome.sketch.editor.logic.BlockPane;
 import com.besome.sketch.editor.logic.LogicTopMenu;
 import com.besome.sketch.editor.logic.PaletteBlock;
 import com.besome.sketch.editor.logic.PaletteSelector;
+import com.besome.sketch.editor.logic.ProjectUsageIndex;
+import com.besome.sketch.editor.logic.ProjectUsagesDialog;
 import com.besome.sketch.editor.makeblock.MakeBlockActivity;
 import com.besome.sketch.editor.manage.ShowBlockCollectionActivity;
 import com.besome.sketch.editor.view.ViewDummy;
@@ -113,6 +115,7 @@ import a.a.a.yq;
 import a.a.a.yy;
 import dev.aldi.sayuti.block.ExtraPaletteBlock;
 import mod.bobur.XmlToSvgConverter;
+import mod.hey.studios.editor.manage.block.v2.BlockLoader;
 import mod.hey.studios.editor.view.IdGenerator;
 import mod.hey.studios.moreblock.ReturnMoreblockManager;
 import mod.hey.studios.moreblock.importer.MoreblockImporterDialog;
@@ -126,13 +129,13 @@ import pro.sketchware.R;
 import pro.sketchware.activities.editor.view.CodeViewerActivity;
 import pro.sketchware.activities.resourceseditor.ResourcesEditorActivity;
 import pro.sketchware.activities.resourceseditor.components.utils.StringsEditorManager;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.databinding.ImagePickerItemBinding;
 import pro.sketchware.databinding.PropertyPopupSelectorSingleBinding;
 import pro.sketchware.databinding.SearchWithRecyclerViewBinding;
 import pro.sketchware.databinding.ViewStringEditorAddBinding;
 import pro.sketchware.menu.ExtraMenuBean;
 import pro.sketchware.utility.FilePathUtil;
-import pro.sketchware.utility.FileUtil;
 import pro.sketchware.utility.SketchwareUtil;
 import pro.sketchware.utility.SvgUtils;
 
@@ -234,25 +237,6 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
         }
     }
 
-    public static ArrayList<String> getAllJavaFileNames(String projectScId) {
-        ArrayList<String> javaFileNames = new ArrayList<>();
-        for (ProjectFileBean projectFile : jC.b(projectScId).b()) {
-            javaFileNames.add(projectFile.getJavaName());
-        }
-        return javaFileNames;
-    }
-
-    public static ArrayList<String> getAllXmlFileNames(String projectScId) {
-        ArrayList<String> xmlFileNames = new ArrayList<>();
-        for (ProjectFileBean projectFile : jC.b(projectScId).b()) {
-            String xmlName = projectFile.getXmlName();
-            if (xmlName != null && !xmlName.isEmpty()) {
-                xmlFileNames.add(xmlName);
-            }
-        }
-        return xmlFileNames;
-    }
-
     private void redo() {
         if (!u) {
             HistoryBlockBean historyBlockBean = bC.d(B).i(s());
@@ -304,7 +288,9 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
     public void E() {
         eC a2 = jC.a(B);
         String javaName = M.getJavaName();
-        a2.a(javaName, C + "_" + D, o.getBlocks());
+        ArrayList<BlockBean> blocks = o.getBlocks();
+        a2.a(javaName, C + "_" + D, blocks);
+        jC.updateUsages(javaName, C + "_" + D, blocks);
     }
 
     public void G() {
@@ -374,7 +360,10 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
             String filePath = new FilePathUtil().getPathResource(B) + "/values/strings.xml";
             ArrayList<HashMap<String, Object>> StringsListMap = new ArrayList<>();
             StringsEditorManager stringsEditorManager = new StringsEditorManager();
-            stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFile(filePath), StringsListMap);
+            stringsEditorManager.sc_id = B;
+            // Only the strings in the file, without adding a missing app_name
+            stringsEditorManager.isDefaultVariant = false;
+            stringsEditorManager.loadStringsFile(filePath, StringsListMap);
 
             clearErrorOnTextChanged(binding.stringKeyInput, binding.stringKeyInputLayout);
 
@@ -395,7 +384,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
             map.put("key", key);
             map.put("text", value);
             StringsListMap.add(map);
-            FileUtil.writeFile(filePath, stringsEditorManager.convertListMapToXmlStrings(StringsListMap, new HashMap<>()));
+            ValuesResourceRepository.getInstance(B).save(filePath, stringsEditorManager.convertListMapToXmlStrings(StringsListMap, new HashMap<>()));
             paletteSelector.performClickPalette(-1);
             v1.dismiss();
         });
@@ -409,7 +398,9 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
 
         ArrayList<HashMap<String, Object>> stringsList = new ArrayList<>();
         StringsEditorManager stringsEditorManager = new StringsEditorManager();
-        stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFile(filePath), stringsList);
+        stringsEditorManager.sc_id = B;
+        stringsEditorManager.isDefaultVariant = false;
+        stringsEditorManager.loadStringsFile(filePath, stringsList);
 
         MaterialAlertDialogBuilder dialog = new MaterialAlertDialogBuilder(this);
         dialog.setTitle(getTranslatedString(R.string.logic_editor_title_remove_xml_strings));
@@ -437,7 +428,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
                 }
             }
 
-            FileUtil.writeFile(filePath, stringsEditorManager.convertListMapToXmlStrings(stringsList, new HashMap<>()));
+            ValuesResourceRepository.getInstance(B).save(filePath, stringsEditorManager.convertListMapToXmlStrings(stringsList, new HashMap<>()));
 
             paletteSelector.performClickPalette(-1);
             v.dismiss();
@@ -449,7 +440,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
 
     public void setOnCheckedListener(CheckBox checkBox) {
         checkBox.setOnCheckedChangeListener((view, isChecked) -> {
-            if (isChecked && isXmlStringUsed(B, Helper.getText(checkBox))) {
+            if (isChecked && isXmlStringUsed(Helper.getText(checkBox))) {
                 checkBox.setChecked(false);
             }
         });
@@ -459,20 +450,17 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
         listMap.removeIf(map -> key.equals(map.get("key")));
     }
 
-    private boolean isXmlStringUsed(String projectScId, String key) {
+    private boolean isXmlStringUsed(String key) {
         if ("app_name".equals(key)) {
             return true;
         }
-        eC projectDataManager = jC.a(projectScId);
 
-        return isKeyHasNonSavedUsage(key) || isKeyUsedInJavaFiles(projectDataManager, projectScId, key) || isKeyUsedInXmlFiles(projectDataManager, projectScId, key);
+        return isKeyHasNonSavedUsage(key) || isKeyUsedInJavaFiles(key) || isKeyUsedInXmlFiles(key);
     }
 
     private boolean isKeyHasNonSavedUsage(String key) {
         for (BlockBean block : o.getBlocks()) {
-            if (block.opCode.equals("getResStr") && block.spec.equals(key) ||
-                    (block.opCode.equals("getResString") && block.parameters.get(0).equals("R.string." + key))) {
-
+            if (key.equals(ProjectUsageIndex.getStringKey(block))) {
                 showToastError();
                 return true;
             }
@@ -482,46 +470,30 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
 
     private boolean isKeyHasSavedUsage(String key) {
         for (BlockBean block : savedBlockBean) {
-            if (block.opCode.equals("getResStr") && block.spec.equals(key) ||
-                    (block.opCode.equals("getResString") && block.parameters.get(0).equals("R.string." + key))) {
-
+            if (key.equals(ProjectUsageIndex.getStringKey(block))) {
                 return true;
             }
         }
         return false;
     }
 
-    private boolean isKeyUsedInJavaFiles(eC projectDataManager, String projectScId, String key) {
-
-        if ((getStringUsageLengthInJava(projectDataManager, projectScId, key) == 1) && isKeyHasSavedUsage(key) && !isKeyHasNonSavedUsage(key)) {
+    private boolean isKeyUsedInJavaFiles(String key) {
+        int usageCount = getStringUsageLengthInJava(key);
+        if ((usageCount == 1) && isKeyHasSavedUsage(key) && !isKeyHasNonSavedUsage(key)) {
             return false;
         }
 
-        for (String javaFileName : getAllJavaFileNames(projectScId)) {
-            for (Map.Entry<String, ArrayList<BlockBean>> entry : projectDataManager.b(javaFileName).entrySet()) {
-                for (BlockBean block : entry.getValue()) {
-                    if (block.opCode.equals("getResStr") && block.spec.equals(key) ||
-                            (block.opCode.equals("getResString") && block.parameters.get(0).equals("R.string." + key))) {
-
-                        showToastError();
-                        return true;
-                    }
-                }
-            }
+        if (usageCount > 0) {
+            showToastError();
+            return true;
         }
         return false;
     }
 
-    private boolean isKeyUsedInXmlFiles(eC projectDataManager, String projectScId, String key) {
-        for (String xmlFileName : getAllXmlFileNames(projectScId)) {
-            for (ViewBean view : projectDataManager.d(xmlFileName)) {
-                if (view.text.text.equals("@string/" + key) ||
-                        (view.text.hint.equals("@string/" + key))) {
-
-                    showToastError();
-                    return true;
-                }
-            }
+    private boolean isKeyUsedInXmlFiles(String key) {
+        if (jC.getUsageIndex(B).isUsedInLayouts(ProjectUsageIndex.KIND_STRING_KEY, key)) {
+            showToastError();
+            return true;
         }
         return false;
     }
@@ -530,20 +502,8 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
         SketchwareUtil.toastError(Helper.getResString(R.string.logic_editor_title_remove_xml_string_error));
     }
 
-    private int getStringUsageLengthInJava(eC projectDataManager, String projectScId, String key) {
-        int length = 0;
-        for (String javaFileName : getAllJavaFileNames(projectScId)) {
-            for (Map.Entry<String, ArrayList<BlockBean>> entry : projectDataManager.b(javaFileName).entrySet()) {
-                for (BlockBean block : entry.getValue()) {
-                    if (block.opCode.equals("getResStr") && block.spec.equals(key) ||
-                            (block.opCode.equals("getResString") && block.parameters.get(0).equals("R.string." + key))) {
-
-                        length++;
-                    }
-                }
-            }
-        }
-        return length;
+    private int getStringUsageLengthInJava(String key) {
+        return jC.getUsageIndex(B).getBlockUsageCount(ProjectUsageIndex.KIND_STRING_KEY, key);
     }
 
     public void openResourcesEditor() {
@@ -574,7 +534,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
                 RadioButton radioButton = (RadioButton) viewGroup.getChildAt(i);
                 if (radioButton.isChecked()) {
                     if (!o.b(Helper.getText(radioButton))) {
-                        if (!jC.a(B).b(M.getJavaName(), Helper.getText(radioButton), C + "_" + D)) {
+                        if (!jC.getUsageIndex(B).isUsedInBlocks(ProjectUsageIndex.KIND_LIST, Helper.getText(radioButton), M.getJavaName(), C + "_" + D)) {
                             l(Helper.getText(radioButton));
                         }
                     }
@@ -607,7 +567,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
                 RadioButton radioButton = (RadioButton) viewGroup.getChildAt(i);
                 if (radioButton.isChecked()) {
                     if (!o.c(Helper.getText(radioButton))) {
-                        if (!jC.a(B).c(M.getJavaName(), Helper.getText(radioButton), C + "_" + D)) {
+                        if (!jC.getUsageIndex(B).isUsedInBlocks(ProjectUsageIndex.KIND_VARIABLE, Helper.getText(radioButton), M.getJavaName(), C + "_" + D)) {
                             m(Helper.getText(radioButton));
                         }
                     }
@@ -2104,6 +2064,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
         }
         isViewBindingEnabled = new ProjectSettings(B).getValue(ProjectSettings.SETTING_ENABLE_VIEWBINDING, "false").equals("true");
         M = (ProjectFileBean) parcelable;
+        BlockLoader.refreshIfChanged();
         T = (int) wB.a(getBaseContext(), (float) T);
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -2160,6 +2121,8 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
             undo();
         } else if (itemId == R.id.menu_logic_showsource) {
             showSourceCode();
+        } else if (itemId == R.id.menu_logic_find_usages) {
+            showFindUsages();
         }
 
         return super.onOptionsItemSelected(menuItem);
@@ -2223,6 +2186,7 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
         eC a2 = jC.a(B);
         String javaName = M.getJavaName();
         a2.a(javaName, C + "_" + D, blocks);
+        jC.updateUsages(javaName, C + "_" + D, blocks);
         jC.a(B).k();
     }
 
@@ -2625,6 +2589,41 @@ public class LogicEditorActivity extends BaseAppCompatActivity implements View.O
         startActivity(intent);
     }
 
+    /**
+     * Lets the user pick a variable, list, Component or widget of this Activity, and lists where it's used,
+     * with this event's blocks as they were last saved.
+     */
+    public void showFindUsages() {
+        ArrayList<Pair<Integer, String>> symbols = new ArrayList<>();
+        for (Pair<Integer, String> variable : jC.a(B).k(M.getJavaName())) {
+            symbols.add(new Pair<>(ProjectUsageIndex.KIND_VARIABLE, variable.second));
+        }
+        for (Pair<Integer, String> list : jC.a(B).j(M.getJavaName())) {
+            symbols.add(new Pair<>(ProjectUsageIndex.KIND_LIST, list.second));
+        }
+        for (ComponentBean component : jC.a(B).e(M.getJavaName())) {
+            symbols.add(new Pair<>(ProjectUsageIndex.KIND_COMPONENT, component.componentId));
+        }
+        for (ViewBean view : jC.a(B).d(M.getXmlName())) {
+            symbols.add(new Pair<>(ProjectUsageIndex.KIND_VIEW, view.id));
+        }
+
+        String[] names = new String[symbols.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = symbols.get(i).second;
+        }
+        MaterialAlertDialogBuilder dialog = new MaterialAlertDialogBuilder(this);
+        dialog.setTitle(getTranslatedString(R.string.logic_editor_title_find_usages));
+        dialog.setItems(names, (v, which) -> {
+            Pair<Integer, String> symbol = symbols.get(which);
+            ProjectUsagesDialog.create(this, B, symbol.first, symbol.second)
+                    .setPositiveButton(getTranslatedString(R.string.common_word_close), null)
+                    .show();
+        });
+        dialog.setNegativeButton(getTranslatedString(R.string.common_word_cancel), null);
+        dialog.show();
+    }
+
     public void t() {
         fa = ObjectAnimator.ofFloat(O, View.TRANSLATION_X, 0.0f);
         fa.setDuration(500L);
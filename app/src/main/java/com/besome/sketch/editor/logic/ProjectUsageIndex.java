@@ -0,0 +1,457 @@
+package com.besome.sketch.editor.logic;
+
+import com.besome.sketch.beans.BlockBean;
+import com.besome.sketch.beans.ViewBean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import a.a.a.Gx;
+import a.a.a.eC;
+
+/**
+ * Which blocks and views of a project refer to which symbols, so that checking whether e.g. a variable or
+ * string key is still in use doesn't have to walk every Activity's blocks and every layout's views again.
+ * <p>
+ * There's one index per project, get it with {@link a.a.a.jC#getUsageIndex(String)}. It's built from the
+ * project's data once, and then kept up to date per file: an event's entries are replaced when its blocks
+ * get saved with {@link #updateEvent(String, String, List)}, and files whose views or blocks got edited
+ * otherwise are marked with {@link #invalidateLayout(String)} and {@link #invalidateBlocks(String)},
+ * to be indexed again with the next lookup.
+ * <p>
+ * Each lookup also compares a stamp of every indexed file with the project's data: which block lists its
+ * events have and their sizes, and the indexed values of its views. Files whose stamp differs get indexed
+ * again too, so that editors that add, remove or replace blocks or views without telling the index don't
+ * leave it stale. Only edits of a block inside an event's list, which the stamp doesn't look at, need one
+ * of the methods above.
+ */
+public class ProjectUsageIndex {
+
+    /**
+     * A key of <code>strings.xml</code>, used by string resource blocks and by texts and hints of views
+     */
+    public static final int KIND_STRING_KEY = 0;
+    public static final int KIND_VARIABLE = 1;
+    public static final int KIND_LIST = 2;
+    public static final int KIND_COMPONENT = 3;
+    /**
+     * A widget or layout, by its ID
+     */
+    public static final int KIND_VIEW = 4;
+    /**
+     * A custom View's layout, used by ListViews, Spinners and the like
+     */
+    public static final int KIND_CUSTOM_VIEW = 5;
+
+    private static final String STRING_RESOURCE_PREFIX = "@string/";
+    private static final String STRING_REFERENCE_PREFIX = "R.string.";
+
+    private final eC projectDataManager;
+    private final Map<String, Set<Usage>> usagesBySymbol = new HashMap<>();
+    private final Map<String, Map<String, List<Usage>>> blockUsagesByFile = new LinkedHashMap<>();
+    private final Map<String, List<Usage>> viewUsagesByFile = new LinkedHashMap<>();
+    private final Set<String> dirtyJavaFiles = new HashSet<>();
+    private final Set<String> dirtyXmlFiles = new HashSet<>();
+    private final Map<String, Map<String, BlocksStamp>> blockStampsByFile = new HashMap<>();
+    private final Map<String, Object[]> viewStampsByFile = new HashMap<>();
+
+    /**
+     * @param javaFileNames Java files whose blocks to index
+     * @param xmlFileNames  Layouts whose views to index
+     */
+    public ProjectUsageIndex(eC projectDataManager, Collection<String> javaFileNames, Collection<String> xmlFileNames) {
+        this.projectDataManager = projectDataManager;
+        setFiles(javaFileNames, xmlFileNames);
+    }
+
+    /**
+     * @return The project data manager the index reads blocks and views from
+     */
+    public eC getProjectDataManager() {
+        return projectDataManager;
+    }
+
+    /**
+     * Forgets files that got removed from the project, and marks new ones to be indexed.
+     */
+    public void setFiles(Collection<String> javaFileNames, Collection<String> xmlFileNames) {
+        dirtyJavaFiles.retainAll(javaFileNames);
+        for (Iterator<Map.Entry<String, Map<String, List<Usage>>>> iterator = blockUsagesByFile.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Map<String, List<Usage>>> file = iterator.next();
+            if (!javaFileNames.contains(file.getKey())) {
+                for (List<Usage> usages : file.getValue().values()) {
+                    removeUsages(usages);
+                }
+                blockStampsByFile.remove(file.getKey());
+                iterator.remove();
+            }
+        }
+        dirtyXmlFiles.retainAll(xmlFileNames);
+        for (Iterator<Map.Entry<String, List<Usage>>> iterator = viewUsagesByFile.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, List<Usage>> file = iterator.next();
+            if (!xmlFileNames.contains(file.getKey())) {
+                removeUsages(file.getValue());
+                viewStampsByFile.remove(file.getKey());
+                iterator.remove();
+            }
+        }
+        for (String javaFileName : javaFileNames) {
+            if (!blockUsagesByFile.containsKey(javaFileName)) {
+                invalidateBlocks(javaFileName);
+            }
+        }
+        for (String xmlFileName : xmlFileNames) {
+            if (!viewUsagesByFile.containsKey(xmlFileName)) {
+                invalidateLayout(xmlFileName);
+            }
+        }
+    }
+
+    /**
+     * Marks a Java file's blocks to be indexed again, e.g. after removing a View or Component removed some of them.
+     */
+    public void invalidateBlocks(String javaFileName) {
+        if (javaFileName != null && !javaFileName.isEmpty()) {
+            dirtyJavaFiles.add(javaFileName);
+        }
+    }
+
+    /**
+     * Marks a layout's views to be indexed again, e.g. after views got added, removed or edited.
+     */
+    public void invalidateLayout(String xmlFileName) {
+        if (xmlFileName != null && !xmlFileName.isEmpty()) {
+            dirtyXmlFiles.add(xmlFileName);
+        }
+    }
+
+    /**
+     * Marks all files to be indexed again, for edits that can change blocks of any Java file.
+     */
+    public void invalidateAll() {
+        dirtyJavaFiles.addAll(blockUsagesByFile.keySet());
+        dirtyXmlFiles.addAll(viewUsagesByFile.keySet());
+    }
+
+    /**
+     * Replaces the usages of an event's blocks, e.g. after the Logic Editor saved them.
+     *
+     * @param eventName The event's key, like {@link eC#b(String)} has it
+     */
+    public void updateEvent(String javaFileName, String eventName, List<BlockBean> blocks) {
+        Map<String, List<Usage>> events = blockUsagesByFile.get(javaFileName);
+        if (events == null) {
+            // Not indexed yet, it'll be read as a whole
+            invalidateBlocks(javaFileName);
+            return;
+        }
+        List<Usage> previous = events.remove(eventName);
+        if (previous != null) {
+            removeUsages(previous);
+        }
+        if (blocks != null && !blocks.isEmpty()) {
+            events.put(eventName, addBlockUsages(javaFileName, eventName, blocks));
+        }
+        Map<String, BlocksStamp> stamps = blockStampsByFile.get(javaFileName);
+        if (stamps != null) {
+            stamps.put(eventName, new BlocksStamp(blocks));
+        }
+    }
+
+    private void refresh() {
+        for (String javaFileName : blockUsagesByFile.keySet()) {
+            if (!dirtyJavaFiles.contains(javaFileName) && !matchesBlocks(javaFileName)) {
+                dirtyJavaFiles.add(javaFileName);
+            }
+        }
+        for (String xmlFileName : viewUsagesByFile.keySet()) {
+            if (!dirtyXmlFiles.contains(xmlFileName)
+                    && !Arrays.equals(viewStampsByFile.get(xmlFileName), getViewStamp(projectDataManager.d(xmlFileName)))) {
+                dirtyXmlFiles.add(xmlFileName);
+            }
+        }
+        if (!dirtyJavaFiles.isEmpty()) {
+            for (String javaFileName : dirtyJavaFiles) {
+                Map<String, List<Usage>> previous = blockUsagesByFile.remove(javaFileName);
+                if (previous != null) {
+                    for (List<Usage> usages : previous.values()) {
+                        removeUsages(usages);
+                    }
+                }
+                Map<String, List<Usage>> events = new LinkedHashMap<>();
+                Map<String, BlocksStamp> stamps = new HashMap<>();
+                HashMap<String, ArrayList<BlockBean>> blocks = projectDataManager.b(javaFileName);
+                if (blocks != null) {
+                    for (Map.Entry<String, ArrayList<BlockBean>> event : blocks.entrySet()) {
+                        if (event.getValue() != null && !event.getValue().isEmpty()) {
+                            events.put(event.getKey(), addBlockUsages(javaFileName, event.getKey(), event.getValue()));
+                        }
+                        stamps.put(event.getKey(), new BlocksStamp(event.getValue()));
+                    }
+                }
+                blockUsagesByFile.put(javaFileName, events);
+                blockStampsByFile.put(javaFileName, stamps);
+            }
+            dirtyJavaFiles.clear();
+        }
+        if (!dirtyXmlFiles.isEmpty()) {
+            for (String xmlFileName : dirtyXmlFiles) {
+                List<Usage> previous = viewUsagesByFile.remove(xmlFileName);
+                if (previous != null) {
+                    removeUsages(previous);
+                }
+                List<Usage> usages = new ArrayList<>();
+                ArrayList<ViewBean> views = projectDataManager.d(xmlFileName);
+                if (views != null) {
+                    for (ViewBean view : views) {
+                        addViewUsages(xmlFileName, view, usages);
+                    }
+                }
+                viewUsagesByFile.put(xmlFileName, usages);
+                viewStampsByFile.put(xmlFileName, getViewStamp(views));
+            }
+            dirtyXmlFiles.clear();
+        }
+    }
+
+    /**
+     * @return If a Java file's events still have the same block lists, with the same sizes, as when they got indexed
+     */
+    private boolean matchesBlocks(String javaFileName) {
+        Map<String, BlocksStamp> stamps = blockStampsByFile.get(javaFileName);
+        HashMap<String, ArrayList<BlockBean>> blocks = projectDataManager.b(javaFileName);
+        int eventCount = blocks == null ? 0 : blocks.size();
+        if (stamps == null || stamps.size() != eventCount) {
+            return false;
+        }
+        if (blocks != null) {
+            for (Map.Entry<String, ArrayList<BlockBean>> event : blocks.entrySet()) {
+                BlocksStamp stamp = stamps.get(event.getKey());
+                if (stamp == null || !stamp.matches(event.getValue())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The views of a layout and the values of them the index reads, to compare with {@link Arrays#equals(Object[], Object[])}
+     */
+    private static Object[] getViewStamp(List<ViewBean> views) {
+        if (views == null) {
+            return new Object[0];
+        }
+        Object[] stamp = new Object[views.size() * 4];
+        for (int i = 0; i < views.size(); i++) {
+            ViewBean view = views.get(i);
+            stamp[i * 4] = view;
+            stamp[i * 4 + 1] = view.text == null ? null : view.text.text;
+            stamp[i * 4 + 2] = view.text == null ? null : view.text.hint;
+            stamp[i * 4 + 3] = view.customView;
+        }
+        return stamp;
+    }
+
+    private List<Usage> addBlockUsages(String javaFileName, String eventName, List<BlockBean> blocks) {
+        List<Usage> usages = new ArrayList<>();
+        for (BlockBean block : blocks) {
+            String stringKey = getStringKey(block);
+            if (stringKey != null) {
+                usages.add(add(KIND_STRING_KEY, stringKey, javaFileName, eventName, block.id));
+            }
+            // Same as eC#b(String, String, String) and eC#c(String, String, String) look at
+            int kind = getKind(block.getClassInfo());
+            if (kind != -1 && block.spec != null && !block.spec.isEmpty()) {
+                usages.add(add(kind, block.spec, javaFileName, eventName, block.id));
+            }
+            ArrayList<Gx> paramClassInfo = block.getParamClassInfo();
+            if (paramClassInfo != null && block.parameters != null) {
+                for (int i = 0; i < paramClassInfo.size() && i < block.parameters.size(); i++) {
+                    int paramKind = getKind(paramClassInfo.get(i));
+                    String parameter = block.parameters.get(i);
+                    if (paramKind != -1 && parameter != null && !parameter.isEmpty()) {
+                        usages.add(add(paramKind, parameter, javaFileName, eventName, block.id));
+                    }
+                }
+            }
+        }
+        return usages;
+    }
+
+    private static int getKind(Gx classInfo) {
+        if (classInfo == null) return -1;
+        if (classInfo.c()) return KIND_VARIABLE;
+        if (classInfo.b()) return KIND_LIST;
+        if (classInfo.d()) return KIND_VIEW;
+        if (classInfo.a("Component")) return KIND_COMPONENT;
+        return -1;
+    }
+
+    /**
+     * @return The key of the string resource a block gets, or {@code null} if it's no string resource block
+     */
+    public static String getStringKey(BlockBean block) {
+        if ("getResStr".equals(block.opCode)) {
+            return block.spec;
+        }
+        if ("getResString".equals(block.opCode) && block.parameters != null && !block.parameters.isEmpty()) {
+            String reference = block.parameters.get(0);
+            if (reference != null && reference.startsWith(STRING_REFERENCE_PREFIX)) {
+                return reference.substring(STRING_REFERENCE_PREFIX.length());
+            }
+        }
+        return null;
+    }
+
+    private void addViewUsages(String xmlFileName, ViewBean view, List<Usage> usages) {
+        if (view.text != null) {
+            if (view.text.text != null && view.text.text.startsWith(STRING_RESOURCE_PREFIX)) {
+                usages.add(add(KIND_STRING_KEY, view.text.text.substring(STRING_RESOURCE_PREFIX.length()), xmlFileName, null, view.id));
+            }
+            if (view.text.hint != null && view.text.hint.startsWith(STRING_RESOURCE_PREFIX)) {
+                usages.add(add(KIND_STRING_KEY, view.text.hint.substring(STRING_RESOURCE_PREFIX.length()), xmlFileName, null, view.id));
+            }
+        }
+        if (view.customView != null && !view.customView.isEmpty() && !view.customView.equals("none")) {
+            usages.add(add(KIND_CUSTOM_VIEW, view.customView, xmlFileName, null, view.id));
+        }
+    }
+
+    private Usage add(int kind, String name, String fileName, String eventName, String id) {
+        Usage usage = new Usage(kind, name, fileName, eventName, id);
+        usagesBySymbol.computeIfAbsent(symbolKey(kind, name), key -> new LinkedHashSet<>()).add(usage);
+        return usage;
+    }
+
+    private void removeUsages(List<Usage> usages) {
+        for (Usage usage : usages) {
+            String symbolKey = symbolKey(usage.kind, usage.name);
+            Set<Usage> symbolUsages = usagesBySymbol.get(symbolKey);
+            if (symbolUsages != null) {
+                symbolUsages.remove(usage);
+                if (symbolUsages.isEmpty()) {
+                    usagesBySymbol.remove(symbolKey);
+                }
+            }
+        }
+    }
+
+    private static String symbolKey(int kind, String name) {
+        return kind + ":" + name;
+    }
+
+    /**
+     * @return Blocks and views referring to a symbol, for a "find usages" list
+     */
+    public List<Usage> getUsages(int kind, String name) {
+        refresh();
+        Set<Usage> usages = usagesBySymbol.get(symbolKey(kind, name));
+        return usages == null ? new ArrayList<>() : new ArrayList<>(usages);
+    }
+
+    /**
+     * @return How many blocks of all Java files refer to a symbol
+     */
+    public int getBlockUsageCount(int kind, String name) {
+        int count = 0;
+        for (Usage usage : getUsages(kind, name)) {
+            if (usage.isBlock()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param excludedEventName An event not to look at, like the one open in the Logic Editor,
+     *                          whose blocks may not be saved yet
+     * @return If any block of a Java file refers to a symbol
+     */
+    public boolean isUsedInBlocks(int kind, String name, String javaFileName, String excludedEventName) {
+        for (Usage usage : getUsages(kind, name)) {
+            if (usage.isBlock() && usage.fileName.equals(javaFileName) && !usage.eventName.equals(excludedEventName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return If any view refers to a symbol
+     */
+    public boolean isUsedInLayouts(int kind, String name) {
+        for (Usage usage : getUsages(kind, name)) {
+            if (!usage.isBlock()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * An event's list of blocks and its size when it got indexed.
+     */
+    private static class BlocksStamp {
+        private final List<BlockBean> blocks;
+        private final int size;
+
+        private BlocksStamp(List<BlockBean> blocks) {
+            this.blocks = blocks;
+            size = blocks == null ? 0 : blocks.size();
+        }
+
+        private boolean matches(List<BlockBean> blocks) {
+            return this.blocks == blocks && size == (blocks == null ? 0 : blocks.size());
+        }
+    }
+
+    /**
+     * Where a block or view refers to a symbol.
+     */
+    public static class Usage {
+        private final int kind;
+        private final String name;
+        private final String fileName;
+        private final String eventName;
+        private final String id;
+
+        private Usage(int kind, String name, String fileName, String eventName, String id) {
+            this.kind = kind;
+            this.name = name;
+            this.fileName = fileName;
+            this.eventName = eventName;
+            this.id = id;
+        }
+
+        public boolean isBlock() {
+            return eventName != null;
+        }
+
+        /**
+         * @return The Java file of a block, or the layout of a view
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return The event of a block, or {@code null} for a view
+         */
+        public String getEventName() {
+            return eventName;
+        }
+
+        /**
+         * @return The ID of the block or view
+         */
+        public String getId() {
+            return id;
+        }
+    }
+}
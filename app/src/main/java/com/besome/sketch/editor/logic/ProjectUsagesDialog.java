@@ -0,0 +1,61 @@
+package com.besome.sketch.editor.logic;
+
+import android.content.Context;
+
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import a.a.a.jC;
+import mod.hey.studios.util.Helper;
+import pro.sketchware.R;
+
+/**
+ * A "find usages" list of where a project's blocks and views refer to a symbol,
+ * looked up in the project's {@link ProjectUsageIndex}.
+ */
+public class ProjectUsagesDialog {
+
+    /**
+     * @param kind One of the <code>KIND_</code> constants of {@link ProjectUsageIndex}
+     * @return A dialog builder listing the symbol's usages, which callers can add buttons to
+     */
+    public static MaterialAlertDialogBuilder create(Context context, String sc_id, int kind, String name) {
+        List<String> usages = describe(jC.getUsageIndex(sc_id).getUsages(kind, name));
+        MaterialAlertDialogBuilder dialog = new MaterialAlertDialogBuilder(context);
+        dialog.setTitle(Helper.getResString(R.string.logic_editor_title_usages_of, name));
+        if (usages.isEmpty()) {
+            dialog.setMessage(Helper.getResString(R.string.logic_editor_message_no_usages));
+        } else {
+            dialog.setItems(usages.toArray(new String[0]), null);
+        }
+        return dialog;
+    }
+
+    /**
+     * @return One line per event with blocks using the symbol, and one per view using it
+     */
+    private static List<String> describe(List<ProjectUsageIndex.Usage> usages) {
+        Map<String, Set<String>> blockIds = new LinkedHashMap<>();
+        List<String> viewUsages = new ArrayList<>();
+        for (ProjectUsageIndex.Usage usage : usages) {
+            if (usage.isBlock()) {
+                blockIds.computeIfAbsent(usage.getFileName() + "\n" + usage.getEventName(), key -> new HashSet<>()).add(usage.getId());
+            } else {
+                viewUsages.add(Helper.getResString(R.string.logic_editor_message_usage_view, usage.getFileName(), usage.getId()));
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> event : blockIds.entrySet()) {
+            String[] fileAndEvent = event.getKey().split("\n", 2);
+            lines.add(Helper.getResString(R.string.logic_editor_message_usage_blocks, fileAndEvent[0], fileAndEvent[1], event.getValue().size()));
+        }
+        lines.addAll(viewUsages);
+        return lines;
+    }
+}
@@ -253,6 +253,7 @@ public class ViewSelectorActivity extends BaseAppCompatActivity {
                 jC.a(sc_id).a(projectFile.getJavaName(), 1, view.type, view.id, "onClick");
             }
         }
+        jC.invalidateUsages(projectFile);
     }
 
     private void a(ProjectFileBean presetData, ProjectFileBean projectFile, int requestCode) {
@@ -270,6 +271,7 @@ public class ViewSelectorActivity extends BaseAppCompatActivity {
                 jC.a(sc_id).a(projectFile.getJavaName(), 1, view.type, view.id, "onClick");
             }
         }
+        jC.invalidateUsages(projectFile);
     }
 
     private ArrayList<ViewBean> a(String presetName, int requestCode) {
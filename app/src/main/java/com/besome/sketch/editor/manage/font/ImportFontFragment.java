@@ -162,6 +162,7 @@ public class ImportFontFragment extends qA {
         jC.d(sc_id).a(projectResourceBeans);
         jC.d(sc_id).y();
         jC.a(sc_id).a(jC.d(sc_id));
+        jC.invalidateUsages();
         jC.a(sc_id).k();
     }
 
@@ -205,6 +205,7 @@ public class ManageLibraryActivity extends BaseAppCompatActivity implements View
         jC.a(sc_id).a(firebaseLibraryBean);
         jC.a(sc_id).a(admobLibraryBean, jC.b(sc_id));
         jC.a(sc_id).b(googleMapLibraryBean, jC.b(sc_id));
+        jC.invalidateUsages();
     }
 
     @Override
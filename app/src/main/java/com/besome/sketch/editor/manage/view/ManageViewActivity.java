@@ -118,6 +118,7 @@ public class ManageViewActivity extends BaseAppCompatActivity implements OnClick
                 jC.a(sc_id).a(var1.getJavaName(), EventBean.EVENT_TYPE_VIEW, viewBean.type, viewBean.id, "onClick");
             }
         }
+        jC.invalidateUsages(var1);
     }
 
     // signature mustn't be changed: used in La/a/a/Dw;->onLongClick(Landroid/view/View;)Z, La/a/a/vw;->onLongClick(Landroid/view/View;)Z
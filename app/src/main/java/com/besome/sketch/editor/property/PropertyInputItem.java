@@ -347,7 +347,8 @@ public class PropertyInputItem extends RelativeLayout implements View.OnClickLis
     private void loadStringsListMap() {
         String filePath = FileUtil.getExternalStorageDir().concat("/.sketchware/data/").concat(sc_id.concat("/files/resource/values/strings.xml"));
         StringsEditorManager stringsEditorManager = new StringsEditorManager();
-        stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFileIfExist(filePath), stringsListMap);
+        stringsEditorManager.sc_id = sc_id;
+        stringsEditorManager.loadStringsFile(filePath, stringsListMap);
 
         if (!stringsEditorManager.isXmlStringsExist(stringsListMap, "app_name") && filePath != null) {
             HashMap<String, Object> map = new HashMap<>();
@@ -980,6 +980,13 @@ public class ViewPropertyItems extends LinearLayout implements Kw, View.OnClickL
                 }
             }
         }
+
+        if (!bean.id.equals(bean.preId)) {
+            // Renaming a custom View's widget renames blocks of the Activities using it
+            jC.invalidateUsages();
+        } else {
+            jC.invalidateUsages(e);
+        }
     }
 
 
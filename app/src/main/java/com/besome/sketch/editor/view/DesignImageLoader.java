@@ -0,0 +1,184 @@
+package com.besome.sketch.editor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import a.a.a.zB;
+import mod.jbk.util.LogUtil;
+
+/**
+ * Decodes project images shown on the design canvas off the main thread, and keeps them in a memory cache
+ * so that redrawing a layout or changing a property doesn't decode them again.
+ * <p>
+ * Cached images are keyed by file path, modification time and scale, so replacing an image's file
+ * decodes it again. All public methods must be called on the main thread, and callbacks are run on it too.
+ */
+public class DesignImageLoader {
+
+    public static final String PURPOSE_IMAGE = "image";
+    public static final String PURPOSE_BACKGROUND = "background";
+
+    private static final String TAG = "DesignImageLoader";
+
+    private static DesignImageLoader instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final LruCache<String, Bitmap> cache;
+    /**
+     * Keys of the images each target waits for, by purpose. An image decoded for a target that waits for
+     * another one since (because a property changed in the meantime) gets cached, but not delivered.
+     */
+    private final Map<Object, Map<String, String>> pendingTargets = new WeakHashMap<>();
+
+    private DesignImageLoader() {
+        int maxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        cache = new LruCache<>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    public static DesignImageLoader getInstance() {
+        if (instance == null) {
+            instance = new DesignImageLoader();
+        }
+        return instance;
+    }
+
+    /**
+     * Loads an image scaled by {@code scaleFactor}, but decoded and scaled down to fit into
+     * {@code maxWidth}x{@code maxHeight} if it'd be larger than that.
+     *
+     * @param target    What the image is for, usually the View showing it. Only used to tell which request is the latest one.
+     * @param purpose   What the target uses the image for, such as {@link #PURPOSE_IMAGE}
+     * @param maxWidth  Maximum width in pixels, or a non-positive value for none
+     * @param maxHeight Maximum height in pixels, or a non-positive value for none
+     */
+    public void loadBitmap(Object target, String purpose, String path, int scaleFactor, int maxWidth, int maxHeight, Callback callback) {
+        File file = new File(path);
+        String key = path + ":" + file.lastModified() + ":" + scaleFactor + ":" + maxWidth + "x" + maxHeight;
+        load(target, purpose, key, callback, () -> decodeScaled(path, scaleFactor, maxWidth, maxHeight));
+    }
+
+    /**
+     * Loads a 9-patch image as it is, as downsampling would break its chunk.
+     */
+    public void loadNinePatch(Object target, String purpose, String path, Callback callback) {
+        File file = new File(path);
+        String key = path + ":" + file.lastModified() + ":9";
+        load(target, purpose, key, callback, () -> zB.a(path));
+    }
+
+    /**
+     * Makes a target not receive an image it's still waiting for, as it shows something else now.
+     */
+    public void cancel(Object target, String purpose) {
+        Map<String, String> pending = pendingTargets.get(target);
+        if (pending != null) {
+            pending.remove(purpose);
+        }
+    }
+
+    /**
+     * Drops every cached image, and makes pending targets not receive theirs.
+     * Meant for when a project's editor closes, as its images won't be shown anymore.
+     */
+    public void clear() {
+        cache.evictAll();
+        pendingTargets.clear();
+    }
+
+    private void load(Object target, String purpose, String key, Callback callback, Decoder decoder) {
+        Bitmap cached = cache.get(key);
+        if (cached != null) {
+            cancel(target, purpose);
+            callback.onLoaded(cached);
+            return;
+        }
+
+        pendingTargets.computeIfAbsent(target, t -> new HashMap<>()).put(purpose, key);
+        executor.execute(() -> {
+            Bitmap bitmap;
+            try {
+                bitmap = decoder.decode();
+            } catch (Exception | OutOfMemoryError e) {
+                LogUtil.e(TAG, "Failed to decode image " + key, e);
+                bitmap = null;
+            }
+            Bitmap decoded = bitmap;
+            mainHandler.post(() -> {
+                if (decoded != null) {
+                    cache.put(key, decoded);
+                }
+                Map<String, String> pending = pendingTargets.get(target);
+                if (pending == null || !key.equals(pending.get(purpose))) {
+                    return;
+                }
+                pending.remove(purpose);
+                if (decoded != null) {
+                    callback.onLoaded(decoded);
+                } else {
+                    callback.onFailed();
+                }
+            });
+        });
+    }
+
+    private static Bitmap decodeScaled(String path, int scaleFactor, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int scale = Math.max(scaleFactor, 1);
+        double width = (double) options.outWidth * scale;
+        double height = (double) options.outHeight * scale;
+        double fit = 1;
+        if (maxWidth > 0) fit = Math.min(fit, maxWidth / width);
+        if (maxHeight > 0) fit = Math.min(fit, maxHeight / height);
+        int targetWidth = Math.max(1, (int) Math.round(width * fit));
+        int targetHeight = Math.max(1, (int) Math.round(height * fit));
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null || (bitmap.getWidth() == targetWidth && bitmap.getHeight() == targetHeight)) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private interface Decoder {
+        Bitmap decode() throws Exception;
+    }
+
+    public interface Callback {
+        void onLoaded(Bitmap bitmap);
+
+        default void onFailed() {
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.besome.sketch.editor.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drop targets of the containers on a canvas, kept between drags and grouped by the container they
+ * belong to, so that a drag only has to collect the targets of containers that changed.
+ * <p>
+ * A container's targets are collected again if it got invalidated, or if its layout differs from the
+ * last update. The layout is anything its targets depend on besides its position, like its size and the
+ * bounds of its children, which can change without the canvas doing anything, like when an image
+ * finishes decoding or a text wraps differently. Containers that only moved get their targets moved.
+ */
+public class DropContainerCache<C, T> {
+
+    private final DropTargetIndex<T> index = new DropTargetIndex<>();
+    private final Map<C, Container<T>> containers = new HashMap<>();
+    private final Set<C> invalidated = new HashSet<>();
+
+    /**
+     * Brings the targets of a container up to date.
+     *
+     * @param left      Where the container is now
+     * @param layout    What the container's targets depend on besides its position
+     * @param collector Collects the container's targets, only called if they must be collected again
+     */
+    public void update(C container, int left, int top, int[] layout, Collector<T> collector) {
+        Container<T> previous = containers.get(container);
+        if (previous != null && !invalidated.remove(container) && Arrays.equals(previous.layout, layout)) {
+            previous.moveTo(index, left, top);
+            return;
+        }
+
+        if (previous != null) {
+            previous.removeFrom(index);
+        }
+        Container<T> updated = new Container<>(left, top, layout);
+        collector.collect((target, targetLeft, targetTop, right, bottom, depth) -> {
+            updated.targets.add(target);
+            updated.bounds.add(new int[]{targetLeft, targetTop, right, bottom});
+            index.add(target, targetLeft, targetTop, right, bottom, depth);
+        });
+        containers.put(container, updated);
+        invalidated.remove(container);
+    }
+
+    /**
+     * Marks a container as needing its targets collected again on its next update.
+     */
+    public void invalidate(C container) {
+        invalidated.add(container);
+    }
+
+    /**
+     * Removes the targets of a container right away.
+     */
+    public void remove(C container) {
+        Container<T> removed = containers.remove(container);
+        if (removed != null) {
+            removed.removeFrom(index);
+        }
+    }
+
+    /**
+     * Removes the targets of all containers that aren't in {@code current}, and forgets invalidations of them.
+     */
+    public void retainAll(Collection<C> current) {
+        Set<C> retained = new HashSet<>(current);
+        for (Iterator<Map.Entry<C, Container<T>>> iterator = containers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<C, Container<T>> entry = iterator.next();
+            if (!retained.contains(entry.getKey())) {
+                entry.getValue().removeFrom(index);
+                iterator.remove();
+            }
+        }
+        invalidated.retainAll(retained);
+    }
+
+    public void clear() {
+        index.clear();
+        containers.clear();
+        invalidated.clear();
+    }
+
+    /**
+     * @return The deepest target containing the point, or {@code null} if there's none
+     */
+    public T find(int x, int y) {
+        return index.find(x, y);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public interface Collector<T> {
+        void collect(Targets<T> targets);
+    }
+
+    public interface Targets<T> {
+        /**
+         * Adds a target of the container being collected, with the same meaning of bounds and depth
+         * as {@link DropTargetIndex#add(Object, int, int, int, int, int)}.
+         */
+        void add(T target, int left, int top, int right, int bottom, int depth);
+    }
+
+    private static class Container<T> {
+        private final int[] layout;
+        private final List<T> targets = new ArrayList<>();
+        private final List<int[]> bounds = new ArrayList<>();
+        private int left;
+        private int top;
+
+        private Container(int left, int top, int[] layout) {
+            this.left = left;
+            this.top = top;
+            this.layout = layout;
+        }
+
+        private void moveTo(DropTargetIndex<T> index, int left, int top) {
+            int dx = left - this.left;
+            int dy = top - this.top;
+            if (dx == 0 && dy == 0) {
+                return;
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                int[] rect = bounds.get(i);
+                rect[0] += dx;
+                rect[1] += dy;
+                rect[2] += dx;
+                rect[3] += dy;
+                index.move(targets.get(i), rect[0], rect[1], rect[2], rect[3]);
+            }
+            this.left = left;
+            this.top = top;
+        }
+
+        private void removeFrom(DropTargetIndex<T> index) {
+            for (T target : targets) {
+                index.remove(target);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.besome.sketch.editor.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the rectangles of drop targets, so that finding the target under a touch
+ * only has to check the targets overlapping that point's cell, instead of all of them.
+ * <p>
+ * Of several targets containing a point, the deepest one wins, and of equally deep ones
+ * the one added first, like a scan over all targets in the order they were added would find.
+ * Targets can be added, moved and removed one at a time.
+ * <p>
+ * Rectangles are given as left, top, right and bottom, with right and bottom being exclusive.
+ */
+public class DropTargetIndex<T> {
+
+    /**
+     * Width and height of a cell in pixels, about the size of a small widget on the canvas
+     */
+    private static final int CELL_SIZE = 128;
+
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private int nextOrder;
+
+    /**
+     * Adds a target, or replaces it if it was added before. Empty rectangles are never found.
+     *
+     * @param depth How deep the target is, deeper targets win over ones they overlap
+     */
+    public void add(T target, int left, int top, int right, int bottom, int depth) {
+        remove(target);
+        Entry<T> entry = new Entry<>(left, top, right, bottom, depth, nextOrder++, target);
+        entries.put(target, entry);
+        addToCells(entry);
+    }
+
+    /**
+     * Moves a target, keeping its depth and its priority over equally deep targets.
+     */
+    public void move(T target, int left, int top, int right, int bottom) {
+        Entry<T> entry = entries.get(target);
+        if (entry == null) {
+            return;
+        }
+        removeFromCells(entry);
+        entry.left = left;
+        entry.top = top;
+        entry.right = right;
+        entry.bottom = bottom;
+        addToCells(entry);
+    }
+
+    public void remove(T target) {
+        Entry<T> entry = entries.remove(target);
+        if (entry != null) {
+            removeFromCells(entry);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        nextOrder = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The deepest target containing the point, or {@code null} if there's none
+     */
+    public T find(int x, int y) {
+        List<Entry<T>> cell = cells.get(cellKey(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE)));
+        if (cell == null) {
+            return null;
+        }
+        Entry<T> result = null;
+        for (Entry<T> entry : cell) {
+            if (entry.contains(x, y) && (result == null || entry.depth > result.depth
+                    || (entry.depth == result.depth && entry.order < result.order))) {
+                result = entry;
+            }
+        }
+        return result == null ? null : result.target;
+    }
+
+    private void addToCells(Entry<T> entry) {
+        if (entry.isEmpty()) {
+            return;
+        }
+        for (int cellY = Math.floorDiv(entry.top, CELL_SIZE); cellY <= Math.floorDiv(entry.bottom - 1, CELL_SIZE); cellY++) {
+            for (int cellX = Math.floorDiv(entry.left, CELL_SIZE); cellX <= Math.floorDiv(entry.right - 1, CELL_SIZE); cellX++) {
+                cells.computeIfAbsent(cellKey(cellX, cellY), key -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    private void removeFromCells(Entry<T> entry) {
+        if (entry.isEmpty()) {
+            return;
+        }
+        for (int cellY = Math.floorDiv(entry.top, CELL_SIZE); cellY <= Math.floorDiv(entry.bottom - 1, CELL_SIZE); cellY++) {
+            for (int cellX = Math.floorDiv(entry.left, CELL_SIZE); cellX <= Math.floorDiv(entry.right - 1, CELL_SIZE); cellX++) {
+                long key = cellKey(cellX, cellY);
+                List<Entry<T>> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+
+    private static class Entry<T> {
+        private final int depth;
+        private final int order;
+        private final T target;
+        private int left;
+        private int top;
+        private int right;
+        private int bottom;
+
+        private Entry(int left, int top, int right, int bottom, int depth, int order, T target) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.depth = depth;
+            this.order = order;
+            this.target = target;
+        }
+
+        private boolean isEmpty() {
+            return left >= right || top >= bottom;
+        }
+
+        private boolean contains(int x, int y) {
+            return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+        }
+    }
+}
@@ -423,6 +423,7 @@ public class ViewEditor extends RelativeLayout implements View.OnClickListener,
                             }
                             jC.a(a).a(b, next);
                         }
+                        jC.invalidateUsages(projectFileBean);
                         a(a(arrayList, true), true);
                     }
                 } else if (r instanceof IconBase icon) {
@@ -433,6 +434,7 @@ public class ViewEditor extends RelativeLayout implements View.OnClickListener,
                     if (bean.type == 3 && projectFileBean.fileType == ProjectFileBean.PROJECT_FILE_TYPE_ACTIVITY) {
                         jC.a(a).a(projectFileBean.getJavaName(), 1, bean.type, bean.id, "onClick");
                     }
+                    jC.invalidateUsages(projectFileBean);
                     a(a(bean, true), true);
                 } else if (r instanceof sy sy) {
                     ViewBean bean = sy.getBean();
@@ -464,6 +466,7 @@ public class ViewEditor extends RelativeLayout implements View.OnClickListener,
         for (int size = b2.size() - 1; size >= 0; size--) {
             jC.a(a).a(projectFileBean, b2.get(size));
         }
+        jC.invalidateUsages(projectFileBean);
         b(b2, true);
     }
 
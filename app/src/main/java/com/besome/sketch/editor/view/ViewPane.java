@@ -2,7 +2,6 @@ package com.besome.sketch.editor.view;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.NinePatch;
 import android.graphics.Rect;
@@ -66,7 +65,7 @@ import com.google.android.material.tabs.TabLayout;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -76,9 +75,7 @@ import a.a.a.lC;
 import a.a.a.sy;
 import a.a.a.ty;
 import a.a.a.wB;
-import a.a.a.wq;
 import a.a.a.yB;
-import a.a.a.zB;
 import dev.aldi.sayuti.editor.view.item.ItemBadgeView;
 import dev.aldi.sayuti.editor.view.item.ItemCircleImageView;
 import dev.aldi.sayuti.editor.view.item.ItemCodeView;
@@ -104,10 +101,9 @@ import mod.bobur.XmlToSvgConverter;
 import mod.hey.studios.util.ProjectFile;
 import pro.sketchware.R;
 import pro.sketchware.activities.resourceseditor.components.utils.ColorsEditorManager;
-import pro.sketchware.activities.resourceseditor.components.utils.StringsEditorManager;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.managers.inject.InjectRootLayoutManager;
 import pro.sketchware.utility.FilePathUtil;
-import pro.sketchware.utility.FileUtil;
 import pro.sketchware.utility.InjectAttributeHandler;
 import pro.sketchware.utility.InvokeUtil;
 import pro.sketchware.utility.PropertiesUtil;
@@ -119,7 +115,18 @@ public class ViewPane extends RelativeLayout {
     private Context context;
     private ViewGroup rootLayout;
     private int b = 99;
-    private ArrayList<ViewInfo> viewInfos = new ArrayList<>();
+    /**
+     * Drop targets of all containers, in coordinates relative to this pane.
+     * Kept between drags and only updated for containers that changed since.
+     */
+    private final DropContainerCache<View, ViewInfo> dropTargets = new DropContainerCache<>();
+    private final int[] paneLocationOnScreen = new int[2];
+    private float dropTargetsScaleX = Float.NaN;
+    private float dropTargetsScaleY = Float.NaN;
+    /**
+     * The widget being dragged, hidden and excluded from drop targets until the drag ends.
+     */
+    private View draggedView;
     private ViewInfo viewInfo;
     private TextView highlightedTextView;
     private kC resourcesManager;
@@ -149,7 +156,10 @@ public class ViewPane extends RelativeLayout {
 
     public void clearViews() {
         resetView(true);
-        viewInfos = new ArrayList<>();
+        if (draggedView != null) {
+            invalidateDropTargets(draggedView);
+            draggedView = null;
+        }
         if (rootLayout != null) {
             ((ty) rootLayout).setChildScrollEnabled(true);
         }
@@ -172,6 +182,7 @@ public class ViewPane extends RelativeLayout {
         if (rootLayout != null) {
             rootLayout.removeAllViews();
         }
+        clearDropTargets();
     }
 
     public void removeFabView() {
@@ -184,7 +195,12 @@ public class ViewPane extends RelativeLayout {
 
     public void removeView(ViewBean viewBean) {
         ViewGroup viewGroup = rootLayout.findViewWithTag(viewBean.parent);
-        viewGroup.removeView(rootLayout.findViewWithTag(viewBean.id));
+        View view = rootLayout.findViewWithTag(viewBean.id);
+        if (view != null) {
+            invalidateDropTargets(view);
+            removeDropTargets(view);
+        }
+        viewGroup.removeView(view);
         if (viewGroup instanceof ty) {
             ((ty) viewGroup).a();
         }
@@ -204,6 +220,7 @@ public class ViewPane extends RelativeLayout {
             findViewWithTag = rootLayout.findViewWithTag(viewBean.id);
         }
         updateItemView(findViewWithTag, viewBean);
+        invalidateDropTargets(findViewWithTag);
         return (sy) findViewWithTag;
     }
 
@@ -213,6 +230,12 @@ public class ViewPane extends RelativeLayout {
             findViewWithTag = findViewWithTag(viewBean.id);
         }
         String str = viewBean.preParent;
+        if ((str != null && !str.isEmpty() && !viewBean.parent.equals(viewBean.preParent))
+                || viewBean.index != viewBean.preIndex) {
+            // Targets of the moved view end up at other depths, and its old parent's slots change
+            invalidateDropTargets(findViewWithTag);
+            removeDropTargets(findViewWithTag);
+        }
         if (str != null && !str.isEmpty() && !viewBean.parent.equals(viewBean.preParent)) {
             ViewGroup viewGroup = rootLayout.findViewWithTag(viewBean.preParent);
             viewGroup.removeView(findViewWithTag);
@@ -239,11 +262,13 @@ public class ViewPane extends RelativeLayout {
     public void addRootLayout(ViewBean viewBean) {
         viewInfo = null;
         if (rootLayout != null) {
-            if (rootLayout instanceof ItemLinearLayout linearLayout) {
-                a(viewBean, linearLayout);
-            } else {
-                addDroppableForViewGroup(viewBean, rootLayout);
+            if (viewBean != null) {
+                draggedView = rootLayout.findViewWithTag(viewBean.id);
+                if (draggedView != null) {
+                    invalidateDropTargets(draggedView);
+                }
             }
+            updateDropTargets(viewBean);
             ((ty) rootLayout).setChildScrollEnabled(false);
         }
     }
@@ -332,6 +357,7 @@ public class ViewPane extends RelativeLayout {
         if (rootView instanceof sy sy) {
             sy.setFixed(true);
         }
+        clearDropTargets();
         if (rootLayout != null) {
             removeView(rootLayout);
         } else {
@@ -383,6 +409,7 @@ public class ViewPane extends RelativeLayout {
             if (viewBean.getClassInfo().b("FloatingActionButton") && (imageBean = viewBean.image) != null && (str = imageBean.resName) != null && !str.isEmpty()) {
                 try {
                     FloatingActionButton fab = (FloatingActionButton) view;
+                    DesignImageLoader.getInstance().cancel(fab, DesignImageLoader.PURPOSE_IMAGE);
                     if (resourcesManager.h(viewBean.image.resName) == ProjectResourceBean.PROJECT_RES_TYPE_RESOURCE) {
                         int resourceId = getContext().getResources().getIdentifier(viewBean.image.resName, "drawable", getContext().getPackageName());
                         if (resourceId != 0) {
@@ -406,16 +433,8 @@ public class ViewPane extends RelativeLayout {
                                     }
                                 }, fpu.getSvgFullPath(sc_id, viewBean.image.resName), scaleFactor);
                             } else {
-                                Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-                                if (bitmap != null) {
-                                    Bitmap scaledBitmap = Bitmap.createScaledBitmap(
-                                            bitmap,
-                                            bitmap.getWidth() * scaleFactor,
-                                            bitmap.getHeight() * scaleFactor,
-                                            true
-                                    );
-                                    fab.setImageBitmap(scaledBitmap);
-                                }
+                                DesignImageLoader.getInstance().loadBitmap(fab, DesignImageLoader.PURPOSE_IMAGE, imagePath, scaleFactor,
+                                        getMaxImageWidth(fab), getMaxImageHeight(fab), fab::setImageBitmap);
                             }
                         } else {
                             try {
@@ -456,6 +475,7 @@ public class ViewPane extends RelativeLayout {
         view.setScaleY(viewBean.scaleY);
         view.setEnabled(viewBean.enabled != 0);
         String backgroundResource = viewBean.layout.backgroundResource;
+        DesignImageLoader.getInstance().cancel(view, DesignImageLoader.PURPOSE_BACKGROUND);
         if (backgroundResource != null) {
             try {
                 if (resourcesManager.h(backgroundResource) == ProjectResourceBean.PROJECT_RES_TYPE_RESOURCE) {
@@ -463,17 +483,19 @@ public class ViewPane extends RelativeLayout {
                 } else {
                     String backgroundRes = resourcesManager.f(viewBean.layout.backgroundResource);
                     if (backgroundRes.endsWith(".9.png")) {
-                        Bitmap decodedBitmap = zB.a(backgroundRes);
-                        byte[] ninePatchChunk = decodedBitmap.getNinePatchChunk();
-                        if (NinePatch.isNinePatchChunk(ninePatchChunk)) {
-                            view.setBackground(new NinePatchDrawable(getResources(), decodedBitmap, ninePatchChunk, new Rect(), null));
-                        } else {
-                            view.setBackground(new BitmapDrawable(getResources(), backgroundRes));
-                        }
+                        DesignImageLoader.getInstance().loadNinePatch(view, DesignImageLoader.PURPOSE_BACKGROUND, backgroundRes, decodedBitmap -> {
+                            byte[] ninePatchChunk = decodedBitmap.getNinePatchChunk();
+                            if (NinePatch.isNinePatchChunk(ninePatchChunk)) {
+                                view.setBackground(new NinePatchDrawable(getResources(), decodedBitmap, ninePatchChunk, new Rect(), null));
+                            } else {
+                                view.setBackground(new BitmapDrawable(getResources(), decodedBitmap));
+                            }
+                        });
                     } else {
-                        Bitmap decodeFile2 = BitmapFactory.decodeFile(backgroundRes);
                         int round2 = Math.round(getResources().getDisplayMetrics().density / 2.0f);
-                        view.setBackground(new BitmapDrawable(getResources(), Bitmap.createScaledBitmap(decodeFile2, decodeFile2.getWidth() * round2, decodeFile2.getHeight() * round2, true)));
+                        DesignImageLoader.getInstance().loadBitmap(view, DesignImageLoader.PURPOSE_BACKGROUND, backgroundRes, round2,
+                                getMaxImageWidth(view), getMaxImageHeight(view),
+                                bitmap -> view.setBackground(new BitmapDrawable(getResources(), bitmap)));
                     }
                 }
             } catch (Exception e) {
@@ -510,6 +532,7 @@ public class ViewPane extends RelativeLayout {
             updateEditText((EditText) view, viewBean);
         }
         if (classInfo.a("ImageView")) {
+            DesignImageLoader.getInstance().cancel(view, DesignImageLoader.PURPOSE_IMAGE);
             if (resourcesManager.h(viewBean.image.resName) == ProjectResourceBean.PROJECT_RES_TYPE_RESOURCE) {
                 ((ImageView) view).setImageResource(getContext().getResources().getIdentifier(viewBean.image.resName, "drawable", getContext().getPackageName()));
             } else if (viewBean.image.resName.equals("default_image")) {
@@ -524,8 +547,19 @@ public class ViewPane extends RelativeLayout {
                             FilePathUtil fpu = new FilePathUtil();
                             svgUtils.loadScaledSvgIntoImageView((ImageView) view, fpu.getSvgFullPath(sc_id, viewBean.image.resName), round3);
                         } else {
-                            Bitmap decodeFile3 = BitmapFactory.decodeFile(imagelocation);
-                            ((ImageView) view).setImageBitmap(Bitmap.createScaledBitmap(decodeFile3, decodeFile3.getWidth() * round3, decodeFile3.getHeight() * round3, true));
+                            ImageView imageView = (ImageView) view;
+                            DesignImageLoader.getInstance().loadBitmap(imageView, DesignImageLoader.PURPOSE_IMAGE, imagelocation, round3,
+                                    getMaxImageWidth(imageView), getMaxImageHeight(imageView), new DesignImageLoader.Callback() {
+                                        @Override
+                                        public void onLoaded(Bitmap bitmap) {
+                                            imageView.setImageBitmap(bitmap);
+                                        }
+
+                                        @Override
+                                        public void onFailed() {
+                                            imageView.setImageResource(R.drawable.default_image);
+                                        }
+                                    });
                         }
                     } else {
                         XmlToSvgConverter xmlToSvgConverter = new XmlToSvgConverter();
@@ -771,18 +805,152 @@ public class ViewPane extends RelativeLayout {
     }
 
     private ViewInfo getViewInfo(int x, int y) {
-        ViewInfo result = null;
-        int highestPriority = -1;
-        for (ViewInfo viewInfo : viewInfos) {
-            if (viewInfo.getRect().contains(x, y) && highestPriority < viewInfo.getDepth()) {
-                highestPriority = viewInfo.getDepth();
-                result = viewInfo;
+        return dropTargets.find(x - paneLocationOnScreen[0], y - paneLocationOnScreen[1]);
+    }
+
+    /**
+     * Brings drop targets up to date with the views on the pane. Only containers that are new, got
+     * invalidated or whose layout changed get their targets collected again, ones that merely moved get
+     * their targets moved, and ones that are gone get their targets removed.
+     *
+     * @param dragged The widget being dragged, which isn't a drop target, or <code>null</code>
+     */
+    private void updateDropTargets(ViewBean dragged) {
+        if (dropTargetsScaleX != getScaleX() || dropTargetsScaleY != getScaleY()) {
+            clearDropTargets();
+            dropTargetsScaleX = getScaleX();
+            dropTargetsScaleY = getScaleY();
+        }
+        getLocationOnScreen(paneLocationOnScreen);
+
+        List<ViewGroup> containers = new ArrayList<>();
+        containers.add(rootLayout);
+        collectDropContainers(dragged, rootLayout, containers);
+        dropTargets.retainAll(containers);
+        for (ViewGroup container : containers) {
+            updateDropTargets(dragged, container);
+        }
+    }
+
+    private void updateDropTargets(ViewBean dragged, ViewGroup container) {
+        int[] locationOnScreen = new int[2];
+        container.getLocationOnScreen(locationOnScreen);
+        dropTargets.update(container, locationOnScreen[0] - paneLocationOnScreen[0],
+                locationOnScreen[1] - paneLocationOnScreen[1], getDropLayout(dragged, container), collected -> {
+                    List<ViewInfo> targets = new ArrayList<>();
+                    if (container instanceof ItemLinearLayout linearLayout) {
+                        collectLinearLayoutTargets(dragged, linearLayout, targets);
+                    } else if (container == rootLayout || container instanceof ItemRelativeLayout) {
+                        addDroppableForViewGroup(container, targets);
+                    } else {
+                        collectWrapperTargets(dragged, container, targets);
+                    }
+                    for (ViewInfo target : targets) {
+                        Rect rect = target.getRect();
+                        collected.add(target, rect.left - paneLocationOnScreen[0], rect.top - paneLocationOnScreen[1],
+                                rect.right - paneLocationOnScreen[0], rect.bottom - paneLocationOnScreen[1], target.getDepth());
+                    }
+                });
+    }
+
+    /**
+     * @return Everything a container's drop targets depend on besides its position: its size, padding and
+     * gravity, and which of its children are drop targets and their bounds and margins. Children can change
+     * bounds without the pane knowing, like an image that finished decoding or a text that got re-laid out.
+     */
+    private static int[] getDropLayout(ViewBean dragged, ViewGroup container) {
+        int childCount = container.getChildCount();
+        int[] layout = new int[8 + childCount * 11];
+        layout[0] = container.getWidth();
+        layout[1] = container.getHeight();
+        layout[2] = container.getPaddingLeft();
+        layout[3] = container.getPaddingTop();
+        layout[4] = container.getPaddingRight();
+        layout[5] = container.getPaddingBottom();
+        if (container instanceof ItemLinearLayout linearLayout) {
+            layout[6] = linearLayout.getOrientation();
+            layout[7] = linearLayout.getLayoutGravity();
+        }
+        for (int i = 0; i < childCount; i++) {
+            View child = container.getChildAt(i);
+            int offset = 8 + i * 11;
+            layout[offset] = isDropTargetChild(dragged, child) ? 1 : 0;
+            layout[offset + 1] = child.getLeft();
+            layout[offset + 2] = child.getTop();
+            layout[offset + 3] = child.getRight();
+            layout[offset + 4] = child.getBottom();
+            layout[offset + 5] = child.getMeasuredWidth();
+            layout[offset + 6] = child.getMeasuredHeight();
+            if (child.getLayoutParams() instanceof ViewGroup.MarginLayoutParams layoutParams) {
+                layout[offset + 7] = layoutParams.leftMargin;
+                layout[offset + 8] = layoutParams.topMargin;
+                layout[offset + 9] = layoutParams.rightMargin;
+                layout[offset + 10] = layoutParams.bottomMargin;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Marks a view and all containers it's in as needing their drop targets collected again,
+     * as their slots depend on the view's size and position.
+     */
+    private void invalidateDropTargets(View view) {
+        View current = view;
+        while (current != null && current != this) {
+            dropTargets.invalidate(current);
+            if (current == rootLayout || !(current.getParent() instanceof View parent)) {
+                break;
+            }
+            current = parent;
+        }
+    }
+
+    /**
+     * Removes the drop targets of a view and of all containers inside of it.
+     */
+    private void removeDropTargets(View view) {
+        dropTargets.remove(view);
+        if (view instanceof ViewGroup viewGroup) {
+            for (int i = 0; i < viewGroup.getChildCount(); i++) {
+                removeDropTargets(viewGroup.getChildAt(i));
             }
         }
-        return result;
     }
 
-    private void a(ViewBean view, ItemLinearLayout linearLayout) {
+    private void clearDropTargets() {
+        dropTargets.clear();
+    }
+
+    private static boolean isDropTargetChild(ViewBean dragged, View child) {
+        return child != null && child.getTag() != null
+                && (dragged == null || dragged.id == null || !child.getTag().equals(dragged.id))
+                && child.getVisibility() == View.VISIBLE;
+    }
+
+    /**
+     * Adds all containers inside of {@code viewGroup} that can have drop targets to {@code containers},
+     * parents before their children.
+     */
+    private void collectDropContainers(ViewBean dragged, ViewGroup viewGroup, List<ViewGroup> containers) {
+        for (int i = 0; i < viewGroup.getChildCount(); i++) {
+            View child = viewGroup.getChildAt(i);
+            if (isDropTargetChild(dragged, child)
+                    && (child instanceof ItemLinearLayout
+                    || child instanceof ItemHorizontalScrollView
+                    || child instanceof ItemVerticalScrollView
+                    || child instanceof ItemCardView
+                    || child instanceof ItemRelativeLayout)) {
+                containers.add((ViewGroup) child);
+                collectDropContainers(dragged, (ViewGroup) child, containers);
+            }
+        }
+    }
+
+    /**
+     * Collects the drop targets of a LinearLayout itself and of the slots between its children.
+     */
+    private void collectLinearLayoutTargets(ViewBean view, ItemLinearLayout linearLayout, List<ViewInfo> targets) {
         float scaleX = getScaleX();
         float scaleY = getScaleY();
         int[] locationOnScreen = new int[2];
@@ -791,7 +959,7 @@ public class ViewPane extends RelativeLayout {
         int horizontalGravity = layoutGravity & Gravity.FILL_HORIZONTAL;
         int verticalGravity = layoutGravity & Gravity.FILL_VERTICAL;
         Rect parentRect = new Rect(locationOnScreen[0], locationOnScreen[1], ((int) (linearLayout.getWidth() * getScaleX())) + locationOnScreen[0], ((int) (linearLayout.getHeight() * getScaleY())) + locationOnScreen[1]);
-        addViewInfo(parentRect, linearLayout, -1, calculateViewDepth(linearLayout));
+        addViewInfo(targets, parentRect, linearLayout, -1, calculateViewDepth(linearLayout));
 
         int parentWidth = (int) (linearLayout.getMeasuredWidth() * scaleX);
         int parentHeight = (int) (linearLayout.getMeasuredHeight() * scaleY);
@@ -801,7 +969,7 @@ public class ViewPane extends RelativeLayout {
         int childIndex = 0;
         for (int i = 0; i < linearLayout.getChildCount(); i++) {
             View child = linearLayout.getChildAt(i);
-            if (child != null && child.getTag() != null && (view == null || view.id == null || !child.getTag().equals(view.id)) && child.getVisibility() == View.VISIBLE) {
+            if (isDropTargetChild(view, child)) {
                 int[] childLocationOnScreen = new int[2];
                 linearLayout.getLocationOnScreen(childLocationOnScreen);
                 Rect childRect = new Rect();
@@ -819,6 +987,7 @@ public class ViewPane extends RelativeLayout {
                             childTopY = childLocationOnScreen[1] - (int) (topMargin * scaleY);
                             int parentLeft = parentRect.left;
                             addViewInfo(
+                                    targets,
                                     new Rect(
                                             parentLeft,
                                             paddingTop,
@@ -864,6 +1033,7 @@ public class ViewPane extends RelativeLayout {
                             int childStartX = childLocationOnScreen[0] - (int) (leftMargin * scaleX);
                             int parentTop = parentRect.top;
                             addViewInfo(
+                                    targets,
                                     new Rect(
                                             paddingLeft,
                                             parentTop,
@@ -901,19 +1071,7 @@ public class ViewPane extends RelativeLayout {
                     }
                 }
                 addViewInfo(
-                        childRect, linearLayout, childIndex, calculateViewDepth(linearLayout) + 1);
-
-                if (child instanceof ItemLinearLayout) {
-                    a(view, (ItemLinearLayout) child);
-                } else if (child instanceof ItemHorizontalScrollView) {
-                    a(view, (ViewGroup) child);
-                } else if (child instanceof ItemVerticalScrollView) {
-                    a(view, (ViewGroup) child);
-                } else if (child instanceof ItemCardView) {
-                    a(view, (ViewGroup) child);
-                } else if (child instanceof ItemRelativeLayout relativeLayout) {
-                    addDroppableForViewGroup(view, relativeLayout);
-                }
+                        targets, childRect, linearLayout, childIndex, calculateViewDepth(linearLayout) + 1);
                 childIndex++;
             }
 
@@ -921,69 +1079,44 @@ public class ViewPane extends RelativeLayout {
         }
     }
 
-    private void addDroppableForViewGroup(ViewBean viewBean, ViewGroup viewGroup) {
+    /**
+     * Collects the drop target of a container that takes drops anywhere, like a RelativeLayout.
+     */
+    private void addDroppableForViewGroup(ViewGroup viewGroup, List<ViewInfo> targets) {
         int[] viewLocationOnScreen = new int[2];
         viewGroup.getLocationOnScreen(viewLocationOnScreen);
         int xCoordinate = viewLocationOnScreen[0];
         int yCoordinate = viewLocationOnScreen[1];
-        addViewInfo(new Rect(xCoordinate, yCoordinate,
+        addViewInfo(targets, new Rect(xCoordinate, yCoordinate,
                         ((int) (viewGroup.getWidth() * getScaleX())) + xCoordinate,
                         ((int) (viewGroup.getHeight() * getScaleY())) + yCoordinate),
                 viewGroup, -1, calculateViewDepth(viewGroup)
         );
-        for (int i = 0; i < viewGroup.getChildCount(); i++) {
-            View childAt = viewGroup.getChildAt(i);
-            if (childAt != null && childAt.getTag() != null && ((viewBean == null || viewBean.id == null || !childAt.getTag().equals(viewBean.id)) && childAt.getVisibility() == View.VISIBLE)) {
-                if (childAt instanceof ItemLinearLayout) {
-                    a(viewBean, (ItemLinearLayout) childAt);
-                } else if (childAt instanceof ItemHorizontalScrollView) {
-                    a(viewBean, (ViewGroup) childAt);
-                } else if (childAt instanceof ItemVerticalScrollView) {
-                    a(viewBean, (ViewGroup) childAt);
-                } else if (childAt instanceof ItemCardView) {
-                    a(viewBean, (ViewGroup) childAt);
-                } else if (childAt instanceof ItemRelativeLayout relativeLayout) {
-                    addDroppableForViewGroup(viewBean, relativeLayout);
-                }
-            }
-        }
     }
 
-    private void a(ViewBean viewBean, ViewGroup viewGroup) {
-        int childCount = viewGroup.getChildCount();
-        int index = 0;
-        for (int i = 0; i < childCount; i++) {
-            View childAt = viewGroup.getChildAt(i);
-            if (childAt != null && childAt.getTag() != null && ((viewBean == null || viewBean.id == null || !childAt.getTag().equals(viewBean.id)) && childAt.getVisibility() == View.VISIBLE)) {
-                index++;
-                if (childAt instanceof ItemLinearLayout) {
-                    a(viewBean, (ItemLinearLayout) childAt);
-                } else if (childAt instanceof ItemHorizontalScrollView) {
-                    a(viewBean, (ViewGroup) childAt);
-                } else if (childAt instanceof ItemVerticalScrollView) {
-                    a(viewBean, (ViewGroup) childAt);
-                } else if (childAt instanceof ItemCardView) {
-                    a(viewBean, (ViewGroup) childAt);
-                } else if (childAt instanceof ItemRelativeLayout relativeLayout) {
-                    addDroppableForViewGroup(viewBean, relativeLayout);
-                }
+    /**
+     * Collects the drop target of a container that wraps a single child, like a ScrollView, which only
+     * takes drops while it's empty.
+     */
+    private void collectWrapperTargets(ViewBean viewBean, ViewGroup viewGroup, List<ViewInfo> targets) {
+        for (int i = 0; i < viewGroup.getChildCount(); i++) {
+            if (isDropTargetChild(viewBean, viewGroup.getChildAt(i))) {
+                return;
             }
         }
-        if (index < 1) {
-            int[] viewLocationOnScreen = new int[2];
-            viewGroup.getLocationOnScreen(viewLocationOnScreen);
-            int xCoordinate = viewLocationOnScreen[0];
-            int yCoordinate = viewLocationOnScreen[1];
-            addViewInfo(new Rect(xCoordinate, yCoordinate,
-                            ((int) (viewGroup.getWidth() * getScaleX())) + xCoordinate,
-                            ((int) (viewGroup.getHeight() * getScaleY())) + yCoordinate),
-                    viewGroup, -1, calculateViewDepth(viewGroup)
-            );
-        }
+        int[] viewLocationOnScreen = new int[2];
+        viewGroup.getLocationOnScreen(viewLocationOnScreen);
+        int xCoordinate = viewLocationOnScreen[0];
+        int yCoordinate = viewLocationOnScreen[1];
+        addViewInfo(targets, new Rect(xCoordinate, yCoordinate,
+                        ((int) (viewGroup.getWidth() * getScaleX())) + xCoordinate,
+                        ((int) (viewGroup.getHeight() * getScaleY())) + yCoordinate),
+                viewGroup, -1, calculateViewDepth(viewGroup)
+        );
     }
 
-    private void addViewInfo(Rect rect, View view, int i, int i2) {
-        viewInfos.add(new ViewInfo(rect, view, i, i2));
+    private void addViewInfo(List<ViewInfo> targets, Rect rect, View view, int i, int i2) {
+        targets.add(new ViewInfo(rect, view, i, i2));
     }
 
     public void addViewAndUpdateIndex(View view) {
@@ -991,6 +1124,7 @@ public class ViewPane extends RelativeLayout {
         if (rootLayout != null) {
             ViewGroup viewGroup = rootLayout.findViewWithTag(bean.parent);
             viewGroup.addView(view, bean.index);
+            invalidateDropTargets(view);
             if (bean.parentType == ViewBean.VIEW_TYPE_LAYOUT_RELATIVE) {
                 updateRelativeParentViews(view, new InjectAttributeHandler(bean));
             }
@@ -1018,6 +1152,28 @@ public class ViewPane extends RelativeLayout {
         return defaultValue;
     }
 
+    /**
+     * @return A View's fixed width in pixels, or the screen's width for Views sized by content or parent
+     */
+    private int getMaxImageWidth(View view) {
+        ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+        if (layoutParams != null && layoutParams.width > 0) {
+            return layoutParams.width;
+        }
+        return getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /**
+     * @return A View's fixed height in pixels, or the screen's height for Views sized by content or parent
+     */
+    private int getMaxImageHeight(View view) {
+        ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+        if (layoutParams != null && layoutParams.height > 0) {
+            return layoutParams.height;
+        }
+        return getResources().getDisplayMetrics().heightPixels;
+    }
+
     private void updateLayout(View view, ViewBean viewBean) {
         LayoutBean layoutBean = viewBean.layout;
         int width = layoutBean.width;
@@ -1292,22 +1448,16 @@ public class ViewPane extends RelativeLayout {
         if (sc_id == null) {
             return key;
         }
-        String filePath = wq.b(sc_id) + "/files/resource/values/strings.xml";
-
-        ArrayList<HashMap<String, Object>> stringsListMap = new ArrayList<>();
+        ValuesResourceRepository repository = ValuesResourceRepository.getInstance(sc_id);
+        ValuesResourceRepository.ValuesFile strings = repository.getFile(repository.getFilePath("values", "strings.xml"));
 
-        StringsEditorManager stringsEditorManager = new StringsEditorManager();
-        stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFileIfExist(filePath), stringsListMap);
-
-        if (key.equals("@string/app_name") && !stringsEditorManager.isXmlStringsExist(stringsListMap, "app_name")) {
+        if (key.equals("@string/app_name") && strings.getResource("string", "app_name") == null) {
             return yB.c(lC.b(sc_id), "my_app_name");
         }
 
-        for (HashMap<String, Object> map : stringsListMap) {
-            String keyValue = stringsStart + map.get("key").toString().trim();
-            if (key.equals(keyValue)) {
-                return map.get("text").toString();
-            }
+        ValuesResourceRepository.ValueResource string = strings.getResource("string", key.substring(stringsStart.length()));
+        if (string != null) {
+            return string.getValue().replace("\\", "");
         }
 
         return key;
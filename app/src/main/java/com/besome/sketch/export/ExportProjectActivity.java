@@ -52,7 +52,6 @@ import mod.jbk.build.BuildProgressReceiver;
 import mod.jbk.build.BuiltInLibraries;
 import mod.jbk.build.compiler.bundle.AppBundleCompiler;
 import mod.jbk.export.GetKeyStoreCredentialsDialog;
-import mod.jbk.util.TestkeySignBridge;
 import pro.sketchware.R;
 import pro.sketchware.utility.FilePathUtil;
 import pro.sketchware.utility.FileUtil;
@@ -543,7 +542,7 @@ public class ExportProjectActivity extends BaseAppCompatActivity {
 
                 /* Check built-in libraries */
                 publishProgress("Extracting built-in libraries...");
-                BuiltInLibraries.extractCompileAssets(this);
+                BuiltInLibraries.extractCompileAssets(builder.getRequiredBuiltInLibraryNames(), this);
                 if (canceled) {
                     cancel(true);
                     return;
@@ -640,6 +639,9 @@ public class ExportProjectActivity extends BaseAppCompatActivity {
                     } else {
                         FileUtil.copyFile(createdBundlePath, getCorrectResultFilename(outputPath));
                     }
+                } else if (signWithTestkey) {
+                    publishProgress("Building APK...");
+                    builder.buildSignedApk(getCorrectResultFilename(builder.yq.releaseApkPath));
                 } else {
                     publishProgress("Building APK...");
                     builder.buildApk();
@@ -657,9 +659,7 @@ public class ExportProjectActivity extends BaseAppCompatActivity {
 
                     publishProgress("Signing APK...");
                     String outputLocation = getCorrectResultFilename(builder.yq.releaseApkPath);
-                    if (signWithTestkey) {
-                        TestkeySignBridge.signWithTestkey(builder.yq.unsignedAlignedApkPath, outputLocation);
-                    } else if (isResultJarSigningEnabled()) {
+                    if (isResultJarSigningEnabled()) {
                         Security.addProvider(new BouncyCastleProvider());
                         CustomKeySigner.signZip(
                                 new ZipSigner(),
@@ -6,7 +6,10 @@ import com.google.gson.Gson;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import mod.hey.studios.util.Helper;
 import mod.hilal.saif.blocks.BlocksHandler;
@@ -19,16 +22,65 @@ public class ExtraBlockFile {
     public static final File EXTRA_BLOCKS_PALETTE_FILE = new File(Environment.getExternalStorageDirectory(),
             ".sketchware/resources/block/My Block/palette.json");
 
-    public static ArrayList<HashMap<String, Object>> buildInBlocks = new ArrayList<>();
+    /**
+     * Built-in blocks as of the last time blocks got parsed. Replaced as a whole instead of being
+     * refilled, so that it's safe to read while source code gets generated on several threads.
+     */
+    public static volatile ArrayList<HashMap<String, Object>> buildInBlocks = new ArrayList<>();
+
+    /**
+     * Parsed custom and built-in blocks, replaced as a whole once {@link #EXTRA_BLOCKS_DATA_FILE} changes.
+     */
+    private static volatile ParsedBlocks parsedBlocks;
 
     public static ArrayList<HashMap<String, Object>> getExtraBlockData() {
-        ArrayList<HashMap<String, Object>> extraBlocks = new Gson().fromJson(getExtraBlockFile(), Helper.TYPE_MAP_LIST);
+        return new ArrayList<>(getParsedBlocks().blocks);
+    }
+
+    /**
+     * @return Custom blocks followed by built-in blocks, parsed only again if {@link #EXTRA_BLOCKS_DATA_FILE}
+     * changed since. The same list is returned until then, and it must not be modified.
+     */
+    public static List<HashMap<String, Object>> getCachedExtraBlockData() {
+        return getParsedBlocks().blocks;
+    }
+
+    /**
+     * @return Custom and built-in blocks keyed by name, with custom blocks taking precedence over built-in
+     * ones of the same name. Must not be modified.
+     * @see #getCachedExtraBlockData()
+     */
+    public static Map<String, HashMap<String, Object>> getExtraBlocksByName() {
+        return getParsedBlocks().blocksByName;
+    }
 
-        buildInBlocks.clear();
-        BlocksHandler.builtInBlocks(buildInBlocks);
-        extraBlocks.addAll(buildInBlocks);
+    /**
+     * Makes the next call parse {@link #EXTRA_BLOCKS_DATA_FILE} again, even if it seems unchanged.
+     */
+    public static void invalidate() {
+        parsedBlocks = null;
+    }
+
+    /**
+     * @return Size and modification time of a file, to tell if it changed
+     */
+    public static String getFileStamp(File file) {
+        return file.exists() ? file.length() + ":" + file.lastModified() : "";
+    }
 
-        return extraBlocks;
+    private static ParsedBlocks getParsedBlocks() {
+        String stamp = getFileStamp(EXTRA_BLOCKS_DATA_FILE);
+        ParsedBlocks parsed = parsedBlocks;
+        if (parsed == null || !parsed.stamp.equals(stamp)) {
+            synchronized (ExtraBlockFile.class) {
+                parsed = parsedBlocks;
+                if (parsed == null || !parsed.stamp.equals(stamp)) {
+                    parsed = new ParsedBlocks(stamp);
+                    parsedBlocks = parsed;
+                }
+            }
+        }
+        return parsed;
     }
 
     /**
@@ -52,4 +104,30 @@ public class ExtraBlockFile {
     public static String getExtraBlockJson() {
         return "[]";
     }
+
+    private static class ParsedBlocks {
+        private final String stamp;
+        private final List<HashMap<String, Object>> blocks;
+        private final Map<String, HashMap<String, Object>> blocksByName;
+
+        private ParsedBlocks(String stamp) {
+            this.stamp = stamp;
+            ArrayList<HashMap<String, Object>> extraBlocks = new Gson().fromJson(getExtraBlockFile(), Helper.TYPE_MAP_LIST);
+
+            ArrayList<HashMap<String, Object>> builtInBlocks = new ArrayList<>();
+            BlocksHandler.builtInBlocks(builtInBlocks);
+            buildInBlocks = builtInBlocks;
+            extraBlocks.addAll(builtInBlocks);
+
+            HashMap<String, HashMap<String, Object>> byName = new HashMap<>();
+            for (HashMap<String, Object> block : extraBlocks) {
+                Object name = block.get("name");
+                if (name != null) {
+                    byName.putIfAbsent(name.toString(), block);
+                }
+            }
+            blocks = Collections.unmodifiableList(extraBlocks);
+            blocksByName = Collections.unmodifiableMap(byName);
+        }
+    }
 }
@@ -405,7 +405,8 @@ public class ExtraPaletteBlock {
                 String filePath = FileUtil.getExternalStorageDir().concat("/.sketchware/data/").concat(sc_id.concat("/files/resource/values/strings.xml"));
                 ArrayList<HashMap<String, Object>> StringsListMap = new ArrayList<>();
                 StringsEditorManager stringsEditorManager = new StringsEditorManager();
-                stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFileIfExist(filePath), StringsListMap);
+                stringsEditorManager.sc_id = sc_id;
+                stringsEditorManager.loadStringsFile(filePath, StringsListMap);
 
                 logicEditor.b("Add new String", "XmlString.Add");
                 logicEditor.b("Remove String(s)", "XmlString.remove");
@@ -32,6 +32,7 @@ import java.io.OutputStream;
 import java.io.UTFDataFormatException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractList;
@@ -124,6 +125,23 @@ public final class Dex {
         }
     }
 
+    /**
+     * Creates a new read-only dex backed by a memory mapping of the dex file
+     * {@code file}, without copying it to the heap. Only the parts that are
+     * actually read get paged in. It is an error to modify {@code file} while
+     * the returned dex is in use.
+     */
+    public static Dex map(File file) throws IOException {
+        if (!file.getName().endsWith(".dex")) {
+            throw new DexException("Can only map dex files: " + file);
+        }
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel channel = in.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return new Dex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
     /**
      * It is the caller's responsibility to close {@code in}.
      */
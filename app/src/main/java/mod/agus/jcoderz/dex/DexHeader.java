@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The ID counts and section sizes of a dex file, read from its header only.
+ * Unlike {@link Dex}, this never reads more than the first
+ * {@link SizeOf#HEADER_ITEM} bytes of the file.
+ */
+public final class DexHeader {
+    public final int apiLevel;
+    public final int fileSize;
+    public final int stringIdsSize;
+    public final int typeIdsSize;
+    public final int protoIdsSize;
+    public final int fieldIdsSize;
+    public final int methodIdsSize;
+    public final int classDefsSize;
+    public final int dataSize;
+
+    private DexHeader(ByteBuffer header) {
+        byte[] magic = new byte[8];
+        header.get(magic);
+        if (!DexFormat.isSupportedDexMagic(magic)) {
+            throw new DexException(String.format("Unexpected magic: [0x%02x, 0x%02x, 0x%02x, 0x%02x, "
+                    + "0x%02x, 0x%02x, 0x%02x, 0x%02x]",
+                    magic[0], magic[1], magic[2], magic[3],
+                    magic[4], magic[5], magic[6], magic[7]));
+        }
+        apiLevel = DexFormat.magicToApi(magic);
+
+        header.position(header.position() + SizeOf.UINT + SizeOf.SIGNATURE); // checksum, signature
+        fileSize = header.getInt();
+        int headerSize = header.getInt();
+        if (headerSize != SizeOf.HEADER_ITEM) {
+            throw new DexException("Unexpected header: 0x" + Integer.toHexString(headerSize));
+        }
+        int endianTag = header.getInt();
+        if (endianTag != DexFormat.ENDIAN_TAG) {
+            throw new DexException("Unexpected endian tag: 0x" + Integer.toHexString(endianTag));
+        }
+        header.position(header.position() + 3 * SizeOf.UINT); // link_size, link_off, map_off
+        stringIdsSize = readSize(header);
+        typeIdsSize = readSize(header);
+        protoIdsSize = readSize(header);
+        fieldIdsSize = readSize(header);
+        methodIdsSize = readSize(header);
+        classDefsSize = readSize(header);
+        dataSize = readSize(header);
+    }
+
+    /**
+     * Reads the header of the dex file {@code file}.
+     */
+    public static DexHeader read(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < SizeOf.HEADER_ITEM) {
+                throw new DexException("Too short to be a dex file: " + file);
+            }
+            byte[] header = new byte[SizeOf.HEADER_ITEM];
+            in.readFully(header);
+            return new DexHeader(ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Reads a size, skipping the offset that follows it.
+     */
+    private static int readSize(ByteBuffer header) {
+        int size = header.getInt();
+        header.getInt();
+        return size;
+    }
+}
@@ -256,6 +256,21 @@ public class Main {
         Type.clearInternTable();
     }
 
+    /**
+     * Clears the intern tables only once more than {@code maxTypes} types
+     * are interned. Tools that run dx repeatedly in the same process can
+     * call this instead of {@link #clearInternTables()} to keep reusing
+     * the types, constants and registers interned by earlier runs, while
+     * still bounding the memory they take.
+     *
+     * @param maxTypes the number of interned types to keep at most
+     */
+    public static void trimInternTables(int maxTypes) {
+        if (Type.getInternTableSize() > maxTypes) {
+            clearInternTables();
+        }
+    }
+
     /**
      * Run and return a result code.
      * @param arguments the data + parameters for the conversion
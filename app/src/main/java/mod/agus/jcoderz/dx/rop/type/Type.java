@@ -874,4 +874,11 @@ public final class Type implements TypeBearer, Comparable<Type> {
         internTable.clear();
         initInterns();
     }
+
+    /**
+     * @return the number of currently interned types
+     */
+    public static int getInternTableSize() {
+        return internTable.size();
+    }
 }
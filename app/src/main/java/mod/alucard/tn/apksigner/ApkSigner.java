@@ -8,9 +8,18 @@ import androidx.annotation.Nullable;
 import com.android.apksigner.ApkSignerTool;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -21,6 +30,23 @@ public class ApkSigner {
 
     private static final File EXTRACTED_TESTKEY_FILES_DIRECTORY = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, "testkey");
 
+    /**
+     * @return testkey's private key, for signing APKs without apksigner's command line tool
+     */
+    public static PrivateKey loadTestKeyPrivateKey() throws IOException, GeneralSecurityException {
+        byte[] encodedKey = Files.readAllBytes(new File(EXTRACTED_TESTKEY_FILES_DIRECTORY, "testkey.pk8").toPath());
+        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(encodedKey));
+    }
+
+    /**
+     * @return testkey's certificate, for signing APKs without apksigner's command line tool
+     */
+    public static X509Certificate loadTestKeyCertificate() throws IOException, GeneralSecurityException {
+        try (InputStream in = new FileInputStream(new File(EXTRACTED_TESTKEY_FILES_DIRECTORY, "testkey.x509.pem"))) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+        }
+    }
+
     /**
      * Sign an APK with testkey.
      *
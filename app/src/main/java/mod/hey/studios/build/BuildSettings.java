@@ -14,6 +14,9 @@ public class BuildSettings extends ProjectSettings implements Serializable {
     public static final String SETTING_NO_HTTP_LEGACY = "no_http_legacy";
     public static final String SETTING_NO_WARNINGS = "no_warn";
     public static final String SETTING_ENABLE_LOGCAT = "enable_logcat";
+    public static final String SETTING_INCREMENTAL_BUILD = "incremental_build";
+    public static final String SETTING_PARALLEL_SOURCE_GENERATION = "parallel_source_generation";
+    public static final String SETTING_RESOURCE_COMPILE_WORKERS = "resource_compile_workers";
 
     public static final String SETTING_DEXER_D8 = "D8";
     public static final String SETTING_DEXER_DX = "Dx";
@@ -27,6 +30,29 @@ public class BuildSettings extends ProjectSettings implements Serializable {
         super(sc_id);
     }
 
+    public boolean isIncrementalBuildEnabled() {
+        return getValue(SETTING_INCREMENTAL_BUILD, SETTING_GENERIC_VALUE_FALSE).equals(SETTING_GENERIC_VALUE_TRUE);
+    }
+
+    public boolean isParallelSourceGenerationEnabled() {
+        return getValue(SETTING_PARALLEL_SOURCE_GENERATION, SETTING_GENERIC_VALUE_FALSE).equals(SETTING_GENERIC_VALUE_TRUE);
+    }
+
+    /**
+     * @return How many <code>aapt2 compile</code> invocations may run at the same time.
+     * Defaults to the number of CPU cores.
+     */
+    public int getResourceCompileWorkers() {
+        try {
+            int workers = Integer.parseInt(getValue(SETTING_RESOURCE_COMPILE_WORKERS, "").trim());
+            if (workers > 0) {
+                return workers;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     @Override
     public String getPath() {
         return FileUtil.getExternalStorageDir() + "/.sketchware/data/" + sc_id + "/build_config";
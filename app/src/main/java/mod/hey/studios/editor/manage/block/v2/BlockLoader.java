@@ -11,8 +11,11 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.File;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import dev.aldi.sayuti.block.ExtraBlockFile;
 import mod.agus.jcoderz.editor.manage.block.palette.PaletteSelector;
@@ -25,26 +28,43 @@ import pro.sketchware.utility.SketchwareUtil;
 
 /**
  * An optimized Custom Blocks loader.
+ * <p>
+ * Blocks are indexed by name. Checking whether their files changed is left to
+ * {@link #refreshIfChanged()}, so that looking up a block doesn't touch the file system.
  *
  * @since v6.3.0
  */
 public class BlockLoader {
 
-    private static ArrayList<ExtraBlockInfo> blocks;
+    private static final Type PROJECT_BLOCKS_TYPE = new TypeToken<ArrayList<ExtraBlockInfo>>() {
+    }.getType();
+
+    private static volatile LoadedBlocks blocks;
+    /**
+     * Projects' Custom Blocks, keyed by project ID.
+     */
+    private static final ConcurrentHashMap<String, LoadedBlocks> projectBlocks = new ConcurrentHashMap<>();
 
     static {
         loadCustomBlocks();
     }
 
     public static ExtraBlockInfo getBlockInfo(String block_name) {
-        if (blocks == null) {
-            loadCustomBlocks();
+        ExtraBlockInfo info = blocks.blocksByName.get(block_name);
+        if (info != null) {
+            return info;
         }
 
-        for (ExtraBlockInfo info : blocks) {
-            if (info.getName().equals(block_name)) {
-                return info;
-            }
+        ExtraBlockInfo in = new ExtraBlockInfo();
+        in.setName(block_name);
+        in.isMissing = true;
+        return in;
+    }
+
+    public static ExtraBlockInfo getBlockFromProject(String sc_id, String block_name) {
+        ExtraBlockInfo info = projectBlocks.computeIfAbsent(sc_id, BlockLoader::loadProjectBlocks).blocksByName.get(block_name);
+        if (info != null) {
+            return info;
         }
 
         ExtraBlockInfo in = new ExtraBlockInfo();
@@ -53,39 +73,54 @@ public class BlockLoader {
         return in;
     }
 
-    public static ExtraBlockInfo getBlockFromProject(String sc_id, String block_name) {
-        File customBlocksConfig = new File(Environment.getExternalStorageDirectory(),
-                ".sketchware/data/" + sc_id + "/custom_blocks");
+    /**
+     * Loads Custom Blocks again if their files changed since they got loaded. Meant to be called once
+     * before generating source code or when opening an editor, not per block.
+     */
+    public static synchronized void refreshIfChanged() {
+        if (!isUpToDate(blocks)) {
+            loadCustomBlocks();
+        }
+        projectBlocks.entrySet().removeIf(entry ->
+                !entry.getValue().stamp.equals(ExtraBlockFile.getFileStamp(getProjectBlocksFile(entry.getKey()))));
+    }
+
+    private static File getProjectBlocksFile(String sc_id) {
+        return new File(Environment.getExternalStorageDirectory(), ".sketchware/data/" + sc_id + "/custom_blocks");
+    }
+
+    private static LoadedBlocks loadProjectBlocks(String sc_id) {
+        File customBlocksConfig = getProjectBlocksFile(sc_id);
+        String stamp = ExtraBlockFile.getFileStamp(customBlocksConfig);
+        HashMap<String, ExtraBlockInfo> blocksByName = new HashMap<>();
         if (customBlocksConfig.exists()) {
             try {
                 ArrayList<ExtraBlockInfo> extraBlocks = new Gson().fromJson(
-                        FileUtil.readFile(customBlocksConfig.getAbsolutePath()),
-                        new TypeToken<ArrayList<ExtraBlockInfo>>() {
-                        }.getType());
+                        FileUtil.readFile(customBlocksConfig.getAbsolutePath()), PROJECT_BLOCKS_TYPE);
 
                 for (ExtraBlockInfo info : extraBlocks) {
-                    if (block_name.equals(info.getName())) {
-                        return info;
-                    }
+                    blocksByName.putIfAbsent(info.getName(), info);
                 }
-
             } catch (Exception e) {
                 SketchwareUtil.toastError("Failed to get Custom Blocks for project " + sc_id + ": " + e.getMessage());
             }
         }
+        return new LoadedBlocks(null, stamp, blocksByName);
+    }
 
-        ExtraBlockInfo in = new ExtraBlockInfo();
-        in.setName(block_name);
-        in.isMissing = true;
-        return in;
+    private static boolean isUpToDate(LoadedBlocks blocks) {
+        return blocks != null && blocks.source == ExtraBlockFile.getCachedExtraBlockData()
+                && blocks.stamp.equals(ExtraBlockFile.getFileStamp(ExtraBlockFile.EXTRA_BLOCKS_PALETTE_FILE));
     }
 
-    private static void loadCustomBlocks() {
+    private static synchronized LoadedBlocks loadCustomBlocks() {
+        String paletteStamp = ExtraBlockFile.getFileStamp(ExtraBlockFile.EXTRA_BLOCKS_PALETTE_FILE);
         ArrayList<HashMap<String, Object>> palettes = new PaletteSelector().getPaletteSelector();
 
-        blocks = new ArrayList<>();
+        // Only publish the index once it's complete, it might be read by other threads generating code
+        HashMap<String, ExtraBlockInfo> blocks = new HashMap<>();
 
-        ArrayList<HashMap<String, Object>> arrList = ExtraBlockFile.getExtraBlockData();
+        List<HashMap<String, Object>> arrList = ExtraBlockFile.getCachedExtraBlockData();
 
         for (int i = 0; i < arrList.size(); i++) {
             HashMap<String, Object> map = arrList.get(i);
@@ -187,8 +222,13 @@ public class BlockLoader {
                 }
             }
 
-            blocks.add(info);
+            // The first block of a name wins, like custom blocks over built-in ones
+            blocks.putIfAbsent(info.getName(), info);
         }
+
+        LoadedBlocks loaded = new LoadedBlocks(arrList, paletteStamp, blocks);
+        BlockLoader.blocks = loaded;
+        return loaded;
     }
 
     /**
@@ -199,6 +239,26 @@ public class BlockLoader {
     }
 
     public static void refresh() {
+        ExtraBlockFile.invalidate();
+        projectBlocks.clear();
         loadCustomBlocks();
     }
+
+    private static class LoadedBlocks {
+        /**
+         * The parsed blocks this got loaded from, {@code null} for a project's Custom Blocks.
+         */
+        private final List<HashMap<String, Object>> source;
+        /**
+         * Stamp of the file that can change the blocks without changing {@link #source}.
+         */
+        private final String stamp;
+        private final HashMap<String, ExtraBlockInfo> blocksByName;
+
+        private LoadedBlocks(List<HashMap<String, Object>> source, String stamp, HashMap<String, ExtraBlockInfo> blocksByName) {
+            this.source = source;
+            this.stamp = stamp;
+            this.blocksByName = blocksByName;
+        }
+    }
 }
@@ -8,10 +8,8 @@ import android.text.Editable;
 import android.text.InputType;
 import android.text.Layout;
 import android.text.Selection;
-import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.TextWatcher;
-import android.text.style.ForegroundColorSpan;
 import android.util.AttributeSet;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -27,13 +25,15 @@ import android.widget.NumberPicker;
 import android.widget.PopupMenu;
 import android.widget.ScrollView;
 
-import java.util.List;
-import java.util.regex.Matcher;
-
 import a.a.a.Lx;
 import a.a.a.wB;
 import mod.hey.studios.util.Helper;
 import pro.sketchware.R;
+import pro.sketchware.lib.highlighter.ForegroundColorSpanTarget;
+import pro.sketchware.lib.highlighter.IncrementalHighlighter;
+import pro.sketchware.lib.highlighter.JavaLexer;
+import pro.sketchware.lib.highlighter.SyntaxLexer;
+import pro.sketchware.lib.highlighter.XmlLexer;
 import pro.sketchware.utility.SketchwareUtil;
 
 /**
@@ -69,7 +69,7 @@ public class CodeEditorLayout extends LinearLayout implements TextWatcher {
     private boolean word_wrap;
     private boolean complete_brackets;
     private int type;
-    private List<ColorScheme> highlightList;
+    private IncrementalHighlighter highlighter;
     private Runnable updateHighlight;
 
 
@@ -307,14 +307,21 @@ public class CodeEditorLayout extends LinearLayout implements TextWatcher {
         ColorTheme colorTheme = ColorTheme.getTheme(dark_theme);
         setPreference("dark_theme", dark_theme);
 
+        SyntaxLexer lexer;
         if (type == ColorScheme.JAVA) {
-            highlightList = ColorScheme.TYPE_JAVA(colorTheme);
+            lexer = new JavaLexer(false);
         } else if (type == ColorScheme.XML) {
-            highlightList = ColorScheme.TYPE_XML(colorTheme);
+            lexer = new XmlLexer();
         } else {
             return;
         }
 
+        if (highlighter != null) {
+            highlighter.removeSpans();
+        }
+        highlighter = new IncrementalHighlighter(lexer, ColorScheme.tokenColors(colorTheme), editText.getEditableText(),
+                new ForegroundColorSpanTarget(editText::getEditableText));
+
         initEditorColors(colorTheme);
         checkHighlight();
         editText.addTextChangedListener(this);
@@ -392,6 +399,11 @@ public class CodeEditorLayout extends LinearLayout implements TextWatcher {
 
     @Override
     public void onTextChanged(CharSequence s, int start, int before, int count) {
+        // Before indenting, which changes the text again
+        if (highlighter != null) {
+            highlighter.onTextChanged(s, start, before, count);
+        }
+
         //Indentation
         if (INDENTABLE) {
 
@@ -635,25 +647,8 @@ public class CodeEditorLayout extends LinearLayout implements TextWatcher {
         // Get editable
         Editable editable = textView.getEditableText();
 
-        // Get current spans
-        ForegroundColorSpan[] spans =
-                editable.getSpans(0, editable.length(),/*start, end,*/ ForegroundColorSpan.class);
-        // Remove spans
-        for (ForegroundColorSpan span : spans)
-            editable.removeSpan(span);
-
-        Matcher matcher;
-
-        // Highlight it
-        for (ColorScheme colorScheme : highlightList) {
-
-            matcher = colorScheme.pattern.matcher(editable);
-            matcher.region(start, end);
-            while (matcher.find()) {
-                ForegroundColorSpan span = new ForegroundColorSpan(colorScheme.color);
-                editable.setSpan(span, matcher.start(), matcher.end(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-            }
-        }
+        // Highlight it, only re-lexing changed lines
+        highlighter.applySpans(editable, start, end);
     }
 
     private static class BeforeTextChangeInfo {
@@ -3,6 +3,8 @@ package mod.hey.studios.lib.code_editor;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
 
+import pro.sketchware.lib.highlighter.SyntaxLexer;
+
 /**
  * Class to store syntax highlighting patterns and colors.
  *
@@ -42,42 +44,19 @@ public class ColorScheme {
         return a;
     }
 
-    protected static ArrayList<ColorScheme> TYPE_JAVA(ColorTheme theme) {
-        ArrayList<ColorScheme> list = new ArrayList<>();
-
-        list.add(new ColorScheme(Pattern.compile("\\b(String|int|abstract|assert|boolean|break|byte|case|catch|char|class|const|continue|default|do|double|else|enum|extends|final|finally|float|for|goto|if|implements|import|instanceof|interface|long|native|new|package|private|protected|public|return|short|static|strictfp|super|switch|synchronized|this|throw|throws|transient|try|void|volatile|while|true|false|null)\\b"),
-                theme.PRIMARY_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("\\b([A-Z]\\w+)\\b"),
-                theme.CLASS_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("[(),;<>{}*]*"),
-                theme.SYMBOLS_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("\"(.*?)\"|'(.*?)'|\\b([0-9]+)\\b"),
-                theme.STRINGS_NUMBERS_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("/\\*(?:.|[\\n\\r])*?\\*/|//.*"),
-                theme.COMMENTS_COLOR));
-
-        return list;
-    }
-
-    protected static ArrayList<ColorScheme> TYPE_XML(ColorTheme theme) {
-        ArrayList<ColorScheme> list = new ArrayList<>();
-
-        list.add(new ColorScheme(Pattern.compile("<(/)?[A-Za-z_.]+(/)?(>)?"),
-                theme.CLASS_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("[(),;<>{}*]*"),
-                theme.SYMBOLS_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("\"(.*?)\"|'(.*?)'"),
-                theme.STRINGS_NUMBERS_COLOR));
-
-        list.add(new ColorScheme(Pattern.compile("<!--(?:.|[\\n\\r])*?-->"),
-                theme.COMMENTS_COLOR));
-
-        return list;
+    /**
+     * @return Colors of {@link SyntaxLexer}'s token types for a theme
+     */
+    static int[] tokenColors(ColorTheme theme) {
+        int[] colors = new int[SyntaxLexer.TOKEN_TYPE_COUNT];
+        colors[SyntaxLexer.TOKEN_KEYWORD] = theme.PRIMARY_COLOR;
+        colors[SyntaxLexer.TOKEN_TYPE] = theme.CLASS_COLOR;
+        colors[SyntaxLexer.TOKEN_ANNOTATION] = theme.CLASS_COLOR;
+        colors[SyntaxLexer.TOKEN_TAG] = theme.CLASS_COLOR;
+        colors[SyntaxLexer.TOKEN_OPERATOR] = theme.SYMBOLS_COLOR;
+        colors[SyntaxLexer.TOKEN_STRING] = theme.STRINGS_NUMBERS_COLOR;
+        colors[SyntaxLexer.TOKEN_NUMBER] = theme.STRINGS_NUMBERS_COLOR;
+        colors[SyntaxLexer.TOKEN_COMMENT] = theme.COMMENTS_COLOR;
+        return colors;
     }
 }
@@ -80,6 +80,7 @@ public class CustomBlocksManager {
     }
 
     private void load() {
+        BlockLoader.refreshIfChanged();
         blocks = new ArrayList<>();
 
         ArrayList<String> usedBlocks = new ArrayList<>();
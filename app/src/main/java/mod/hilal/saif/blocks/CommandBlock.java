@@ -25,171 +25,71 @@ import pro.sketchware.utility.FileUtil;
  */
 public class CommandBlock {
 
+    private static final ThreadLocal<ArrayList<HashMap<String, Object>>> deferredXmlCommands = new ThreadLocal<>();
+
     public static String applyCommands(String fileName, String c) {
-        String str = c;
+        return loadCommandPlan().apply(fileName, c);
+    }
+
+    /**
+     * Parses the temporary commands file once, so that callers generating many files (possibly on several threads)
+     * don't have to read and parse it for every single one of them.
+     *
+     * @return The commands currently in the temporary commands file, ready to be applied to files
+     */
+    public static CommandPlan loadCommandPlan() {
+        ArrayList<HashMap<String, Object>> commands = loadCommands();
+        return commands.isEmpty() ? CommandPlan.EMPTY : new CommandPlan(commands);
+    }
+
+    /**
+     * @return The commands currently in the temporary commands file, or an empty list if there are none
+     */
+    private static synchronized ArrayList<HashMap<String, Object>> loadCommands() {
         String path = FileUtil.getExternalStorageDir().concat("/.sketchware/temp/commands");
-        ArrayList<HashMap<String, Object>> data;
         try {
-            //writeLog("try");
-            if (FileUtil.isExistFile(path) && !FileUtil.readFile(path).isEmpty() && !FileUtil.readFile(path).equals("[]")) {
-                //writeLog("the file is found and has content :)");
-                data = new Gson().fromJson(FileUtil.readFile(path), Helper.TYPE_MAP_LIST);
-                //writeLog("get gson from file is done");
-                for (int i = 0; i < data.size(); i++) {
-                    //writeLog("element : " + i);
-                    if (getInputName((String) data.get(i).get("input")).equals(fileName)) {
-                        //writeLog("element : " + i + " > find a target !!");
-                        str = N(str, data.get(i));
-                        //writeLog("element : " + i + " > N is done :l");
+            if (FileUtil.isExistFile(path)) {
+                String content = FileUtil.readFile(path);
+                if (!content.isEmpty() && !content.equals("[]")) {
+                    ArrayList<HashMap<String, Object>> data = new Gson().fromJson(content, Helper.TYPE_MAP_LIST);
+                    if (data != null) {
+                        return data;
                     }
                 }
-                //writeLog("process is succeeded");
-                return str;
-            } else {
-                //writeLog("file isn't found :(");
-                return c;
             }
-        } catch (Exception e) { /*writeLog("error :("); */
-            return c;
+        } catch (Exception ignored) {
         }
+        return new ArrayList<>();
     }
 
-    private static String N(String c, HashMap<String, Object> map) {
-        ArrayList<String> a = new ArrayList<>(Arrays.asList(c.split("\n")));
-        String res = "";
-        String reference = (String) map.get("reference");
-        double distance = (double) map.get("distance");
-        double after = (double) map.get("after");
-        double before = (double) map.get("before");
-        String command = (String) map.get("command");
-        String input = getExceptFirstLine((String) map.get("input"));
-
-        if (command.equals("find-replace")) {
-            return c.replace(reference, input);
-        }
-        if (command.equals("find-replace-first")) {
-            try {
-                return c.replaceFirst(reference, input);
-            } catch (Exception e) {
-                return c;
-            }
-        }
-
-        if (command.equals("find-replace-all")) {
-            try {
-                return c.replaceAll(reference, input);
-            } catch (Exception e) {
-                return c;
-            }
-        }
-
-        int index = getIndex(a, reference);
-        if (index == -1) {
-            return c;
-        }
-
-        if (command.equals("insert")) {
-            if ((index + distance - before) < 0) {
-                a.add(0, input);
-            } else if ((index + distance - before) > (a.size() - 1)) {
-                a.add(input);
-            } else {
-                a.add((int) (index + distance - before), input);
-            }
-        }
-        if (command.equals("add")) {
-            if ((index + distance + after + 1) < 0) {
-                a.add(0, input);
-            } else if ((index + distance + after + 1) > (a.size() - 1)) {
-                a.add(input);
-            } else {
-                a.add((int) (index + distance + after + 1), input);
-            }
-        }
-
-        //old method
-        /*
-        if(command.equals("replace")){
-            int xxx = (int)(index + distance - before -1);
-            if ( xxx <0 ){ xxx = 0; }
-
-            int ff = (int)(index + distance - before);
-            if ( ff <0 ){ ff = 0; }
-            int tt = (int)(index + distance + after +1);
-            if ( tt > a.size() ){ tt = a.size(); }
-            a.subList(ff , tt).clear();
-
-            if (xxx > a.size()-2){
-                a.add(input);
-            } else {
-                a.add((int)(xxx+1) , input);
-            }
-        }
-        */
+    /**
+     * Makes XML command blocks found by {@link #CB(String)} and {@link #CBForXml(String)} on the calling thread
+     * get collected instead of written to the temporary commands file right away.
+     * Used to generate Activities in parallel while still writing their commands in a deterministic order.
+     *
+     * @see #takeDeferredXmlCommands()
+     */
+    public static void deferXmlCommands() {
+        deferredXmlCommands.set(new ArrayList<>());
+    }
 
-        if (command.equals("replace")) {
-            if (before == 0 && after == 0) {
-                int lineToChange = (int) (index + distance);
-                if (lineToChange < 0) {
-                    lineToChange = 0;
-                }
-                if (lineToChange > (a.size() - 1)) {
-                    lineToChange = a.size() - 1;
-                }
-                a.set(lineToChange, input);
-            } else {
-                int lineToChange = (int) (index + distance);
-                if (lineToChange <= 0) { // ignore backend
-                    lineToChange = 0;
-                    int from = 1;
-                    int to = (int) after + 1;
-                    if (to > (a.size() - 1)) {
-                        to = a.size() - 1;
-                    }
-                    a.subList(from, to).clear();
-                    a.set(0, input);
-                } else if (lineToChange >= (a.size() - 1)) { //ignore frontend
-                    lineToChange = a.size() - 1;
-                    int from = (int) (lineToChange - before);
-                    int to = lineToChange;
-                    if (from < 0) {
-                        from = 0;
-                    }
-                    a.set(lineToChange, input);
-                    a.subList(from, to).clear();
-                } else {  //handle everything
-                    if (before < 0) {
-                        before = 0;
-                    }
-                    if (after < 0) {
-                        after = 0;
-                    }
-                    int from = lineToChange + 1;
-                    int to = lineToChange + (int) after;
-                    if (to > (a.size() - 1)) {
-                        to = a.size() - 1;
-                    }
-                    a.subList(from, to).clear();
-                    a.set(lineToChange, input);
-                    from = (int) (lineToChange - before);
-                    to = lineToChange;
-                    if (from < 0) {
-                        from = 0;
-                    }
-                    a.subList(from, to).clear();
-                }
-            }
-        }
+    /**
+     * @return XML commands collected on the calling thread since {@link #deferXmlCommands()},
+     * which then stops collecting. Pass them to {@link #writeXmlCommands(ArrayList)} afterwards.
+     */
+    public static ArrayList<HashMap<String, Object>> takeDeferredXmlCommands() {
+        ArrayList<HashMap<String, Object>> commands = deferredXmlCommands.get();
+        deferredXmlCommands.remove();
+        return commands != null ? commands : new ArrayList<>();
+    }
 
-        for (int i = 0; i < a.size(); i++) {
-            if (res.isEmpty()) {
-                res = a.get(i);
-            } else {
-                res = res.concat("\n").concat(a.get(i));
-            }
+    /**
+     * Appends XML commands to the temporary commands file.
+     */
+    public static void writeXmlCommands(ArrayList<HashMap<String, Object>> commands) {
+        if (!commands.isEmpty()) {
+            WTF(commands);
         }
-
-        return res;
     }
 
     public static String getExceptFirstLine(String c) {
@@ -250,19 +150,22 @@ public class CommandBlock {
 
     // Write Temporary File
     private static void WTF(ArrayList<HashMap<String, Object>> list) {
-        String path = FileUtil.getExternalStorageDir().concat("/.sketchware/temp/commands");
-        ArrayList<HashMap<String, Object>> data = new ArrayList<>();
-        try {
-            if (FileUtil.isExistFile(path) && !FileUtil.readFile(path).isEmpty() && !FileUtil.readFile(path).equals("[]")) {
-                data = new Gson().fromJson(FileUtil.readFile(path), Helper.TYPE_MAP_LIST);
-            }
-        } catch (Exception ignored) {
+        ArrayList<HashMap<String, Object>> deferred = deferredXmlCommands.get();
+        if (deferred != null) {
+            deferred.addAll(list);
+            return;
         }
+        writeTemporaryFile(list);
+    }
+
+    private static synchronized void writeTemporaryFile(ArrayList<HashMap<String, Object>> list) {
+        String path = FileUtil.getExternalStorageDir().concat("/.sketchware/temp/commands");
+        ArrayList<HashMap<String, Object>> data = loadCommands();
         data.addAll(list);
         FileUtil.writeFile(path, new Gson().toJson(data));
     }
 
-    public static void x() {
+    public static synchronized void x() {
         String path = FileUtil.getExternalStorageDir().concat("/.sketchware/temp/commands");
         if (FileUtil.isExistFile(path)) {
             FileUtil.deleteFile(path);
@@ -0,0 +1,343 @@
+package mod.hilal.saif.blocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * XML commands of the temporary commands file, parsed once and grouped by the file they target.
+ * Applying them to a file splits it into lines once, runs all line-based commands on those lines,
+ * and joins them once again, instead of splitting and joining the whole file for every single command.
+ * <p>
+ * The result is the same as applying the commands one after another to the file's content.
+ * Instances are immutable and may be used by several threads at once.
+ */
+public class CommandPlan {
+
+    public static final CommandPlan EMPTY = new CommandPlan(new ArrayList<>());
+
+    private static final int FIND_REPLACE = 0;
+    private static final int FIND_REPLACE_FIRST = 1;
+    private static final int FIND_REPLACE_ALL = 2;
+    private static final int INSERT = 3;
+    private static final int ADD = 4;
+    private static final int REPLACE = 5;
+    private static final int OTHER = 6;
+
+    /**
+     * Returned by {@link Command#apply(ArrayList)} if the command didn't apply
+     */
+    private static final int NOT_APPLIED = Integer.MIN_VALUE;
+
+    private final Map<String, List<Command>> commandsByFile = new HashMap<>();
+    /**
+     * Files with commands lacking required values. These files are left as they are,
+     * like {@link CommandBlock#applyCommands(String, String)} always did.
+     */
+    private final Set<String> brokenFiles = new HashSet<>();
+    /**
+     * Whether a command has no target file, which made applying commands fail for every file.
+     */
+    private final boolean broken;
+
+    /**
+     * @param commands Commands as stored in the temporary commands file, in order
+     */
+    public CommandPlan(List<HashMap<String, Object>> commands) {
+        boolean broken = false;
+        for (HashMap<String, Object> map : commands) {
+            String fileName;
+            try {
+                fileName = CommandBlock.getInputName((String) map.get("input"));
+            } catch (Exception e) {
+                broken = true;
+                break;
+            }
+            try {
+                commandsByFile.computeIfAbsent(fileName, name -> new ArrayList<>()).add(new Command(map));
+            } catch (Exception e) {
+                brokenFiles.add(fileName);
+            }
+        }
+        this.broken = broken;
+    }
+
+    /**
+     * @return The file's content with its commands applied, or the content as it was if applying them failed
+     */
+    public String apply(String fileName, String code) {
+        List<Command> commands = commandsByFile.get(fileName);
+        if (broken || commands == null || brokenFiles.contains(fileName)) {
+            return code;
+        }
+
+        try {
+            String text = code;
+            boolean textUpToDate = true;
+            // text split into lines, once a line-based command needs them
+            ArrayList<String> lines = null;
+            // changed line of the lines as the last command left them, not split again yet
+            int changedLine = NOT_APPLIED;
+            for (Command command : commands) {
+                if (command.isFindReplace()) {
+                    if (lines != null) {
+                        if (!textUpToDate) text = join(lines, changedLine);
+                        textUpToDate = true;
+                        lines = null;
+                        changedLine = NOT_APPLIED;
+                    }
+                    text = command.replace(text);
+                } else {
+                    if (lines == null) {
+                        lines = new ArrayList<>(Arrays.asList(text.split("\n")));
+                    } else if (changedLine != NOT_APPLIED) {
+                        String joined = splitAgain(lines, changedLine);
+                        if (joined != null) {
+                            text = joined;
+                            textUpToDate = true;
+                        }
+                    }
+                    changedLine = command.apply(lines);
+                    if (changedLine != NOT_APPLIED) textUpToDate = false;
+                }
+            }
+            return textUpToDate ? text : join(lines, changedLine);
+        } catch (Exception e) {
+            return code;
+        }
+    }
+
+    /**
+     * Joins lines like applying a command to them always did, which skips empty leading lines
+     * of lines left by a command.
+     *
+     * @param changedLine {@link #NOT_APPLIED} if the lines were split from text since
+     */
+    private static String join(ArrayList<String> lines, int changedLine) {
+        int start = 0;
+        if (changedLine != NOT_APPLIED) {
+            while (start < lines.size() - 1 && lines.get(start).isEmpty()) {
+                start++;
+            }
+        }
+        return String.join("\n", lines.subList(start, lines.size()));
+    }
+
+    /**
+     * Turns lines left by a command into what joining them and splitting the result again gives.
+     * Joining never kept empty leading lines, splitting never keeps empty trailing lines,
+     * and the changed line might consist of several ones.
+     *
+     * @param changedLine Index of the only line that may contain line breaks, or -1
+     * @return The joined lines if empty trailing lines got removed, as they then can't be joined to it anymore,
+     * otherwise {@code null}
+     */
+    private static String splitAgain(ArrayList<String> lines, int changedLine) {
+        int leading = 0;
+        while (leading < lines.size() && lines.get(leading).isEmpty()) {
+            leading++;
+        }
+        if (leading == lines.size()) {
+            lines.clear();
+            lines.add("");
+            return null;
+        }
+        lines.subList(0, leading).clear();
+
+        changedLine -= leading;
+        if (changedLine >= 0 && lines.get(changedLine).indexOf('\n') >= 0) {
+            String[] split = lines.get(changedLine).split("\n", -1);
+            lines.set(changedLine, split[0]);
+            lines.addAll(changedLine + 1, Arrays.asList(split).subList(1, split.length));
+        }
+
+        int end = lines.size();
+        while (end > 0 && lines.get(end - 1).isEmpty()) {
+            end--;
+        }
+        if (end == lines.size()) {
+            return null;
+        }
+        String joined = String.join("\n", lines);
+        lines.subList(end, lines.size()).clear();
+        return joined;
+    }
+
+    private static int getIndex(ArrayList<String> lines, String reference) {
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).contains(reference)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Command {
+        private final int type;
+        private final String reference;
+        /**
+         * {@link #reference} compiled for find-replace-first and find-replace-all, {@code null} if invalid
+         */
+        private final Pattern pattern;
+        private final double distance;
+        private final double after;
+        private final double before;
+        private final String input;
+
+        private Command(HashMap<String, Object> map) {
+            reference = (String) map.get("reference");
+            distance = (double) map.get("distance");
+            after = (double) map.get("after");
+            before = (double) map.get("before");
+            String command = (String) map.get("command");
+            input = CommandBlock.getExceptFirstLine((String) map.get("input"));
+
+            type = switch (command) {
+                case "find-replace" -> FIND_REPLACE;
+                case "find-replace-first" -> FIND_REPLACE_FIRST;
+                case "find-replace-all" -> FIND_REPLACE_ALL;
+                case "insert" -> INSERT;
+                case "add" -> ADD;
+                case "replace" -> REPLACE;
+                default -> OTHER;
+            };
+            // Regex commands without reference were skipped on their own, like ones with an invalid regex
+            if (reference == null && type != FIND_REPLACE_FIRST && type != FIND_REPLACE_ALL) {
+                throw new IllegalArgumentException("Command without reference");
+            }
+
+            Pattern pattern = null;
+            if (type == FIND_REPLACE_FIRST || type == FIND_REPLACE_ALL) {
+                try {
+                    pattern = Pattern.compile(reference);
+                } catch (Exception ignored) {
+                }
+            }
+            this.pattern = pattern;
+        }
+
+        private boolean isFindReplace() {
+            return type == FIND_REPLACE || type == FIND_REPLACE_FIRST || type == FIND_REPLACE_ALL;
+        }
+
+        private String replace(String c) {
+            if (type == FIND_REPLACE) {
+                return c.replace(reference, input);
+            }
+            if (pattern == null) {
+                return c;
+            }
+            try {
+                if (type == FIND_REPLACE_FIRST) {
+                    return pattern.matcher(c).replaceFirst(input);
+                } else {
+                    return pattern.matcher(c).replaceAll(input);
+                }
+            } catch (Exception e) {
+                return c;
+            }
+        }
+
+        /**
+         * @return Index of the line the command inserted or replaced, -1 if there's none,
+         * or {@link #NOT_APPLIED} if the reference wasn't found
+         */
+        private int apply(ArrayList<String> a) {
+            int index = getIndex(a, reference);
+            if (index == -1) {
+                return NOT_APPLIED;
+            }
+
+            int changedLine = -1;
+            if (type == INSERT) {
+                if ((index + distance - before) < 0) {
+                    changedLine = 0;
+                } else if ((index + distance - before) > (a.size() - 1)) {
+                    changedLine = a.size();
+                } else {
+                    changedLine = (int) (index + distance - before);
+                }
+                a.add(changedLine, input);
+            } else if (type == ADD) {
+                if ((index + distance + after + 1) < 0) {
+                    changedLine = 0;
+                } else if ((index + distance + after + 1) > (a.size() - 1)) {
+                    changedLine = a.size();
+                } else {
+                    changedLine = (int) (index + distance + after + 1);
+                }
+                a.add(changedLine, input);
+            } else if (type == REPLACE) {
+                changedLine = replace(a, index);
+            }
+            return changedLine;
+        }
+
+        /**
+         * @return Index of the line replaced with {@link #input}
+         */
+        private int replace(ArrayList<String> a, int index) {
+            double before = this.before;
+            double after = this.after;
+            if (before == 0 && after == 0) {
+                int lineToChange = (int) (index + distance);
+                if (lineToChange < 0) {
+                    lineToChange = 0;
+                }
+                if (lineToChange > (a.size() - 1)) {
+                    lineToChange = a.size() - 1;
+                }
+                a.set(lineToChange, input);
+                return lineToChange;
+            }
+
+            int lineToChange = (int) (index + distance);
+            if (lineToChange <= 0) { // ignore backend
+                int from = 1;
+                int to = (int) after + 1;
+                if (to > (a.size() - 1)) {
+                    to = a.size() - 1;
+                }
+                a.subList(from, to).clear();
+                a.set(0, input);
+                return 0;
+            } else if (lineToChange >= (a.size() - 1)) { //ignore frontend
+                lineToChange = a.size() - 1;
+                int from = (int) (lineToChange - before);
+                int to = lineToChange;
+                if (from < 0) {
+                    from = 0;
+                }
+                a.set(lineToChange, input);
+                a.subList(from, to).clear();
+                return from;
+            } else {  //handle everything
+                if (before < 0) {
+                    before = 0;
+                }
+                if (after < 0) {
+                    after = 0;
+                }
+                int from = lineToChange + 1;
+                int to = lineToChange + (int) after;
+                if (to > (a.size() - 1)) {
+                    to = a.size() - 1;
+                }
+                a.subList(from, to).clear();
+                a.set(lineToChange, input);
+                from = (int) (lineToChange - before);
+                to = lineToChange;
+                if (from < 0) {
+                    from = 0;
+                }
+                a.subList(from, to).clear();
+                return from;
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -419,22 +420,22 @@ public class BuiltInLibraries {
         return getLibraryProguardConfiguration(libraryName).getAbsolutePath();
     }
 
-    public static void extractCompileAssets(@NonNull BuildProgressReceiver... progressReceivers) {
+    /**
+     * Extracts android.jar, the signing keys, and the given built-in libraries, if they haven't been extracted
+     * yet or changed since.
+     *
+     * @param libraryNames Names of the built-in libraries the build needs, see {@link ProjectBuilder#getRequiredBuiltInLibraryNames()}
+     */
+    public static void extractCompileAssets(Collection<String> libraryNames, @NonNull BuildProgressReceiver... progressReceivers) throws IOException {
         if (!EXTRACTED_COMPILE_ASSETS_PATH.exists()) {
             if (!EXTRACTED_COMPILE_ASSETS_PATH.mkdirs()) {
-                throw new RuntimeException(new IOException("Failed to create directory " + EXTRACTED_COMPILE_ASSETS_PATH));
+                throw new IOException("Failed to create directory " + EXTRACTED_COMPILE_ASSETS_PATH);
             }
         }
 
-        String dexsArchiveName = "dexs.zip";
-        String libsArchiveName = "libs.zip";
         String testkeyArchiveName = "testkey.zip";
 
-        String dexsArchivePath = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, dexsArchiveName).getAbsolutePath();
-        String libsArchivePath = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, libsArchiveName).getAbsolutePath();
         String testkeyArchivePath = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, testkeyArchiveName).getAbsolutePath();
-        String dexsDirectoryPath = BuiltInLibraries.EXTRACTED_BUILT_IN_LIBRARY_DEX_FILES_PATH.getAbsolutePath();
-        String libsDirectoryPath = BuiltInLibraries.EXTRACTED_BUILT_IN_LIBRARIES_PATH.getAbsolutePath();
         String testkeyDirectoryPath = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, "testkey").getAbsolutePath();
 
         String baseAssetsPath = "libs" + File.separator;
@@ -442,28 +443,8 @@ public class BuiltInLibraries {
 
         maybeExtractAndroidJar(progressReceivers);
 
-        if (ProjectBuilder.hasFileChanged(baseAssetsPath + dexsArchiveName, dexsArchivePath)) {
-            for (BuildProgressReceiver receiver : progressReceivers) {
-                receiver.onProgress("Extracting built-in libraries' DEX files...", 4);
-            }
-            /* Delete the directory */
-            fileUtil.b(dexsDirectoryPath);
-            /* Create the directories */
-            fileUtil.f(dexsDirectoryPath);
-            /* Extract dexs.zip to dexs/ */
-            new KB().a(dexsArchivePath, dexsDirectoryPath);
-        }
-        if (ProjectBuilder.hasFileChanged(baseAssetsPath + libsArchiveName, libsArchivePath)) {
-            for (BuildProgressReceiver receiver : progressReceivers) {
-                receiver.onProgress("Extracting built-in libraries' resources...", 5);
-            }
-            /* Delete the directory */
-            fileUtil.b(libsDirectoryPath);
-            /* Create the directories */
-            fileUtil.f(libsDirectoryPath);
-            /* Extract libs.zip to libs/ */
-            new KB().a(libsArchivePath, libsDirectoryPath);
-        }
+        new BuiltInLibraryExtractor(SketchApplication.getContext()).extract(libraryNames, progressReceivers);
+
         maybeExtractCoreLambdaStubsJar();
         if (ProjectBuilder.hasFileChanged(baseAssetsPath + testkeyArchiveName, testkeyArchivePath)) {
             for (BuildProgressReceiver receiver : progressReceivers) {
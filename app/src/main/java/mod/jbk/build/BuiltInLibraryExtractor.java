@@ -0,0 +1,354 @@
+package mod.jbk.build;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import a.a.a.ProjectBuilder;
+import mod.jbk.build.incremental.InputFingerprint;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Extracts only the built-in libraries a build needs from <code>libs.zip</code> and <code>dexs.zip</code>
+ * in assets, straight from the APK without copying the archives to local storage first.
+ * <p>
+ * Every library's content hash is computed from the CRC-32 checksums and sizes in the archive's
+ * central directory, so libraries only get extracted again if their content changed with an update.
+ * Extracted files get verified against their CRC-32 checksum.
+ */
+public class BuiltInLibraryExtractor {
+
+    private static final String TAG = "BuiltInLibraryExtractor";
+    private static final String MANIFEST_FILENAME = "extracted_libraries.json";
+    private static final Type MANIFEST_TYPE = new TypeToken<HashMap<String, String>>() {
+    }.getType();
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_RECORD_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_RECORD_SIZE = 46;
+    private static final int EOCD_SIZE = 22;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final Context context;
+    private final File manifestFile = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, MANIFEST_FILENAME);
+    /**
+     * Content hashes of extracted libraries, keyed by archive name and library name, like <code>libs.zip/okio</code>.
+     */
+    private HashMap<String, String> extracted = new HashMap<>();
+    private final byte[] readBuffer = new byte[64 * 1024];
+    private final byte[] inflateBuffer = new byte[64 * 1024];
+
+    public BuiltInLibraryExtractor(Context context) {
+        this.context = context;
+        if (manifestFile.isFile()) {
+            try {
+                HashMap<String, String> saved = new Gson().fromJson(FileUtil.readFile(manifestFile.getAbsolutePath()), MANIFEST_TYPE);
+                if (saved != null) extracted = saved;
+            } catch (Exception e) {
+                LogUtil.w(TAG, "Couldn't read extracted libraries manifest, extracting libraries again", e);
+            }
+        }
+    }
+
+    /**
+     * Extracts the DEX files, classes, resources, and ProGuard rules of libraries that haven't been extracted
+     * yet, or whose content changed since.
+     *
+     * @param libraryNames Names of the libraries to extract, e.g. <code>okio</code>
+     */
+    public void extract(Collection<String> libraryNames, BuildProgressReceiver... progressReceivers) throws IOException {
+        extract("dexs.zip", BuiltInLibraries.EXTRACTED_BUILT_IN_LIBRARY_DEX_FILES_PATH, libraryNames,
+                "Extracting built-in libraries' DEX files...", 4, progressReceivers);
+        extract("libs.zip", BuiltInLibraries.EXTRACTED_BUILT_IN_LIBRARIES_PATH, libraryNames,
+                "Extracting built-in libraries' resources...", 5, progressReceivers);
+    }
+
+    private void extract(String archiveName, File directory, Collection<String> libraryNames, String progress,
+                         int step, BuildProgressReceiver... progressReceivers) throws IOException {
+        try (Archive archive = openArchive("libs" + File.separator + archiveName)) {
+            Map<String, List<Entry>> libraries = archive.getLibraries();
+            boolean notified = false;
+
+            for (String libraryName : libraryNames) {
+                List<Entry> entries = libraries.get(libraryName);
+                if (entries == null) {
+                    LogUtil.w(TAG, "Built-in library " + libraryName + " isn't part of " + archiveName);
+                    continue;
+                }
+
+                String key = archiveName + "/" + libraryName;
+                String hash = getContentHash(entries);
+                if (hash.equals(extracted.get(key)) && areExtracted(entries, directory)) continue;
+
+                if (!notified) {
+                    for (BuildProgressReceiver receiver : progressReceivers) {
+                        receiver.onProgress(progress, step);
+                    }
+                    notified = true;
+                }
+                LogUtil.d(TAG, "Extracting " + libraryName + " from " + archiveName);
+
+                /* Until it's been extracted completely, the library can't be trusted */
+                extracted.remove(key);
+                FileUtil.deleteFile(getLibraryPath(libraryName, archiveName, directory).getAbsolutePath());
+                for (Entry entry : entries) {
+                    archive.extract(entry, new File(directory, entry.name));
+                }
+                extracted.put(key, hash);
+                saveManifest();
+            }
+        }
+    }
+
+    private static boolean areExtracted(List<Entry> entries, File directory) {
+        for (Entry entry : entries) {
+            File file = new File(directory, entry.name);
+            if (!file.isFile() || file.length() != entry.uncompressedSize) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The file or directory a library gets extracted to, like <code>dexs/okio.dex</code> or <code>libs/okio</code>
+     */
+    private static File getLibraryPath(String libraryName, String archiveName, File directory) {
+        return archiveName.equals("dexs.zip") ? new File(directory, libraryName + ".dex") : new File(directory, libraryName);
+    }
+
+    private static String getContentHash(List<Entry> entries) {
+        MessageDigest digest = InputFingerprint.newDigest();
+        for (Entry entry : entries) {
+            digest.update((entry.name + ":" + entry.crc + ":" + entry.uncompressedSize + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return InputFingerprint.toHex(digest.digest());
+    }
+
+    private void saveManifest() {
+        FileUtil.writeFile(manifestFile.getAbsolutePath(), new Gson().toJson(extracted));
+    }
+
+    /**
+     * Opens an archive in assets directly if it's stored uncompressed in the APK, otherwise copies it to
+     * local storage first.
+     */
+    private Archive openArchive(String assetPath) throws IOException {
+        try {
+            AssetFileDescriptor descriptor = context.getAssets().openFd(assetPath);
+            FileInputStream stream = descriptor.createInputStream();
+            /* Not needed anymore, older versions extracted archives from their copies */
+            FileUtil.deleteFile(new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, new File(assetPath).getName()).getAbsolutePath());
+            return new Archive(stream.getChannel(), descriptor.getStartOffset(), descriptor.getLength(), stream, assetPath);
+        } catch (FileNotFoundException e) {
+            LogUtil.d(TAG, assetPath + " is compressed, copying it to local storage first");
+            File copy = new File(BuiltInLibraries.EXTRACTED_COMPILE_ASSETS_PATH, new File(assetPath).getName());
+            ProjectBuilder.hasFileChanged(assetPath, copy.getAbsolutePath());
+            FileInputStream stream = new FileInputStream(copy);
+            return new Archive(stream.getChannel(), 0, copy.length(), stream, assetPath);
+        }
+    }
+
+    /**
+     * A ZIP file in a region of a file, like an asset in the APK.
+     */
+    private class Archive implements Closeable {
+        private final FileChannel channel;
+        private final long offset;
+        private final long length;
+        private final Closeable source;
+        private final String name;
+
+        private Archive(FileChannel channel, long offset, long length, Closeable source, String name) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+            this.source = source;
+            this.name = name;
+        }
+
+        /**
+         * @return Every library's file entries, keyed by library name and sorted by entry name
+         */
+        private Map<String, List<Entry>> getLibraries() throws IOException {
+            ByteBuffer eocd = read(length - EOCD_SIZE, EOCD_SIZE);
+            if (eocd.getInt(0) != EOCD_SIGNATURE) {
+                throw new ZipException(name + " isn't a ZIP file without comment");
+            }
+            int entryCount = eocd.getShort(10) & 0xffff;
+            long centralDirectorySize = eocd.getInt(12) & 0xffffffffL;
+            long centralDirectoryOffset = eocd.getInt(16) & 0xffffffffL;
+            if (centralDirectoryOffset + centralDirectorySize > length) {
+                throw new ZipException("Central directory of " + name + " is corrupt");
+            }
+
+            ByteBuffer centralDirectory = read(centralDirectoryOffset, (int) centralDirectorySize);
+            Map<String, List<Entry>> libraries = new TreeMap<>();
+            for (int i = 0; i < entryCount; i++) {
+                int recordOffset = centralDirectory.position();
+                if (centralDirectory.remaining() < CENTRAL_DIRECTORY_RECORD_SIZE
+                        || centralDirectory.getInt(recordOffset) != CENTRAL_DIRECTORY_RECORD_SIGNATURE) {
+                    throw new ZipException("Central directory of " + name + " is corrupt");
+                }
+                byte[] nameBytes = new byte[centralDirectory.getShort(recordOffset + 28) & 0xffff];
+                int extraLength = centralDirectory.getShort(recordOffset + 30) & 0xffff;
+                int commentLength = centralDirectory.getShort(recordOffset + 32) & 0xffff;
+                centralDirectory.position(recordOffset + CENTRAL_DIRECTORY_RECORD_SIZE);
+                centralDirectory.get(nameBytes);
+                centralDirectory.position(centralDirectory.position() + extraLength + commentLength);
+
+                String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+                if (entryName.endsWith("/")) continue;
+                if (entryName.startsWith("/") || entryName.contains("..")) {
+                    throw new ZipException("Entry " + entryName + " of " + name + " points outside of its library");
+                }
+
+                /* dexs.zip contains okio.dex, libs.zip contains okio/classes.jar */
+                int slash = entryName.indexOf('/');
+                String libraryName = slash == -1 ? entryName.replaceFirst("\\.dex$", "") : entryName.substring(0, slash);
+                List<Entry> entries = libraries.get(libraryName);
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                    libraries.put(libraryName, entries);
+                }
+                entries.add(new Entry(entryName,
+                        centralDirectory.getShort(recordOffset + 10) & 0xffff,
+                        centralDirectory.getInt(recordOffset + 16) & 0xffffffffL,
+                        centralDirectory.getInt(recordOffset + 20) & 0xffffffffL,
+                        centralDirectory.getInt(recordOffset + 24) & 0xffffffffL,
+                        centralDirectory.getInt(recordOffset + 42) & 0xffffffffL));
+            }
+            for (List<Entry> entries : libraries.values()) {
+                entries.sort((first, second) -> first.name.compareTo(second.name));
+            }
+            return libraries;
+        }
+
+        /**
+         * Extracts an entry to a file, and verifies its CRC-32 checksum and size.
+         */
+        private void extract(Entry entry, File target) throws IOException {
+            if (entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+                throw new ZipException("Entry " + entry.name + " of " + name + " uses unsupported compression method " + entry.method);
+            }
+            ByteBuffer header = read(entry.localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE) {
+                throw new ZipException("Entry " + entry.name + " of " + name + " is corrupt");
+            }
+            long position = entry.localHeaderOffset + LOCAL_FILE_HEADER_SIZE
+                    + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+
+            File parent = target.getParentFile();
+            if (parent != null) parent.mkdirs();
+            File temporaryFile = new File(target.getAbsolutePath() + ".tmp");
+            CRC32 crc = new CRC32();
+            long size = 0;
+            Inflater inflater = entry.method == METHOD_DEFLATED ? new Inflater(true) : null;
+            try (OutputStream out = new FileOutputStream(temporaryFile)) {
+                long remaining = entry.compressedSize;
+                while (remaining > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(readBuffer, 0, (int) Math.min(readBuffer.length, remaining));
+                    int read = channel.read(buffer, offset + position);
+                    if (read <= 0) {
+                        throw new ZipException("Entry " + entry.name + " of " + name + " is truncated");
+                    }
+                    position += read;
+                    remaining -= read;
+
+                    if (inflater == null) {
+                        crc.update(readBuffer, 0, read);
+                        out.write(readBuffer, 0, read);
+                        size += read;
+                    } else {
+                        inflater.setInput(readBuffer, 0, read);
+                        int inflated;
+                        while ((inflated = inflater.inflate(inflateBuffer)) > 0) {
+                            crc.update(inflateBuffer, 0, inflated);
+                            out.write(inflateBuffer, 0, inflated);
+                            size += inflated;
+                        }
+                    }
+                }
+            } catch (DataFormatException e) {
+                temporaryFile.delete();
+                throw new ZipException("Entry " + entry.name + " of " + name + " is corrupt: " + e.getMessage());
+            } finally {
+                if (inflater != null) inflater.end();
+            }
+
+            if (crc.getValue() != entry.crc || size != entry.uncompressedSize) {
+                temporaryFile.delete();
+                throw new ZipException("Entry " + entry.name + " of " + name + " failed verification");
+            }
+            if (!temporaryFile.renameTo(target)) {
+                temporaryFile.delete();
+                throw new IOException("Couldn't move extracted " + entry.name + " to " + target);
+            }
+        }
+
+        private ByteBuffer read(long position, int size) throws IOException {
+            if (position < 0 || position + size > length) {
+                throw new ZipException(name + " is truncated");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + position + buffer.position()) <= 0) {
+                    throw new ZipException(name + " is truncated");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    private static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long uncompressedSize;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, long crc, long compressedSize, long uncompressedSize, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.uncompressedSize = uncompressedSize;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,842 @@
+package mod.jbk.build.apk;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.DefaultApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.util.DataSources;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import mod.jbk.build.incremental.InputFingerprint;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Writes a signed and zip-aligned APK in a single pass.
+ * <p>
+ * Entries of other ZIP files (like AAPT2's <code>resources.ap_</code> or library JARs) get copied
+ * as they are, without being recompressed, and only get inflated if their content needs to be
+ * digested for the JAR signature. Uncompressed entries get aligned while being written, and the
+ * v1 signature's digests get computed while entries are being written. After the last entry,
+ * {@link #finish()} adds the JAR signature files, the APK Signing Block, and the ZIP central directory.
+ * <p>
+ * All entries get the same modification time, so that APKs of the same inputs are identical.
+ * <p>
+ * If given an index file, the writer remembers where every entry came from, and patches the APK it
+ * wrote last time instead of writing a new one: leading entries whose source didn't change are kept
+ * in place without being written again. Unchanged entries after the first changed one get copied as
+ * they are, so only changed entries get compressed again. Adding entries that change rarely first
+ * keeps most of the APK in place.
+ */
+public class ApkWriter implements Closeable {
+
+    private static final String TAG = "ApkWriter";
+    /**
+     * Version of the index format and of how entries get written, an index of another version gets discarded.
+     */
+    private static final int INDEX_VERSION = 1;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_RECORD_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_RECORD_SIZE = 46;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_EOCD_COMMENT_SIZE = 0xffff;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 1 << 11;
+    /**
+     * 1981-01-01 00:00:00 in MS-DOS format.
+     */
+    private static final int DOS_DATE = (1 << 9) | (1 << 5) | 1;
+    private static final int DOS_TIME = 0;
+
+    /**
+     * Alignment of uncompressed entries, so that they can be memory-mapped.
+     */
+    private static final int ALIGNMENT = 4;
+    /**
+     * Alignment of uncompressed native libraries, so that they can be loaded directly from the APK.
+     */
+    private static final int NATIVE_LIBRARY_ALIGNMENT = 4096;
+
+    private final File outputFile;
+    private final RandomAccessFile output;
+    private final ApkSignerEngine signerEngine;
+    private final byte[] outputBuffer = new byte[64 * 1024];
+    private int outputBufferSize;
+    private long outputPosition;
+    private final byte[] readBuffer = new byte[64 * 1024];
+    private final byte[] processBuffer = new byte[64 * 1024];
+    private final List<CentralDirectoryRecord> centralDirectory = new ArrayList<>();
+    /**
+     * Where each entry came from, keyed by entry name.
+     */
+    private final Map<String, String> entrySources = new HashMap<>();
+
+    private final File indexFile;
+    private final String environment;
+    /**
+     * Entries of the APK written last time, in order, or {@code null} if there's none that can be patched.
+     */
+    private List<CentralDirectoryRecord> previousEntries;
+    /**
+     * How many of {@link #previousEntries} have been kept in place.
+     */
+    private int keptEntries;
+    /**
+     * If something has been written, meaning that no more entries can be kept in place.
+     */
+    private boolean diverged;
+    /**
+     * Copy of the previous APK's entries after the first one that wasn't kept in place.
+     */
+    private File tailFile;
+    private RandomAccessFile tail;
+    /**
+     * Where the {@link #tail} started in the previous APK.
+     */
+    private long tailOffset;
+    /**
+     * Entries inside the {@link #tail}, keyed by entry name.
+     */
+    private final Map<String, CentralDirectoryRecord> tailEntries = new HashMap<>();
+    private int copiedEntries;
+    private boolean finished;
+
+    /**
+     * @param minSdkVersion The APK's minimum SDK version, which decides the signature schemes to use
+     */
+    public ApkWriter(File outputFile, PrivateKey privateKey, List<X509Certificate> certificates, int minSdkVersion)
+            throws IOException, GeneralSecurityException {
+        this(outputFile, privateKey, certificates, minSdkVersion, null);
+    }
+
+    /**
+     * @param indexFile Where to remember the entries of {@code outputFile}, so that it can be patched
+     *                  next time. {@code null} to always write a new APK.
+     */
+    public ApkWriter(File outputFile, PrivateKey privateKey, List<X509Certificate> certificates, int minSdkVersion,
+                     File indexFile) throws IOException, GeneralSecurityException {
+        DefaultApkSignerEngine.SignerConfig signerConfig = new DefaultApkSignerEngine.SignerConfig.Builder(
+                "CERT", privateKey, certificates).build();
+        signerEngine = new DefaultApkSignerEngine.Builder(List.of(signerConfig), minSdkVersion)
+                // Devices on API 24 and later verify the APK Signature Scheme v2 signature instead
+                .setV1SigningEnabled(minSdkVersion < 24)
+                .setV2SigningEnabled(true)
+                .setCreatedBy("Sketchware Pro")
+                .build();
+
+        this.outputFile = outputFile;
+        this.indexFile = indexFile;
+        InputFingerprint fingerprint = new InputFingerprint()
+                .addString("version", String.valueOf(INDEX_VERSION))
+                .addString("minSdk", String.valueOf(minSdkVersion));
+        for (X509Certificate certificate : certificates) {
+            fingerprint.addString("certificate", InputFingerprint.toHex(
+                    InputFingerprint.newDigest().digest(certificate.getEncoded())));
+        }
+        environment = fingerprint.get();
+        if (indexFile != null) {
+            previousEntries = loadIndex();
+            /* Until the APK got written, the next build can't trust the index */
+            FileUtil.deleteFile(indexFile.getAbsolutePath());
+        }
+
+        File parent = outputFile.getParentFile();
+        if (parent != null) parent.mkdirs();
+        output = new RandomAccessFile(outputFile, "rw");
+        if (previousEntries == null) {
+            output.setLength(0);
+        }
+    }
+
+    /**
+     * Adds a file, compressed.
+     *
+     * @param name The entry's path inside the APK
+     */
+    public void addFile(File file, String name) throws IOException {
+        claimEntry(name, file.getAbsolutePath());
+        String sourceKey = "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        if (reuseEntry(name, sourceKey)) return;
+        ApkSignerEngine.InspectJarEntryRequest inspectRequest = signerEngine.outputJarEntry(name);
+
+        long headerOffset = writeLocalFileHeader(name, METHOD_DEFLATED, 0, 0, 0, 1);
+        long dataOffset = getPosition();
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(readBuffer)) != -1) {
+                crc.update(readBuffer, 0, read);
+                if (inspectRequest != null) {
+                    inspectRequest.getDataSink().consume(readBuffer, 0, read);
+                }
+                deflater.setInput(readBuffer, 0, read);
+                while (!deflater.needsInput()) {
+                    write(processBuffer, 0, deflater.deflate(processBuffer));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                write(processBuffer, 0, deflater.deflate(processBuffer));
+            }
+
+            long compressedSize = deflater.getBytesWritten();
+            long uncompressedSize = deflater.getBytesRead();
+            checkZip32(name, compressedSize, uncompressedSize);
+            ByteBuffer sizes = newBuffer(12)
+                    .putInt((int) crc.getValue())
+                    .putInt((int) compressedSize)
+                    .putInt((int) uncompressedSize);
+            patch(headerOffset + 14, sizes.array());
+            centralDirectory.add(new CentralDirectoryRecord(name, METHOD_DEFLATED, crc.getValue(),
+                    compressedSize, uncompressedSize, headerOffset, dataOffset, sourceKey));
+        } finally {
+            deflater.end();
+        }
+
+        if (inspectRequest != null) inspectRequest.done();
+    }
+
+    /**
+     * Adds every native library of a directory with ABI directories,
+     * e.g. <code>arm64-v8a/libfoo.so</code> as <code>lib/arm64-v8a/libfoo.so</code>.
+     */
+    public void addNativeLibraries(File directory) throws IOException {
+        File[] abiDirectories = directory.listFiles();
+        if (abiDirectories == null) return;
+
+        Arrays.sort(abiDirectories);
+        for (File abiDirectory : abiDirectories) {
+            File[] libraries = abiDirectory.listFiles();
+            if (!abiDirectory.isDirectory() || libraries == null) continue;
+
+            Arrays.sort(libraries);
+            for (File library : libraries) {
+                if (library.isFile() && library.getName().toLowerCase(Locale.ROOT).endsWith(".so")) {
+                    addFile(library, "lib/" + abiDirectory.getName() + "/" + library.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds every file entry of a ZIP file, without recompressing them.
+     *
+     * @param filter Which entries to add, {@code null} for all of them
+     */
+    public void addZipEntries(File zipFile, EntryFilter filter) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(zipFile, "r")) {
+            for (CentralDirectoryRecord entry : readCentralDirectory(in, zipFile)) {
+                if (entry.name.endsWith("/") || (filter != null && !filter.shouldAdd(entry.name))) continue;
+                if (entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+                    throw new ZipException("Entry " + entry.name + " of " + zipFile
+                            + " uses unsupported compression method " + entry.method);
+                }
+                claimEntry(entry.name, zipFile.getAbsolutePath());
+                String sourceKey = "zip:" + zipFile.getAbsolutePath() + "!" + entry.name + ":" + entry.method
+                        + ":" + entry.crc + ":" + entry.compressedSize + ":" + entry.uncompressedSize;
+                if (!reuseEntry(entry.name, sourceKey)) {
+                    copyEntry(in, zipFile, entry, sourceKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the JAR signature files, the APK Signing Block, and the ZIP central directory.
+     * No entries can be added afterwards.
+     */
+    public void finish() throws IOException, GeneralSecurityException {
+        try {
+            if (!diverged) diverge();
+            if (previousEntries != null) {
+                LogUtil.d(TAG, "Kept " + keptEntries + " and copied " + copiedEntries + " of "
+                        + centralDirectory.size() + " entries of the previous APK");
+            }
+
+            ApkSignerEngine.OutputJarSignatureRequest jarSignatureRequest = signerEngine.outputJarEntries();
+            if (jarSignatureRequest != null) {
+                for (ApkSignerEngine.OutputJarSignatureRequest.JarEntry entry : jarSignatureRequest.getAdditionalJarEntries()) {
+                    claimEntry(entry.getName(), "JAR signature");
+                    ApkSignerEngine.InspectJarEntryRequest inspectRequest = signerEngine.outputJarEntry(entry.getName());
+                    if (inspectRequest != null) {
+                        inspectRequest.getDataSink().consume(entry.getData(), 0, entry.getData().length);
+                        inspectRequest.done();
+                    }
+                    addBytes(entry.getName(), entry.getData());
+                }
+                jarSignatureRequest.done();
+            }
+
+            flushOutput();
+            long centralDirectoryOffset = outputPosition;
+            byte[] centralDirectoryBytes = getCentralDirectoryBytes();
+            ApkSignerEngine.OutputApkSigningBlockRequest2 signingBlockRequest = signerEngine.outputZipSections2(
+                    DataSources.asDataSource(output, 0, centralDirectoryOffset),
+                    DataSources.asDataSource(ByteBuffer.wrap(centralDirectoryBytes)),
+                    DataSources.asDataSource(ByteBuffer.wrap(getEocdBytes(centralDirectoryOffset, centralDirectoryBytes.length))));
+            if (signingBlockRequest != null) {
+                write(new byte[signingBlockRequest.getPaddingSizeBeforeApkSigningBlock()]);
+                write(signingBlockRequest.getApkSigningBlock());
+                centralDirectoryOffset = getPosition();
+                signingBlockRequest.done();
+            }
+
+            write(centralDirectoryBytes);
+            write(getEocdBytes(centralDirectoryOffset, centralDirectoryBytes.length));
+            flushOutput();
+            output.setLength(outputPosition);
+            signerEngine.outputDone();
+            finished = true;
+        } catch (ApkFormatException e) {
+            throw new IOException("Couldn't sign APK: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            signerEngine.close();
+            output.close();
+            if (finished && indexFile != null) {
+                saveIndex();
+            }
+        } finally {
+            if (tail != null) tail.close();
+            if (tailFile != null) tailFile.delete();
+        }
+    }
+
+    /**
+     * Keeps an entry of the previous APK in place if it and all entries before it are unchanged,
+     * or copies it from the {@link #tail} if only entries before it changed.
+     *
+     * @param sourceKey Identifies the entry's source and content
+     * @return If the entry didn't need to be added
+     */
+    private boolean reuseEntry(String name, String sourceKey) throws IOException {
+        if (previousEntries == null) return false;
+
+        if (!diverged) {
+            CentralDirectoryRecord previous = keptEntries < previousEntries.size() ? previousEntries.get(keptEntries) : null;
+            if (previous != null && previous.name.equals(name) && sourceKey.equals(previous.sourceKey)) {
+                ApkSignerEngine.InspectJarEntryRequest inspectRequest = signerEngine.outputJarEntry(name);
+                if (inspectRequest != null) {
+                    /* The JAR signature needs the content of every entry */
+                    transferData(output, previous.dataOffset, previous, inspectRequest, false, outputFile);
+                    inspectRequest.done();
+                }
+                centralDirectory.add(previous);
+                outputPosition = previous.dataOffset + previous.compressedSize;
+                keptEntries++;
+                return true;
+            }
+            diverge();
+        }
+
+        CentralDirectoryRecord previous = tailEntries.remove(name);
+        if (previous == null || !sourceKey.equals(previous.sourceKey)) return false;
+        copyEntry(tail, previous.dataOffset - tailOffset, tailFile, previous, sourceKey);
+        copiedEntries++;
+        return true;
+    }
+
+    /**
+     * Stops keeping entries of the previous APK in place, and moves the ones after the current position
+     * to the {@link #tail}, so that they can still be copied.
+     */
+    private void diverge() throws IOException {
+        diverged = true;
+        if (previousEntries != null && keptEntries < previousEntries.size()) {
+            CentralDirectoryRecord last = previousEntries.get(previousEntries.size() - 1);
+            long end = last.dataOffset + last.compressedSize;
+            tailOffset = outputPosition;
+            tailFile = new File(outputFile.getAbsolutePath() + ".tail");
+            try (RandomAccessFile tailOutput = new RandomAccessFile(tailFile, "rw")) {
+                tailOutput.setLength(0);
+                output.seek(tailOffset);
+                long remaining = end - tailOffset;
+                while (remaining > 0) {
+                    int read = output.read(readBuffer, 0, (int) Math.min(readBuffer.length, remaining));
+                    if (read == -1) {
+                        throw new ZipException("Previous APK " + outputFile + " is truncated");
+                    }
+                    tailOutput.write(readBuffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            tail = new RandomAccessFile(tailFile, "r");
+            for (CentralDirectoryRecord previous : previousEntries.subList(keptEntries, previousEntries.size())) {
+                tailEntries.put(previous.name, previous);
+            }
+        }
+        output.seek(outputPosition);
+    }
+
+    private void copyEntry(RandomAccessFile in, File zipFile, CentralDirectoryRecord entry, String sourceKey) throws IOException {
+        in.seek(entry.localHeaderOffset + 26);
+        byte[] lengths = new byte[4];
+        in.readFully(lengths);
+        ByteBuffer lengthsBuffer = ByteBuffer.wrap(lengths).order(ByteOrder.LITTLE_ENDIAN);
+        long dataOffset = entry.localHeaderOffset + LOCAL_FILE_HEADER_SIZE
+                + (lengthsBuffer.getShort() & 0xffff) + (lengthsBuffer.getShort() & 0xffff);
+        copyEntry(in, dataOffset, zipFile, entry, sourceKey);
+    }
+
+    private void copyEntry(RandomAccessFile in, long dataOffset, File source, CentralDirectoryRecord entry,
+                           String sourceKey) throws IOException {
+        ApkSignerEngine.InspectJarEntryRequest inspectRequest = signerEngine.outputJarEntry(entry.name);
+        int alignment = entry.method == METHOD_STORED ? getAlignment(entry.name) : 1;
+        long headerOffset = writeLocalFileHeader(entry.name, entry.method, entry.crc,
+                entry.compressedSize, entry.uncompressedSize, alignment);
+        long outputDataOffset = getPosition();
+
+        transferData(in, dataOffset, entry, inspectRequest, true, source);
+
+        centralDirectory.add(new CentralDirectoryRecord(entry.name, entry.method, entry.crc,
+                entry.compressedSize, entry.uncompressedSize, headerOffset, outputDataOffset, sourceKey));
+        if (inspectRequest != null) inspectRequest.done();
+    }
+
+    /**
+     * Reads an entry's compressed data, writing it to the APK if {@code write}, and passing its
+     * uncompressed content to {@code inspectRequest} if it isn't {@code null}.
+     */
+    private void transferData(RandomAccessFile in, long dataOffset, CentralDirectoryRecord entry,
+                              ApkSignerEngine.InspectJarEntryRequest inspectRequest, boolean write,
+                              File source) throws IOException {
+        Inflater inflater = inspectRequest != null && entry.method == METHOD_DEFLATED ? new Inflater(true) : null;
+        try {
+            in.seek(dataOffset);
+            long remaining = entry.compressedSize;
+            while (remaining > 0) {
+                int read = in.read(readBuffer, 0, (int) Math.min(readBuffer.length, remaining));
+                if (read == -1) {
+                    throw new ZipException("Entry " + entry.name + " of " + source + " is truncated");
+                }
+                remaining -= read;
+                if (write) write(readBuffer, 0, read);
+
+                if (inspectRequest == null) continue;
+                if (inflater == null) {
+                    inspectRequest.getDataSink().consume(readBuffer, 0, read);
+                } else {
+                    inflater.setInput(readBuffer, 0, read);
+                    int inflated;
+                    while ((inflated = inflater.inflate(processBuffer)) > 0) {
+                        inspectRequest.getDataSink().consume(processBuffer, 0, inflated);
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Entry " + entry.name + " of " + source + " is corrupt: " + e.getMessage());
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+
+    /**
+     * @return Entries of the APK written last time, or {@code null} if it can't be patched
+     */
+    private List<CentralDirectoryRecord> loadIndex() {
+        if (!indexFile.isFile()) return null;
+        try {
+            Index index = new Gson().fromJson(FileUtil.readFile(indexFile.getAbsolutePath()), Index.class);
+            if (index == null || index.entries == null || !environment.equals(index.environment)) {
+                LogUtil.d(TAG, "Minimum SDK version or signer changed, writing a new APK");
+                return null;
+            }
+            if (outputFile.length() != index.length || outputFile.lastModified() != index.lastModified) {
+                LogUtil.d(TAG, "APK changed since it was written, writing a new APK");
+                return null;
+            }
+            return index.entries;
+        } catch (Exception e) {
+            LogUtil.w(TAG, "Couldn't read APK index, writing a new APK", e);
+            return null;
+        }
+    }
+
+    private void saveIndex() {
+        Index index = new Index();
+        index.environment = environment;
+        index.length = outputFile.length();
+        index.lastModified = outputFile.lastModified();
+        index.entries = centralDirectory;
+        FileUtil.writeFile(indexFile.getAbsolutePath(), new Gson().toJson(index));
+    }
+
+    private void addBytes(String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.write(processBuffer, 0, deflater.deflate(processBuffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long headerOffset = writeLocalFileHeader(name, METHOD_DEFLATED, crc.getValue(), compressed.size(), data.length, 1);
+        long dataOffset = getPosition();
+        write(compressed.toByteArray());
+        centralDirectory.add(new CentralDirectoryRecord(name, METHOD_DEFLATED, crc.getValue(),
+                compressed.size(), data.length, headerOffset, dataOffset, null));
+    }
+
+    /**
+     * @return The offset of the local file header
+     */
+    private long writeLocalFileHeader(String name, int method, long crc, long compressedSize, long uncompressedSize,
+                                      int alignment) throws IOException {
+        checkZip32(name, compressedSize, uncompressedSize);
+        if (!diverged) diverge();
+        long headerOffset = getPosition();
+        if (headerOffset > 0xffffffffL) {
+            throw new ZipException("APK is too big, ZIP64 isn't supported");
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int padding = 0;
+        if (alignment > 1) {
+            long dataOffset = headerOffset + LOCAL_FILE_HEADER_SIZE + nameBytes.length;
+            padding = (int) ((alignment - dataOffset % alignment) % alignment);
+        }
+
+        ByteBuffer header = newBuffer(LOCAL_FILE_HEADER_SIZE + nameBytes.length + padding)
+                .putInt(LOCAL_FILE_HEADER_SIGNATURE)
+                .putShort((short) (method == METHOD_STORED ? 10 : 20))
+                .putShort((short) getFlags(name))
+                .putShort((short) method)
+                .putShort((short) DOS_TIME)
+                .putShort((short) DOS_DATE)
+                .putInt((int) crc)
+                .putInt((int) compressedSize)
+                .putInt((int) uncompressedSize)
+                .putShort((short) nameBytes.length)
+                .putShort((short) padding)
+                .put(nameBytes);
+        // The extra field is left zeroed, it only serves as padding
+        write(header.array());
+        return headerOffset;
+    }
+
+    private byte[] getCentralDirectoryBytes() throws ZipException {
+        if (centralDirectory.size() > 0xffff) {
+            throw new ZipException("Too many entries, ZIP64 isn't supported");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (CentralDirectoryRecord record : centralDirectory) {
+            byte[] nameBytes = record.name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = newBuffer(CENTRAL_DIRECTORY_RECORD_SIZE + nameBytes.length)
+                    .putInt(CENTRAL_DIRECTORY_RECORD_SIGNATURE)
+                    .putShort((short) 20) // Version made by
+                    .putShort((short) (record.method == METHOD_STORED ? 10 : 20))
+                    .putShort((short) getFlags(record.name))
+                    .putShort((short) record.method)
+                    .putShort((short) DOS_TIME)
+                    .putShort((short) DOS_DATE)
+                    .putInt((int) record.crc)
+                    .putInt((int) record.compressedSize)
+                    .putInt((int) record.uncompressedSize)
+                    .putShort((short) nameBytes.length)
+                    .putShort((short) 0) // Extra field length
+                    .putShort((short) 0) // Comment length
+                    .putShort((short) 0) // Disk number
+                    .putShort((short) 0) // Internal attributes
+                    .putInt(0) // External attributes
+                    .putInt((int) record.localHeaderOffset)
+                    .put(nameBytes);
+            bytes.write(buffer.array(), 0, buffer.capacity());
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] getEocdBytes(long centralDirectoryOffset, int centralDirectorySize) {
+        return newBuffer(EOCD_SIZE)
+                .putInt(EOCD_SIGNATURE)
+                .putShort((short) 0) // Disk number
+                .putShort((short) 0) // Disk with the central directory
+                .putShort((short) centralDirectory.size())
+                .putShort((short) centralDirectory.size())
+                .putInt(centralDirectorySize)
+                .putInt((int) centralDirectoryOffset)
+                .putShort((short) 0) // Comment length
+                .array();
+    }
+
+    private static List<CentralDirectoryRecord> readCentralDirectory(RandomAccessFile in, File zipFile) throws IOException {
+        long length = in.length();
+        int tailLength = (int) Math.min(length, EOCD_SIZE + MAX_EOCD_COMMENT_SIZE);
+        byte[] tail = new byte[tailLength];
+        in.seek(length - tailLength);
+        in.readFully(tail);
+        ByteBuffer tailBuffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocdOffset = -1;
+        for (int i = tailLength - EOCD_SIZE; i >= 0; i--) {
+            if (tailBuffer.getInt(i) == EOCD_SIGNATURE
+                    && i + EOCD_SIZE + (tailBuffer.getShort(i + 20) & 0xffff) == tailLength) {
+                eocdOffset = i;
+                break;
+            }
+        }
+        if (eocdOffset == -1) {
+            throw new ZipException(zipFile + " isn't a ZIP file");
+        }
+
+        int entryCount = tailBuffer.getShort(eocdOffset + 10) & 0xffff;
+        long centralDirectorySize = tailBuffer.getInt(eocdOffset + 12) & 0xffffffffL;
+        long centralDirectoryOffset = tailBuffer.getInt(eocdOffset + 16) & 0xffffffffL;
+        if (entryCount == 0xffff || centralDirectoryOffset == 0xffffffffL
+                || centralDirectoryOffset + centralDirectorySize > length) {
+            throw new ZipException(zipFile + " is a ZIP64 file or corrupt, which isn't supported");
+        }
+
+        byte[] centralDirectoryBytes = new byte[(int) centralDirectorySize];
+        in.seek(centralDirectoryOffset);
+        in.readFully(centralDirectoryBytes);
+        ByteBuffer buffer = ByteBuffer.wrap(centralDirectoryBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        List<CentralDirectoryRecord> records = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            int recordOffset = buffer.position();
+            if (buffer.remaining() < CENTRAL_DIRECTORY_RECORD_SIZE || buffer.getInt(recordOffset) != CENTRAL_DIRECTORY_RECORD_SIGNATURE) {
+                throw new ZipException("Central directory of " + zipFile + " is corrupt");
+            }
+            int method = buffer.getShort(recordOffset + 10) & 0xffff;
+            long crc = buffer.getInt(recordOffset + 16) & 0xffffffffL;
+            long compressedSize = buffer.getInt(recordOffset + 20) & 0xffffffffL;
+            long uncompressedSize = buffer.getInt(recordOffset + 24) & 0xffffffffL;
+            int nameLength = buffer.getShort(recordOffset + 28) & 0xffff;
+            int extraLength = buffer.getShort(recordOffset + 30) & 0xffff;
+            int commentLength = buffer.getShort(recordOffset + 32) & 0xffff;
+            long localHeaderOffset = buffer.getInt(recordOffset + 42) & 0xffffffffL;
+
+            byte[] nameBytes = new byte[nameLength];
+            buffer.position(recordOffset + CENTRAL_DIRECTORY_RECORD_SIZE);
+            buffer.get(nameBytes);
+            buffer.position(buffer.position() + extraLength + commentLength);
+
+            records.add(new CentralDirectoryRecord(new String(nameBytes, StandardCharsets.UTF_8), method, crc,
+                    compressedSize, uncompressedSize, localHeaderOffset, -1, null));
+        }
+        return records;
+    }
+
+    private void claimEntry(String name, String source) throws DuplicateEntryException {
+        String existingSource = entrySources.put(name, source);
+        if (existingSource != null) {
+            throw new DuplicateEntryException(name, existingSource, source);
+        }
+    }
+
+    private static int getAlignment(String name) {
+        return name.startsWith("lib/") && name.endsWith(".so") ? NATIVE_LIBRARY_ALIGNMENT : ALIGNMENT;
+    }
+
+    private static int getFlags(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) return FLAG_UTF8;
+        }
+        return 0;
+    }
+
+    private static void checkZip32(String name, long compressedSize, long uncompressedSize) throws ZipException {
+        if (compressedSize > 0xffffffffL || uncompressedSize > 0xffffffffL) {
+            throw new ZipException("Entry " + name + " is too big, ZIP64 isn't supported");
+        }
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return Offset in the APK the next written byte will be at
+     */
+    private long getPosition() {
+        return outputPosition + outputBufferSize;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > outputBuffer.length - outputBufferSize) {
+            flushOutput();
+            if (length > outputBuffer.length) {
+                output.write(bytes, offset, length);
+                outputPosition += length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, outputBuffer, outputBufferSize, length);
+        outputBufferSize += length;
+    }
+
+    private void flushOutput() throws IOException {
+        if (outputBufferSize > 0) {
+            output.write(outputBuffer, 0, outputBufferSize);
+            outputPosition += outputBufferSize;
+            outputBufferSize = 0;
+        }
+    }
+
+    /**
+     * Overwrites already written bytes, e.g. a local file header's sizes that weren't known before.
+     */
+    private void patch(long position, byte[] bytes) throws IOException {
+        flushOutput();
+        output.seek(position);
+        output.write(bytes);
+        output.seek(outputPosition);
+    }
+
+    /**
+     * Decides which entries of a ZIP file to add.
+     */
+    public interface EntryFilter {
+        /**
+         * Accepts the Java resources of a library JAR, skipping the same files sdklib's ApkBuilder skips,
+         * like classes, sources, and signature files.
+         */
+        EntryFilter JAVA_RESOURCES = name -> {
+            String[] segments = name.split("/");
+            for (int i = 0; i < segments.length - 1; i++) {
+                String folder = segments[i];
+                if (folder.equalsIgnoreCase("META-INF") || folder.equalsIgnoreCase("CVS")
+                        || folder.equalsIgnoreCase(".svn") || folder.equalsIgnoreCase("SCCS")
+                        || folder.startsWith("_")) {
+                    return false;
+                }
+            }
+
+            String filename = segments[segments.length - 1];
+            if (filename.isEmpty() || filename.charAt(0) == '.') return false;
+            String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            switch (extension) {
+                case "aidl":
+                case "rs":
+                case "fs":
+                case "rsh":
+                case "d":
+                case "java":
+                case "scala":
+                case "class":
+                case "scc":
+                case "swp":
+                    return false;
+            }
+            switch (filename.toLowerCase(Locale.ROOT)) {
+                case "thumbs.db":
+                case "picasa.ini":
+                case "package.html":
+                case "overview.html":
+                    return false;
+                default:
+                    return true;
+            }
+        };
+
+        boolean shouldAdd(String name);
+    }
+
+    /**
+     * Thrown if two entries with the same name get added.
+     */
+    public static class DuplicateEntryException extends ZipException {
+        private final String name;
+        private final String firstSource;
+        private final String secondSource;
+
+        private DuplicateEntryException(String name, String firstSource, String secondSource) {
+            super("Duplicate entry " + name + " from " + firstSource + " and " + secondSource);
+            this.name = name;
+            this.firstSource = firstSource;
+            this.secondSource = secondSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFirstSource() {
+            return firstSource;
+        }
+
+        public String getSecondSource() {
+            return secondSource;
+        }
+    }
+
+    private static class Index {
+        private String environment;
+        private long length;
+        private long lastModified;
+        private List<CentralDirectoryRecord> entries;
+    }
+
+    private static class CentralDirectoryRecord {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long uncompressedSize;
+        private final long localHeaderOffset;
+        /**
+         * Offset of the entry's data, only known for entries of the APK.
+         */
+        private final long dataOffset;
+        /**
+         * Identifies where the entry came from and its content, {@code null} if it can't be reused,
+         * like the JAR signature files.
+         */
+        private final String sourceKey;
+
+        private CentralDirectoryRecord(String name, int method, long crc, long compressedSize, long uncompressedSize,
+                                       long localHeaderOffset, long dataOffset, String sourceKey) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.uncompressedSize = uncompressedSize;
+            this.localHeaderOffset = localHeaderOffset;
+            this.dataOffset = dataOffset;
+            this.sourceKey = sourceKey;
+        }
+    }
+}
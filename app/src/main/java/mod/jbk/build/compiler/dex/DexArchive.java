@@ -0,0 +1,283 @@
+package mod.jbk.build.compiler.dex;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import mod.jbk.build.incremental.InputFingerprint;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Per-project archive of every compiled class dexed on its own by D8, so that only changed classes need
+ * to be dexed again before merging all of them into the final DEX files.
+ * <p>
+ * A class's DEX file is keyed by the content hash of its class file and, transitively, of the class files of
+ * its project supertypes. Desugaring puts code of interfaces into the classes implementing them, e.g. forwarding
+ * methods for default methods, so a class has to be dexed again once one of its supertypes changed.
+ * <p>
+ * Usage: {@link #getOutdatedClassFiles(File, List)} returns the class files to dex, whose DEX files get added
+ * with {@link #put(String, byte[])}. Afterwards, {@link #getDexFiles()} returns the DEX files of every class,
+ * and {@link #save()} removes DEX files of classes that don't exist anymore.
+ * <p>
+ * The archive is only valid for the minimum API level and library classes it was dexed with, see
+ * {@link #load(File, String)}.
+ */
+public class DexArchive {
+
+    private static final String TAG = "DexArchive";
+    private static final String MANIFEST_FILENAME = "archive.json";
+
+    private final File directory;
+    private final String environment;
+    /**
+     * Classes of the last build, keyed by their internal name.
+     */
+    private HashMap<String, Entry> previousClasses = new HashMap<>();
+    /**
+     * Classes of this build, keyed and sorted by their internal name, like <code>com/example/Main$1</code>.
+     */
+    private final TreeMap<String, Entry> classes = new TreeMap<>();
+
+    private DexArchive(File directory, String environment) {
+        this.directory = directory;
+        this.environment = environment;
+    }
+
+    /**
+     * @param environment Fingerprint of the minimum API level and library classes, an archive dexed with
+     *                    a different one gets discarded
+     */
+    public static DexArchive load(File directory, String environment) {
+        DexArchive archive = new DexArchive(directory, environment);
+        File manifestFile = new File(directory, MANIFEST_FILENAME);
+        if (manifestFile.isFile()) {
+            try {
+                Manifest manifest = new Gson().fromJson(FileUtil.readFile(manifestFile.getAbsolutePath()), Manifest.class);
+                if (manifest != null && manifest.classes != null && environment.equals(manifest.environment)) {
+                    archive.previousClasses = manifest.classes;
+                    return archive;
+                }
+                LogUtil.d(TAG, "Minimum API level or library classes changed, dexing all classes");
+            } catch (Exception e) {
+                LogUtil.w(TAG, "Couldn't read DEX archive manifest, dexing all classes", e);
+            }
+        }
+        FileUtil.deleteFile(directory.getAbsolutePath());
+        FileUtil.makeDir(directory.getAbsolutePath());
+        return archive;
+    }
+
+    /**
+     * @param classFiles Every class file inside {@code classesDirectory}
+     * @return Class files whose current content, or the content of one of whose supertypes, hasn't been dexed yet
+     * @throws IOException Thrown if a class file couldn't be read
+     */
+    public List<File> getOutdatedClassFiles(File classesDirectory, List<File> classFiles) throws IOException {
+        String classesPath = classesDirectory.getAbsolutePath() + File.separator;
+        Map<String, File> classFilesByName = new HashMap<>();
+        for (File classFile : classFiles) {
+            String path = classFile.getAbsolutePath();
+            if (!path.startsWith(classesPath) || !path.endsWith(".class")) {
+                throw new IOException("Class file " + classFile + " isn't inside " + classesDirectory);
+            }
+            String internalName = path.substring(classesPath.length(), path.length() - ".class".length())
+                    .replace(File.separatorChar, '/');
+            String stamp = classFile.length() + ":" + classFile.lastModified();
+            classFilesByName.put(internalName, classFile);
+
+            Entry previous = previousClasses.get(internalName);
+            if (previous != null && previous.stamp.equals(stamp) && previous.supertypes != null) {
+                classes.put(internalName, new Entry(stamp, previous.hash, previous.supertypes));
+            } else {
+                classes.put(internalName, new Entry(stamp, InputFingerprint.hashFile(classFile), readSupertypes(classFile)));
+            }
+        }
+
+        List<File> outdated = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : classes.entrySet()) {
+            if (!getDexFile(getDexKey(entry.getKey(), new HashSet<>())).isFile()) {
+                outdated.add(classFilesByName.get(entry.getKey()));
+            }
+        }
+        LogUtil.d(TAG, outdated.size() + " of " + classes.size() + " classes need to be dexed");
+        return outdated;
+    }
+
+    /**
+     * Adds the DEX file D8 compiled a class file to. Can be called from multiple threads.
+     *
+     * @param classDescriptor Descriptor of the class, like <code>Lcom/example/Main$1;</code>
+     */
+    public void put(String classDescriptor, byte[] dex) throws IOException {
+        String internalName = classDescriptor.substring(1, classDescriptor.length() - 1);
+        Entry entry;
+        synchronized (classes) {
+            entry = classes.get(internalName);
+        }
+        if (entry == null) {
+            throw new IOException("D8 dexed unknown class " + classDescriptor);
+        }
+
+        File dexFile = getDexFile(entry.dexKey);
+        File temporaryFile = new File(directory, entry.dexKey + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporaryFile)) {
+            out.write(dex);
+        }
+        if (!temporaryFile.renameTo(dexFile)) {
+            temporaryFile.delete();
+            throw new IOException("Couldn't move DEX file of " + classDescriptor + " to " + dexFile);
+        }
+    }
+
+    /**
+     * @return DEX files of every class, sorted by class name
+     * @throws IOException Thrown if a class hasn't been dexed
+     */
+    public List<Path> getDexFiles() throws IOException {
+        List<Path> dexFiles = new ArrayList<>(classes.size());
+        for (Map.Entry<String, Entry> entry : classes.entrySet()) {
+            File dexFile = getDexFile(entry.getValue().dexKey);
+            if (!dexFile.isFile()) {
+                throw new IOException("D8 didn't dex class " + entry.getKey());
+            }
+            dexFiles.add(dexFile.toPath());
+        }
+        return dexFiles;
+    }
+
+    /**
+     * Saves the manifest for the next build, and deletes DEX files no class needs anymore.
+     */
+    public void save() {
+        Set<String> used = new HashSet<>();
+        for (Entry entry : classes.values()) {
+            used.add(getDexFile(entry.dexKey).getName());
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().equals(MANIFEST_FILENAME) && !used.contains(file.getName())) {
+                    FileUtil.deleteFile(file.getAbsolutePath());
+                }
+            }
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.environment = environment;
+        manifest.classes = new HashMap<>(classes);
+        FileUtil.writeFile(new File(directory, MANIFEST_FILENAME).getAbsolutePath(), new Gson().toJson(manifest));
+    }
+
+    /**
+     * @return Hash of the class's own content hash and the DEX keys of its supertypes in this build,
+     * which are computed as well if they haven't been yet
+     */
+    private String getDexKey(String internalName, Set<String> visiting) {
+        Entry entry = classes.get(internalName);
+        if (entry.dexKey != null) {
+            return entry.dexKey;
+        }
+        // Cyclic inheritance doesn't pass verification anyway
+        visiting.add(internalName);
+
+        MessageDigest digest = InputFingerprint.newDigest();
+        digest.update(entry.hash.getBytes(StandardCharsets.UTF_8));
+        for (String supertype : entry.supertypes) {
+            if (classes.containsKey(supertype) && !visiting.contains(supertype)) {
+                digest.update(("\n" + supertype + ":" + getDexKey(supertype, visiting)).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        entry.dexKey = InputFingerprint.toHex(digest.digest());
+        return entry.dexKey;
+    }
+
+    /**
+     * @return Internal names of the superclass and the interfaces a class file declares
+     */
+    private static List<String> readSupertypes(File classFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(classFile)))) {
+            if (in.readInt() != 0xCAFEBABE) {
+                throw new IOException("Not a class file: " + classFile);
+            }
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+
+            int constantPoolCount = in.readUnsignedShort();
+            String[] utf8Constants = new String[constantPoolCount];
+            int[] classNameIndices = new int[constantPoolCount];
+            for (int i = 1; i < constantPoolCount; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1 -> utf8Constants[i] = in.readUTF();
+                    case 7 -> classNameIndices[i] = in.readUnsignedShort();
+                    case 8, 16, 19, 20 -> in.skipBytes(2);
+                    case 15 -> in.skipBytes(3);
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                    case 5, 6 -> {
+                        in.skipBytes(8);
+                        // Longs and doubles take up two entries
+                        i++;
+                    }
+                    default -> throw new IOException("Unknown constant pool tag " + tag + " in " + classFile);
+                }
+            }
+
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            List<String> supertypes = new ArrayList<>();
+            int superClass = in.readUnsignedShort();
+            if (superClass != 0) {
+                supertypes.add(utf8Constants[classNameIndices[superClass]]);
+            }
+            int interfacesCount = in.readUnsignedShort();
+            for (int i = 0; i < interfacesCount; i++) {
+                supertypes.add(utf8Constants[classNameIndices[in.readUnsignedShort()]]);
+            }
+            return supertypes;
+        }
+    }
+
+    private File getDexFile(String dexKey) {
+        return new File(directory, dexKey + ".dex");
+    }
+
+    private static class Manifest {
+        private String environment;
+        private HashMap<String, Entry> classes;
+    }
+
+    private static class Entry {
+        private final String stamp;
+        private final String hash;
+        /**
+         * Internal names of the superclass and interfaces, {@code null} in manifests of older archives
+         */
+        private final List<String> supertypes;
+        /**
+         * Not saved, as it depends on the other classes of a build
+         */
+        private transient String dexKey;
+
+        private Entry(String stamp, String hash, List<String> supertypes) {
+            this.stamp = stamp;
+            this.hash = hash;
+            this.supertypes = supertypes;
+        }
+    }
+}
@@ -1,22 +1,34 @@
 package mod.jbk.build.compiler.dex;
 
+import com.android.tools.r8.ByteDataView;
 import com.android.tools.r8.CompilationFailedException;
 import com.android.tools.r8.CompilationMode;
 import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DexFilePerClassFileConsumer;
+import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import a.a.a.ProjectBuilder;
 import mod.hey.studios.project.ProjectSettings;
+import mod.jbk.build.incremental.InputFingerprint;
+import mod.jbk.util.LogUtil;
 import pro.sketchware.utility.FileUtil;
 
 public class DexCompiler {
+
+    private static final String TAG = "DexCompiler";
+
     public static void compileDexFiles(ProjectBuilder builder) throws CompilationFailedException {
         int minApiLevel;
 
@@ -27,6 +39,16 @@ public class DexCompiler {
             throw new CompilationFailedException("Invalid minSdkVersion specified in Project Settings" + e.getMessage());
         }
 
+        Collection<Path> libraryFiles = new LinkedList<>();
+        for (String jarPath : builder.getClasspath().split(":")) {
+            libraryFiles.add(Paths.get(jarPath));
+        }
+
+        if (builder.isIncrementalBuild() && !builder.proguard.isShrinkingEnabled()) {
+            compileDexFilesIncrementally(builder, minApiLevel, libraryFiles);
+            return;
+        }
+
         Collection<Path> programFiles = new LinkedList<>();
         if (builder.proguard.isShrinkingEnabled()) {
             programFiles.add(Paths.get(builder.yq.proguardClassesPath));
@@ -36,11 +58,6 @@ public class DexCompiler {
             }
         }
 
-        Collection<Path> libraryFiles = new LinkedList<>();
-        for (String jarPath : builder.getClasspath().split(":")) {
-            libraryFiles.add(Paths.get(jarPath));
-        }
-
         D8.run(D8Command.builder()
                 .setMode(CompilationMode.RELEASE)
                 .setIntermediate(true)
@@ -50,4 +67,70 @@ public class DexCompiler {
                 .addProgramFiles(programFiles)
                 .build());
     }
+
+    /**
+     * Dexes only classes that changed since the last build, or whose supertypes did, each to its own DEX file
+     * kept in a {@link DexArchive}, and then merges the DEX files of all classes.
+     */
+    private static void compileDexFilesIncrementally(ProjectBuilder builder, int minApiLevel, Collection<Path> libraryFiles) throws CompilationFailedException {
+        File classesDirectory = new File(builder.yq.compiledClassesPath);
+        InputFingerprint environment = new InputFingerprint()
+                .addString("minApiLevel", String.valueOf(minApiLevel));
+        for (Path libraryFile : libraryFiles) {
+            environment.addFileStamp(libraryFile.toFile());
+        }
+        DexArchive archive = DexArchive.load(new File(builder.yq.binDirectoryPath, "dex_archive"), environment.get());
+
+        try {
+            List<File> outdatedClassFiles = archive.getOutdatedClassFiles(classesDirectory,
+                    FileUtil.listFilesRecursively(classesDirectory, ".class"));
+            if (!outdatedClassFiles.isEmpty()) {
+                long savedTimeMillis = System.currentTimeMillis();
+                Collection<Path> programFiles = new LinkedList<>();
+                for (File classFile : outdatedClassFiles) {
+                    programFiles.add(classFile.toPath());
+                }
+
+                AtomicReference<IOException> archiveException = new AtomicReference<>();
+                D8.run(D8Command.builder()
+                        .setMode(CompilationMode.RELEASE)
+                        .setIntermediate(true)
+                        .setMinApiLevel(minApiLevel)
+                        .addLibraryFiles(libraryFiles)
+                        /* Unchanged classes, e.g. interfaces with default methods to desugar */
+                        .addClasspathFiles(classesDirectory.toPath())
+                        .addProgramFiles(programFiles)
+                        .setProgramConsumer(new DexFilePerClassFileConsumer.ForwardingConsumer(null) {
+                            @Override
+                            public void accept(String primaryClassDescriptor, ByteDataView data, Set<String> descriptors, DiagnosticsHandler handler) {
+                                try {
+                                    archive.put(primaryClassDescriptor, data.copyByteData());
+                                } catch (IOException e) {
+                                    archiveException.compareAndSet(null, e);
+                                }
+                            }
+                        })
+                        .build());
+                if (archiveException.get() != null) {
+                    throw archiveException.get();
+                }
+                LogUtil.d(TAG, "Dexing " + outdatedClassFiles.size() + " changed classes took "
+                        + (System.currentTimeMillis() - savedTimeMillis) + " ms");
+            }
+
+            long savedTimeMillis = System.currentTimeMillis();
+            D8.run(D8Command.builder()
+                    .setMode(CompilationMode.RELEASE)
+                    .setIntermediate(true)
+                    .setMinApiLevel(minApiLevel)
+                    .addLibraryFiles(libraryFiles)
+                    .setOutput(new File(builder.yq.binDirectoryPath, "dex").toPath(), OutputMode.DexIndexed)
+                    .addProgramFiles(archive.getDexFiles())
+                    .build());
+            LogUtil.d(TAG, "Merging DEX files of all classes took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
+            archive.save();
+        } catch (IOException e) {
+            throw new CompilationFailedException("Couldn't use DEX archive: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,236 @@
+package mod.jbk.build.compiler.dex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import mod.agus.jcoderz.dex.Dex;
+import mod.agus.jcoderz.dex.DexHeader;
+import mod.agus.jcoderz.dex.FieldId;
+import mod.agus.jcoderz.dex.MethodId;
+import mod.agus.jcoderz.dex.ProtoId;
+import mod.jbk.util.LogUtil;
+
+/**
+ * Decides which DEX files get merged into which output DEX file, before any merging happens.
+ * <p>
+ * IDs are compared by what they refer to (e.g. <code>Lfoo/Bar;-&gt;baz(I)V</code>) rather than by
+ * their indices, as indices are only meaningful inside the DEX file they come from. IDs shared by
+ * several input DEX files only count once towards an output DEX file's limits, just like after
+ * merging. DEX files are packed in their given order, so the first ones always end up in
+ * <code>classes.dex</code>.
+ * <p>
+ * As long as the ID counts in DEX files' headers add up to less than the limits, DEX files are known to
+ * fit without looking at their IDs. Only once that's not the case anymore, the IDs of an output DEX
+ * file's inputs get resolved, from memory-mapped DEX files.
+ */
+public class DexMergePlanner {
+
+    /**
+     * Maximum number of field, method, proto and type IDs a single DEX file can reference.
+     */
+    public static final int MAX_IDS = 0xffff;
+
+    private static final String TAG = "DexMergePlanner";
+
+    /**
+     * Plans how to merge {@code dexFiles}.
+     *
+     * @return Groups of DEX files, each of which fits into one output DEX file
+     * @throws IOException Thrown if a DEX file couldn't be read
+     */
+    public List<MergedDex> plan(List<File> dexFiles) throws IOException {
+        List<MergedDex> plan = new ArrayList<>();
+        MergedDex current = null;
+
+        for (File dexFile : dexFiles) {
+            DexHeader header = DexHeader.read(dexFile);
+
+            if (current == null || !current.fits(dexFile, header)) {
+                if (current != null) {
+                    LogUtil.d(TAG, "Can't merge " + dexFile.getName() + " into " + current.getFilename()
+                            + " as well, it would have too many IDs. " + current);
+                }
+                current = new MergedDex(plan.isEmpty() ? "classes.dex" : "classes" + (plan.size() + 1) + ".dex");
+                plan.add(current);
+            }
+            current.add(dexFile, header);
+        }
+
+        LogUtil.d(TAG, "Will merge " + dexFiles.size() + " DEX files into " + plan.size() + " DEX file(s)");
+        return plan;
+    }
+
+    /**
+     * A planned output DEX file, and the DEX files that'll be merged into it.
+     */
+    public static class MergedDex {
+        private final String filename;
+        private final List<File> inputFiles = new ArrayList<>();
+        private final List<Dex> inputs = new ArrayList<>();
+        /**
+         * Upper bounds of the ID counts, or the exact ones once {@link #keysResolved}.
+         */
+        private int fieldCount, methodCount, protoCount, typeCount;
+        private boolean keysResolved;
+        private final Set<String> fields = new HashSet<>();
+        private final Set<String> methods = new HashSet<>();
+        private final Set<String> protos = new HashSet<>();
+        private final Set<String> types = new HashSet<>();
+        /**
+         * Resolved IDs of the last DEX file checked by {@link #fits(File, DexHeader)}.
+         */
+        private File checkedFile;
+        private IdKeys checkedKeys;
+
+        private MergedDex(String filename) {
+            this.filename = filename;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public List<File> getInputFiles() {
+            return inputFiles;
+        }
+
+        /**
+         * @return The input DEX files, memory-mapped
+         * @throws IOException Thrown if a DEX file couldn't be mapped
+         */
+        public List<Dex> getInputs() throws IOException {
+            for (int i = 0; i < inputFiles.size(); i++) {
+                getInput(i);
+            }
+            return inputs;
+        }
+
+        private Dex getInput(int index) throws IOException {
+            while (inputs.size() <= index) {
+                inputs.add(null);
+            }
+            Dex dex = inputs.get(index);
+            if (dex == null) {
+                dex = Dex.map(inputFiles.get(index));
+                inputs.set(index, dex);
+            }
+            return dex;
+        }
+
+        private boolean fits(File file, DexHeader header) throws IOException {
+            if (fieldCount + header.fieldIdsSize <= MAX_IDS && methodCount + header.methodIdsSize <= MAX_IDS
+                    && protoCount + header.protoIdsSize <= MAX_IDS && typeCount + header.typeIdsSize <= MAX_IDS) {
+                return true;
+            }
+
+            resolveKeys();
+            checkedFile = file;
+            checkedKeys = new IdKeys(Dex.map(file));
+            return fits(fields, checkedKeys.fields) && fits(methods, checkedKeys.methods)
+                    && fits(protos, checkedKeys.protos) && fits(types, checkedKeys.types);
+        }
+
+        private static boolean fits(Set<String> merged, String[] toAdd) {
+            int newIds = 0;
+            for (String key : toAdd) {
+                if (!merged.contains(key) && merged.size() + ++newIds > MAX_IDS) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(File file, DexHeader header) throws IOException {
+            inputFiles.add(file);
+            if (keysResolved) {
+                addKeys(file.equals(checkedFile) ? checkedKeys : new IdKeys(getInput(inputFiles.size() - 1)));
+            } else {
+                fieldCount += header.fieldIdsSize;
+                methodCount += header.methodIdsSize;
+                protoCount += header.protoIdsSize;
+                typeCount += header.typeIdsSize;
+            }
+            checkedFile = null;
+            checkedKeys = null;
+        }
+
+        private void resolveKeys() throws IOException {
+            if (keysResolved) return;
+
+            keysResolved = true;
+            for (int i = 0; i < inputFiles.size(); i++) {
+                addKeys(new IdKeys(getInput(i)));
+            }
+        }
+
+        private void addKeys(IdKeys keys) {
+            addAll(fields, keys.fields);
+            addAll(methods, keys.methods);
+            addAll(protos, keys.protos);
+            addAll(types, keys.types);
+            fieldCount = fields.size();
+            methodCount = methods.size();
+            protoCount = protos.size();
+            typeCount = types.size();
+        }
+
+        private static void addAll(Set<String> merged, String[] toAdd) {
+            for (String key : toAdd) {
+                merged.add(key);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return filename + " has " + (keysResolved ? "" : "at most ") + fieldCount + " field, " + methodCount
+                    + " method, " + protoCount + " proto and " + typeCount + " type IDs";
+        }
+    }
+
+    /**
+     * A DEX file's IDs, resolved to index-independent keys.
+     */
+    private static class IdKeys {
+        private final String[] fields;
+        private final String[] methods;
+        private final String[] protos;
+        private final String[] types;
+
+        private IdKeys(Dex dex) {
+            // Both tables resolve entries on every access, so read them only once
+            List<String> strings = new ArrayList<>(dex.strings());
+            types = dex.typeNames().toArray(new String[0]);
+
+            List<ProtoId> protoIds = dex.protoIds();
+            protos = new String[protoIds.size()];
+            for (int i = 0; i < protos.length; i++) {
+                ProtoId protoId = protoIds.get(i);
+                StringBuilder key = new StringBuilder("(");
+                for (short parameterType : dex.readTypeList(protoId.getParametersOffset()).getTypes()) {
+                    key.append(types[parameterType & 0xffff]);
+                }
+                protos[i] = key.append(')').append(types[protoId.getReturnTypeIndex()]).toString();
+            }
+
+            List<FieldId> fieldIds = dex.fieldIds();
+            fields = new String[fieldIds.size()];
+            for (int i = 0; i < fields.length; i++) {
+                FieldId fieldId = fieldIds.get(i);
+                fields[i] = types[fieldId.getDeclaringClassIndex()] + "->" + strings.get(fieldId.getNameIndex())
+                        + ':' + types[fieldId.getTypeIndex()];
+            }
+
+            List<MethodId> methodIds = dex.methodIds();
+            methods = new String[methodIds.size()];
+            for (int i = 0; i < methods.length; i++) {
+                MethodId methodId = methodIds.get(i);
+                methods[i] = types[methodId.getDeclaringClassIndex()] + "->" + strings.get(methodId.getNameIndex())
+                        + protos[methodId.getProtoIndex()];
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package mod.jbk.build.compiler.dex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mod.jbk.build.incremental.CacheEviction;
+import mod.jbk.build.incremental.InputFingerprint;
+import pro.sketchware.SketchApplication;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Cache of library DEX files that have already been merged together, so that builds which need merged
+ * DEX files only have to merge the project's own DEX files onto them.
+ * <p>
+ * Entries are keyed by the content hashes of the library DEX files they were merged from, in order,
+ * as the order decides which class wins if two libraries contain the same one. The least recently used
+ * entries get removed once the cache grows bigger than {@link #MAX_CACHE_SIZE}, except for ones used through
+ * the same instance, so one instance should be used per build.
+ */
+public class LibraryDexCache {
+
+    /**
+     * Maximum size of all cached merged DEX files, in bytes.
+     */
+    public static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Content hashes of DEX files, keyed by their path, size and last modification time.
+     */
+    private static final Map<String, String> dexHashes = new ConcurrentHashMap<>();
+
+    private final File cacheDirectory;
+    /**
+     * Entries used or added through this instance, which the build still needs for merging.
+     */
+    private final Set<File> usedEntries = ConcurrentHashMap.newKeySet();
+
+    public LibraryDexCache() {
+        this(new File(SketchApplication.getContext().getCacheDir(), "merged_library_dexes"));
+    }
+
+    public LibraryDexCache(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @return The key of the entry for {@code libraryDexes} merged together
+     * @throws IOException Thrown if a DEX file couldn't be read
+     */
+    public String getKey(List<File> libraryDexes) throws IOException {
+        InputFingerprint key = new InputFingerprint();
+        for (File dex : libraryDexes) {
+            key.addString(dex.getName(), getHash(dex));
+        }
+        return key.get();
+    }
+
+    /**
+     * @return The merged DEX files of an entry in their order, or {@code null} if there's no such entry
+     */
+    public List<File> get(String key) {
+        File entry = new File(cacheDirectory, key);
+        List<File> dexes = listDexes(entry);
+        if (dexes.isEmpty()) {
+            return null;
+        }
+        usedEntries.add(entry);
+        CacheEviction.markUsed(entry);
+        return dexes;
+    }
+
+    /**
+     * @return An empty directory to merge DEX files into, to be passed to {@link #put(String, File)} afterwards
+     */
+    public File newEntryDirectory(String key) {
+        File directory = new File(cacheDirectory, key + ".tmp");
+        FileUtil.deleteFile(directory.getAbsolutePath());
+        FileUtil.makeDir(directory.getAbsolutePath());
+        return directory;
+    }
+
+    /**
+     * Adds DEX files merged into a directory returned by {@link #newEntryDirectory(String)} to the cache,
+     * and evicts least recently used entries if needed, other than ones used through this instance.
+     *
+     * @return The cached merged DEX files in their order
+     * @throws IOException Thrown if the entry couldn't be added
+     */
+    public List<File> put(String key, File mergedDirectory) throws IOException {
+        File entry = new File(cacheDirectory, key);
+        FileUtil.deleteFile(entry.getAbsolutePath());
+        if (!mergedDirectory.renameTo(entry)) {
+            FileUtil.deleteFile(mergedDirectory.getAbsolutePath());
+            throw new IOException("Couldn't move merged DEX files to " + entry);
+        }
+        usedEntries.add(entry);
+        CacheEviction.trimToSize(cacheDirectory, MAX_CACHE_SIZE, usedEntries);
+        return listDexes(entry);
+    }
+
+    private static String getHash(File dex) throws IOException {
+        String stamp = dex.getAbsolutePath() + ':' + dex.length() + ':' + dex.lastModified();
+        String hash = dexHashes.get(stamp);
+        if (hash == null) {
+            hash = InputFingerprint.hashFile(dex);
+            dexHashes.put(stamp, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * @return DEX files inside {@code directory} ordered like classes.dex, classes2.dex, ...
+     */
+    private static List<File> listDexes(File directory) {
+        List<File> dexes = new ArrayList<>();
+        for (int i = 1; ; i++) {
+            File dex = new File(directory, i == 1 ? "classes.dex" : "classes" + i + ".dex");
+            if (!dex.isFile()) break;
+            dexes.add(dex);
+        }
+        return dexes;
+    }
+}
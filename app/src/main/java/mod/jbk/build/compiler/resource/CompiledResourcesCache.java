@@ -0,0 +1,103 @@
+package mod.jbk.build.compiler.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mod.jbk.build.incremental.CacheEviction;
+import mod.jbk.build.incremental.InputFingerprint;
+import pro.sketchware.SketchApplication;
+
+/**
+ * Cache of resource directories compiled by AAPT2, shared between all projects.
+ * <p>
+ * Entries are keyed by the content of the compiled <code>res</code> directory and the AAPT2 binary
+ * that compiled it, so every version of a library only gets compiled once, no matter how many
+ * projects use it or where it's stored. The least recently used entries get removed once the cache
+ * grows bigger than {@link #MAX_CACHE_SIZE}, except for ones used through the same instance, so one
+ * instance should be used per build.
+ */
+public class CompiledResourcesCache {
+
+    /**
+     * Maximum size of all cached compiled resources, in bytes.
+     */
+    public static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Content hashes of resource directories, keyed by a fingerprint of their files' paths, sizes and
+     * last modification times. Saves hashing big directories again if nothing about them changed.
+     */
+    private static final Map<String, String> contentHashes = new ConcurrentHashMap<>();
+
+    private final File cacheDirectory;
+    private final String aapt2Stamp;
+    /**
+     * Entries used or added through this instance, which the build still needs for linking,
+     * and temporary files of entries about to be added.
+     */
+    private final Set<File> usedEntries = ConcurrentHashMap.newKeySet();
+
+    public CompiledResourcesCache(File aapt2) {
+        this(new File(SketchApplication.getContext().getCacheDir(), "compiledLibs"), aapt2);
+    }
+
+    public CompiledResourcesCache(File cacheDirectory, File aapt2) {
+        this.cacheDirectory = cacheDirectory;
+        aapt2Stamp = aapt2.length() + ":" + aapt2.lastModified();
+    }
+
+    /**
+     * @return Where {@code resDirectory} compiled by AAPT2 gets cached. Might not exist yet.
+     * @throws IOException Thrown if a resource file couldn't be read
+     */
+    public File getEntry(File resDirectory) throws IOException {
+        String stamp = new InputFingerprint().addFileStamp(resDirectory).get();
+        String contentHash = contentHashes.get(stamp);
+        if (contentHash == null) {
+            contentHash = new InputFingerprint().addDirectoryContents("res", resDirectory).get();
+            contentHashes.put(stamp, contentHash);
+        }
+        String key = new InputFingerprint()
+                .addString("aapt2", aapt2Stamp)
+                .addString("res", contentHash)
+                .get();
+        return new File(cacheDirectory, key + ".zip");
+    }
+
+    /**
+     * @return A file to compile resources to, to be passed to {@link #put(File, File)} afterwards
+     */
+    public File newTemporaryFile(File entry) {
+        cacheDirectory.mkdirs();
+        File temporaryFile = new File(cacheDirectory, entry.getName() + ".tmp");
+        // Don't let adding another entry evict it before it's added itself
+        usedEntries.add(temporaryFile);
+        return temporaryFile;
+    }
+
+    /**
+     * Marks an existing entry as just used.
+     */
+    public void markUsed(File entry) {
+        usedEntries.add(entry);
+        CacheEviction.markUsed(entry);
+    }
+
+    /**
+     * Adds resources compiled to a file returned by {@link #newTemporaryFile(File)} to the cache,
+     * and evicts least recently used entries if needed, other than ones used through this instance.
+     *
+     * @throws IOException Thrown if the entry couldn't be added
+     */
+    public void put(File compiled, File entry) throws IOException {
+        if (!compiled.renameTo(entry)) {
+            compiled.delete();
+            throw new IOException("Couldn't move compiled resources to " + entry);
+        }
+        usedEntries.add(entry);
+        CacheEviction.trimToSize(cacheDirectory, MAX_CACHE_SIZE, usedEntries);
+    }
+}
@@ -0,0 +1,206 @@
+package mod.jbk.build.compiler.resource;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mod.jbk.build.incremental.InputFingerprint;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Keeps every file of a <code>res</code> directory compiled by AAPT2 to its own <code>.flat</code> file,
+ * so that only resource files whose content changed need to be compiled again.
+ * <p>
+ * Usage: {@link #prepare()} returns the resource files to compile into {@link #getFlatDirectory()},
+ * and after they've been compiled successfully, {@link #commit()} returns the <code>.flat</code> files
+ * to link.
+ */
+public class FlatResourceCache {
+
+    private static final String TAG = "FlatResourceCache";
+    private static final String MANIFEST_FILENAME = "flats.json";
+
+    private final File resDirectory;
+    private final File flatDirectory;
+    private final File manifestFile;
+    private final String aapt2Stamp;
+    private HashMap<String, Entry> entries;
+    private HashMap<String, Entry> pendingEntries;
+
+    /**
+     * @param flatDirectory A directory only used by this cache, which is kept between builds
+     */
+    public FlatResourceCache(File resDirectory, File flatDirectory, File aapt2) {
+        this.resDirectory = resDirectory;
+        this.flatDirectory = flatDirectory;
+        manifestFile = new File(flatDirectory, MANIFEST_FILENAME);
+        aapt2Stamp = aapt2.length() + ":" + aapt2.lastModified();
+    }
+
+    public File getFlatDirectory() {
+        return flatDirectory;
+    }
+
+    /**
+     * Removes <code>.flat</code> files of resource files that were removed or changed.
+     *
+     * @return Resource files that need to be compiled
+     * @throws IOException Thrown if a resource file couldn't be read
+     */
+    public List<File> prepare() throws IOException {
+        entries = readManifest();
+        pendingEntries = new HashMap<>();
+
+        List<File> toCompile = new ArrayList<>();
+        HashMap<String, Entry> previousEntries = new HashMap<>(entries);
+        for (File resourceFile : listResourceFiles()) {
+            String relativePath = getRelativePath(resourceFile);
+            String stamp = resourceFile.length() + ":" + resourceFile.lastModified();
+            Entry previous = previousEntries.remove(relativePath);
+
+            String hash = previous != null && previous.stamp.equals(stamp) ? previous.hash : InputFingerprint.hashFile(resourceFile);
+            if (previous != null && previous.hash.equals(hash) && new File(flatDirectory, previous.flat).exists()) {
+                if (!previous.stamp.equals(stamp)) {
+                    entries.put(relativePath, new Entry(stamp, hash, previous.flat));
+                }
+                continue;
+            }
+
+            if (previous != null) {
+                FileUtil.deleteFile(new File(flatDirectory, previous.flat).getAbsolutePath());
+                entries.remove(relativePath);
+            }
+            pendingEntries.put(relativePath, new Entry(stamp, hash, getFlatFilename(resourceFile)));
+            toCompile.add(resourceFile);
+        }
+
+        /* Resource files that don't exist anymore */
+        for (Map.Entry<String, Entry> removed : previousEntries.entrySet()) {
+            FileUtil.deleteFile(new File(flatDirectory, removed.getValue().flat).getAbsolutePath());
+            entries.remove(removed.getKey());
+        }
+        writeManifest();
+
+        LogUtil.d(TAG, toCompile.size() + " of " + (entries.size() + pendingEntries.size()) + " resource files in "
+                + resDirectory + " need to be compiled, " + previousEntries.size() + " were removed");
+        return toCompile;
+    }
+
+    /**
+     * Records resource files returned by {@link #prepare()} as compiled.
+     *
+     * @return All <code>.flat</code> files of the <code>res</code> directory
+     * @throws IOException Thrown if AAPT2 didn't create an expected <code>.flat</code> file
+     */
+    public List<File> commit() throws IOException {
+        for (Map.Entry<String, Entry> pending : pendingEntries.entrySet()) {
+            if (!new File(flatDirectory, pending.getValue().flat).exists()) {
+                /* Start from scratch next time, some unexpected .flat file might be lying around */
+                FileUtil.deleteFile(flatDirectory.getAbsolutePath());
+                throw new IOException("AAPT2 didn't compile " + pending.getKey() + " to " + pending.getValue().flat);
+            }
+            entries.put(pending.getKey(), pending.getValue());
+        }
+        pendingEntries.clear();
+        writeManifest();
+
+        List<String> flats = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            flats.add(entry.flat);
+        }
+        flats.sort(null);
+
+        List<File> flatFiles = new ArrayList<>(flats.size());
+        for (String flat : flats) {
+            flatFiles.add(new File(flatDirectory, flat));
+        }
+        return flatFiles;
+    }
+
+    private List<File> listResourceFiles() {
+        List<File> resourceFiles = new ArrayList<>();
+        File[] typeDirectories = resDirectory.listFiles();
+        if (typeDirectories == null) return resourceFiles;
+
+        Arrays.sort(typeDirectories);
+        for (File typeDirectory : typeDirectories) {
+            File[] files = typeDirectory.listFiles();
+            if (!typeDirectory.isDirectory() || files == null) continue;
+
+            Arrays.sort(files);
+            for (File file : files) {
+                // Just like aapt2 compile --dir, skip hidden files
+                if (file.isFile() && !file.getName().startsWith(".")) {
+                    resourceFiles.add(file);
+                }
+            }
+        }
+        return resourceFiles;
+    }
+
+    private String getRelativePath(File resourceFile) {
+        return resourceFile.getParentFile().getName() + "/" + resourceFile.getName();
+    }
+
+    /**
+     * @return The name AAPT2 gives the compiled version of a resource file, e.g.
+     * <code>layout_main.xml.flat</code> or <code>values_strings.arsc.flat</code>
+     */
+    private static String getFlatFilename(File resourceFile) {
+        String typeDirectory = resourceFile.getParentFile().getName();
+        String filename = resourceFile.getName();
+        if (typeDirectory.equals("values") || typeDirectory.startsWith("values-")) {
+            int extensionStart = filename.lastIndexOf('.');
+            return typeDirectory + "_" + (extensionStart > 0 ? filename.substring(0, extensionStart) : filename) + ".arsc.flat";
+        }
+        return typeDirectory + "_" + filename + ".flat";
+    }
+
+    private HashMap<String, Entry> readManifest() {
+        if (manifestFile.isFile()) {
+            try {
+                Manifest manifest = new Gson().fromJson(FileUtil.readFile(manifestFile.getAbsolutePath()), Manifest.class);
+                if (manifest != null && manifest.entries != null && aapt2Stamp.equals(manifest.aapt2)) {
+                    return manifest.entries;
+                }
+            } catch (Exception e) {
+                LogUtil.w(TAG, "Couldn't read manifest of compiled resources, compiling all of them", e);
+            }
+        }
+        /* Don't keep .flat files the manifest doesn't know about */
+        FileUtil.deleteFile(flatDirectory.getAbsolutePath());
+        FileUtil.makeDir(flatDirectory.getAbsolutePath());
+        return new HashMap<>();
+    }
+
+    private void writeManifest() {
+        Manifest manifest = new Manifest();
+        manifest.aapt2 = aapt2Stamp;
+        manifest.entries = entries;
+        FileUtil.writeFile(manifestFile.getAbsolutePath(), new Gson().toJson(manifest, Manifest.class));
+    }
+
+    private static class Manifest {
+        private String aapt2;
+        private HashMap<String, Entry> entries;
+    }
+
+    private static class Entry {
+        private final String stamp;
+        private final String hash;
+        private final String flat;
+
+        private Entry(String stamp, String hash, String flat) {
+            this.stamp = stamp;
+            this.hash = hash;
+            this.flat = flat;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package mod.jbk.build.compiler.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import a.a.a.zy;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.BinaryExecutor;
+
+/**
+ * Runs independent <code>aapt2 compile</code> invocations on a pool of workers.
+ * <p>
+ * As soon as one invocation fails, the others get cancelled (and their processes killed), and
+ * {@link #run()} throws with the logs of every invocation that failed.
+ */
+class ParallelCompileStage {
+
+    private static final String TAG = "ParallelCompileStage";
+
+    private final int workers;
+    private final List<Task> tasks = new ArrayList<>();
+
+    /**
+     * @param workers Maximum number of invocations to run at the same time
+     */
+    ParallelCompileStage(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    void add(String description, ArrayList<String> commands) {
+        tasks.add(new Task(description, commands));
+    }
+
+    void run() throws zy {
+        if (tasks.isEmpty()) return;
+
+        long savedTimeMillis = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, tasks.size()));
+        ExecutorCompletionService<Task> completionService = new ExecutorCompletionService<>(pool);
+        for (Task task : tasks) {
+            completionService.submit(task::run, task);
+        }
+
+        boolean failed = false;
+        try {
+            for (int i = 0; i < tasks.size() && !failed; i++) {
+                Task finished = completionService.take().get();
+                if (!finished.succeeded()) {
+                    failed = true;
+                    for (Task task : tasks) {
+                        task.cancel();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Task task : tasks) {
+                task.cancel();
+            }
+            throw new zy("Interrupted while compiling resources");
+        } catch (ExecutionException e) {
+            for (Task task : tasks) {
+                task.cancel();
+            }
+            throw new zy("Couldn't compile resources: " + e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (failed) {
+            StringBuilder log = new StringBuilder();
+            for (Task task : tasks) {
+                if (task.finished && !task.cancelled && !task.succeeded()) {
+                    if (log.length() > 0) log.append(System.lineSeparator());
+                    log.append(task.log);
+                }
+            }
+            LogUtil.e(TAG, log.toString());
+            throw new zy(log.toString());
+        }
+        LogUtil.d(TAG, "Compiling " + tasks.size() + " resource directories on up to " + workers
+                + " workers took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
+    }
+
+    private static class Task {
+        private final String description;
+        private final BinaryExecutor executor = new BinaryExecutor();
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile String log = "";
+
+        private Task(String description, ArrayList<String> commands) {
+            this.description = description;
+            executor.setCommands(commands);
+        }
+
+        private void run() {
+            if (cancelled) return;
+
+            long savedTimeMillis = System.currentTimeMillis();
+            LogUtil.d(TAG, "Compiling " + description);
+            log = executor.execute();
+            String output = executor.getOutput();
+            if (!output.isEmpty()) {
+                LogUtil.d(TAG, "Output of compiling " + description + ": " + output);
+            }
+            finished = true;
+            LogUtil.d(TAG, "Compiling " + description + " took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
+        }
+
+        private boolean succeeded() {
+            return finished && log.isEmpty();
+        }
+
+        private void cancel() {
+            if (!finished) {
+                cancelled = true;
+                executor.destroy();
+            }
+        }
+    }
+}
@@ -2,12 +2,12 @@ package mod.jbk.build.compiler.resource;
 
 import static com.besome.sketch.Config.VAR_DEFAULT_TARGET_SDK_VERSION;
 
-import android.content.Context;
-import android.content.pm.PackageManager;
-
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import a.a.a.Jp;
 import a.a.a.ProjectBuilder;
@@ -19,7 +19,6 @@ import mod.jbk.build.BuildProgressReceiver;
 import mod.jbk.build.BuiltInLibraries;
 import mod.jbk.diagnostic.MissingFileException;
 import mod.jbk.util.LogUtil;
-import pro.sketchware.SketchApplication;
 import pro.sketchware.utility.BinaryExecutor;
 import pro.sketchware.utility.FileUtil;
 
@@ -101,14 +100,31 @@ public class ResourceCompiler {
 
         private final File aapt2;
         private final ProjectBuilder buildHelper;
-        private final File compiledBuiltInLibraryResourcesDirectory;
+        private final CompiledResourcesCache compiledResourcesCache;
+        /**
+         * Compiled resources of built-in and local libraries, in the order they should be linked.
+         */
+        private final List<File> compiledLibraryResources = new ArrayList<>();
+        /**
+         * Library resources being compiled to a temporary file (key) that should become an entry (value)
+         * of {@link #compiledResourcesCache} once compiling succeeded.
+         */
+        private final Map<File, File> pendingCacheEntries = new LinkedHashMap<>();
+        /**
+         * Compiled generated and imported project resources, in the order they should be linked.
+         */
+        private final List<File> compiledProjectResources = new ArrayList<>();
+        /**
+         * Per-file compiled project resources of incremental builds, to be committed once compiling succeeded.
+         */
+        private final List<FlatResourceCache> flatResourceCaches = new ArrayList<>();
         private ProgressListener progressListener;
 
         public Aapt2Compiler(ProjectBuilder buildHelper, File aapt2, boolean buildAppBundle) {
             this.buildHelper = buildHelper;
             this.aapt2 = aapt2;
             this.buildAppBundle = buildAppBundle;
-            compiledBuiltInLibraryResourcesDirectory = new File(SketchApplication.getContext().getCacheDir(), "compiledLibs");
+            compiledResourcesCache = new CompiledResourcesCache(aapt2);
         }
 
         @Override
@@ -116,23 +132,25 @@ public class ResourceCompiler {
             String outputPath = buildHelper.yq.binDirectoryPath + File.separator + "res";
             emptyOrCreateDirectory(outputPath);
 
-            long savedTimeMillis = System.currentTimeMillis();
+            compiledLibraryResources.clear();
+            pendingCacheEntries.clear();
+            compiledProjectResources.clear();
+            flatResourceCaches.clear();
+
             if (progressListener != null) {
                 progressListener.onProgressUpdate("Compiling resources with AAPT2...", 9);
             }
-            compileBuiltInLibraryResources();
-            LogUtil.d(TAG + ":c", "Compiling built-in library resources took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
-            savedTimeMillis = System.currentTimeMillis();
-            compileLocalLibraryResources(outputPath);
-            LogUtil.d(TAG + ":c", "Compiling local library resources took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
-            savedTimeMillis = System.currentTimeMillis();
-            compileProjectResources(outputPath);
-            LogUtil.d(TAG + ":c", "Compiling project generated resources took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
-            savedTimeMillis = System.currentTimeMillis();
-            compileImportedResources(outputPath);
-            LogUtil.d(TAG + ":c", "Compiling project imported resources took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
-
-            savedTimeMillis = System.currentTimeMillis();
+            // aapt2 compile invocations don't depend on each other, only linking depends on all of them
+            ParallelCompileStage compileStage = new ParallelCompileStage(buildHelper.build_settings.getResourceCompileWorkers());
+            compileBuiltInLibraryResources(compileStage);
+            compileLocalLibraryResources(compileStage);
+            compileProjectResources(compileStage, outputPath);
+            compileImportedResources(compileStage, outputPath);
+            compileStage.run();
+            cacheCompiledLibraryResources();
+            commitFlatResourceCaches();
+
+            long savedTimeMillis = System.currentTimeMillis();
             link();
             LogUtil.d(TAG + ":c", "Linking resources took " + (System.currentTimeMillis() - savedTimeMillis) + " ms");
         }
@@ -143,7 +161,6 @@ public class ResourceCompiler {
          * @throws zy Thrown to be caught by DesignActivity to show an error Snackbar.
          */
         public void link() throws zy, MissingFileException {
-            String resourcesPath = buildHelper.yq.binDirectoryPath + File.separator + "res";
             if (progressListener != null)
                 progressListener.onProgressUpdate("Linking resources with AAPT2...", 10);
 
@@ -209,39 +226,17 @@ public class ResourceCompiler {
                 args.add(localLibraryAssetsDirectory);
             }
 
-            /* Include compiled built-in library resources */
-            for (Jp library : buildHelper.builtInLibraryManager.getLibraries()) {
-                if (library.hasResources()) {
-                    args.add("-R");
-                    args.add(new File(compiledBuiltInLibraryResourcesDirectory, library.getName() + ".zip").getAbsolutePath());
-                }
-            }
-
-            /* Include compiled local libraries' resources */
-            File[] filesInCompiledResourcesPath = new File(resourcesPath).listFiles();
-            if (filesInCompiledResourcesPath != null) {
-                for (File file : filesInCompiledResourcesPath) {
-                    if (file.isFile()) {
-                        if (!file.getName().equals("project.zip") || !file.getName().equals("project-imported.zip")) {
-                            args.add("-R");
-                            args.add(file.getAbsolutePath());
-                        }
-                    }
-                }
-            }
-
-            /* Include compiled project resources */
-            File projectArchive = new File(resourcesPath, "project.zip");
-            if (projectArchive.exists()) {
+            /* Include compiled built-in and local libraries' resources */
+            for (File compiledResources : compiledLibraryResources) {
                 args.add("-R");
-                args.add(projectArchive.getAbsolutePath());
+                args.add(compiledResources.getAbsolutePath());
             }
 
-            /* Include compiled imported project resources */
-            File projectImportedArchive = new File(resourcesPath, "project-imported.zip");
-            if (projectImportedArchive.exists()) {
+            /* Include compiled project resources, then compiled imported project resources */
+            for (File compiledResources : compiledProjectResources) {
+                if (!compiledResources.exists()) continue;
                 args.add("-R");
-                args.add(projectImportedArchive.getAbsolutePath());
+                args.add(compiledResources.getAbsolutePath());
             }
 
             /* Add R.java */
@@ -278,25 +273,77 @@ public class ResourceCompiler {
             }
         }
 
-        private void compileProjectResources(String outputPath) throws zy, MissingFileException {
+        private void compileProjectResources(ParallelCompileStage compileStage, String outputPath) throws zy, MissingFileException {
             compilingAssertDirectoryExists(buildHelper.yq.resDirectoryPath);
 
+            if (buildHelper.isIncrementalBuild()) {
+                compileChangedResources(compileStage, buildHelper.yq.resDirectoryPath, "project", "project generated resources", TAG + ":cPR");
+                return;
+            }
+
+            File compiledResources = new File(outputPath, "project.zip");
             ArrayList<String> commands = new ArrayList<>();
             commands.add(aapt2.getAbsolutePath());
             commands.add("compile");
             commands.add("--dir");
             commands.add(buildHelper.yq.resDirectoryPath);
             commands.add("-o");
-            commands.add(outputPath + File.separator + "project.zip");
-            LogUtil.d(TAG + ":cPR", "Now executing: " + commands);
-            BinaryExecutor executor = new BinaryExecutor();
-            executor.setCommands(commands);
-            if (!executor.execute().isEmpty()) {
-                LogUtil.e(TAG, executor.getLog());
-                throw new zy(executor.getLog());
+            commands.add(compiledResources.getAbsolutePath());
+            LogUtil.d(TAG + ":cPR", "Will execute: " + commands);
+            compileStage.add("project generated resources", commands);
+            compiledProjectResources.add(compiledResources);
+        }
+
+        /**
+         * Adds compiling the files of a <code>res</code> directory that changed since the last build to
+         * {@code compileStage}, each to its own <code>.flat</code> file, split into one batch per worker.
+         *
+         * @param flatDirectoryName Name of the directory inside the project's bin directory
+         *                          that keeps the <code>.flat</code> files between builds
+         */
+        private void compileChangedResources(ParallelCompileStage compileStage, String resDirectory, String flatDirectoryName,
+                                             String description, String tag) throws zy {
+            FlatResourceCache flatResourceCache = new FlatResourceCache(new File(resDirectory),
+                    new File(buildHelper.yq.binDirectoryPath, "flat" + File.separator + flatDirectoryName), aapt2);
+            List<File> changedFiles;
+            try {
+                changedFiles = flatResourceCache.prepare();
+            } catch (IOException e) {
+                throw new zy("Couldn't read " + description + ": " + e.getMessage());
+            }
+            flatResourceCaches.add(flatResourceCache);
+            if (changedFiles.isEmpty()) {
+                LogUtil.d(tag, "Skipped resource recompilation for " + description);
+                return;
+            }
+
+            int batches = Math.min(changedFiles.size(), Math.max(1, buildHelper.build_settings.getResourceCompileWorkers()));
+            for (int batch = 0; batch < batches; batch++) {
+                ArrayList<String> commands = new ArrayList<>();
+                commands.add(aapt2.getAbsolutePath());
+                commands.add("compile");
+                commands.add("-o");
+                commands.add(flatResourceCache.getFlatDirectory().getAbsolutePath());
+                for (int i = batch; i < changedFiles.size(); i += batches) {
+                    commands.add(changedFiles.get(i).getAbsolutePath());
+                }
+
+                LogUtil.d(tag, "Will execute: " + commands);
+                compileStage.add(description + " (" + (commands.size() - 4) + " changed files)", commands);
             }
         }
 
+        private void commitFlatResourceCaches() throws zy {
+            for (FlatResourceCache flatResourceCache : flatResourceCaches) {
+                try {
+                    compiledProjectResources.addAll(flatResourceCache.commit());
+                } catch (IOException e) {
+                    throw new zy("Couldn't compile project resources: " + e.getMessage());
+                }
+            }
+            flatResourceCaches.clear();
+        }
+
         private void emptyOrCreateDirectory(String path) {
             if (FileUtil.isExistFile(path)) {
                 FileUtil.deleteFile(path);
@@ -304,7 +351,7 @@ public class ResourceCompiler {
             FileUtil.makeDir(path);
         }
 
-        private void compileLocalLibraryResources(String outputPath) throws zy, MissingFileException {
+        private void compileLocalLibraryResources(ParallelCompileStage compileStage) throws zy, MissingFileException {
             int localLibrariesCount = buildHelper.mll.getResLocalLibrary().size();
             LogUtil.d(TAG + ":cLLR", "About to compile " + localLibrariesCount
                     + " local " + (localLibrariesCount == 1 ? "library" : "libraries"));
@@ -312,91 +359,92 @@ public class ResourceCompiler {
                 File localLibraryDirectory = new File(localLibraryResDirectory).getParentFile();
                 if (localLibraryDirectory != null) {
                     compilingAssertDirectoryExists(localLibraryResDirectory);
-
-                    ArrayList<String> commands = new ArrayList<>();
-                    commands.add(aapt2.getAbsolutePath());
-                    commands.add("compile");
-                    commands.add("--dir");
-                    commands.add(localLibraryResDirectory);
-                    commands.add("-o");
-                    commands.add(outputPath + File.separator + localLibraryDirectory.getName() + ".zip");
-
-                    LogUtil.d(TAG + ":cLLR", "Now executing: " + commands);
-                    BinaryExecutor executor = new BinaryExecutor();
-                    executor.setCommands(commands);
-                    if (!executor.execute().isEmpty()) {
-                        LogUtil.e(TAG, executor.getLog());
-                        throw new zy(executor.getLog());
-                    }
+                    compiledLibraryResources.add(compileLibraryResources(compileStage, localLibraryResDirectory,
+                            "local library " + localLibraryDirectory.getName(), TAG + ":cLLR"));
                 }
             }
         }
 
-        private void compileBuiltInLibraryResources() throws zy, MissingFileException {
-            compiledBuiltInLibraryResourcesDirectory.mkdirs();
+        private void compileBuiltInLibraryResources(ParallelCompileStage compileStage) throws zy, MissingFileException {
             for (Jp builtInLibrary : buildHelper.builtInLibraryManager.getLibraries()) {
                 if (builtInLibrary.hasResources()) {
-                    File cachedCompiledResources = new File(compiledBuiltInLibraryResourcesDirectory, builtInLibrary.getName() + ".zip");
                     String libraryResources = BuiltInLibraries.getLibraryResourcesPath(builtInLibrary.getName());
 
                     compilingAssertDirectoryExists(libraryResources);
-
-                    if (isBuiltInLibraryRecompilingNeeded(cachedCompiledResources)) {
-                        ArrayList<String> commands = new ArrayList<>();
-                        commands.add(aapt2.getAbsolutePath());
-                        commands.add("compile");
-                        commands.add("--dir");
-                        commands.add(libraryResources);
-                        commands.add("-o");
-                        commands.add(cachedCompiledResources.getAbsolutePath());
-
-                        LogUtil.d(TAG + ":cBILR", "Now executing: " + commands);
-                        BinaryExecutor executor = new BinaryExecutor();
-                        executor.setCommands(commands);
-                        if (!executor.execute().isEmpty()) {
-                            LogUtil.e(TAG + ":cBILR", executor.getLog());
-                            throw new zy(executor.getLog());
-                        }
-                    } else {
-                        LogUtil.d(TAG + ":cBILR", "Skipped resource recompilation for built-in library " + builtInLibrary.getName());
-                    }
+                    compiledLibraryResources.add(compileLibraryResources(compileStage, libraryResources,
+                            "built-in library " + builtInLibrary.getName(), TAG + ":cBILR"));
                 }
             }
         }
 
-        private boolean isBuiltInLibraryRecompilingNeeded(File cachedCompiledResources) {
+        /**
+         * Adds compiling a library's resources to {@code compileStage}, unless the same resources have been compiled before.
+         *
+         * @return Where the compiled resources will be in {@link #compiledResourcesCache}
+         */
+        private File compileLibraryResources(ParallelCompileStage compileStage, String resDirectory,
+                                             String libraryDescription, String tag) throws zy {
+            File cachedCompiledResources;
+            try {
+                cachedCompiledResources = compiledResourcesCache.getEntry(new File(resDirectory));
+            } catch (IOException e) {
+                throw new zy("Couldn't read resources of " + libraryDescription + ": " + e.getMessage());
+            }
+
             if (cachedCompiledResources.exists()) {
+                LogUtil.d(tag, "Skipped resource recompilation for " + libraryDescription);
+                compiledResourcesCache.markUsed(cachedCompiledResources);
+                return cachedCompiledResources;
+            }
+
+            if (!pendingCacheEntries.containsValue(cachedCompiledResources)) {
+                File compiledResources = compiledResourcesCache.newTemporaryFile(cachedCompiledResources);
+                ArrayList<String> commands = new ArrayList<>();
+                commands.add(aapt2.getAbsolutePath());
+                commands.add("compile");
+                commands.add("--dir");
+                commands.add(resDirectory);
+                commands.add("-o");
+                commands.add(compiledResources.getAbsolutePath());
+
+                LogUtil.d(tag, "Will execute: " + commands);
+                compileStage.add(libraryDescription, commands);
+                pendingCacheEntries.put(compiledResources, cachedCompiledResources);
+            }
+            return cachedCompiledResources;
+        }
+
+        private void cacheCompiledLibraryResources() throws zy {
+            for (Map.Entry<File, File> pendingEntry : pendingCacheEntries.entrySet()) {
                 try {
-                    Context context = SketchApplication.getContext();
-                    return context.getPackageManager().getPackageInfo(context.getPackageName(), 0)
-                            .lastUpdateTime > cachedCompiledResources.lastModified();
-                } catch (PackageManager.NameNotFoundException e) {
-                    LogUtil.e(TAG + ":iBILRN", "Couldn't get package info about ourselves: " + e.getMessage(), e);
+                    compiledResourcesCache.put(pendingEntry.getKey(), pendingEntry.getValue());
+                } catch (IOException e) {
+                    throw new zy("Couldn't cache compiled library resources: " + e.getMessage());
                 }
-            } else {
-                LogUtil.d(TAG + ":iBILRN", "File " + cachedCompiledResources.getAbsolutePath()
-                        + " doesn't exist, forcing compilation");
             }
-            return true;
+            pendingCacheEntries.clear();
         }
 
-        private void compileImportedResources(String outputPath) throws zy {
+        private void compileImportedResources(ParallelCompileStage compileStage, String outputPath) throws zy {
             if (FileUtil.isExistFile(buildHelper.fpu.getPathResource(buildHelper.yq.sc_id))
                     && new File(buildHelper.fpu.getPathResource(buildHelper.yq.sc_id)).length() != 0) {
+                if (buildHelper.isIncrementalBuild()) {
+                    compileChangedResources(compileStage, buildHelper.fpu.getPathResource(buildHelper.yq.sc_id),
+                            "imported", "project imported resources", TAG + ":cIR");
+                    return;
+                }
+
+                File compiledResources = new File(outputPath, "project-imported.zip");
                 ArrayList<String> commands = new ArrayList<>();
                 commands.add(aapt2.getAbsolutePath());
                 commands.add("compile");
                 commands.add("--dir");
                 commands.add(buildHelper.fpu.getPathResource(buildHelper.yq.sc_id));
                 commands.add("-o");
-                commands.add(outputPath + File.separator + "project-imported.zip");
-                LogUtil.d(TAG + ":cIR", "Now executing: " + commands);
-                BinaryExecutor executor = new BinaryExecutor();
-                executor.setCommands(commands);
-                if (!executor.execute().isEmpty()) {
-                    LogUtil.e(TAG, executor.getLog());
-                    throw new zy(executor.getLog());
-                }
+                commands.add(compiledResources.getAbsolutePath());
+                LogUtil.d(TAG + ":cIR", "Will execute: " + commands);
+                compileStage.add("project imported resources", commands);
+                compiledProjectResources.add(compiledResources);
             }
         }
 
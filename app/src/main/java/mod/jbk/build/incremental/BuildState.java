@@ -0,0 +1,95 @@
+package mod.jbk.build.incremental;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.util.HashMap;
+
+import mod.hey.studios.util.Helper;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Per-project manifest of the inputs each build stage was last run with.
+ * <p>
+ * A stage whose current {@link InputFingerprint} matches the recorded one (and whose outputs
+ * still exist) doesn't need to run again. The manifest lives inside the project's bin directory,
+ * so cleaning temporary files or running a clean build discards it together with the outputs
+ * it describes.
+ */
+public class BuildState {
+
+    public static final String STAGE_RESOURCES = "resources";
+    public static final String STAGE_JAVA = "java";
+    public static final String STAGE_DEX = "dex";
+    public static final String STAGE_DEX_MERGE = "dex_merge";
+
+    private static final String TAG = "BuildState";
+    private static final String MANIFEST_FILENAME = "build_state.json";
+    private static final String OUTPUT_SUFFIX = ":output";
+
+    private final File manifestFile;
+    private final HashMap<String, String> fingerprints;
+
+    public BuildState(String binDirectoryPath) {
+        manifestFile = new File(binDirectoryPath, MANIFEST_FILENAME);
+
+        HashMap<String, String> read = null;
+        if (manifestFile.isFile()) {
+            try {
+                read = new Gson().fromJson(FileUtil.readFile(manifestFile.getAbsolutePath()), Helper.TYPE_STRING_MAP);
+            } catch (Exception e) {
+                LogUtil.w(TAG, "Couldn't read build state manifest, all stages will re-run", e);
+            }
+        }
+        fingerprints = read != null ? read : new HashMap<>();
+    }
+
+    /**
+     * @return If {@code stage} was last run successfully with the same inputs.
+     */
+    public boolean isUpToDate(String stage, String fingerprint) {
+        boolean upToDate = fingerprint.equals(fingerprints.get(stage));
+        LogUtil.d(TAG, "Stage " + stage + (upToDate ? " is up-to-date" : " needs to run"));
+        return upToDate;
+    }
+
+    /**
+     * Records that {@code stage} finished successfully with the given inputs.
+     */
+    public void markBuilt(String stage, String fingerprint) {
+        fingerprints.put(stage, fingerprint);
+        save();
+    }
+
+    /**
+     * Records that {@code stage} finished successfully with the given inputs, producing outputs with the given
+     * fingerprint, for later stages to use as their inputs' fingerprint.
+     */
+    public void markBuilt(String stage, String fingerprint, String outputFingerprint) {
+        fingerprints.put(stage + OUTPUT_SUFFIX, outputFingerprint);
+        markBuilt(stage, fingerprint);
+    }
+
+    /**
+     * @return The fingerprint of {@code stage}'s outputs recorded by {@link #markBuilt(String, String, String)},
+     * or <code>null</code> if it didn't record one or was invalidated since
+     */
+    public String getOutputFingerprint(String stage) {
+        return fingerprints.get(stage + OUTPUT_SUFFIX);
+    }
+
+    /**
+     * Forgets about {@code stage}'s last run, e.g. because it's about to run and might fail halfway.
+     */
+    public void invalidate(String stage) {
+        boolean removed = fingerprints.remove(stage + OUTPUT_SUFFIX) != null;
+        if (fingerprints.remove(stage) != null || removed) {
+            save();
+        }
+    }
+
+    private void save() {
+        FileUtil.writeFile(manifestFile.getAbsolutePath(), new Gson().toJson(fingerprints));
+    }
+}
@@ -0,0 +1,55 @@
+package mod.jbk.build.incremental;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Keeps caches of build outputs shared between projects from growing indefinitely.
+ * Entries are the files or directories directly inside a cache directory, and their last modification
+ * time is their last use, so callers should update it whenever they use an entry.
+ */
+public class CacheEviction {
+
+    private static final String TAG = "CacheEviction";
+
+    /**
+     * Deletes least recently used entries of {@code cacheDirectory} until it's at most {@code maxSize} bytes big.
+     *
+     * @param toKeep Entries to never delete, e.g. all the ones the current build uses
+     */
+    public static void trimToSize(File cacheDirectory, long maxSize, Set<File> toKeep) {
+        File[] entries = cacheDirectory.listFiles();
+        if (entries == null) return;
+
+        long totalSize = 0;
+        for (File entry : entries) {
+            totalSize += FileUtil.getFileSize(entry);
+        }
+        if (totalSize <= maxSize) return;
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (totalSize <= maxSize) break;
+            if (toKeep.contains(entry)) continue;
+
+            long entrySize = FileUtil.getFileSize(entry);
+            FileUtil.deleteFile(entry.getAbsolutePath());
+            totalSize -= entrySize;
+            LogUtil.d(TAG, "Evicted " + entry.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Marks a cache entry as just used.
+     */
+    public static void markUsed(File entry) {
+        if (!entry.setLastModified(System.currentTimeMillis())) {
+            LogUtil.w(TAG, "Couldn't mark " + entry.getAbsolutePath() + " as used");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package mod.jbk.build.incremental;
+
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Eclipse's batch compiler that records every compiled source file's <code>.class</code> files and
+ * referenced type names in a {@link JavaDependencyIndex}.
+ */
+public class IndexingEclipseCompiler extends Main {
+
+    private final JavaDependencyIndex index;
+
+    public IndexingEclipseCompiler(PrintWriter outWriter, PrintWriter errWriter, JavaDependencyIndex index) {
+        super(outWriter, errWriter, false, null, null);
+        this.index = index;
+    }
+
+    @Override
+    public void outputClassFiles(CompilationResult unitResult) {
+        super.outputClassFiles(unitResult);
+        if (unitResult == null || unitResult.hasErrors()) return;
+
+        ClassFile[] classFiles = unitResult.getClassFiles();
+        Arrays.sort(classFiles, Comparator.comparing(classFile -> new String(classFile.fileName())));
+
+        MessageDigest digest = InputFingerprint.newDigest();
+        List<String> classFilePaths = new ArrayList<>(classFiles.length);
+        for (ClassFile classFile : classFiles) {
+            String path = new String(classFile.fileName()) + ".class";
+            classFilePaths.add(path);
+            digest.update(path.getBytes());
+            digest.update(classFile.getBytes());
+        }
+
+        Set<String> referenceNames = new TreeSet<>();
+        if (unitResult.simpleNameReferences != null) {
+            for (char[] simpleName : unitResult.simpleNameReferences) {
+                referenceNames.add(new String(simpleName));
+            }
+        }
+        if (unitResult.qualifiedReferences != null) {
+            for (char[][] qualifiedName : unitResult.qualifiedReferences) {
+                if (qualifiedName.length > 0) {
+                    referenceNames.add(new String(qualifiedName[qualifiedName.length - 1]));
+                }
+            }
+        }
+
+        index.record(new File(new String(unitResult.getFileName())), classFilePaths, referenceNames,
+                InputFingerprint.toHex(digest.digest()));
+    }
+}
@@ -0,0 +1,177 @@
+package mod.jbk.build.incremental;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Accumulates the inputs of a build stage into a single hash.
+ * <p>
+ * Project sources get regenerated on every build, so they should be added with
+ * {@link #addFileContents(File)} or {@link #addDirectoryContents(File)}, which hash content.
+ * Large and rarely changing inputs like library JARs and DEX files can be added with
+ * {@link #addFileStamp(File)}, which only looks at path, size and modification time.
+ */
+public class InputFingerprint {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+    private final byte[] buffer = new byte[8192];
+
+    public InputFingerprint() {
+        digest = newDigest();
+    }
+
+    /**
+     * @return A new SHA-1 {@link MessageDigest}, which every Android version has.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-1 isn't available", e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @return The hex-encoded SHA-1 hash of a file's content.
+     */
+    public static String hashFile(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public InputFingerprint addString(String key, String value) {
+        updateString(key);
+        updateString(value == null ? "\0null" : value);
+        return this;
+    }
+
+    /**
+     * Adds a file's content. Missing files are recorded as missing, so that a file appearing
+     * changes the fingerprint too.
+     */
+    public InputFingerprint addFileContents(File file) throws IOException {
+        updateString(file.getAbsolutePath());
+        if (file.isFile()) {
+            updateFileContents(file);
+        } else {
+            updateString("\0missing");
+        }
+        return this;
+    }
+
+    /**
+     * Adds every file inside a directory, recursively. Files are visited in sorted order, and their
+     * paths relative to {@code directory} are part of the fingerprint, so renames get noticed.
+     */
+    public InputFingerprint addDirectoryContents(File directory) throws IOException {
+        return addDirectoryContents(directory.getAbsolutePath(), directory);
+    }
+
+    /**
+     * Like {@link #addDirectoryContents(File)}, but identifies the directory by {@code key} instead of
+     * its path, so that copies of the same directory in different places get the same fingerprint.
+     */
+    public InputFingerprint addDirectoryContents(String key, File directory) throws IOException {
+        return addDirectoryContents(key, directory, Collections.emptySet());
+    }
+
+    /**
+     * Like {@link #addDirectoryContents(String, File)}, but leaves out files whose absolute paths are in
+     * {@code excludedPaths}, e.g. because changes to them are known without reading them.
+     */
+    public InputFingerprint addDirectoryContents(String key, File directory, Set<String> excludedPaths) throws IOException {
+        updateString(key);
+        if (directory.isDirectory()) {
+            addDirectoryContents(directory, "", excludedPaths);
+        } else {
+            updateString("\0missing");
+        }
+        return this;
+    }
+
+    /**
+     * Adds a file's (or every file inside a directory's) path, size and last modification time,
+     * without reading any content.
+     */
+    public InputFingerprint addFileStamp(File file) {
+        updateString(file.getAbsolutePath());
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File child : files) {
+                    addFileStamp(child);
+                }
+            }
+        } else if (file.isFile()) {
+            updateString(file.length() + ":" + file.lastModified());
+        } else {
+            updateString("\0missing");
+        }
+        return this;
+    }
+
+    /**
+     * @return The fingerprint of everything added so far. Resets this instance.
+     */
+    public String get() {
+        return toHex(digest.digest());
+    }
+
+    private void addDirectoryContents(File directory, String relativePath, Set<String> excludedPaths) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        Arrays.sort(files);
+        for (File file : files) {
+            String childPath = relativePath + "/" + file.getName();
+            if (file.isDirectory()) {
+                addDirectoryContents(file, childPath, excludedPaths);
+            } else if (!excludedPaths.contains(file.getAbsolutePath())) {
+                updateString(childPath);
+                updateFileContents(file);
+            }
+        }
+    }
+
+    private void updateFileContents(File file) throws IOException {
+        updateString(String.valueOf(file.length()));
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private void updateString(String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
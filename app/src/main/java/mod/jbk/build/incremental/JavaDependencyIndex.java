@@ -0,0 +1,291 @@
+package mod.jbk.build.incremental;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import a.a.a.zy;
+import mod.jbk.util.LogUtil;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Per-project index of which <code>.class</code> files every Java source file compiled to,
+ * and which type names it references, so that only changed source files and the ones depending
+ * on them need to be compiled again.
+ * <p>
+ * Dependencies are tracked by simple type names, which over-approximates but never misses a
+ * dependent. Source files that were recompiled because of a dependency only make their own
+ * dependents recompile if their <code>.class</code> files actually changed, e.g. because of an
+ * inlined constant.
+ * <p>
+ * The index is only valid for the classpath and compiler options it was recorded with, see
+ * {@link #load(String, String)}.
+ */
+public class JavaDependencyIndex {
+
+    private static final String TAG = "JavaDependencyIndex";
+    private static final String INDEX_FILENAME = "java_index.json";
+
+    private final File indexFile;
+    private final String environment;
+    private HashMap<String, Source> sources = new HashMap<>();
+
+    private JavaDependencyIndex(File indexFile, String environment) {
+        this.indexFile = indexFile;
+        this.environment = environment;
+    }
+
+    /**
+     * @param environment Fingerprint of the classpath and compiler options, an index recorded with
+     *                    a different one gets discarded
+     * @return The index of the project's last successful compilation, or an empty index if there's
+     * none that can be used
+     */
+    public static JavaDependencyIndex load(String binDirectoryPath, String environment) {
+        JavaDependencyIndex index = new JavaDependencyIndex(new File(binDirectoryPath, INDEX_FILENAME), environment);
+        if (index.indexFile.isFile()) {
+            try {
+                Saved saved = new Gson().fromJson(FileUtil.readFile(index.indexFile.getAbsolutePath()), Saved.class);
+                if (saved != null && saved.sources != null && environment.equals(saved.environment)) {
+                    index.sources = saved.sources;
+                } else {
+                    LogUtil.d(TAG, "Classpath or compiler options changed, compiling all Java files");
+                }
+            } catch (Exception e) {
+                LogUtil.w(TAG, "Couldn't read Java dependency index, compiling all Java files", e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Deletes a project's index, e.g. because its classes got compiled without recording one.
+     */
+    public static void delete(String binDirectoryPath) {
+        FileUtil.deleteFile(new File(binDirectoryPath, INDEX_FILENAME).getAbsolutePath());
+    }
+
+    /**
+     * @return If there's nothing to compile incrementally against, and all classes need to be compiled
+     */
+    public boolean isEmpty() {
+        return sources.isEmpty();
+    }
+
+    /**
+     * Records what a source file just got compiled to.
+     *
+     * @param classFiles     Paths of the <code>.class</code> files relative to the output directory
+     * @param referenceNames Simple names of every type the source file references
+     * @param outputHash     Hash of the compiled <code>.class</code> files' content
+     */
+    public synchronized void record(File sourceFile, List<String> classFiles, Collection<String> referenceNames, String outputHash) {
+        Source source = sources.get(sourceFile.getAbsolutePath());
+        if (source == null) {
+            source = new Source();
+            sources.put(sourceFile.getAbsolutePath(), source);
+        }
+        source.classFiles = new ArrayList<>(classFiles);
+        source.references = new ArrayList<>(referenceNames);
+        source.outputHash = outputHash;
+        source.compiled = true;
+    }
+
+    /**
+     * Compiles changed source files and their dependents into {@code classesDirectory}, and deletes
+     * <code>.class</code> files of removed source files. Does nothing if no source file changed.
+     * <p>
+     * {@code compiler} has to {@link #record(File, List, Collection, String)} the source files it compiled.
+     * If it throws, the index gets deleted, so that the next build compiles all classes again.
+     */
+    public void compile(List<File> sourceFiles, File classesDirectory, Compiler compiler) throws zy, IOException {
+        Set<String> affectedNames = new HashSet<>();
+        Set<File> changed = new LinkedHashSet<>();
+        HashMap<String, Source> removed = new HashMap<>(sources);
+        for (File sourceFile : sourceFiles) {
+            String path = sourceFile.getAbsolutePath();
+            String stamp = sourceFile.length() + ":" + sourceFile.lastModified();
+            Source source = removed.remove(path);
+
+            if (source != null && source.stamp.equals(stamp)) continue;
+            String hash = InputFingerprint.hashFile(sourceFile);
+            if (source != null && source.hash.equals(hash)) {
+                source.stamp = stamp;
+                continue;
+            }
+
+            if (source == null) {
+                source = new Source();
+                sources.put(path, source);
+            }
+            source.stamp = stamp;
+            source.hash = hash;
+            changed.add(sourceFile);
+        }
+
+        for (Map.Entry<String, Source> removedSource : removed.entrySet()) {
+            affectedNames.addAll(removedSource.getValue().getDefinedNames());
+            deleteClassFiles(removedSource.getValue(), classesDirectory);
+            sources.remove(removedSource.getKey());
+        }
+
+        if (changed.isEmpty() && removed.isEmpty()) {
+            LogUtil.d(TAG, "No Java file changed");
+            save();
+            return;
+        }
+
+        /* Until compiling succeeds, the next build can't trust the index */
+        delete(indexFile.getParent());
+
+        Set<File> compiled = new HashSet<>();
+        Set<File> toCompile = new LinkedHashSet<>(changed);
+        for (int round = 1; ; round++) {
+            toCompile.addAll(getDependents(affectedNames));
+            toCompile.removeAll(compiled);
+            if (toCompile.isEmpty()) break;
+
+            Map<File, String> previousOutputHashes = new HashMap<>();
+            Map<File, Set<String>> previousDefinedNames = new HashMap<>();
+            for (File sourceFile : toCompile) {
+                Source source = sources.get(sourceFile.getAbsolutePath());
+                previousOutputHashes.put(sourceFile, source.outputHash);
+                previousDefinedNames.put(sourceFile, source.getDefinedNames());
+                deleteClassFiles(source, classesDirectory);
+                source.compiled = false;
+            }
+
+            LogUtil.d(TAG, "Compiling " + toCompile.size() + " of " + sources.size() + " Java files in round " + round);
+            compiler.compile(new ArrayList<>(toCompile));
+            compiled.addAll(toCompile);
+
+            affectedNames.clear();
+            for (File sourceFile : toCompile) {
+                Source source = sources.get(sourceFile.getAbsolutePath());
+                if (!source.compiled) {
+                    throw new zy("Eclipse compiler didn't compile " + sourceFile);
+                }
+                String previousOutputHash = previousOutputHashes.get(sourceFile);
+                if (previousOutputHash == null || !previousOutputHash.equals(source.outputHash)) {
+                    /* Types it defined before might not exist anymore */
+                    affectedNames.addAll(previousDefinedNames.get(sourceFile));
+                    affectedNames.addAll(source.getDefinedNames());
+                }
+            }
+            toCompile.clear();
+        }
+        save();
+    }
+
+    /**
+     * @return Fingerprint of the <code>.class</code> files of all source files, from the hashes recorded
+     * while compiling them, without reading the classes again
+     */
+    public String getOutputFingerprint() {
+        List<String> paths = new ArrayList<>(sources.keySet());
+        paths.sort(null);
+        InputFingerprint fingerprint = new InputFingerprint();
+        for (String path : paths) {
+            fingerprint.addString(path, sources.get(path).outputHash);
+        }
+        return fingerprint.get();
+    }
+
+    /**
+     * Saves the index, to be used by the next build.
+     */
+    public void save() {
+        Saved saved = new Saved();
+        saved.environment = environment;
+        saved.sources = sources;
+        FileUtil.writeFile(indexFile.getAbsolutePath(), new Gson().toJson(saved));
+    }
+
+    /**
+     * Forgets about all source files, to record a full compilation afterwards.
+     */
+    public void clear() {
+        sources.clear();
+    }
+
+    /**
+     * Adds a source file compiled by a full compilation, so that it can be recorded.
+     */
+    public void add(File sourceFile) throws IOException {
+        Source source = new Source();
+        source.stamp = sourceFile.length() + ":" + sourceFile.lastModified();
+        source.hash = InputFingerprint.hashFile(sourceFile);
+        sources.put(sourceFile.getAbsolutePath(), source);
+    }
+
+    private List<File> getDependents(Set<String> names) {
+        List<File> dependents = new ArrayList<>();
+        if (names.isEmpty()) return dependents;
+
+        for (Map.Entry<String, Source> source : sources.entrySet()) {
+            for (String reference : source.getValue().references) {
+                if (names.contains(reference)) {
+                    dependents.add(new File(source.getKey()));
+                    break;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    private static void deleteClassFiles(Source source, File classesDirectory) {
+        for (String classFile : source.classFiles) {
+            FileUtil.deleteFile(new File(classesDirectory, classFile).getAbsolutePath());
+        }
+        source.classFiles = new ArrayList<>();
+    }
+
+    /**
+     * Compiles source files into the directory passed to {@link #compile(List, File, Compiler)}, with
+     * that directory being on the classpath.
+     */
+    public interface Compiler {
+        void compile(List<File> sourceFiles) throws zy, IOException;
+    }
+
+    private static class Saved {
+        private String environment;
+        private HashMap<String, Source> sources;
+    }
+
+    private static class Source {
+        private String stamp = "";
+        private String hash = "";
+        private String outputHash;
+        private List<String> classFiles = new ArrayList<>();
+        private List<String> references = new ArrayList<>();
+        private transient boolean compiled;
+
+        /**
+         * @return Simple names of the types in this source file's classes, including member and local
+         * types, e.g. <code>Outer</code> and <code>Inner</code> for <code>com/example/Outer$Inner.class</code>
+         */
+        private Set<String> getDefinedNames() {
+            Set<String> names = new HashSet<>();
+            for (String classFile : classFiles) {
+                String binaryName = classFile.substring(classFile.lastIndexOf('/') + 1, classFile.length() - ".class".length());
+                for (String name : binaryName.split("\\$")) {
+                    /* Skip anonymous classes' numbers, and local classes' prefixes */
+                    int start = 0;
+                    while (start < name.length() && Character.isDigit(name.charAt(start))) start++;
+                    if (start < name.length()) names.add(name.substring(start));
+                }
+            }
+            return names;
+        }
+    }
+}
@@ -153,6 +153,7 @@ public class MoreblockImporter {
 
         jC.a(sc_id).a(activityJavaName, moreBlockName, moreBlock.spec);
         jC.a(sc_id).a(activityJavaName, moreBlockName + "_moreBlock", moreBlock.blocks);
+        jC.updateUsages(activityJavaName, moreBlockName + "_moreBlock", moreBlock.blocks);
         bB.a(activity, xB.b().a(activity, R.string.common_message_complete_save), 0).show();
         callback.onImportComplete();
     }
@@ -39,6 +39,7 @@ import java.util.stream.IntStream;
 
 import a.a.a.DA;
 import a.a.a.DB;
+import a.a.a.ProjectMetadataStore;
 import a.a.a.lC;
 import dev.chrisbanes.insetter.Insetter;
 import mod.hey.studios.project.ProjectTracker;
@@ -210,7 +211,7 @@ public class ProjectsFragment extends DA {
         }
 
         executorService.execute(() -> {
-            List<HashMap<String, Object>> loadedProjects = lC.a();
+            List<HashMap<String, Object>> loadedProjects = ProjectMetadataStore.getInstance().getProjectSummaries();
             loadedProjects.sort(new ProjectComparator(preference.d("sortBy")));
 
             DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new ProjectDiffCallback(projectsList, loadedProjects));
@@ -30,12 +30,12 @@ import pro.sketchware.activities.resourceseditor.ResourcesEditorActivity;
 import pro.sketchware.activities.resourceseditor.components.adapters.ColorsAdapter;
 import pro.sketchware.activities.resourceseditor.components.models.ColorModel;
 import pro.sketchware.activities.resourceseditor.components.utils.ColorsEditorManager;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.databinding.ColorEditorAddBinding;
 import pro.sketchware.databinding.ResourcesEditorFragmentBinding;
 import pro.sketchware.utility.FileUtil;
 import pro.sketchware.utility.PropertiesUtil;
 import pro.sketchware.utility.SketchwareUtil;
-import pro.sketchware.utility.XmlUtil;
 
 public class ColorsEditor extends Fragment {
 
@@ -78,7 +78,7 @@ public class ColorsEditor extends Fragment {
             String generatedContent = activity.yq.getXMLColor();
             colorsEditorManager.parseColorsXML(defaultColors, generatedContent);
         } else {
-            colorsEditorManager.parseColorsXML(defaultColors, FileUtil.readFileIfExist(contentPath));
+            colorsEditorManager.loadColorsFile(defaultColors, contentPath);
         }
         notesMap = new HashMap<>(colorsEditorManager.notesMap);
 
@@ -291,7 +291,7 @@ public class ColorsEditor extends Fragment {
 
     public void saveColorsFile() {
         if (hasUnsavedChanges) {
-            XmlUtil.saveXml(contentPath, colorsEditorManager.convertListToXml(colorList, notesMap));
+            ValuesResourceRepository.getInstance(activity.sc_id).save(contentPath, colorsEditorManager.convertListToXml(colorList, notesMap));
             hasUnsavedChanges = false;
         }
     }
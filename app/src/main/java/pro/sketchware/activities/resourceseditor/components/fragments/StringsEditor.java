@@ -25,11 +25,11 @@ import pro.sketchware.R;
 import pro.sketchware.activities.resourceseditor.ResourcesEditorActivity;
 import pro.sketchware.activities.resourceseditor.components.adapters.StringsAdapter;
 import pro.sketchware.activities.resourceseditor.components.utils.StringsEditorManager;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.databinding.ResourcesEditorFragmentBinding;
 import pro.sketchware.databinding.ViewStringEditorAddBinding;
 import pro.sketchware.utility.FileUtil;
 import pro.sketchware.utility.SketchwareUtil;
-import pro.sketchware.utility.XmlUtil;
 
 public class StringsEditor extends Fragment {
 
@@ -72,7 +72,7 @@ public class StringsEditor extends Fragment {
             String generatedContent = activity.yq.getXMLString();
             stringsEditorManager.convertXmlStringsToListMap(generatedContent, defaultStrings);
         } else {
-            stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFileIfExist(filePath), defaultStrings);
+            stringsEditorManager.loadStringsFile(filePath, defaultStrings);
         }
         notesMap = new HashMap<>(stringsEditorManager.notesMap);
 
@@ -186,7 +186,7 @@ public class StringsEditor extends Fragment {
 
     public void saveStringsFile() {
         if (hasUnsavedChanges) {
-            XmlUtil.saveXml(filePath, stringsEditorManager.convertListMapToXmlStrings(listmap, notesMap));
+            ValuesResourceRepository.getInstance(activity.sc_id).save(filePath, stringsEditorManager.convertListMapToXmlStrings(listmap, notesMap));
             hasUnsavedChanges = false;
         }
     }
@@ -33,6 +33,7 @@ import pro.sketchware.activities.resourceseditor.components.adapters.StylesAdapt
 import pro.sketchware.activities.resourceseditor.components.models.StyleModel;
 import pro.sketchware.activities.resourceseditor.components.utils.AttributeSuggestions;
 import pro.sketchware.activities.resourceseditor.components.utils.StylesEditorManager;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.databinding.PropertyPopupParentAttrBinding;
 import pro.sketchware.databinding.ResourcesEditorFragmentBinding;
 import pro.sketchware.databinding.StyleEditorAddAttrBinding;
@@ -79,7 +80,7 @@ public class StylesEditor extends Fragment {
             String generatedContent = activity.yq.getXMLStyle();
             defaultStyles = stylesEditorManager.parseStylesFile(generatedContent);
         } else {
-            defaultStyles = stylesEditorManager.parseStylesFile(FileUtil.readFileIfExist(filePath));
+            defaultStyles = stylesEditorManager.loadStylesFile(activity.sc_id, filePath);
         }
 
         if (isSkippingMode) {
@@ -299,7 +300,7 @@ public class StylesEditor extends Fragment {
 
     public void saveStylesFile() {
         if (hasUnsavedChanges) {
-            FileUtil.writeFile(filePath, stylesEditorManager.convertStylesToXML(stylesList, notesMap));
+            ValuesResourceRepository.getInstance(activity.sc_id).save(filePath, stylesEditorManager.convertStylesToXML(stylesList, notesMap));
             hasUnsavedChanges = false;
         }
     }
@@ -33,11 +33,11 @@ import pro.sketchware.activities.resourceseditor.components.adapters.StylesAdapt
 import pro.sketchware.activities.resourceseditor.components.models.StyleModel;
 import pro.sketchware.activities.resourceseditor.components.utils.AttributeSuggestions;
 import pro.sketchware.activities.resourceseditor.components.utils.StylesEditorManager;
+import pro.sketchware.activities.resourceseditor.components.utils.ValuesResourceRepository;
 import pro.sketchware.databinding.PropertyPopupParentAttrBinding;
 import pro.sketchware.databinding.ResourcesEditorFragmentBinding;
 import pro.sketchware.databinding.StyleEditorAddAttrBinding;
 import pro.sketchware.databinding.StyleEditorAddBinding;
-import pro.sketchware.utility.FileUtil;
 import pro.sketchware.utility.SketchwareUtil;
 
 public class ThemesEditor extends Fragment {
@@ -73,7 +73,7 @@ public class ThemesEditor extends Fragment {
         boolean isSkippingMode = updateMode == 1;
         boolean isMergeAndReplace = updateMode == 2;
 
-        ArrayList<StyleModel> defaultStyles = themesEditorManager.parseStylesFile(FileUtil.readFileIfExist(filePath));
+        ArrayList<StyleModel> defaultStyles = themesEditorManager.loadStylesFile(activity.sc_id, filePath);
 
         if (isSkippingMode) {
             HashSet<String> existingThemeNames = new HashSet<>();
@@ -287,7 +287,7 @@ public class ThemesEditor extends Fragment {
 
     public void saveThemesFile() {
         if (hasUnsavedChanges) {
-            FileUtil.writeFile(filePath, themesEditorManager.convertStylesToXML(themesList, notesMap));
+            ValuesResourceRepository.getInstance(activity.sc_id).save(filePath, themesEditorManager.convertStylesToXML(themesList, notesMap));
             hasUnsavedChanges = false;
         }
     }
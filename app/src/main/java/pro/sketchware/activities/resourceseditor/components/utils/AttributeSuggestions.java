@@ -127,7 +127,9 @@ public class AttributeSuggestions {
 
         ArrayList<HashMap<String, Object>> StringsListMap = new ArrayList<>();
 
-        new StringsEditorManager().convertXmlStringsToListMap(FileUtil.readFileIfExist(filePath), StringsListMap);
+        StringsEditorManager stringsEditorManager = new StringsEditorManager();
+        stringsEditorManager.sc_id = sc_id;
+        stringsEditorManager.loadStringsFile(filePath, StringsListMap);
 
         return StringsListMap.stream()
                 .map(stringMap -> "@string/" + stringMap.get("key"))
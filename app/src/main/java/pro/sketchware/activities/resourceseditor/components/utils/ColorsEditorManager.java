@@ -12,30 +12,18 @@ import androidx.core.content.ContextCompat;
 import com.besome.sketch.editor.manage.library.material3.Material3LibraryManager;
 import com.google.android.material.color.MaterialColors;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import a.a.a.lC;
 import a.a.a.wq;
 import a.a.a.yB;
 import pro.sketchware.R;
 import pro.sketchware.SketchApplication;
 import pro.sketchware.activities.resourceseditor.components.models.ColorModel;
-import pro.sketchware.utility.FileUtil;
 import pro.sketchware.utility.PropertiesUtil;
-import pro.sketchware.utility.XmlUtil;
 
 @SuppressLint("DiscouragedApi")
 public class ColorsEditorManager {
@@ -60,8 +48,8 @@ public class ColorsEditorManager {
     public void initialize() {
         String filePath = wq.b(sc_id) + "/files/resource/values/colors.xml";
         String filePathNight = wq.b(sc_id) + "/files/resource/values-night/colors.xml";
-        parseColorsXML(resColorsList, FileUtil.readFileIfExist(filePath));
-        parseColorsXML(resColorsNightList, FileUtil.readFileIfExist(filePathNight));
+        loadColorsFile(resColorsList, filePath);
+        loadColorsFile(resColorsNightList, filePathNight);
     }
 
     public ArrayList<ColorModel> getResColorsList() {
@@ -155,6 +143,18 @@ public class ColorsEditorManager {
     }
 
     public void parseColorsXML(ArrayList<ColorModel> colorList, String colorXml) {
+        parseColors(colorList, ValuesResourceRepository.parse(colorXml));
+    }
+
+    /**
+     * Like {@link #parseColorsXML(ArrayList, String)} with a file's content,
+     * but without parsing the file again if it didn't change.
+     */
+    public void loadColorsFile(ArrayList<ColorModel> colorList, String filePath) {
+        parseColors(colorList, ValuesResourceRepository.getInstance(sc_id).getFile(filePath));
+    }
+
+    private void parseColors(ArrayList<ColorModel> colorList, ValuesResourceRepository.ValuesFile valuesFile) {
         isDataLoadingFailed = false;
         ArrayList<String> foundPrimaryColors = new ArrayList<>();
         ArrayList<ColorModel> colorOrderList = new ArrayList<>();
@@ -164,24 +164,17 @@ public class ColorsEditorManager {
         try {
             colorList.clear();
             notesMap.clear();
-            // Parse the XML using DocumentBuilder
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new InputSource(new StringReader(colorXml)));
-            document.getDocumentElement().normalize();
-
-            NodeList childNodes = document.getDocumentElement().getChildNodes();
-
-            for (int i = 0; i < childNodes.getLength(); i++) {
-                Node node = childNodes.item(i);
+            if (valuesFile.isMalformed()) {
+                throw new IllegalArgumentException("Malformed colors XML");
+            }
 
-                if (node.getNodeType() == Node.COMMENT_NODE) {
+            for (ValuesResourceRepository.ValueResource resource : valuesFile.getResources()) {
+                if (resource.isComment()) {
                     // Save comments in notesMap
-                    notesMap.put(colorList.size(), node.getNodeValue().trim());
-                } else if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals("color")) {
-                    Element element = (Element) node;
-                    String colorName = element.getAttribute("name");
-                    String colorValue = element.getTextContent().trim();
+                    notesMap.put(colorList.size(), resource.getValue());
+                } else if (resource.getType().equals("color")) {
+                    String colorName = resource.getName();
+                    String colorValue = resource.getValue().trim();
 
                     if (PropertiesUtil.isHexColor(getColorValue(SketchApplication.getContext(), colorValue, 4))) {
                         ColorModel colorModel = new ColorModel(colorName, colorValue);
@@ -224,11 +217,11 @@ public class ColorsEditorManager {
 
             // Save the updated XML if changes are detected
             if (hasChanges) {
-                XmlUtil.saveXml(wq.b(sc_id) + "/files/resource/values/colors.xml", convertListToXml(colorList, notesMap));
+                ValuesResourceRepository.getInstance(sc_id).save(wq.b(sc_id) + "/files/resource/values/colors.xml", convertListToXml(colorList, notesMap));
             }
 
         } catch (Exception e) {
-            isDataLoadingFailed = !colorXml.trim().isEmpty();
+            isDataLoadingFailed = !valuesFile.getContent().trim().isEmpty();
         }
     }
 
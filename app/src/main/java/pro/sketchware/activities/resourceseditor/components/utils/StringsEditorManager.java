@@ -1,25 +1,13 @@
 package pro.sketchware.activities.resourceseditor.components.utils;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import a.a.a.lC;
 import a.a.a.wq;
 import a.a.a.yB;
 import pro.sketchware.activities.resourceseditor.ResourcesEditorActivity;
-import pro.sketchware.utility.XmlUtil;
 
 public class StringsEditorManager {
 
@@ -31,24 +19,33 @@ public class StringsEditorManager {
     public HashMap<Integer, String> notesMap = new HashMap<>();
 
     public void convertXmlStringsToListMap(final String xmlString, final ArrayList<HashMap<String, Object>> listMap) {
+        convertToListMap(ValuesResourceRepository.parse(xmlString), listMap);
+    }
+
+    /**
+     * Like {@link #convertXmlStringsToListMap(String, ArrayList)} with a file's content,
+     * but without parsing the file again if it didn't change.
+     */
+    public void loadStringsFile(final String filePath, final ArrayList<HashMap<String, Object>> listMap) {
+        convertToListMap(ValuesResourceRepository.getInstance(sc_id).getFile(filePath), listMap);
+    }
+
+    private void convertToListMap(ValuesResourceRepository.ValuesFile valuesFile, ArrayList<HashMap<String, Object>> listMap) {
         isDataLoadingFailed = false;
         hasAppNameKey = false;
+        listMap.clear();
+        notesMap.clear(); // Clear notes map at the beginning
+        if (valuesFile.isMalformed()) {
+            isDataLoadingFailed = !valuesFile.getContent().trim().isEmpty();
+            return;
+        }
         try {
-            listMap.clear();
-            notesMap.clear(); // Clear notes map at the beginning
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            ByteArrayInputStream input = new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8));
-            Document doc = builder.parse(new InputSource(input));
-            doc.getDocumentElement().normalize();
-            NodeList childNodes = doc.getDocumentElement().getChildNodes();
-            for (int i = 0; i < childNodes.getLength(); i++) {
-                Node node = childNodes.item(i);
-                if (node.getNodeType() == Node.COMMENT_NODE) {
+            for (ValuesResourceRepository.ValueResource resource : valuesFile.getResources()) {
+                if (resource.isComment()) {
                     // Save comments in notesMap
-                    notesMap.put(listMap.size(), node.getNodeValue().trim());
-                } else if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals("string")) {
-                    addToListMap(listMap, (Element) node);
+                    notesMap.put(listMap.size(), resource.getValue());
+                } else if (resource.getType().equals("string")) {
+                    addToListMap(listMap, resource);
                 }
             }
             if (isDefaultVariant && !hasAppNameKey) {
@@ -56,17 +53,17 @@ public class StringsEditorManager {
                 map.put("key", "app_name");
                 map.put("text", yB.c(lC.b(sc_id), "my_app_name"));
                 listMap.add(0, map);
-                XmlUtil.saveXml(wq.b(sc_id) + "/files/resource/values/strings.xml", convertListMapToXmlStrings(listMap, notesMap));
+                ValuesResourceRepository.getInstance(sc_id).save(wq.b(sc_id) + "/files/resource/values/strings.xml", convertListMapToXmlStrings(listMap, notesMap));
             }
         } catch (Exception ignored) {
-            isDataLoadingFailed = !xmlString.trim().isEmpty();
+            isDataLoadingFailed = !valuesFile.getContent().trim().isEmpty();
         }
     }
 
-    private void addToListMap(ArrayList<HashMap<String, Object>> list, Element node) {
+    private void addToListMap(ArrayList<HashMap<String, Object>> list, ValuesResourceRepository.ValueResource resource) {
         HashMap<String, Object> map = new HashMap<>();
-        String key = node.getAttribute("name");
-        String value = node.getTextContent().replace("\\", "");
+        String key = resource.getName();
+        String value = resource.getValue().replace("\\", "");
         map.put("key", key);
         map.put("text", value);
         if (key.equals("app_name")) {
@@ -1,23 +1,10 @@
 package pro.sketchware.activities.resourceseditor.components.utils;
 
-import androidx.annotation.NonNull;
-
-import org.w3c.dom.Comment;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import pro.sketchware.activities.resourceseditor.ResourcesEditorActivity;
 import pro.sketchware.activities.resourceseditor.components.models.StyleModel;
 
@@ -58,58 +45,37 @@ public class StylesEditorManager {
     }
 
     public ArrayList<StyleModel> parseStylesFile(String content) {
+        return parseStyles(ValuesResourceRepository.parse(content));
+    }
+
+    /**
+     * Like {@link #parseStylesFile(String)} with a file's content,
+     * but without parsing the file again if it didn't change.
+     */
+    public ArrayList<StyleModel> loadStylesFile(String sc_id, String filePath) {
+        return parseStyles(ValuesResourceRepository.getInstance(sc_id).getFile(filePath));
+    }
+
+    private ArrayList<StyleModel> parseStyles(ValuesResourceRepository.ValuesFile valuesFile) {
         isDataLoadingFailed = false;
         ArrayList<StyleModel> styles = new ArrayList<>();
         notesMap.clear();
 
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputSource inputSource = new InputSource(new StringReader(content));
-            Document document = builder.parse(inputSource);
-            document.getDocumentElement().normalize();
-
-            NodeList allNodes = document.getDocumentElement().getChildNodes();
-            for (int i = 0; i < allNodes.getLength(); i++) {
-                Node node = allNodes.item(i);
-
-                if (node.getNodeType() == Node.COMMENT_NODE) {
-                    Comment comment = (Comment) node;
-                    String commentText = comment.getTextContent().trim();
-                    notesMap.put(styles.size(), commentText);
-                } else if (node.getNodeType() == Node.ELEMENT_NODE && "style".equals(node.getNodeName())) {
-                    Element element = (Element) node;
-                    String styleName = element.getAttribute("name");
-                    String parent = element.hasAttribute("parent") ? element.getAttribute("parent") : null;
-
-                    LinkedHashMap<String, String> attributes = getAttributes(element);
-
-                    styles.add(new StyleModel(styleName, parent, attributes));
-                }
+        if (valuesFile.isMalformed()) {
+            isDataLoadingFailed = !valuesFile.getContent().trim().isEmpty();
+            return styles;
+        }
+        for (ValuesResourceRepository.ValueResource resource : valuesFile.getResources()) {
+            if (resource.isComment()) {
+                notesMap.put(styles.size(), resource.getValue());
+            } else if ("style".equals(resource.getType())) {
+                styles.add(new StyleModel(resource.getName(), resource.getParent(), new LinkedHashMap<>(resource.getItems())));
             }
-
-        } catch (Exception ignored) {
-            isDataLoadingFailed = !content.trim().isEmpty();
         }
 
         return styles;
     }
 
-    private @NonNull LinkedHashMap<String, String> getAttributes(Element element) {
-        LinkedHashMap<String, String> attributes = new LinkedHashMap<>();
-        NodeList childNodes = element.getChildNodes();
-        for (int j = 0; j < childNodes.getLength(); j++) {
-            Node childNode = childNodes.item(j);
-            if (childNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element childElement = (Element) childNode;
-                String attrName = childElement.getAttribute("name");
-                String attrValue = childElement.getTextContent().trim();
-                attributes.put(attrName, attrValue);
-            }
-        }
-        return attributes;
-    }
-
     public boolean isStyleExist(ArrayList<StyleModel> styles, String styleName) {
         for (StyleModel styleModel : styles) {
             if (styleModel.getStyleName().equals(styleName))
@@ -0,0 +1,309 @@
+package pro.sketchware.activities.resourceseditor.components.utils;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import a.a.a.wq;
+import pro.sketchware.utility.FileUtil;
+
+/**
+ * Values resource files (<code>strings.xml</code>, <code>colors.xml</code>, <code>styles.xml</code>, ...) of a project,
+ * each parsed once with a pull parser and kept until the file's modification time or size changes.
+ * <p>
+ * The design canvas, the resource editors and source generation all read values files through here, so that
+ * e.g. rendering a layout with many TextViews doesn't parse <code>strings.xml</code> again for every single one.
+ * Files saved with {@link #save(String, String)} are parsed from the content saved, without reading them again.
+ * <p>
+ * Parsed files never change, and may be used by several threads at once.
+ * <p>
+ * Without a project ID there's nothing to share a cache with, so those repositories parse files every time.
+ */
+public class ValuesResourceRepository {
+
+    private static final Map<String, ValuesResourceRepository> repositories = new ConcurrentHashMap<>();
+
+    private final String sc_id;
+    /**
+     * Parsed files by path, or {@code null} if files shouldn't be cached
+     */
+    private final Map<String, CachedFile> files;
+
+    private ValuesResourceRepository(String sc_id, boolean caching) {
+        this.sc_id = sc_id;
+        files = caching ? new ConcurrentHashMap<>() : null;
+    }
+
+    /**
+     * @param sc_id The project's ID, or {@code null} for a repository that doesn't cache parsed files
+     */
+    public static ValuesResourceRepository getInstance(String sc_id) {
+        if (sc_id == null) {
+            return new ValuesResourceRepository(null, false);
+        }
+        return repositories.computeIfAbsent(sc_id, id -> new ValuesResourceRepository(id, true));
+    }
+
+    /**
+     * Parses values resources that aren't saved to a file, such as generated default ones.
+     */
+    public static ValuesFile parse(String content) {
+        return new ValuesFile(true, content);
+    }
+
+    /**
+     * @return Path of one of the project's values files, e.g. <code>getFilePath("values", "strings.xml")</code>
+     */
+    public String getFilePath(String valuesDirectoryName, String fileName) {
+        return wq.b(sc_id) + "/files/resource/" + valuesDirectoryName + "/" + fileName;
+    }
+
+    /**
+     * @return The values file, parsed again only if it changed since it was last, or an empty one if it doesn't exist
+     */
+    public ValuesFile getFile(String filePath) {
+        File file = new File(filePath);
+        if (files == null) {
+            return file.isFile() ? new ValuesFile(true, FileUtil.readFileIfExist(filePath)) : new ValuesFile(false, "");
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CachedFile cached = files.get(filePath);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.file;
+        }
+
+        ValuesFile valuesFile = file.isFile() ? new ValuesFile(true, FileUtil.readFileIfExist(filePath)) : new ValuesFile(false, "");
+        files.put(filePath, new CachedFile(lastModified, length, valuesFile));
+        return valuesFile;
+    }
+
+    /**
+     * Saves a values file, and keeps what was saved instead of parsing the file again when it's read next.
+     */
+    public void save(String filePath, String content) {
+        FileUtil.writeFile(filePath, content);
+        if (files == null) {
+            return;
+        }
+        File file = new File(filePath);
+        files.put(filePath, new CachedFile(file.lastModified(), file.length(), new ValuesFile(true, content)));
+    }
+
+    private static class CachedFile {
+        private final long lastModified;
+        private final long length;
+        private final ValuesFile file;
+
+        private CachedFile(long lastModified, long length, ValuesFile file) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.file = file;
+        }
+    }
+
+    public static class ValuesFile {
+        private final boolean exists;
+        private final String content;
+        private final boolean malformed;
+        /**
+         * Resources and comments of the root element, in order
+         */
+        private final List<ValueResource> resources;
+        /**
+         * Resources by type and trimmed name, the first one of a name only
+         */
+        private final Map<String, Map<String, ValueResource>> resourcesByType = new HashMap<>();
+
+        private ValuesFile(boolean exists, String content) {
+            this.exists = exists;
+            this.content = content;
+
+            List<ValueResource> resources;
+            boolean malformed;
+            try {
+                resources = parseResources(content);
+                malformed = false;
+            } catch (XmlPullParserException | IOException e) {
+                resources = new ArrayList<>();
+                malformed = true;
+            }
+            this.resources = Collections.unmodifiableList(resources);
+            this.malformed = malformed;
+
+            for (ValueResource resource : resources) {
+                if (!resource.isComment()) {
+                    resourcesByType.computeIfAbsent(resource.type, type -> new HashMap<>())
+                            .putIfAbsent(resource.name.trim(), resource);
+                }
+            }
+        }
+
+        private static List<ValueResource> parseResources(String content) throws XmlPullParserException, IOException {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            XmlPullParser parser = factory.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(new StringReader(content));
+
+            List<ValueResource> resources = new ArrayList<>();
+            boolean hasRoot = false;
+            String type = null;
+            String name = null;
+            String parent = null;
+            StringBuilder text = null;
+            LinkedHashMap<String, String> items = null;
+            String itemName = null;
+            StringBuilder itemText = null;
+
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.nextToken()) {
+                int depth = parser.getDepth();
+                switch (event) {
+                    case XmlPullParser.START_TAG -> {
+                        if (depth == 1) {
+                            hasRoot = true;
+                        } else if (depth == 2) {
+                            type = parser.getName();
+                            name = attributeOrEmpty(parser, "name");
+                            parent = parser.getAttributeValue(null, "parent");
+                            text = new StringBuilder();
+                            items = new LinkedHashMap<>();
+                        } else if (depth == 3) {
+                            itemName = attributeOrEmpty(parser, "name");
+                            itemText = new StringBuilder();
+                        }
+                    }
+                    case XmlPullParser.TEXT, XmlPullParser.CDSECT, XmlPullParser.ENTITY_REF -> {
+                        String chunk = parser.getText();
+                        if (chunk == null) {
+                            throw new XmlPullParserException("Unresolved entity " + parser.getName());
+                        }
+                        if (depth >= 2 && text != null) text.append(chunk);
+                        if (depth >= 3 && itemText != null) itemText.append(chunk);
+                    }
+                    case XmlPullParser.COMMENT -> {
+                        if (depth == 1) {
+                            resources.add(new ValueResource(null, null, null, parser.getText().trim(), null));
+                        }
+                    }
+                    case XmlPullParser.END_TAG -> {
+                        if (depth == 3) {
+                            items.put(itemName, itemText.toString().trim());
+                            itemText = null;
+                        } else if (depth == 2) {
+                            resources.add(new ValueResource(type, name, parent, text.toString(), items));
+                            text = null;
+                        }
+                    }
+                }
+            }
+            if (!hasRoot) {
+                throw new XmlPullParserException("No root element");
+            }
+            return resources;
+        }
+
+        private static String attributeOrEmpty(XmlPullParser parser, String attribute) {
+            String value = parser.getAttributeValue(null, attribute);
+            return value == null ? "" : value;
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return If the content couldn't be parsed, which includes it being empty
+         */
+        public boolean isMalformed() {
+            return malformed;
+        }
+
+        /**
+         * @return Resources and comments directly in the root element, in the order of the file
+         */
+        public List<ValueResource> getResources() {
+            return resources;
+        }
+
+        /**
+         * @return The first resource of a type with a name, or {@code null} if there's none
+         */
+        public ValueResource getResource(String type, String name) {
+            Map<String, ValueResource> byName = resourcesByType.get(type);
+            return byName == null ? null : byName.get(name);
+        }
+    }
+
+    /**
+     * A resource element such as <code>&lt;string&gt;</code>, or a comment.
+     */
+    public static class ValueResource {
+        private final String type;
+        private final String name;
+        private final String parent;
+        private final String value;
+        private final Map<String, String> items;
+
+        private ValueResource(String type, String name, String parent, String value, LinkedHashMap<String, String> items) {
+            this.type = type;
+            this.name = name;
+            this.parent = parent;
+            this.value = value;
+            this.items = items == null ? Collections.emptyMap() : Collections.unmodifiableMap(items);
+        }
+
+        public boolean isComment() {
+            return type == null;
+        }
+
+        /**
+         * @return The element's tag, e.g. <code>string</code>
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return The <code>name</code> attribute, empty if there's none
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The <code>parent</code> attribute, or {@code null} if there's none
+         */
+        public String getParent() {
+            return parent;
+        }
+
+        /**
+         * @return The element's text content, untrimmed, or a comment's trimmed text
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return Trimmed text content of child elements, such as a style's <code>&lt;item&gt;</code>s, by name
+         */
+        public Map<String, String> getItems() {
+            return items;
+        }
+    }
+}
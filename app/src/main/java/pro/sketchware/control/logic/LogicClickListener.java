@@ -20,6 +20,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.besome.sketch.beans.ProjectFileBean;
 import com.besome.sketch.editor.LogicEditorActivity;
+import com.besome.sketch.editor.logic.ProjectUsageIndex;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import java.util.ArrayList;
@@ -172,7 +173,8 @@ public class LogicClickListener implements View.OnClickListener {
 
         List<Item> data = new LinkedList<>();
         RemoveAdapter adapter = new RemoveAdapter(logicEditor, data,
-                variableName -> logicEditor.o.c(variableName) || projectDataManager.c(javaName, variableName, eventName));
+                variableName -> logicEditor.o.c(variableName) || jC.getUsageIndex(logicEditor.B)
+                        .isUsedInBlocks(ProjectUsageIndex.KIND_VARIABLE, variableName, javaName, eventName));
         recyclerView.setAdapter(adapter);
 
         List<Pair<List<Integer>, String>> variableTypes = List.of(
@@ -278,7 +280,8 @@ public class LogicClickListener implements View.OnClickListener {
 
         List<Item> data = new LinkedList<>();
         RemoveAdapter adapter = new RemoveAdapter(logicEditor, data,
-                listName -> logicEditor.o.b(listName) || projectDataManager.b(javaName, listName, eventName));
+                listName -> logicEditor.o.b(listName) || jC.getUsageIndex(logicEditor.B)
+                        .isUsedInBlocks(ProjectUsageIndex.KIND_LIST, listName, javaName, eventName));
         recyclerView.setAdapter(adapter);
 
         List<Pair<Integer, String>> listTypes = List.of(
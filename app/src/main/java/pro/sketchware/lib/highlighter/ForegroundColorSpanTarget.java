@@ -0,0 +1,48 @@
+package pro.sketchware.lib.highlighter;
+
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Sets {@link ForegroundColorSpan}s on an EditText's text.
+ * <p>
+ * The text is looked up on every {@link #setSpan(int, int, int)}, since EditText replaces its Editable
+ * on {@link android.widget.TextView#setText(CharSequence)}. Spans are removed from the text they were set on.
+ */
+public class ForegroundColorSpanTarget implements SpanTarget {
+
+    private final Supplier<Spannable> textSupplier;
+    private final List<ForegroundColorSpan> spans = new ArrayList<>();
+    private Spannable text;
+
+    public ForegroundColorSpanTarget(Supplier<Spannable> textSupplier) {
+        this.textSupplier = textSupplier;
+    }
+
+    @Override
+    public void setSpan(int start, int end, int color) {
+        Spannable current = textSupplier.get();
+        if (current != text) {
+            removeSpans();
+            text = current;
+        }
+        ForegroundColorSpan span = new ForegroundColorSpan(color);
+        text.setSpan(span, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        spans.add(span);
+    }
+
+    @Override
+    public void removeSpans() {
+        if (text != null) {
+            for (ForegroundColorSpan span : spans) {
+                text.removeSpan(span);
+            }
+        }
+        spans.clear();
+    }
+}
@@ -0,0 +1,224 @@
+package pro.sketchware.lib.highlighter;
+
+import java.util.Arrays;
+
+/**
+ * Syntax highlighting that keeps a {@link SyntaxLexer}'s tokens and end state of every line,
+ * so that an edit only re-lexes the lines it changed, and the lines after them until one ends in the
+ * same state as it did before. Only the visible part of the text gets spans, set on a {@link SpanTarget}.
+ * <p>
+ * Lines are only lexed once they're needed for being shown, so e.g. opening a block comment at the top
+ * of a long file doesn't re-lex the lines below the visible ones until they're scrolled to.
+ * <p>
+ * Must be told about every change to the text with {@link #onTextChanged(CharSequence, int, int, int)},
+ * and isn't thread-safe.
+ */
+public class IncrementalHighlighter {
+
+    private final SyntaxLexer lexer;
+    private final int[] colors;
+    private final SpanTarget spans;
+    private final SyntaxLexer.Tokens lineTokens = new SyntaxLexer.Tokens();
+
+    private int textLength;
+    private int lineCount;
+    private int[] lineStarts = new int[0];
+    private int[] startStates = new int[0];
+    private int[] endStates = new int[0];
+    /**
+     * Tokens of each line, relative to the line's start, packed like {@link SyntaxLexer.Tokens} does
+     */
+    private int[][] tokens = new int[0][];
+    /**
+     * Lines that changed, or whose previous line might end in another state than their start state
+     */
+    private boolean[] invalid = new boolean[0];
+    /**
+     * No line before this one is invalid
+     */
+    private int firstInvalidLine;
+
+    private int appliedFirstLine = -1;
+    private int appliedLastLine = -1;
+    private boolean changedSinceApplied = true;
+
+    /**
+     * @param colors Colors by token type, see {@link SyntaxLexer#TOKEN_KEYWORD} and following.
+     *               Tokens of types with color 0 don't get spans.
+     */
+    public IncrementalHighlighter(SyntaxLexer lexer, int[] colors, CharSequence text, SpanTarget spans) {
+        this.lexer = lexer;
+        this.colors = colors;
+        this.spans = spans;
+        setText(text);
+    }
+
+    /**
+     * Forgets all lines' tokens, as if the text got replaced entirely.
+     */
+    public void setText(CharSequence text) {
+        textLength = text.length();
+        lineCount = 0;
+        ensureCapacity(16);
+        lineStarts[lineCount++] = 0;
+        for (int i = 0; i < textLength; i++) {
+            if (text.charAt(i) == '\n') {
+                ensureCapacity(lineCount + 1);
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+        Arrays.fill(tokens, 0, lineCount, null);
+        Arrays.fill(invalid, 0, lineCount, true);
+        firstInvalidLine = 0;
+        changedSinceApplied = true;
+    }
+
+    /**
+     * Updates lines after {@code before} characters at {@code start} got replaced with {@code count} new ones,
+     * like {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)} reports.
+     */
+    public void onTextChanged(CharSequence text, int start, int before, int count) {
+        if (textLength - before + count != text.length() || start + before > textLength) {
+            // A change was missed
+            setText(text);
+            return;
+        }
+
+        int firstLine = getLineOfOffset(start);
+        int lastLine = getLineOfOffset(start + before);
+        int removed = lastLine - firstLine + 1;
+        int added = 1;
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') added++;
+        }
+
+        ensureCapacity(lineCount - removed + added);
+        int tail = lineCount - (lastLine + 1);
+        int newTailStart = firstLine + added;
+        System.arraycopy(lineStarts, lastLine + 1, lineStarts, newTailStart, tail);
+        System.arraycopy(startStates, lastLine + 1, startStates, newTailStart, tail);
+        System.arraycopy(endStates, lastLine + 1, endStates, newTailStart, tail);
+        System.arraycopy(tokens, lastLine + 1, tokens, newTailStart, tail);
+        System.arraycopy(invalid, lastLine + 1, invalid, newTailStart, tail);
+        int oldLineCount = lineCount;
+        lineCount = newTailStart + tail;
+        if (lineCount < oldLineCount) {
+            Arrays.fill(tokens, lineCount, oldLineCount, null);
+        }
+
+        int line = firstLine + 1;
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') lineStarts[line++] = i + 1;
+        }
+        int delta = count - before;
+        for (int i = newTailStart; i < lineCount; i++) {
+            lineStarts[i] += delta;
+        }
+        Arrays.fill(tokens, firstLine, newTailStart, null);
+        Arrays.fill(invalid, firstLine, newTailStart, true);
+
+        firstInvalidLine = Math.min(firstInvalidLine, firstLine);
+        textLength = text.length();
+        changedSinceApplied = true;
+    }
+
+    /**
+     * Replaces the spans this highlighter set with ones for the lines between two offsets, usually the visible ones.
+     * Does nothing if neither the text nor the lines changed since the last time.
+     */
+    public void applySpans(CharSequence text, int visibleStart, int visibleEnd) {
+        if (text.length() != textLength) {
+            setText(text);
+        }
+        int firstLine = getLineOfOffset(Math.max(0, Math.min(visibleStart, textLength)));
+        int lastLine = getLineOfOffset(Math.max(0, Math.min(visibleEnd, textLength)));
+        if (!changedSinceApplied && firstLine == appliedFirstLine && lastLine == appliedLastLine) {
+            return;
+        }
+
+        lexUntil(text, lastLine);
+        removeSpans();
+        for (int line = firstLine; line <= lastLine; line++) {
+            int lineStart = lineStarts[line];
+            int[] lineTokens = tokens[line];
+            for (int i = 0; i < lineTokens.length; i += 3) {
+                int color = colors[lineTokens[i + 2]];
+                if (color != 0) {
+                    spans.setSpan(lineStart + lineTokens[i], lineStart + lineTokens[i + 1], color);
+                }
+            }
+        }
+        appliedFirstLine = firstLine;
+        appliedLastLine = lastLine;
+        changedSinceApplied = false;
+    }
+
+    /**
+     * Removes all spans this highlighter set.
+     */
+    public void removeSpans() {
+        spans.removeSpans();
+        changedSinceApplied = true;
+    }
+
+    /**
+     * Lexes invalid lines up to and including {@code lastLine}, as well as the lines after them whose
+     * start state changed because of that.
+     */
+    private void lexUntil(CharSequence text, int lastLine) {
+        int line = nextInvalidLine(firstInvalidLine);
+        while (line <= lastLine) {
+            int state = line == 0 ? SyntaxLexer.STATE_INITIAL : endStates[line - 1];
+            int lineStart = lineStarts[line];
+            int lineEnd = line + 1 < lineCount ? lineStarts[line + 1] - 1 : textLength;
+            lineTokens.clear();
+            startStates[line] = state;
+            endStates[line] = lexer.tokenizeLine(text, lineStart, lineEnd, state, lineTokens);
+            tokens[line] = lineTokens.toArray(lineStart);
+            invalid[line] = false;
+
+            line++;
+            if (line < lineCount && !invalid[line] && startStates[line] == endStates[line - 1]) {
+                // Converged, the lines up to the next changed one are still valid
+                line = nextInvalidLine(line);
+            } else if (line < lineCount) {
+                invalid[line] = true;
+            }
+        }
+        firstInvalidLine = line;
+    }
+
+    private int nextInvalidLine(int from) {
+        int line = from;
+        while (line < lineCount && !invalid[line]) {
+            line++;
+        }
+        return line;
+    }
+
+    private int getLineOfOffset(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int lines) {
+        if (lines <= lineStarts.length) {
+            return;
+        }
+        int capacity = Math.max(lines, lineStarts.length * 2);
+        lineStarts = Arrays.copyOf(lineStarts, capacity);
+        startStates = Arrays.copyOf(startStates, capacity);
+        endStates = Arrays.copyOf(endStates, capacity);
+        tokens = Arrays.copyOf(tokens, capacity);
+        invalid = Arrays.copyOf(invalid, capacity);
+    }
+}
@@ -0,0 +1,220 @@
+package pro.sketchware.lib.highlighter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tokenizer for Java and Kotlin source code.
+ * <p>
+ * Block comments, Java text blocks and Kotlin raw strings may continue over several lines.
+ * Kotlin's nested block comments and string templates aren't told apart from plain ones.
+ */
+public class JavaLexer implements SyntaxLexer {
+
+    private static final int STATE_BLOCK_COMMENT = 1;
+    private static final int STATE_TEXT_BLOCK = 2;
+
+    private static final Set<String> JAVA_KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+            "var", "record", "yield", "true", "false", "null"));
+    private static final Set<String> KOTLIN_KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "annotation", "as", "break", "by", "catch", "class", "companion", "const", "constructor",
+            "continue", "crossinline", "data", "do", "else", "enum", "expect", "actual", "external", "false",
+            "final", "finally", "for", "fun", "get", "if", "import", "in", "infix", "init", "inline", "inner",
+            "interface", "internal", "is", "lateinit", "noinline", "null", "object", "open", "operator", "out",
+            "override", "package", "private", "protected", "public", "reified", "return", "sealed", "set", "super",
+            "suspend", "tailrec", "this", "throw", "true", "try", "typealias", "val", "value", "var", "vararg",
+            "when", "where", "while"));
+    private static final String OPERATORS = "(){}[];,.<>=+-*/%!&|^~?:";
+
+    private final boolean kotlin;
+    private final Set<String> keywords;
+    private final StringBuilder word = new StringBuilder();
+
+    /**
+     * @param kotlin Whether to tokenize Kotlin instead of Java
+     */
+    public JavaLexer(boolean kotlin) {
+        this.kotlin = kotlin;
+        keywords = kotlin ? KOTLIN_KEYWORDS : JAVA_KEYWORDS;
+    }
+
+    @Override
+    public int tokenizeLine(CharSequence text, int start, int end, int state, Tokens tokens) {
+        int i = start;
+        if (state == STATE_BLOCK_COMMENT) {
+            int close = indexOf(text, "*/", i, end);
+            if (close < 0) {
+                tokens.add(i, end, TOKEN_COMMENT);
+                return STATE_BLOCK_COMMENT;
+            }
+            tokens.add(i, close + 2, TOKEN_COMMENT);
+            i = close + 2;
+        } else if (state == STATE_TEXT_BLOCK) {
+            int close = findTextBlockEnd(text, i, end);
+            if (close < 0) {
+                tokens.add(i, end, TOKEN_STRING);
+                return STATE_TEXT_BLOCK;
+            }
+            tokens.add(i, close, TOKEN_STRING);
+            i = close;
+        }
+
+        while (i < end) {
+            char c = text.charAt(i);
+            char next = i + 1 < end ? text.charAt(i + 1) : 0;
+
+            if (c == '/' && next == '/') {
+                tokens.add(i, end, TOKEN_COMMENT);
+                return STATE_INITIAL;
+            } else if (c == '/' && next == '*') {
+                int close = indexOf(text, "*/", i + 2, end);
+                if (close < 0) {
+                    tokens.add(i, end, TOKEN_COMMENT);
+                    return STATE_BLOCK_COMMENT;
+                }
+                tokens.add(i, close + 2, TOKEN_COMMENT);
+                i = close + 2;
+            } else if (c == '"' && next == '"' && i + 2 < end && text.charAt(i + 2) == '"') {
+                int close = findTextBlockEnd(text, i + 3, end);
+                if (close < 0) {
+                    tokens.add(i, end, TOKEN_STRING);
+                    return STATE_TEXT_BLOCK;
+                }
+                tokens.add(i, close, TOKEN_STRING);
+                i = close;
+            } else if (c == '"' || c == '\'') {
+                int close = findQuoteEnd(text, i + 1, end, c);
+                tokens.add(i, close, TOKEN_STRING);
+                i = close;
+            } else if (isDigit(c) || (c == '.' && isDigit(next))) {
+                int numberEnd = scanNumber(text, i, end);
+                tokens.add(i, numberEnd, TOKEN_NUMBER);
+                i = numberEnd;
+            } else if (c == '@' && Character.isJavaIdentifierStart(next)) {
+                int identifierEnd = scanIdentifier(text, i + 1, end);
+                tokens.add(i, identifierEnd, TOKEN_ANNOTATION);
+                i = identifierEnd;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int identifierEnd = scanIdentifier(text, i, end);
+                word.setLength(0);
+                for (int j = i; j < identifierEnd; j++) {
+                    word.append(text.charAt(j));
+                }
+                if (keywords.contains(word.toString())) {
+                    tokens.add(i, identifierEnd, TOKEN_KEYWORD);
+                } else if (nextNonSpace(text, identifierEnd, end) == '(') {
+                    tokens.add(i, identifierEnd, TOKEN_METHOD);
+                } else if (Character.isUpperCase(c)) {
+                    tokens.add(i, identifierEnd, TOKEN_TYPE);
+                }
+                i = identifierEnd;
+            } else if (OPERATORS.indexOf(c) >= 0) {
+                int operatorEnd = i + 1;
+                while (operatorEnd < end) {
+                    char o = text.charAt(operatorEnd);
+                    if (OPERATORS.indexOf(o) < 0
+                            || (o == '/' && operatorEnd + 1 < end && (text.charAt(operatorEnd + 1) == '/' || text.charAt(operatorEnd + 1) == '*'))) {
+                        break;
+                    }
+                    operatorEnd++;
+                }
+                tokens.add(i, operatorEnd, TOKEN_OPERATOR);
+                i = operatorEnd;
+            } else {
+                i++;
+            }
+        }
+        return STATE_INITIAL;
+    }
+
+    /**
+     * @return Offset after the <code>"""</code> closing a text block or raw string, or -1 if it doesn't end on this line
+     */
+    private int findTextBlockEnd(CharSequence text, int from, int end) {
+        for (int i = from; i + 2 < end; i++) {
+            char c = text.charAt(i);
+            // Kotlin's raw strings don't have escapes
+            if (c == '\\' && !kotlin) {
+                i++;
+            } else if (c == '"' && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Offset after the closing quote, or the line's end for unterminated literals
+     */
+    private static int findQuoteEnd(CharSequence text, int from, int end, char quote) {
+        for (int i = from; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static int scanNumber(CharSequence text, int from, int end) {
+        boolean hex = from + 1 < end && text.charAt(from) == '0' && (text.charAt(from + 1) == 'x' || text.charAt(from + 1) == 'X');
+        int i = from;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                i++;
+            } else if (c == '.' && i + 1 < end && isDigit(text.charAt(i + 1))) {
+                i++;
+            } else if ((c == '+' || c == '-') && !hex && i > from && (text.charAt(i - 1) == 'e' || text.charAt(i - 1) == 'E')) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int scanIdentifier(CharSequence text, int from, int end) {
+        int i = from;
+        while (i < end && Character.isJavaIdentifierPart(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static char nextNonSpace(CharSequence text, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t') {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static int indexOf(CharSequence text, String target, int from, int end) {
+        char first = target.charAt(0);
+        int last = end - target.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (text.charAt(i) != first) continue;
+            for (int j = 1; j < target.length(); j++) {
+                if (text.charAt(i + j) != target.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
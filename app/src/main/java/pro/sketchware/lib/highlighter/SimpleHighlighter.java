@@ -1,35 +1,48 @@
 package pro.sketchware.lib.highlighter;
 
+import android.graphics.Rect;
 import android.text.Editable;
-import android.text.Spanned;
+import android.text.Layout;
 import android.text.TextWatcher;
 import android.text.style.CharacterStyle;
 import android.text.style.ForegroundColorSpan;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.EditText;
 
 import com.besome.sketch.editor.LogicEditorActivity;
 
-import java.util.List;
-import java.util.regex.Matcher;
+import pro.sketchware.SketchApplication;
+import pro.sketchware.utility.ThemeUtils;
 
 /**
  * A Helper class used in {@link LogicEditorActivity}
  * to (currently) highlight add source directly blocks.
+ * <p>
+ * Only highlights the visible lines, again when the EditText or one of its parents scrolls.
+ * Listeners for that are only registered while the EditText is attached to a window.
  */
 public class SimpleHighlighter {
 
     private final EditText mEditor;
-    private final List<SyntaxScheme> syntaxList;
+    private final IncrementalHighlighter highlighter;
+    private final Rect visibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener scrollChangedListener = () -> highlightVisibleLines(true);
+    private final ViewTreeObserver.OnGlobalLayoutListener globalLayoutListener = () -> highlightVisibleLines(false);
+    private int highlightedStart = -1;
+    private int highlightedEnd = -1;
 
     public SimpleHighlighter(EditText editor) {
         mEditor = editor;
-        syntaxList = SyntaxScheme.JAVA();
+        highlighter = new IncrementalHighlighter(new JavaLexer(false),
+                SyntaxScheme.getTokenColors(ThemeUtils.isDarkThemeEnabled(SketchApplication.getContext())),
+                editor.getText(), new ForegroundColorSpanTarget(editor::getText));
         init();
     }
 
     private void init() {
         removeSpans(mEditor.getText(), ForegroundColorSpan.class);
-        createHighlightSpans(syntaxList, mEditor.getText());
+        highlightVisibleLines(true);
 
         mEditor.addTextChangedListener(new TextWatcher() {
             @Override
@@ -38,26 +51,61 @@ public class SimpleHighlighter {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
+                highlighter.onTextChanged(s, start, before, count);
             }
 
             @Override
             public void afterTextChanged(Editable s) {
-                removeSpans(s, ForegroundColorSpan.class);
-                createHighlightSpans(syntaxList, s);
+                highlightVisibleLines(true);
             }
         });
-    }
 
-    private void createHighlightSpans(List<SyntaxScheme> syntaxList, Editable editable) {
-        for (SyntaxScheme scheme : syntaxList) {
-            for (Matcher m = scheme.pattern.matcher(editable); m.find(); ) {
-                if (scheme == scheme.getPrimarySyntax()) {
-                    editable.setSpan(new ForegroundColorSpan(scheme.color), m.start(), m.end() - 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                } else {
-                    editable.setSpan(new ForegroundColorSpan(scheme.color), m.start(), m.end(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                }
+        if (mEditor.isAttachedToWindow()) {
+            addViewTreeListeners();
+        }
+        mEditor.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+                addViewTreeListeners();
             }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                ViewTreeObserver observer = v.getViewTreeObserver();
+                observer.removeOnScrollChangedListener(scrollChangedListener);
+                observer.removeOnGlobalLayoutListener(globalLayoutListener);
+            }
+        });
+    }
+
+    private void addViewTreeListeners() {
+        ViewTreeObserver observer = mEditor.getViewTreeObserver();
+        observer.addOnScrollChangedListener(scrollChangedListener);
+        observer.addOnGlobalLayoutListener(globalLayoutListener);
+    }
+
+    /**
+     * @param always Whether to highlight even if the visible lines are the same as last time,
+     *               as opposed to after layout passes, which mostly don't change anything
+     */
+    private void highlightVisibleLines(boolean always) {
+        Layout layout = mEditor.getLayout();
+        if (layout == null || !mEditor.getLocalVisibleRect(visibleRect)) {
+            return;
+        }
+
+        // The visible rect doesn't include the EditText's own scrolling
+        int offsetY = mEditor.getScrollY() - mEditor.getTotalPaddingTop();
+        int firstLine = layout.getLineForVertical(Math.max(0, visibleRect.top + offsetY));
+        int lastLine = layout.getLineForVertical(Math.max(0, visibleRect.bottom + offsetY));
+        int start = layout.getLineStart(firstLine);
+        int end = layout.getLineEnd(lastLine);
+        if (!always && start == highlightedStart && end == highlightedEnd) {
+            return;
         }
+        highlightedStart = start;
+        highlightedEnd = end;
+        highlighter.applySpans(mEditor.getText(), start, end);
     }
 
     private void removeSpans(Editable editable, Class<? extends CharacterStyle> type) {
@@ -0,0 +1,17 @@
+package pro.sketchware.lib.highlighter;
+
+/**
+ * Where {@link IncrementalHighlighter} puts the colors of tokens, which keeps it free of Android's text classes.
+ */
+public interface SpanTarget {
+
+    /**
+     * Colors the text between two offsets.
+     */
+    void setSpan(int start, int end, int color);
+
+    /**
+     * Removes all spans set with {@link #setSpan(int, int, int)}.
+     */
+    void removeSpans();
+}
@@ -0,0 +1,84 @@
+package pro.sketchware.lib.highlighter;
+
+import java.util.Arrays;
+
+/**
+ * Splits a single line of code into tokens for {@link IncrementalHighlighter}.
+ * <p>
+ * Everything a line's tokens depend on besides its own text, such as being inside a block comment
+ * that started on a previous line, has to be in the state passed from one line to the next.
+ * That's what lets the highlighter stop re-lexing after an edit once a line ends in the same state as before.
+ */
+public interface SyntaxLexer {
+
+    /**
+     * State at the start of a document
+     */
+    int STATE_INITIAL = 0;
+
+    int TOKEN_KEYWORD = 0;
+    /**
+     * Identifiers starting with an uppercase letter, usually class names
+     */
+    int TOKEN_TYPE = 1;
+    int TOKEN_NUMBER = 2;
+    int TOKEN_STRING = 3;
+    int TOKEN_COMMENT = 4;
+    int TOKEN_ANNOTATION = 5;
+    int TOKEN_OPERATOR = 6;
+    /**
+     * Identifiers followed by an opening parenthesis
+     */
+    int TOKEN_METHOD = 7;
+    int TOKEN_TAG = 8;
+    int TOKEN_ATTRIBUTE = 9;
+    int TOKEN_TYPE_COUNT = 10;
+
+    /**
+     * Tokenizes one line.
+     *
+     * @param start  Offset of the line's first character
+     * @param end    Offset of the line's end, excluding the line break
+     * @param state  State the previous line ended in, or {@link #STATE_INITIAL} for the first line
+     * @param tokens Where to add the line's tokens to, in order, with offsets in {@code text}
+     * @return State the line ends in
+     */
+    int tokenizeLine(CharSequence text, int start, int end, int state, Tokens tokens);
+
+    /**
+     * Tokens of a line, packed as start, end and type.
+     */
+    final class Tokens {
+        private int[] tokens = new int[48];
+        private int size;
+
+        public void add(int start, int end, int type) {
+            if (start >= end) {
+                return;
+            }
+            if (size + 3 > tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[size++] = start;
+            tokens[size++] = end;
+            tokens[size++] = type;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * @return The tokens added, with offsets relative to {@code base}
+         */
+        int[] toArray(int base) {
+            int[] array = new int[size];
+            for (int i = 0; i < size; i += 3) {
+                array[i] = tokens[i] - base;
+                array[i + 1] = tokens[i + 1] - base;
+                array[i + 2] = tokens[i + 2];
+            }
+            return array;
+        }
+    }
+}
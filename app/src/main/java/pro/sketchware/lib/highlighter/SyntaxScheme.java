@@ -34,6 +34,9 @@ public class SyntaxScheme {
     public static final String SECONDARY_COLOR_DARK = "#cc7832";
     public static final String VARIABLE_COLOR_DARK = "#9876aa";
 
+    public static final String ANNOTATION_COLOR_LIGHT = "#9e880d";
+    public static final String ANNOTATION_COLOR_DARK = "#bbb529";
+
     private static final String[] mJavaPattern = new String[12];
     private static final String[] mXmlPattern = new String[4];
 
@@ -57,7 +60,7 @@ public class SyntaxScheme {
         arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[11]), getColor(NOT_WORD_COLOR_LIGHT, NOT_WORD_COLOR_DARK, isDarkMode)));
         arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[6]), getColor(PRIMARY_COLOR_LIGHT, PRIMARY_COLOR_DARK, isDarkMode)));
         arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[10]), getColor(VARIABLE_COLOR_LIGHT, VARIABLE_COLOR_DARK, isDarkMode)));
-        arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[7]), getColor("#9e880d", "#bbb529", isDarkMode)));
+        arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[7]), getColor(ANNOTATION_COLOR_LIGHT, ANNOTATION_COLOR_DARK, isDarkMode)));
         arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[8]), getColor(QUOTES_COLOR_LIGHT, QUOTES_COLOR_DARK, isDarkMode)));
         arrayList.add(new SyntaxScheme(Pattern.compile(mJavaPattern[9]), getColor(COMMENTS_COLOR_LIGHT, COMMENTS_COLOR_DARK, isDarkMode)));
 
@@ -79,6 +82,24 @@ public class SyntaxScheme {
         return arrayList;
     }
 
+    /**
+     * @return Colors of {@link SyntaxLexer}'s token types, matching the ones of {@link #JAVA()}
+     */
+    public static int[] getTokenColors(boolean isDarkMode) {
+        int[] colors = new int[SyntaxLexer.TOKEN_TYPE_COUNT];
+        colors[SyntaxLexer.TOKEN_KEYWORD] = getColor(SECONDARY_COLOR_LIGHT, SECONDARY_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_TYPE] = getColor(VARIABLE_COLOR_LIGHT, VARIABLE_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_NUMBER] = getColor(NUMBERS_COLOR_LIGHT, NUMBERS_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_STRING] = getColor(QUOTES_COLOR_LIGHT, QUOTES_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_COMMENT] = getColor(COMMENTS_COLOR_LIGHT, COMMENTS_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_ANNOTATION] = getColor(ANNOTATION_COLOR_LIGHT, ANNOTATION_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_OPERATOR] = getColor(NOT_WORD_COLOR_LIGHT, NOT_WORD_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_METHOD] = getColor(PRIMARY_COLOR_LIGHT, PRIMARY_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_TAG] = getColor(SECONDARY_COLOR_LIGHT, SECONDARY_COLOR_DARK, isDarkMode);
+        colors[SyntaxLexer.TOKEN_ATTRIBUTE] = getColor(VARIABLE_COLOR_LIGHT, VARIABLE_COLOR_DARK, isDarkMode);
+        return colors;
+    }
+
     private static int getColor(String lightColor, String darkColor, boolean isDarkMode) {
         return Color.parseColor(isDarkMode ? darkColor : lightColor);
     }
@@ -0,0 +1,146 @@
+package pro.sketchware.lib.highlighter;
+
+/**
+ * Tokenizer for XML, such as layouts, values resources and <code>AndroidManifest.xml</code>.
+ * <p>
+ * Comments, CDATA sections, tags and attribute values may continue over several lines.
+ */
+public class XmlLexer implements SyntaxLexer {
+
+    private static final int STATE_COMMENT = 1;
+    private static final int STATE_CDATA = 2;
+    private static final int STATE_TAG = 3;
+    private static final int STATE_DOUBLE_QUOTED_VALUE = 4;
+    private static final int STATE_SINGLE_QUOTED_VALUE = 5;
+
+    @Override
+    public int tokenizeLine(CharSequence text, int start, int end, int state, Tokens tokens) {
+        int i = start;
+        while (i < end) {
+            switch (state) {
+                case STATE_COMMENT, STATE_CDATA -> {
+                    String terminator = state == STATE_COMMENT ? "-->" : "]]>";
+                    int close = JavaLexer.indexOf(text, terminator, i, end);
+                    int type = state == STATE_COMMENT ? TOKEN_COMMENT : TOKEN_STRING;
+                    if (close < 0) {
+                        tokens.add(i, end, type);
+                        return state;
+                    }
+                    tokens.add(i, close + 3, type);
+                    i = close + 3;
+                    state = STATE_INITIAL;
+                }
+                case STATE_DOUBLE_QUOTED_VALUE, STATE_SINGLE_QUOTED_VALUE -> {
+                    char quote = state == STATE_DOUBLE_QUOTED_VALUE ? '"' : '\'';
+                    int close = indexOf(text, quote, i, end);
+                    if (close < 0) {
+                        tokens.add(i, end, TOKEN_STRING);
+                        return state;
+                    }
+                    tokens.add(i, close + 1, TOKEN_STRING);
+                    i = close + 1;
+                    state = STATE_TAG;
+                }
+                case STATE_TAG -> {
+                    char c = text.charAt(i);
+                    char next = i + 1 < end ? text.charAt(i + 1) : 0;
+                    if (c == ' ' || c == '\t') {
+                        i++;
+                    } else if (c == '>') {
+                        tokens.add(i, i + 1, TOKEN_OPERATOR);
+                        i++;
+                        state = STATE_INITIAL;
+                    } else if ((c == '/' || c == '?') && next == '>') {
+                        tokens.add(i, i + 2, TOKEN_OPERATOR);
+                        i += 2;
+                        state = STATE_INITIAL;
+                    } else if (c == '=') {
+                        tokens.add(i, i + 1, TOKEN_OPERATOR);
+                        i++;
+                    } else if (c == '"' || c == '\'') {
+                        state = c == '"' ? STATE_DOUBLE_QUOTED_VALUE : STATE_SINGLE_QUOTED_VALUE;
+                        int close = indexOf(text, c, i + 1, end);
+                        if (close < 0) {
+                            tokens.add(i, end, TOKEN_STRING);
+                            return state;
+                        }
+                        tokens.add(i, close + 1, TOKEN_STRING);
+                        i = close + 1;
+                        state = STATE_TAG;
+                    } else if (c == '<') {
+                        // Unclosed tag, let the next one start
+                        state = STATE_INITIAL;
+                    } else {
+                        int nameEnd = scanName(text, i, end);
+                        tokens.add(i, nameEnd, TOKEN_ATTRIBUTE);
+                        i = nameEnd;
+                    }
+                }
+                default -> {
+                    int open = indexOf(text, '<', i, end);
+                    if (open < 0) {
+                        return STATE_INITIAL;
+                    }
+                    i = open;
+                    if (startsWith(text, i, end, "<!--")) {
+                        int close = JavaLexer.indexOf(text, "-->", i + 4, end);
+                        if (close < 0) {
+                            tokens.add(i, end, TOKEN_COMMENT);
+                            return STATE_COMMENT;
+                        }
+                        tokens.add(i, close + 3, TOKEN_COMMENT);
+                        i = close + 3;
+                    } else if (startsWith(text, i, end, "<![CDATA[")) {
+                        tokens.add(i, i + 9, TOKEN_OPERATOR);
+                        i += 9;
+                        state = STATE_CDATA;
+                    } else {
+                        int nameStart = i + 1;
+                        if (nameStart < end && "/?!".indexOf(text.charAt(nameStart)) >= 0) {
+                            nameStart++;
+                        }
+                        tokens.add(i, nameStart, TOKEN_OPERATOR);
+                        int nameEnd = scanName(text, nameStart, end);
+                        tokens.add(nameStart, nameEnd, TOKEN_TAG);
+                        i = nameEnd;
+                        state = STATE_TAG;
+                    }
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return End of a tag or attribute name, or of a single stray character like a lone <code>/</code>,
+     * so that malformed tags still make progress
+     */
+    private static int scanName(CharSequence text, int from, int end) {
+        int i = from;
+        while (i < end && " \t=>/?\"'<".indexOf(text.charAt(i)) < 0) {
+            i++;
+        }
+        return i == from && i < end && "<> \t".indexOf(text.charAt(i)) < 0 ? i + 1 : i;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(CharSequence text, int from, int end, String prefix) {
+        if (end - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(from + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
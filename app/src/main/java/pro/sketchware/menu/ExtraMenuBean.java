@@ -606,7 +606,8 @@ public class ExtraMenuBean {
                 String filePath = FileUtil.getExternalStorageDir().concat("/.sketchware/data/").concat(sc_id.concat("/files/resource/values/strings.xml"));
                 ArrayList<HashMap<String, Object>> StringsListMap = new ArrayList<>();
                 StringsEditorManager stringsEditorManager = new StringsEditorManager();
-                stringsEditorManager.convertXmlStringsToListMap(FileUtil.readFileIfExist(filePath), StringsListMap);
+                stringsEditorManager.sc_id = sc_id;
+                stringsEditorManager.loadStringsFile(filePath, StringsListMap);
 
                 if (!stringsEditorManager.isXmlStringsExist(StringsListMap, "app_name")) {
                     menus.add("R.string.app_name");
@@ -9,25 +9,71 @@ public class BinaryExecutor {
 
     private final ProcessBuilder mProcess = new ProcessBuilder();
     private final StringWriter mWriter = new StringWriter();
+    private final StringWriter mOutput = new StringWriter();
+    private Process mRunningProcess;
+    private boolean mDestroyed;
 
     public void setCommands(ArrayList<String> arrayList) {
         mProcess.command(arrayList);
     }
 
+    /**
+     * Runs the binary and waits for it to exit.
+     *
+     * @return What the binary printed to stderr, which is empty if it ran successfully
+     */
     public String execute() {
         try {
-            Scanner scanner = new Scanner(mProcess.start().getErrorStream());
+            Process process;
+            synchronized (this) {
+                if (mDestroyed) {
+                    mWriter.append("Cancelled before starting");
+                    return mWriter.toString();
+                }
+                process = mProcess.start();
+                mRunningProcess = process;
+            }
+
+            // Drain stdout concurrently, a full pipe buffer would block the binary otherwise
+            Thread outputReader = new Thread(() -> {
+                Scanner scanner = new Scanner(process.getInputStream());
+                while (scanner.hasNextLine()) {
+                    mOutput.append(scanner.nextLine());
+                    mOutput.append(System.lineSeparator());
+                }
+            });
+            outputReader.start();
+
+            Scanner scanner = new Scanner(process.getErrorStream());
             while (scanner.hasNextLine()) {
                 mWriter.append(scanner.nextLine());
                 mWriter.append(System.lineSeparator());
             }
+            outputReader.join();
         } catch (Exception e) {
             e.printStackTrace(new PrintWriter(mWriter));
         }
         return mWriter.toString();
     }
 
+    /**
+     * Kills the binary if it's running, or keeps it from starting if it isn't yet.
+     */
+    public synchronized void destroy() {
+        mDestroyed = true;
+        if (mRunningProcess != null) {
+            mRunningProcess.destroy();
+        }
+    }
+
     public String getLog() {
         return mWriter.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * @return What the binary printed to stdout
+     */
+    public String getOutput() {
+        return mOutput.toString();
+    }
+}
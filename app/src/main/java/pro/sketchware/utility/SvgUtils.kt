@@ -30,11 +30,7 @@ class SvgUtils(private val context: Context) {
     }
 
     fun initImageLoader() {
-        imageLoader = ImageLoader.Builder(context)
-            .components {
-                add(SvgDecoder.Factory())
-            }
-            .build()
+        imageLoader = getSharedImageLoader(context)
     }
 
 
@@ -68,13 +64,6 @@ class SvgUtils(private val context: Context) {
         svgPath: String,
         scaleFactor: Float = 0.5f // Default scaling factor if none is provided
     ) {
-        // Create an ImageLoader with SVG support
-        val imageLoader = ImageLoader.Builder(context)
-            .components {
-                add(SvgDecoder.Factory())
-            }
-            .build()
-
         // Load the SVG image and apply scaling
         val request = ImageRequest.Builder(context)
             .data(svgPath)
@@ -97,7 +86,7 @@ class SvgUtils(private val context: Context) {
             }
             .build()
 
-        imageLoader.enqueue(request)
+        imageLoader!!.enqueue(request)
     }
 
     fun loadWithoutQueue(imageView: ImageView, filePath: String) {
@@ -416,4 +405,24 @@ class SvgUtils(private val context: Context) {
                 "A $rx,$ry 0 0 1 ${cx - rx},$cy Z"
     }
 
+    companion object {
+        @Volatile
+        private var sharedImageLoader: ImageLoader? = null
+
+        /**
+         * One ImageLoader with SVG support for the whole app, so that its memory cache is shared,
+         * and loading an image doesn't set up a new loader every time.
+         */
+        @JvmStatic
+        fun getSharedImageLoader(context: Context): ImageLoader {
+            return sharedImageLoader ?: synchronized(this) {
+                sharedImageLoader ?: ImageLoader.Builder(context.applicationContext)
+                    .components {
+                        add(SvgDecoder.Factory())
+                    }
+                    .build()
+                    .also { sharedImageLoader = it }
+            }
+        }
+    }
 }
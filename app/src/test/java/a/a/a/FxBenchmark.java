@@ -0,0 +1,53 @@
+package a.a.a;
+
+import com.besome.sketch.beans.BlockBean;
+
+import java.util.Random;
+
+/**
+ * Measures how {@link Fx}'s code generation time grows with the length of an event, for one long
+ * chain of blocks and for blocks nested in if, if/else, repeat and forever blocks.
+ * Time per block should stay about the same, the recursive generation used before took quadratic time.
+ * <p>
+ * Not a test, run its {@link #main(String[])} from the IDE or with the test runtime classpath.
+ */
+public class FxBenchmark {
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %8s %16s %16s%n", "blocks", "shape", "ms/event", "ns/block");
+        for (int blocks : new int[]{100, 1_000, 10_000}) {
+            for (boolean nested : new boolean[]{false, true}) {
+                // Warm up the JIT before measuring
+                run(blocks, nested, false);
+                run(blocks, nested, true);
+            }
+        }
+    }
+
+    private static void run(int blocks, boolean nested, boolean print) {
+        FxTest.Event event = nested ? FxTest.randomEvent(new Random(blocks), blocks) : chain(blocks);
+        int runs = Math.max(20, 200_000 / blocks);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            event.generate();
+        }
+        long time = System.nanoTime() - start;
+
+        if (print) {
+            System.out.printf("%8d %8s %16.3f %16d%n", blocks, nested ? "nested" : "chain",
+                    time / 1e6 / runs, time / runs / event.blocks.size());
+        }
+    }
+
+    private static FxTest.Event chain(int blocks) {
+        FxTest.Event event = new FxTest.Event();
+        BlockBean previous = null;
+        for (int i = 0; i < blocks; i++) {
+            BlockBean bean = event.statement("add source directly %s", " ", "addSourceDirectly", "line" + i + "();");
+            if (previous != null) previous.nextBlock = Integer.parseInt(bean.id);
+            previous = bean;
+        }
+        return event;
+    }
+}
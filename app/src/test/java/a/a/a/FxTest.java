@@ -0,0 +1,304 @@
+package a.a.a;
+
+import static org.junit.Assert.assertEquals;
+
+import com.besome.sketch.beans.BlockBean;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class FxTest {
+
+    @Test
+    public void generatesNestedIfElseAndRepeat() {
+        Event event = new Event();
+        BlockBean repeat = event.statement("repeat %d", "c", "repeat", "@" + event.expression("%d + %d", "d", "+", "2", "3").id);
+        BlockBean ifElse = event.statement("if %b then else", "e", "ifElse",
+                "@" + event.expression("%d < %d", "b", "<", "1", "2").id);
+        BlockBean first = event.statement("add source directly %s", " ", "addSourceDirectly", "first();");
+        BlockBean second = event.statement("add source directly %s", " ", "addSourceDirectly", "second();");
+        BlockBean innerIf = event.statement("if %b then", "c", "if", "");
+        BlockBean breakBlock = event.statement("break", "f", "break");
+        BlockBean last = event.statement("add source directly %s", " ", "addSourceDirectly", "last();");
+        repeat.subStack1 = id(ifElse);
+        ifElse.subStack1 = id(first);
+        first.nextBlock = id(innerIf);
+        innerIf.subStack1 = id(breakBlock);
+        ifElse.subStack2 = id(second);
+        repeat.nextBlock = id(last);
+
+        String expected = "for(int _repeat" + repeat.id + " = 0; _repeat" + repeat.id + " < (int)((2 + 3)); _repeat"
+                + repeat.id + "++) {\n"
+                + "if (1 < 2) {\r\nfirst();\r\nif (true) {\r\nbreak;\r\n}\r\n} else {\r\nsecond();\r\n}\n"
+                + "}\r\n"
+                + "last();";
+        assertEquals(expected, event.generate());
+        assertEquals(expected, event.generateRecursively());
+    }
+
+    @Test
+    public void skipsSeparatorAfterEmptyBlocks() {
+        Event event = new Event();
+        BlockBean empty = event.statement("add source directly %s", " ", "addSourceDirectly", "");
+        BlockBean forever = event.statement("forever", "f", "forever");
+        BlockBean missing = event.statement("add source directly %s", " ", "addSourceDirectly", "a();");
+        empty.nextBlock = id(forever);
+        forever.nextBlock = id(missing);
+        missing.nextBlock = 9999;
+
+        assertEquals(event.generateRecursively(), event.generate());
+    }
+
+    @Test
+    public void generatesLikeTheRecursiveGenerator() {
+        for (int seed = 0; seed < 300; seed++) {
+            Event event = randomEvent(new Random(seed), 50 + seed);
+            assertEquals("seed " + seed, event.generateRecursively(), event.generate());
+        }
+    }
+
+    @Test
+    public void generatesLongEventsWithoutOverflowingTheStack() {
+        Event event = new Event();
+        StringBuilder expected = new StringBuilder();
+        BlockBean previous = null;
+        for (int i = 0; i < 10_000; i++) {
+            BlockBean bean = event.statement("add source directly %s", " ", "addSourceDirectly", "line" + i + "();");
+            if (previous != null) {
+                previous.nextBlock = id(bean);
+                expected.append("\r\n");
+            }
+            expected.append("line").append(i).append("();");
+            previous = bean;
+        }
+
+        assertEquals(expected.toString(), event.generate());
+    }
+
+    private static int id(BlockBean bean) {
+        return Integer.parseInt(bean.id);
+    }
+
+    /**
+     * @return An event with a random mix of nested if, if/else, repeat and forever blocks,
+     * with about {@code blocks} statement blocks
+     */
+    static Event randomEvent(Random random, int blocks) {
+        Event event = new Event();
+        int[] remaining = {blocks};
+        randomChain(event, random, remaining, 0);
+        return event;
+    }
+
+    private static BlockBean randomChain(Event event, Random random, int[] remaining, int depth) {
+        BlockBean head = null;
+        BlockBean previous = null;
+        int length = 1 + random.nextInt(depth == 0 ? Math.max(1, remaining[0]) : 6);
+        for (int i = 0; i < length && remaining[0] > 0; i++) {
+            remaining[0]--;
+            BlockBean bean;
+            int kind = depth < 8 ? random.nextInt(10) : 6 + random.nextInt(4);
+            switch (kind) {
+                case 0:
+                case 1:
+                    bean = event.statement("if %b then", "c", "if", randomCondition(event, random, 2));
+                    bean.subStack1 = randomSubStack(event, random, remaining, depth);
+                    break;
+                case 2:
+                case 3:
+                    bean = event.statement("if %b then else", "e", "ifElse", randomCondition(event, random, 2));
+                    bean.subStack1 = randomSubStack(event, random, remaining, depth);
+                    bean.subStack2 = randomSubStack(event, random, remaining, depth);
+                    break;
+                case 4:
+                    bean = event.statement("repeat %d", "c", "repeat", randomNumber(event, random, 2));
+                    bean.subStack1 = randomSubStack(event, random, remaining, depth);
+                    break;
+                case 5:
+                    bean = event.statement("forever", "f", "forever");
+                    bean.subStack1 = randomSubStack(event, random, remaining, depth);
+                    break;
+                case 6:
+                    bean = event.statement("break", "f", "break");
+                    break;
+                default:
+                    bean = event.statement("add source directly %s", " ", "addSourceDirectly",
+                            random.nextInt(5) == 0 ? "" : "call" + random.nextInt(100) + "();");
+            }
+
+            if (head == null) {
+                head = bean;
+            } else {
+                previous.nextBlock = id(bean);
+            }
+            previous = bean;
+        }
+        if (previous != null && random.nextInt(20) == 0) {
+            // A next block that doesn't exist anymore
+            previous.nextBlock = 99_999;
+        }
+        return head;
+    }
+
+    private static int randomSubStack(Event event, Random random, int[] remaining, int depth) {
+        if (random.nextInt(6) == 0) return -1;
+        BlockBean head = randomChain(event, random, remaining, depth + 1);
+        return head == null ? -1 : id(head);
+    }
+
+    private static String randomCondition(Event event, Random random, int depth) {
+        switch (depth <= 0 ? random.nextInt(2) : random.nextInt(6)) {
+            case 0:
+                return "";
+            case 1:
+                String value = random.nextBoolean() ? "true" : "false";
+                return "@" + event.expression(value, "b", value).id;
+            case 2:
+                return "@" + event.expression("not %b", "b", "not", randomCondition(event, random, depth - 1)).id;
+            case 3:
+                return "@" + event.expression("%b and %b", "b", "&&",
+                        randomCondition(event, random, depth - 1), randomCondition(event, random, depth - 1)).id;
+            default:
+                return "@" + event.expression("%d < %d", "b", "<",
+                        randomNumber(event, random, depth - 1), randomNumber(event, random, depth - 1)).id;
+        }
+    }
+
+    private static String randomNumber(Event event, Random random, int depth) {
+        if (depth <= 0 || random.nextBoolean()) {
+            return random.nextInt(4) == 0 ? "" : String.valueOf(random.nextInt(100));
+        }
+        return "@" + event.expression("%d + %d", "d", "+",
+                randomNumber(event, random, depth - 1), randomNumber(event, random, depth - 1)).id;
+    }
+
+    /**
+     * Blocks of an event, with sequential IDs like the Logic editor assigns them.
+     * The first statement added is the event's first block.
+     */
+    static class Event {
+        final ArrayList<BlockBean> blocks = new ArrayList<>();
+        private final List<BlockBean> expressions = new ArrayList<>();
+        private int nextId = 10;
+
+        BlockBean statement(String spec, String type, String opCode, String... parameters) {
+            BlockBean bean = newBlock(spec, type, opCode, parameters);
+            blocks.add(bean);
+            return bean;
+        }
+
+        BlockBean expression(String spec, String type, String opCode, String... parameters) {
+            BlockBean bean = newBlock(spec, type, opCode, parameters);
+            // Keep the first statement first, Fx starts at the event's first block
+            expressions.add(bean);
+            return bean;
+        }
+
+        private BlockBean newBlock(String spec, String type, String opCode, String... parameters) {
+            BlockBean bean = new BlockBean(String.valueOf(nextId++), spec, type, opCode);
+            bean.parameters.addAll(Arrays.asList(parameters));
+            return bean;
+        }
+
+        ArrayList<BlockBean> getBlocks() {
+            ArrayList<BlockBean> all = new ArrayList<>(blocks);
+            all.addAll(expressions);
+            return all;
+        }
+
+        String generate() {
+            return new Fx("MainActivity", null, getBlocks(), false).a();
+        }
+
+        String generateRecursively() {
+            return new RecursiveGenerator(getBlocks()).generate();
+        }
+    }
+
+    /**
+     * How Fx generated code before it did so in a loop: a block's code, followed by the code of
+     * the block after it, generated one recursion level deeper. Only knows the blocks these tests use.
+     */
+    static class RecursiveGenerator {
+        private static final List<String> OPERATORS = Arrays.asList(new Fx(null, null, null, false).operators);
+        private static final List<String> ARITHMETIC = Arrays.asList(new Fx(null, null, null, false).arithmetic);
+
+        private final ArrayList<BlockBean> beans;
+        private final Map<String, BlockBean> blockMap = new HashMap<>();
+
+        RecursiveGenerator(ArrayList<BlockBean> beans) {
+            this.beans = beans;
+            for (BlockBean bean : beans) {
+                blockMap.put(bean.id, bean);
+            }
+        }
+
+        String generate() {
+            return beans.isEmpty() ? "" : generateBlock(beans.get(0), "");
+        }
+
+        private String generateBlock(BlockBean bean, String parentOpcode) {
+            String code = getBlockCode(bean);
+            if (OPERATORS.contains(parentOpcode) && ARITHMETIC.contains(bean.opCode)) {
+                code = "(" + code + ")";
+            }
+            if (bean.nextBlock >= 0) {
+                code += (code.isEmpty() ? "" : "\r\n") + generateBlock(String.valueOf(bean.nextBlock), "");
+            }
+            return code;
+        }
+
+        private String generateBlock(String id, String parentOpcode) {
+            BlockBean bean = blockMap.get(id);
+            return bean == null ? "" : generateBlock(bean, parentOpcode);
+        }
+
+        private String getSubStack(int id) {
+            return id >= 0 ? generateBlock(String.valueOf(id), "") : "";
+        }
+
+        private String getParam(BlockBean bean, int index, String emptyValue) {
+            String param = bean.parameters.get(index);
+            if (param.startsWith("@")) return generateBlock(param.substring(1), bean.opCode);
+            return param.isEmpty() ? emptyValue : param;
+        }
+
+        private String getBlockCode(BlockBean bean) {
+            switch (bean.opCode) {
+                case "if":
+                    return "if (" + getParam(bean, 0, "true") + ") {\r\n" + getSubStack(bean.subStack1) + "\r\n}";
+                case "ifElse":
+                    return "if (" + getParam(bean, 0, "true") + ") {\r\n" + getSubStack(bean.subStack1)
+                            + "\r\n} else {\r\n" + getSubStack(bean.subStack2) + "\r\n}";
+                case "repeat":
+                    return "for(int _repeat" + bean.id + " = 0; _repeat" + bean.id + " < (int)("
+                            + getParam(bean, 0, "0") + "); _repeat" + bean.id + "++) {\n"
+                            + getSubStack(bean.subStack1) + "\n}";
+                case "forever":
+                    return "while(true) {\r\n" + getSubStack(bean.subStack1) + "\r\n}";
+                case "break":
+                    return "break;";
+                case "addSourceDirectly":
+                    return bean.parameters.get(0);
+                case "true":
+                case "false":
+                    return bean.opCode;
+                case "not":
+                    return "!" + getParam(bean, 0, "true");
+                case "&&":
+                    return getParam(bean, 0, "true") + " && " + getParam(bean, 1, "true");
+                case "<":
+                case "+":
+                    return getParam(bean, 0, "0") + " " + bean.opCode + " " + getParam(bean, 1, "0");
+                default:
+                    throw new IllegalArgumentException("Unsupported block " + bean.opCode);
+            }
+        }
+    }
+}
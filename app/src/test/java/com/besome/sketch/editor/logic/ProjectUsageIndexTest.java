@@ -0,0 +1,274 @@
+package com.besome.sketch.editor.logic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.besome.sketch.beans.BlockBean;
+import com.besome.sketch.beans.ViewBean;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import a.a.a.eC;
+
+/**
+ * Checks that the usage index answers like one built from scratch, while the project's blocks and views
+ * get edited the ways the editors edit them.
+ */
+public class ProjectUsageIndexTest {
+
+    private static final List<String> JAVA_FILES = List.of("MainActivity.java", "SecondActivity.java");
+    private static final List<String> XML_FILES = List.of("main.xml", "second.xml", "custom.xml");
+    private static final List<String> EVENTS = List.of("onCreate_initializeLogic", "button1_onClick", "calc_moreBlock");
+    private static final String[] NAMES = {"a", "b", "c", "d"};
+    private static final int[] KINDS = {
+            ProjectUsageIndex.KIND_STRING_KEY, ProjectUsageIndex.KIND_VARIABLE, ProjectUsageIndex.KIND_LIST,
+            ProjectUsageIndex.KIND_COMPONENT, ProjectUsageIndex.KIND_VIEW, ProjectUsageIndex.KIND_CUSTOM_VIEW,
+    };
+
+    @Test
+    public void indexesAllKindsOfUsages() {
+        eC projectData = newProjectData();
+        ArrayList<BlockBean> blocks = new ArrayList<>();
+        blocks.add(new BlockBean("10", "a", "s", "getResStr"));
+        BlockBean getResString = new BlockBean("11", "%s", "s", "getResString");
+        getResString.parameters.add("R.string.b");
+        blocks.add(getResString);
+        blocks.add(new BlockBean("12", "score", "d", "getVar"));
+        blocks.add(new BlockBean("13", "names", "l", "List String", "getVar"));
+        BlockBean setText = new BlockBean("14", "%m.TextView setText %s", " ", "setText");
+        setText.parameters.add("textview1");
+        setText.parameters.add("");
+        blocks.add(setText);
+        BlockBean startActivity = new BlockBean("15", "StartActivity %m.Intent", " ", "startActivity");
+        startActivity.parameters.add("intent");
+        blocks.add(startActivity);
+        projectData.a(JAVA_FILES.get(0), EVENTS.get(0), blocks);
+        ViewBean listView = newView("listview1", "@string/c", "", "custom");
+        projectData.c.put(XML_FILES.get(0), new ArrayList<>(List.of(listView)));
+
+        ProjectUsageIndex index = new ProjectUsageIndex(projectData, JAVA_FILES, XML_FILES);
+
+        assertEquals(List.of(JAVA_FILES.get(0) + " " + EVENTS.get(0) + " 10"), describe(index, ProjectUsageIndex.KIND_STRING_KEY, "a"));
+        assertEquals(List.of(JAVA_FILES.get(0) + " " + EVENTS.get(0) + " 11"), describe(index, ProjectUsageIndex.KIND_STRING_KEY, "b"));
+        assertEquals(List.of(XML_FILES.get(0) + " null listview1"), describe(index, ProjectUsageIndex.KIND_STRING_KEY, "c"));
+        assertEquals(List.of(XML_FILES.get(0) + " null listview1"), describe(index, ProjectUsageIndex.KIND_CUSTOM_VIEW, "custom"));
+        assertTrue(index.isUsedInBlocks(ProjectUsageIndex.KIND_VARIABLE, "score", JAVA_FILES.get(0), null));
+        assertTrue(index.isUsedInBlocks(ProjectUsageIndex.KIND_LIST, "names", JAVA_FILES.get(0), null));
+        assertTrue(index.isUsedInBlocks(ProjectUsageIndex.KIND_VIEW, "textview1", JAVA_FILES.get(0), null));
+        assertTrue(index.isUsedInBlocks(ProjectUsageIndex.KIND_COMPONENT, "intent", JAVA_FILES.get(0), null));
+        assertFalse(index.isUsedInBlocks(ProjectUsageIndex.KIND_COMPONENT, "intent", JAVA_FILES.get(0), EVENTS.get(0)));
+        assertFalse(index.isUsedInBlocks(ProjectUsageIndex.KIND_COMPONENT, "intent", JAVA_FILES.get(1), null));
+    }
+
+    @Test
+    public void notesEditsItWasNotToldAbout() {
+        eC projectData = newProjectData();
+        ArrayList<BlockBean> blocks = new ArrayList<>();
+        blocks.add(new BlockBean("10", "a", "s", "getResStr"));
+        projectData.a(JAVA_FILES.get(0), EVENTS.get(0), blocks);
+        ViewBean textView = newView("textview1", "@string/a", "", "");
+        projectData.c.put(XML_FILES.get(0), new ArrayList<>(List.of(textView)));
+        ProjectUsageIndex index = new ProjectUsageIndex(projectData, JAVA_FILES, XML_FILES);
+        assertEquals(2, index.getUsages(ProjectUsageIndex.KIND_STRING_KEY, "a").size());
+
+        // Blocks removed from the event's list, and a view's text changed, both in place
+        blocks.clear();
+        textView.text.text = "@string/b";
+
+        assertEquals(List.of(), describe(index, ProjectUsageIndex.KIND_STRING_KEY, "a"));
+        assertEquals(List.of(XML_FILES.get(0) + " null textview1"), describe(index, ProjectUsageIndex.KIND_STRING_KEY, "b"));
+
+        // An event's blocks replaced, like the Logic Editor saves them
+        ArrayList<BlockBean> saved = new ArrayList<>();
+        saved.add(new BlockBean("11", "b", "s", "getResStr"));
+        projectData.a(JAVA_FILES.get(0), EVENTS.get(0), saved);
+
+        assertEquals(1, index.getBlockUsageCount(ProjectUsageIndex.KIND_STRING_KEY, "b"));
+        assertEquals(List.of(JAVA_FILES.get(0) + " " + EVENTS.get(0) + " 11", XML_FILES.get(0) + " null textview1"),
+                describe(index, ProjectUsageIndex.KIND_STRING_KEY, "b"));
+    }
+
+    @Test
+    public void matchesAFullRescanAfterEdits() {
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            eC projectData = newProjectData();
+            for (String javaFile : JAVA_FILES) {
+                for (String event : EVENTS) {
+                    if (random.nextBoolean()) {
+                        projectData.a(javaFile, event, randomBlocks(random));
+                    }
+                }
+            }
+            for (String xmlFile : XML_FILES) {
+                projectData.c.put(xmlFile, randomViews(random));
+            }
+            ProjectUsageIndex index = new ProjectUsageIndex(projectData, JAVA_FILES, XML_FILES);
+
+            for (int step = 0; step < 40; step++) {
+                String edit = edit(random, projectData, index);
+                assertMatchesRescan("seed " + seed + ", step " + step + ": " + edit, random, projectData, index);
+            }
+        }
+    }
+
+    /**
+     * Makes a random edit like an editor would, telling the index only where that editor does too.
+     *
+     * @return What got edited
+     */
+    private static String edit(Random random, eC projectData, ProjectUsageIndex index) {
+        String javaFile = JAVA_FILES.get(random.nextInt(JAVA_FILES.size()));
+        String event = EVENTS.get(random.nextInt(EVENTS.size()));
+        String xmlFile = XML_FILES.get(random.nextInt(XML_FILES.size()));
+        ArrayList<BlockBean> blocks = projectData.b(javaFile).get(event);
+        ArrayList<ViewBean> views = projectData.d(xmlFile);
+
+        switch (random.nextInt(9)) {
+            case 0: {
+                ArrayList<BlockBean> saved = randomBlocks(random);
+                projectData.a(javaFile, event, saved);
+                index.updateEvent(javaFile, event, saved);
+                return "saved " + event + " of " + javaFile + " in the Logic Editor";
+            }
+            case 1:
+                projectData.a(javaFile, event, randomBlocks(random));
+                return "replaced " + event + " of " + javaFile + " without telling";
+            case 2:
+                if (blocks == null || blocks.isEmpty()) return "nothing";
+                blocks.remove(random.nextInt(blocks.size()));
+                return "removed a block of " + event + " of " + javaFile + " without telling";
+            case 3:
+                if (blocks == null) return "nothing";
+                blocks.add(randomBlock(random, blocks.size()));
+                return "added a block to " + event + " of " + javaFile + " without telling";
+            case 4:
+                if (blocks == null || blocks.isEmpty()) return "nothing";
+                BlockBean block = blocks.get(random.nextInt(blocks.size()));
+                if (block.parameters.isEmpty()) return "nothing";
+                block.parameters.set(0, random.nextBoolean() ? pick(random) : "R.string." + pick(random));
+                index.invalidateBlocks(javaFile);
+                return "changed a parameter of a block of " + event + " of " + javaFile;
+            case 5:
+                projectData.b(javaFile).remove(event);
+                return "removed " + event + " of " + javaFile + " without telling";
+            case 6:
+                if (views.isEmpty()) return "nothing";
+                ViewBean view = views.get(random.nextInt(views.size()));
+                switch (random.nextInt(3)) {
+                    case 0 -> view.text.text = "@string/" + pick(random);
+                    case 1 -> view.text.hint = random.nextBoolean() ? "@string/" + pick(random) : "";
+                    default -> view.customView = random.nextBoolean() ? pick(random) : "none";
+                }
+                return "edited a view of " + xmlFile + " without telling";
+            case 7:
+                views.add(randomView(random, views.size()));
+                projectData.c.put(xmlFile, views);
+                return "added a view to " + xmlFile + " without telling";
+            default:
+                if (views.isEmpty()) return "nothing";
+                views.remove(random.nextInt(views.size()));
+                index.invalidateLayout(xmlFile);
+                return "removed a view of " + xmlFile;
+        }
+    }
+
+    private static void assertMatchesRescan(String message, Random random, eC projectData, ProjectUsageIndex index) {
+        ProjectUsageIndex rescan = new ProjectUsageIndex(projectData, JAVA_FILES, XML_FILES);
+        for (int kind : KINDS) {
+            for (String name : NAMES) {
+                assertEquals(message + ", kind " + kind + " " + name, describe(rescan, kind, name), describe(index, kind, name));
+                String javaFile = JAVA_FILES.get(random.nextInt(JAVA_FILES.size()));
+                String excludedEvent = random.nextBoolean() ? null : EVENTS.get(random.nextInt(EVENTS.size()));
+                assertEquals(message + ", kind " + kind + " " + name + " in " + javaFile,
+                        rescan.isUsedInBlocks(kind, name, javaFile, excludedEvent),
+                        index.isUsedInBlocks(kind, name, javaFile, excludedEvent));
+                assertEquals(message, rescan.isUsedInLayouts(kind, name), index.isUsedInLayouts(kind, name));
+            }
+        }
+    }
+
+    private static List<String> describe(ProjectUsageIndex index, int kind, String name) {
+        List<String> usages = new ArrayList<>();
+        for (ProjectUsageIndex.Usage usage : index.getUsages(kind, name)) {
+            usages.add(usage.getFileName() + " " + usage.getEventName() + " " + usage.getId());
+        }
+        Collections.sort(usages);
+        return usages;
+    }
+
+    private static eC newProjectData() {
+        eC projectData = new eC("600");
+        projectData.c = new HashMap<>();
+        projectData.d = new HashMap<>();
+        return projectData;
+    }
+
+    private static ArrayList<BlockBean> randomBlocks(Random random) {
+        ArrayList<BlockBean> blocks = new ArrayList<>();
+        int count = random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            blocks.add(randomBlock(random, i));
+        }
+        return blocks;
+    }
+
+    private static BlockBean randomBlock(Random random, int index) {
+        String id = String.valueOf(10 + index);
+        BlockBean block;
+        switch (random.nextInt(6)) {
+            case 0 -> block = new BlockBean(id, pick(random), "s", "getResStr");
+            case 1 -> {
+                block = new BlockBean(id, "%s", "s", "getResString");
+                block.parameters.add("R.string." + pick(random));
+            }
+            case 2 -> block = new BlockBean(id, pick(random), "d", "getVar");
+            case 3 -> block = new BlockBean(id, pick(random), "l", "List String", "getVar");
+            case 4 -> {
+                block = new BlockBean(id, "%m.TextView setText %s", " ", "setText");
+                block.parameters.add(pick(random));
+                block.parameters.add("");
+            }
+            default -> {
+                block = new BlockBean(id, "StartActivity %m.Intent", " ", "startActivity");
+                block.parameters.add(pick(random));
+            }
+        }
+        return block;
+    }
+
+    private static ArrayList<ViewBean> randomViews(Random random) {
+        ArrayList<ViewBean> views = new ArrayList<>();
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            views.add(randomView(random, i));
+        }
+        return views;
+    }
+
+    private static ViewBean randomView(Random random, int index) {
+        return newView("view" + index + "_" + random.nextInt(1000),
+                random.nextBoolean() ? "@string/" + pick(random) : "text",
+                random.nextBoolean() ? "@string/" + pick(random) : "",
+                random.nextInt(3) == 0 ? pick(random) : "none");
+    }
+
+    private static ViewBean newView(String id, String text, String hint, String customView) {
+        ViewBean view = new ViewBean(id, ViewBean.VIEW_TYPE_WIDGET_TEXTVIEW);
+        view.text.text = text;
+        view.text.hint = hint;
+        view.customView = customView;
+        return view;
+    }
+
+    private static String pick(Random random) {
+        return NAMES[random.nextInt(NAMES.length)];
+    }
+}
@@ -0,0 +1,193 @@
+package com.besome.sketch.editor.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class DropContainerCacheTest {
+
+    @Test
+    public void collectsTargetsOnlyOnceWhileNothingChanges() {
+        DropContainerCache<Container, String> cache = new DropContainerCache<>();
+        Container container = new Container("a", 0, 0, 100, 40, 30);
+
+        container.update(cache);
+        container.update(cache);
+
+        assertEquals(1, container.collections);
+        assertEquals("a slot 0", cache.find(50, 10));
+        assertEquals("a slot 1", cache.find(50, 50));
+        assertEquals("a end", cache.find(50, 80));
+    }
+
+    @Test
+    public void movesTargetsOfMovedContainers() {
+        DropContainerCache<Container, String> cache = new DropContainerCache<>();
+        Container container = new Container("a", 0, 0, 100, 40, 30);
+        container.update(cache);
+
+        container.left = 300;
+        container.top = 200;
+        container.update(cache);
+
+        assertEquals(1, container.collections);
+        assertNull(cache.find(50, 10));
+        assertEquals("a slot 0", cache.find(350, 210));
+        assertEquals("a slot 1", cache.find(350, 250));
+    }
+
+    @Test
+    public void collectsTargetsAgainIfAChildResizesOnItsOwn() {
+        DropContainerCache<Container, String> cache = new DropContainerCache<>();
+        // Same size before and after, like a LinearLayout with a fixed height
+        Container container = new Container("a", 0, 0, 100, 10, 10);
+        container.height = 200;
+        container.update(cache);
+        assertEquals("a slot 1", cache.find(50, 15));
+
+        // An image that finished decoding, without anything telling the cache
+        container.children[0] = 120;
+        container.update(cache);
+
+        assertEquals(2, container.collections);
+        assertEquals("a slot 0", cache.find(50, 15));
+        assertEquals("a slot 1", cache.find(50, 125));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void collectsTargetsAgainIfInvalidated() {
+        DropContainerCache<Container, String> cache = new DropContainerCache<>();
+        Container container = new Container("a", 0, 0, 100, 40);
+        container.update(cache);
+
+        cache.invalidate(container);
+        container.update(cache);
+        container.update(cache);
+
+        assertEquals(2, container.collections);
+    }
+
+    @Test
+    public void removesTargetsOfGoneContainers() {
+        DropContainerCache<Container, String> cache = new DropContainerCache<>();
+        Container first = new Container("first", 0, 0, 100, 40);
+        Container second = new Container("second", 0, 500, 100, 40);
+        Container third = new Container("third", 0, 1000, 100, 40);
+        first.update(cache);
+        second.update(cache);
+        third.update(cache);
+
+        cache.remove(first);
+        cache.invalidate(second);
+        cache.retainAll(List.of(third));
+        second.update(cache);
+
+        assertNull(cache.find(50, 10));
+        assertEquals("third slot 0", cache.find(50, 1010));
+        assertEquals(2, second.collections);
+        assertEquals(6, cache.size());
+    }
+
+    @Test
+    public void findsLikeFreshlyCollectedTargets() {
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            DropContainerCache<Container, String> cache = new DropContainerCache<>();
+            List<Container> containers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                // A column per container, so that targets of different containers never overlap
+                containers.add(new Container(String.valueOf(i), i * 400 + random.nextInt(50), random.nextInt(1000),
+                        50 + random.nextInt(300), randomChildren(random)));
+            }
+
+            for (int step = 0; step < 30; step++) {
+                Container container = containers.get(random.nextInt(containers.size()));
+                switch (random.nextInt(4)) {
+                    case 0:
+                        container.left = containers.indexOf(container) * 400 + random.nextInt(50);
+                        container.top = random.nextInt(1000);
+                        break;
+                    case 1:
+                        if (container.children.length == 0) continue;
+                        container.children[random.nextInt(container.children.length)] = random.nextInt(100);
+                        break;
+                    case 2:
+                        container.children = randomChildren(random);
+                        cache.invalidate(container);
+                        break;
+                    default:
+                        container.width = 50 + random.nextInt(300);
+                        break;
+                }
+                for (Container each : containers) {
+                    each.update(cache);
+                }
+
+                DropContainerCache<Container, String> fresh = new DropContainerCache<>();
+                for (Container each : containers) {
+                    each.update(fresh);
+                }
+                assertEquals("seed " + seed + ", step " + step, fresh.size(), cache.size());
+                for (int i = 0; i < 100; i++) {
+                    int x = random.nextInt(3200);
+                    int y = random.nextInt(1400);
+                    assertEquals("seed " + seed + ", step " + step + " at " + x + ", " + y,
+                            fresh.find(x, y), cache.find(x, y));
+                }
+            }
+        }
+    }
+
+    private static int[] randomChildren(Random random) {
+        int[] children = new int[random.nextInt(5)];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = random.nextInt(100);
+        }
+        return children;
+    }
+
+    /**
+     * A vertical LinearLayout-like container, with a target per child, one after its children,
+     * and one for the whole container that the others win over.
+     */
+    private static class Container {
+        private final String name;
+        private int[] children;
+        private int left;
+        private int top;
+        private int width;
+        private int height;
+        private int collections;
+
+        private Container(String name, int left, int top, int width, int... children) {
+            this.name = name;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.children = children;
+        }
+
+        private void update(DropContainerCache<Container, String> cache) {
+            int[] layout = Arrays.copyOf(children, children.length + 2);
+            layout[children.length] = width;
+            layout[children.length + 1] = height;
+            cache.update(this, left, top, layout, targets -> {
+                collections++;
+                int y = top;
+                for (int i = 0; i < children.length; i++) {
+                    targets.add(name + " slot " + i, left, y, left + width, y + children[i], 1);
+                    y += children[i];
+                }
+                targets.add(name + " end", left, y, left + width, y + 20, 1);
+                targets.add(name + " container", left, top, left + width, Math.max(y + 20, top + height), 0);
+            });
+        }
+    }
+}
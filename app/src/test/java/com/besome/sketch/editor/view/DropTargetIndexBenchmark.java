@@ -0,0 +1,80 @@
+package com.besome.sketch.editor.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures drop target hit-test latency against the number of widgets, for {@link DropTargetIndex}
+ * and for the scan over all targets that {@link ViewPane} used before.
+ * <p>
+ * Not a test, run its {@link #main(String[])} from the IDE or with the test runtime classpath.
+ */
+public class DropTargetIndexBenchmark {
+
+    private static final int QUERIES = 200_000;
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %16s %16s %18s%n", "widgets", "scan (ns/query)", "index (ns/query)", "update (ns/move)");
+        for (int widgets : new int[]{50, 200, 800, 3200}) {
+            // Warm up the JIT before measuring
+            run(widgets, false);
+            run(widgets, true);
+        }
+    }
+
+    private static void run(int widgets, boolean print) {
+        Random random = new Random(widgets);
+        List<DropTargetIndexTest.Target> targets = new ArrayList<>();
+        DropTargetIndex<DropTargetIndexTest.Target> index = new DropTargetIndex<>();
+        // Roughly what a deep layout looks like on a 1080px wide canvas: containers nested in each other,
+        // each one with a slot per child
+        for (int i = 0; i < widgets; i++) {
+            int depth = random.nextInt(16);
+            int width = Math.max(40, 1080 - depth * 60 - random.nextInt(200));
+            int height = 48 + random.nextInt(160);
+            int left = random.nextInt(1080 - width + 1);
+            int top = random.nextInt(widgets * 20 + 1);
+            DropTargetIndexTest.Target target = new DropTargetIndexTest.Target(left, top, left + width, top + height, depth, i);
+            targets.add(target);
+            index.add(target, target.left, target.top, target.right, target.bottom, target.depth);
+        }
+
+        int[] xs = new int[QUERIES];
+        int[] ys = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            xs[i] = random.nextInt(1080);
+            ys[i] = random.nextInt(widgets * 20 + 200);
+        }
+
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            if (DropTargetIndexTest.scan(targets, xs[i], ys[i]) != null) found++;
+        }
+        long scan = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            if (index.find(xs[i], ys[i]) != null) found--;
+        }
+        long indexed = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            DropTargetIndexTest.Target target = targets.get(i % widgets);
+            int dy = (i & 1) == 0 ? 24 : -24;
+            index.move(target, target.left, target.top + dy, target.right, target.bottom + dy);
+            target.top += dy;
+            target.bottom += dy;
+        }
+        long moves = System.nanoTime() - start;
+
+        if (found != 0) {
+            throw new AssertionError("Index and scan found different targets");
+        }
+        if (print) {
+            System.out.printf("%8d %16d %16d %18d%n", widgets, scan / QUERIES, indexed / QUERIES, moves / QUERIES);
+        }
+    }
+}
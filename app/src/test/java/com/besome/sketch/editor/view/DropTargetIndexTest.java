@@ -0,0 +1,138 @@
+package com.besome.sketch.editor.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class DropTargetIndexTest {
+
+    @Test
+    public void deepestTargetWins() {
+        DropTargetIndex<String> index = new DropTargetIndex<>();
+        index.add("parent", 0, 0, 500, 500, 2);
+        index.add("child", 100, 100, 200, 200, 4);
+
+        assertSame("child", index.find(150, 150));
+        assertSame("parent", index.find(50, 50));
+        assertNull(index.find(500, 500));
+    }
+
+    @Test
+    public void firstAddedWinsAmongEquallyDeepTargets() {
+        DropTargetIndex<String> index = new DropTargetIndex<>();
+        index.add("first", 0, 0, 300, 300, 3);
+        index.add("second", 100, 100, 400, 400, 3);
+
+        assertSame("first", index.find(200, 200));
+        assertSame("second", index.find(350, 350));
+    }
+
+    @Test
+    public void emptyTargetsAreNeverFound() {
+        DropTargetIndex<String> index = new DropTargetIndex<>();
+        index.add("empty", 100, 100, 100, 200, 1);
+        index.add("inverted", 200, 200, 100, 100, 1);
+
+        assertNull(index.find(100, 150));
+        assertNull(index.find(150, 150));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void moveKeepsPriorityAndRemoveForgetsTarget() {
+        DropTargetIndex<String> index = new DropTargetIndex<>();
+        index.add("first", 0, 0, 100, 100, 1);
+        index.add("second", 1000, 1000, 1100, 1100, 1);
+
+        index.move("first", 1000, 1000, 1100, 1100);
+        assertSame("first", index.find(1050, 1050));
+        assertNull(index.find(50, 50));
+
+        index.remove("first");
+        assertSame("second", index.find(1050, 1050));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Randomly adds, moves and removes targets, and compares every hit test with a scan over all of them.
+     */
+    @Test
+    public void matchesLinearScanWhileUpdatedIncrementally() {
+        Random random = new Random(42);
+        DropTargetIndex<Target> index = new DropTargetIndex<>();
+        List<Target> targets = new ArrayList<>();
+        int order = 0;
+
+        for (int step = 0; step < 20_000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 4 || targets.isEmpty()) {
+                Target target = randomTarget(random, order++);
+                targets.add(target);
+                index.add(target, target.left, target.top, target.right, target.bottom, target.depth);
+            } else if (operation < 6) {
+                Target target = targets.get(random.nextInt(targets.size()));
+                Target moved = randomTarget(random, 0);
+                target.left = moved.left;
+                target.top = moved.top;
+                target.right = moved.right;
+                target.bottom = moved.bottom;
+                index.move(target, target.left, target.top, target.right, target.bottom);
+            } else if (operation < 7) {
+                index.remove(targets.remove(random.nextInt(targets.size())));
+            } else {
+                int x = random.nextInt(2400) - 200;
+                int y = random.nextInt(2400) - 200;
+                assertSame("Hit test at " + x + ", " + y, scan(targets, x, y), index.find(x, y));
+            }
+            assertEquals(targets.size(), index.size());
+        }
+    }
+
+    private static Target randomTarget(Random random, int order) {
+        int left = random.nextInt(2200) - 200;
+        int top = random.nextInt(2200) - 200;
+        // Sometimes empty or inverted, like slots of layouts with unusual gravity
+        int width = random.nextInt(600) - 20;
+        int height = random.nextInt(600) - 20;
+        return new Target(left, top, left + width, top + height, random.nextInt(12), order);
+    }
+
+    static Target scan(List<Target> targets, int x, int y) {
+        Target result = null;
+        for (Target target : targets) {
+            if (target.contains(x, y) && (result == null || target.depth > result.depth
+                    || (target.depth == result.depth && target.order < result.order))) {
+                result = target;
+            }
+        }
+        return result;
+    }
+
+    static class Target {
+        final int depth;
+        final int order;
+        int left;
+        int top;
+        int right;
+        int bottom;
+
+        Target(int left, int top, int right, int bottom, int depth, int order) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.depth = depth;
+            this.order = order;
+        }
+
+        boolean contains(int x, int y) {
+            return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package mod.hilal.saif.blocks;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+public class CommandPlanTest {
+
+    private static final String[] FILES = {"activity_main.xml", "AndroidManifest.xml"};
+    private static final String[] LINES = {
+            "", "", " ", "<LinearLayout", "android:id=\"@+id/text\"", "</LinearLayout>", "<TextView />",
+            "<application>", "</application>", "a.b", "(x)",
+    };
+    private static final String[] REFERENCES = {
+            "", "<LinearLayout", "android:id", "</", "TextView", "application", "a.b", "(x)", "(", "\\w+", "missing",
+    };
+    private static final String[] COMMANDS = {
+            "find-replace", "find-replace-first", "find-replace-all", "insert", "add", "replace", "unknown",
+    };
+
+    @Test
+    public void appliesCommandsLikeApplyingThemOneByOne() {
+        for (int seed = 0; seed < 20_000; seed++) {
+            Random random = new Random(seed);
+            String code = randomText(random, 1 + random.nextInt(12));
+            List<HashMap<String, Object>> commands = new ArrayList<>();
+            int count = random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                commands.add(randomCommand(random));
+            }
+
+            CommandPlan plan = new CommandPlan(commands);
+            for (String fileName : FILES) {
+                assertEquals("seed " + seed + ", " + fileName,
+                        applyOneByOne(fileName, code, commands), plan.apply(fileName, code));
+            }
+        }
+    }
+
+    @Test
+    public void leavesFileAsIsIfACommandLacksValues() {
+        HashMap<String, Object> command = command("insert", "<TextView", 0, 0, 0, FILES[0], "<Button />");
+        command.remove("distance");
+        List<HashMap<String, Object>> commands = List.of(
+                command("find-replace", "Text", 0, 0, 0, FILES[0], "Edit"), command);
+        String code = "<LinearLayout>\n<TextView />\n</LinearLayout>";
+
+        assertEquals(code, new CommandPlan(commands).apply(FILES[0], code));
+        assertEquals(applyOneByOne(FILES[0], code, commands), new CommandPlan(commands).apply(FILES[0], code));
+    }
+
+    private static String randomText(Random random, int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) text.append('\n');
+            text.append(LINES[random.nextInt(LINES.length)]);
+        }
+        return text.toString();
+    }
+
+    private static HashMap<String, Object> randomCommand(Random random) {
+        String input = random.nextInt(5) == 0 ? "" : randomText(random, 1 + random.nextInt(3));
+        HashMap<String, Object> command = command(COMMANDS[random.nextInt(COMMANDS.length)],
+                REFERENCES[random.nextInt(REFERENCES.length)],
+                random.nextInt(9) - 4, random.nextInt(7) - 2, random.nextInt(7) - 2,
+                FILES[random.nextInt(FILES.length)], input);
+        if (random.nextInt(200) == 0) {
+            command.remove(random.nextBoolean() ? "after" : "reference");
+        }
+        return command;
+    }
+
+    /**
+     * @return A command like the temporary commands file stores them, where Gson reads numbers as doubles
+     */
+    private static HashMap<String, Object> command(String command, String reference, int distance, int after,
+                                                   int before, String fileName, String input) {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("command", command);
+        map.put("reference", reference);
+        map.put("distance", (double) distance);
+        map.put("after", (double) after);
+        map.put("before", (double) before);
+        map.put("input", ">" + fileName + "\n" + input);
+        return map;
+    }
+
+    /**
+     * How {@link CommandBlock#applyCommands(String, String)} applied commands before {@link CommandPlan}:
+     * every command of the file on its own, splitting and joining the whole file each time.
+     */
+    private static String applyOneByOne(String fileName, String c, List<HashMap<String, Object>> commands) {
+        String str = c;
+        try {
+            for (HashMap<String, Object> command : commands) {
+                if (CommandBlock.getInputName((String) command.get("input")).equals(fileName)) {
+                    str = applyCommand(str, command);
+                }
+            }
+            return str;
+        } catch (Exception e) {
+            return c;
+        }
+    }
+
+    private static String applyCommand(String c, HashMap<String, Object> map) {
+        ArrayList<String> a = new ArrayList<>(Arrays.asList(c.split("\n")));
+        String reference = (String) map.get("reference");
+        double distance = (double) map.get("distance");
+        double after = (double) map.get("after");
+        double before = (double) map.get("before");
+        String command = (String) map.get("command");
+        String input = CommandBlock.getExceptFirstLine((String) map.get("input"));
+
+        if (command.equals("find-replace")) {
+            return c.replace(reference, input);
+        }
+        if (command.equals("find-replace-first")) {
+            try {
+                return c.replaceFirst(reference, input);
+            } catch (Exception e) {
+                return c;
+            }
+        }
+        if (command.equals("find-replace-all")) {
+            try {
+                return c.replaceAll(reference, input);
+            } catch (Exception e) {
+                return c;
+            }
+        }
+
+        int index = -1;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).contains(reference)) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1) {
+            return c;
+        }
+
+        if (command.equals("insert")) {
+            if ((index + distance - before) < 0) {
+                a.add(0, input);
+            } else if ((index + distance - before) > (a.size() - 1)) {
+                a.add(input);
+            } else {
+                a.add((int) (index + distance - before), input);
+            }
+        }
+        if (command.equals("add")) {
+            if ((index + distance + after + 1) < 0) {
+                a.add(0, input);
+            } else if ((index + distance + after + 1) > (a.size() - 1)) {
+                a.add(input);
+            } else {
+                a.add((int) (index + distance + after + 1), input);
+            }
+        }
+        if (command.equals("replace")) {
+            if (before == 0 && after == 0) {
+                int lineToChange = (int) (index + distance);
+                if (lineToChange < 0) {
+                    lineToChange = 0;
+                }
+                if (lineToChange > (a.size() - 1)) {
+                    lineToChange = a.size() - 1;
+                }
+                a.set(lineToChange, input);
+            } else {
+                int lineToChange = (int) (index + distance);
+                if (lineToChange <= 0) {
+                    int from = 1;
+                    int to = (int) after + 1;
+                    if (to > (a.size() - 1)) {
+                        to = a.size() - 1;
+                    }
+                    a.subList(from, to).clear();
+                    a.set(0, input);
+                } else if (lineToChange >= (a.size() - 1)) {
+                    lineToChange = a.size() - 1;
+                    int from = (int) (lineToChange - before);
+                    int to = lineToChange;
+                    if (from < 0) {
+                        from = 0;
+                    }
+                    a.set(lineToChange, input);
+                    a.subList(from, to).clear();
+                } else {
+                    if (before < 0) {
+                        before = 0;
+                    }
+                    if (after < 0) {
+                        after = 0;
+                    }
+                    int from = lineToChange + 1;
+                    int to = lineToChange + (int) after;
+                    if (to > (a.size() - 1)) {
+                        to = a.size() - 1;
+                    }
+                    a.subList(from, to).clear();
+                    a.set(lineToChange, input);
+                    from = (int) (lineToChange - before);
+                    to = lineToChange;
+                    if (from < 0) {
+                        from = 0;
+                    }
+                    a.subList(from, to).clear();
+                }
+            }
+        }
+
+        String res = "";
+        for (String line : a) {
+            res = res.isEmpty() ? line : res.concat("\n").concat(line);
+        }
+        return res;
+    }
+}
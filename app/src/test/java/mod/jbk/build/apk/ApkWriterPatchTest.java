@@ -0,0 +1,165 @@
+package mod.jbk.build.apk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.apksig.ApkVerifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that patching an APK in place gives the same bytes as writing it from scratch.
+ */
+public class ApkWriterPatchTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void unchangedInputs() throws Exception {
+        Patcher patcher = new Patcher(1, 21);
+        patcher.check("unchanged");
+        patcher.check("unchanged again");
+    }
+
+    @Test
+    public void changedFirstEntry() throws Exception {
+        Patcher patcher = new Patcher(2, 21);
+        patcher.inputs.setNativeLibrary("arm64-v8a/libnative.so", patcher.inputs.randomBytes(21_000));
+        patcher.check("changed first native library");
+    }
+
+    @Test
+    public void changedEntriesInTheMiddle() throws Exception {
+        Patcher patcher = new Patcher(3, 26);
+        patcher.inputs.setDexFile("classes.dex", patcher.inputs.randomBytes(49_000));
+        patcher.check("changed classes.dex");
+        patcher.inputs.setResource("resources.arsc", patcher.inputs.randomBytes(3_500), true);
+        patcher.check("changed resources.arsc");
+    }
+
+    @Test
+    public void changedLastEntry() throws Exception {
+        Patcher patcher = new Patcher(4, 21);
+        patcher.inputs.setResource("res/layout/main.xml",
+                "<FrameLayout />".getBytes(StandardCharsets.UTF_8), false);
+        patcher.check("changed last resource");
+    }
+
+    @Test
+    public void removedEntries() throws Exception {
+        Patcher patcher = new Patcher(5, 21);
+        patcher.inputs.removeResource("res/drawable/icon.png");
+        patcher.check("removed stored resource");
+        patcher.inputs.removeDexFile("classes2.dex");
+        patcher.check("removed classes2.dex");
+        patcher.inputs.removeNativeLibrary("arm64-v8a/libnative.so");
+        patcher.check("removed first native library");
+    }
+
+    @Test
+    public void addedEntries() throws Exception {
+        Patcher patcher = new Patcher(6, 26);
+        patcher.inputs.setDexFile("classes3.dex", patcher.inputs.randomBytes(10_000));
+        patcher.check("added classes3.dex");
+        patcher.inputs.setNativeLibrary("x86_64/libnative.so", patcher.inputs.randomBytes(12_000));
+        patcher.check("added native library");
+        patcher.inputs.setResource("res/raw/data.bin", patcher.inputs.randomBytes(777), true);
+        patcher.check("added stored resource");
+    }
+
+    @Test
+    public void randomEdits() throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            Patcher patcher = new Patcher(seed, random.nextBoolean() ? 21 : 26);
+            List<String> addedDexFiles = new ArrayList<>();
+            List<String> addedResources = new ArrayList<>();
+
+            for (int step = 0; step < 15; step++) {
+                ApkWriterTest.Inputs inputs = patcher.inputs;
+                String edit;
+                switch (random.nextInt(7)) {
+                    case 0:
+                        edit = "changed native library";
+                        inputs.setNativeLibrary(random.nextBoolean() ? "arm64-v8a/libnative.so" : "armeabi-v7a/libnative.so",
+                                inputs.randomBytes(1 + random.nextInt(20_000)));
+                        break;
+                    case 1:
+                        edit = "changed classes.dex";
+                        inputs.setDexFile("classes.dex", inputs.randomBytes(1 + random.nextInt(60_000)));
+                        break;
+                    case 2:
+                        edit = "added DEX file";
+                        String dexName = "classes" + (10 + addedDexFiles.size()) + ".dex";
+                        inputs.setDexFile(dexName, inputs.randomBytes(1 + random.nextInt(5_000)));
+                        addedDexFiles.add(dexName);
+                        break;
+                    case 3:
+                        if (addedDexFiles.isEmpty()) continue;
+                        edit = "removed DEX file";
+                        inputs.removeDexFile(addedDexFiles.remove(random.nextInt(addedDexFiles.size())));
+                        break;
+                    case 4:
+                        edit = "changed resources.arsc";
+                        inputs.setResource("resources.arsc", inputs.randomBytes(1 + random.nextInt(5_000)), true);
+                        break;
+                    case 5:
+                        edit = "added resource";
+                        String resourceName = "res/raw/file" + step + ".bin";
+                        inputs.setResource(resourceName, inputs.randomBytes(random.nextInt(3_000)), random.nextBoolean());
+                        addedResources.add(resourceName);
+                        break;
+                    default:
+                        if (addedResources.isEmpty()) continue;
+                        edit = "removed resource";
+                        inputs.removeResource(addedResources.remove(random.nextInt(addedResources.size())));
+                        break;
+                }
+                patcher.check("seed " + seed + ", step " + step + ": " + edit);
+            }
+        }
+    }
+
+    /**
+     * Keeps patching one APK, comparing it to a freshly written one after each change of the inputs.
+     */
+    private class Patcher {
+        final ApkWriterTest.Inputs inputs;
+        private final int minSdkVersion;
+        private final File apk;
+        private final File indexFile;
+        private final File freshApk;
+
+        Patcher(long seed, int minSdkVersion) throws Exception {
+            File directory = temporaryFolder.newFolder();
+            inputs = new ApkWriterTest.Inputs(new File(directory, "inputs"), seed);
+            this.minSdkVersion = minSdkVersion;
+            apk = new File(directory, "patched.apk");
+            indexFile = new File(directory, "patched.apk.index");
+            freshApk = new File(directory, "fresh.apk");
+            inputs.writeApk(apk, minSdkVersion, indexFile);
+            assertTrue(indexFile.isFile());
+        }
+
+        void check(String message) throws Exception {
+            inputs.writeApk(apk, minSdkVersion, indexFile);
+            freshApk.delete();
+            inputs.writeApk(freshApk, minSdkVersion, null);
+
+            assertArrayEquals(message, Files.readAllBytes(freshApk.toPath()), Files.readAllBytes(apk.toPath()));
+            ApkVerifier.Result result = ApkWriterTest.verify(apk, minSdkVersion);
+            assertTrue(message + ": " + result.getErrors(), result.isVerified());
+            assertTrue(message, result.isVerifiedUsingV2Scheme());
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package mod.jbk.build.apk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.android.apksig.ApkVerifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class ApkWriterTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void signsWithV1AndV2BelowApi24() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 1);
+        File apk = new File(temporaryFolder.getRoot(), "app.apk");
+        inputs.writeApk(apk, 21, null);
+
+        ApkVerifier.Result result = verify(apk, 21);
+        assertTrue(result.getErrors().toString(), result.isVerified());
+        assertTrue(result.isVerifiedUsingV1Scheme());
+        assertTrue(result.isVerifiedUsingV2Scheme());
+    }
+
+    @Test
+    public void signsWithOnlyV2FromApi24() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 2);
+        File apk = new File(temporaryFolder.getRoot(), "app.apk");
+        inputs.writeApk(apk, 26, null);
+
+        ApkVerifier.Result result = verify(apk, 26);
+        assertTrue(result.getErrors().toString(), result.isVerified());
+        assertFalse(result.isVerifiedUsingV1Scheme());
+        assertTrue(result.isVerifiedUsingV2Scheme());
+    }
+
+    @Test
+    public void containsExactlyTheInputs() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 3);
+        File apk = new File(temporaryFolder.getRoot(), "app.apk");
+        inputs.writeApk(apk, 26, null);
+
+        Map<String, byte[]> expected = inputs.getExpectedEntries();
+        Map<String, byte[]> actual = readEntries(apk);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void keepsCompressionOfZipEntries() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 4);
+        File apk = new File(temporaryFolder.getRoot(), "app.apk");
+        inputs.writeApk(apk, 26, null);
+
+        try (ZipFile zip = new ZipFile(apk)) {
+            for (String name : inputs.getStoredEntries()) {
+                assertEquals(name, ZipEntry.STORED, zip.getEntry(name).getMethod());
+            }
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("AndroidManifest.xml").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("classes.dex").getMethod());
+        }
+    }
+
+    @Test
+    public void alignsStoredEntries() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 5);
+        File apk = new File(temporaryFolder.getRoot(), "app.apk");
+        inputs.writeApk(apk, 21, null);
+
+        Map<String, Long> dataOffsets = readDataOffsets(apk);
+        try (ZipFile zip = new ZipFile(apk)) {
+            for (Map.Entry<String, Long> entry : dataOffsets.entrySet()) {
+                String name = entry.getKey();
+                if (zip.getEntry(name).getMethod() != ZipEntry.STORED) continue;
+                int alignment = name.startsWith("lib/") && name.endsWith(".so") ? 4096 : 4;
+                assertEquals(name, 0, entry.getValue() % alignment);
+            }
+        }
+        assertTrue(dataOffsets.containsKey("lib/armeabi-v7a/libstored.so"));
+    }
+
+    @Test
+    public void writesSameBytesForSameInputs() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 6);
+        File first = new File(temporaryFolder.getRoot(), "first.apk");
+        File second = new File(temporaryFolder.getRoot(), "second.apk");
+        inputs.writeApk(first, 21, null);
+        inputs.writeApk(second, 21, null);
+
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void rejectsDuplicateEntries() throws Exception {
+        Inputs inputs = new Inputs(temporaryFolder.newFolder(), 7);
+        File apk = new File(temporaryFolder.getRoot(), "app.apk");
+        File dex = inputs.dexFiles.get("classes.dex");
+
+        try (ApkWriter writer = new ApkWriter(apk, loadPrivateKey(), loadCertificates(), 21)) {
+            writer.addFile(dex, "classes.dex");
+            ApkWriter.DuplicateEntryException e = assertThrows(ApkWriter.DuplicateEntryException.class,
+                    () -> writer.addFile(dex, "classes.dex"));
+            assertEquals("classes.dex", e.getName());
+        }
+    }
+
+    static ApkVerifier.Result verify(File apk, int minSdkVersion) throws Exception {
+        // Checking a fixed platform range keeps apksig from parsing the fake AndroidManifest.xml
+        return new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(minSdkVersion)
+                .setMaxCheckedPlatformVersion(33)
+                .build()
+                .verify();
+    }
+
+    /**
+     * @return Uncompressed content of every entry that isn't a JAR signature file, keyed by name
+     */
+    static Map<String, byte[]> readEntries(File apk) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(apk)) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (entry.getName().startsWith("META-INF/")) continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    entries.put(entry.getName(), readAll(in));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return Where the data of each entry starts, keyed by name, read from the central directory and
+     * the local file headers
+     */
+    static Map<String, Long> readDataOffsets(File apk) throws IOException {
+        Map<String, Long> dataOffsets = new LinkedHashMap<>();
+        try (RandomAccessFile in = new RandomAccessFile(apk, "r")) {
+            ByteBuffer eocd = read(in, in.length() - 22, 22);
+            assertEquals(0x06054b50, eocd.getInt(0));
+            int entryCount = eocd.getShort(10) & 0xffff;
+            long offset = eocd.getInt(16) & 0xffffffffL;
+
+            for (int i = 0; i < entryCount; i++) {
+                ByteBuffer record = read(in, offset, 46);
+                assertEquals(0x02014b50, record.getInt(0));
+                int nameLength = record.getShort(28) & 0xffff;
+                int extraLength = record.getShort(30) & 0xffff;
+                int commentLength = record.getShort(32) & 0xffff;
+                long headerOffset = record.getInt(42) & 0xffffffffL;
+                byte[] name = new byte[nameLength];
+                in.seek(offset + 46);
+                in.readFully(name);
+
+                ByteBuffer header = read(in, headerOffset, 30);
+                assertEquals(0x04034b50, header.getInt(0));
+                long dataOffset = headerOffset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+                dataOffsets.put(new String(name, StandardCharsets.UTF_8), dataOffset);
+                offset += 46 + nameLength + extraLength + commentLength;
+            }
+        }
+        return dataOffsets;
+    }
+
+    private static ByteBuffer read(RandomAccessFile in, long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.seek(offset);
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static PrivateKey loadPrivateKey() throws Exception {
+        try (InputStream in = ApkWriterTest.class.getResourceAsStream("/keys/testkey.pk8")) {
+            return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(readAll(in)));
+        }
+    }
+
+    static List<X509Certificate> loadCertificates() throws Exception {
+        try (InputStream in = ApkWriterTest.class.getResourceAsStream("/keys/testkey.x509.pem")) {
+            return Collections.singletonList((X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(in));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Files to build an APK from, laid out like ProjectBuilder's: native libraries, a library JAR
+     * with Java resources, DEX files, and the resources.ap_ from AAPT2.
+     * Every change gets a new modification time, so that ApkWriter notices it.
+     */
+    static class Inputs {
+        final File directory;
+        final File nativeLibraries;
+        final File libraryJar;
+        final File resources;
+        final Map<String, File> dexFiles = new LinkedHashMap<>();
+        private final Random random;
+        private final Map<String, byte[]> libraryJarEntries = new LinkedHashMap<>();
+        private final Map<String, byte[]> resourceEntries = new LinkedHashMap<>();
+        private final Set<String> storedEntries = new LinkedHashSet<>();
+        private long lastModified = 1_600_000_000_000L;
+
+        Inputs(File directory, long seed) throws IOException {
+            this.directory = directory;
+            random = new Random(seed);
+            nativeLibraries = new File(directory, "jniLibs");
+            libraryJar = new File(directory, "library.jar");
+            resources = new File(directory, "resources.ap_");
+
+            setNativeLibrary("arm64-v8a/libnative.so", randomBytes(20_000));
+            setNativeLibrary("armeabi-v7a/libnative.so", randomBytes(15_000));
+
+            libraryJarEntries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            libraryJarEntries.put("com/example/Library.class", randomBytes(500));
+            libraryJarEntries.put("com/example/library.properties", "version=1\n".getBytes(StandardCharsets.UTF_8));
+            libraryJarEntries.put("lib/armeabi-v7a/libstored.so", randomBytes(5_000));
+            storedEntries.add("lib/armeabi-v7a/libstored.so");
+            writeZip(libraryJar, libraryJarEntries);
+
+            setDexFile("classes.dex", randomBytes(50_000));
+            setDexFile("classes2.dex", randomBytes(30_000));
+
+            resourceEntries.put("AndroidManifest.xml", randomBytes(1_000));
+            setResource("resources.arsc", randomBytes(3_001), true);
+            setResource("res/drawable/icon.png", randomBytes(2_003), true);
+            setResource("res/layout/main.xml", "<LinearLayout />".getBytes(StandardCharsets.UTF_8), false);
+        }
+
+        /**
+         * Writes an APK the way ProjectBuilder#buildSignedApk does.
+         *
+         * @param indexFile See {@link ApkWriter#ApkWriter(File, PrivateKey, List, int, File)}
+         */
+        void writeApk(File apk, int minSdkVersion, File indexFile) throws Exception {
+            try (ApkWriter writer = new ApkWriter(apk, loadPrivateKey(), loadCertificates(), minSdkVersion, indexFile)) {
+                writer.addNativeLibraries(nativeLibraries);
+                writer.addZipEntries(libraryJar, ApkWriter.EntryFilter.JAVA_RESOURCES);
+                for (Map.Entry<String, File> dexFile : dexFiles.entrySet()) {
+                    writer.addFile(dexFile.getValue(), dexFile.getKey());
+                }
+                writer.addZipEntries(resources, null);
+                writer.finish();
+            }
+        }
+
+        /**
+         * @return What {@link #readEntries(File)} should return for an APK of these inputs
+         */
+        Map<String, byte[]> getExpectedEntries() throws IOException {
+            Map<String, byte[]> entries = new TreeMap<>();
+            File[] abiDirectories = nativeLibraries.listFiles();
+            if (abiDirectories != null) {
+                for (File abiDirectory : abiDirectories) {
+                    File[] libraries = abiDirectory.listFiles();
+                    if (libraries == null) continue;
+                    for (File library : libraries) {
+                        entries.put("lib/" + abiDirectory.getName() + "/" + library.getName(),
+                                Files.readAllBytes(library.toPath()));
+                    }
+                }
+            }
+            for (Map.Entry<String, byte[]> entry : libraryJarEntries.entrySet()) {
+                if (ApkWriter.EntryFilter.JAVA_RESOURCES.shouldAdd(entry.getKey())) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, File> dexFile : dexFiles.entrySet()) {
+                entries.put(dexFile.getKey(), Files.readAllBytes(dexFile.getValue().toPath()));
+            }
+            entries.putAll(resourceEntries);
+            return entries;
+        }
+
+        /**
+         * @return Names of the entries that are stored uncompressed in their ZIP file
+         */
+        Set<String> getStoredEntries() {
+            return storedEntries;
+        }
+
+        /**
+         * @param path Path of the library relative to {@link #nativeLibraries}, like <code>arm64-v8a/libfoo.so</code>
+         */
+        void setNativeLibrary(String path, byte[] content) throws IOException {
+            writeFile(new File(nativeLibraries, path), content);
+        }
+
+        void removeNativeLibrary(String path) {
+            assertTrue(new File(nativeLibraries, path).delete());
+        }
+
+        void setDexFile(String name, byte[] content) throws IOException {
+            File dexFile = new File(directory, "dex/" + name);
+            writeFile(dexFile, content);
+            dexFiles.put(name, dexFile);
+        }
+
+        void removeDexFile(String name) {
+            assertTrue(dexFiles.remove(name).delete());
+        }
+
+        void setResource(String name, byte[] content, boolean stored) throws IOException {
+            resourceEntries.put(name, content);
+            if (stored) {
+                storedEntries.add(name);
+            } else {
+                storedEntries.remove(name);
+            }
+            writeZip(resources, resourceEntries);
+        }
+
+        void removeResource(String name) throws IOException {
+            resourceEntries.remove(name);
+            storedEntries.remove(name);
+            writeZip(resources, resourceEntries);
+        }
+
+        byte[] randomBytes(int length) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            return bytes;
+        }
+
+        private void writeFile(File file, byte[] content) throws IOException {
+            File parent = file.getParentFile();
+            if (parent != null) parent.mkdirs();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(content);
+            }
+            lastModified += 2_000;
+            assertTrue(file.setLastModified(lastModified));
+        }
+
+        private void writeZip(File zipFile, Map<String, byte[]> entries) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                    if (storedEntries.contains(entry.getKey())) {
+                        CRC32 crc = new CRC32();
+                        crc.update(entry.getValue());
+                        zipEntry.setMethod(ZipEntry.STORED);
+                        zipEntry.setSize(entry.getValue().length);
+                        zipEntry.setCompressedSize(entry.getValue().length);
+                        zipEntry.setCrc(crc.getValue());
+                    }
+                    out.putNextEntry(zipEntry);
+                    out.write(entry.getValue());
+                    out.closeEntry();
+                }
+            }
+            writeFile(zipFile, bytes.toByteArray());
+        }
+    }
+}
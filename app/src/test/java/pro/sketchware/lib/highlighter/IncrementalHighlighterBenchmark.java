@@ -0,0 +1,119 @@
+package pro.sketchware.lib.highlighter;
+
+/**
+ * Measures the cost of a keystroke in a large generated activity, for {@link IncrementalHighlighter}
+ * and for lexing the whole file again, which highlighting did before.
+ * <p>
+ * Every keystroke inserts a character in the middle of the file and highlights the 40 lines around it.
+ * <p>
+ * Not a test, run its {@link #main(String[])} from the IDE or with the test runtime classpath.
+ */
+public class IncrementalHighlighterBenchmark {
+
+    private static final int KEYSTROKES = 2_000;
+    private static final int VISIBLE_LINES = 40;
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %20s %22s %22s%n", "lines", "full lex (us/key)", "incremental (us/key)", "opening /* (us/key)");
+        for (int methods : new int[]{50, 200, 500}) {
+            // Warm up the JIT before measuring
+            run(methods, false);
+            run(methods, true);
+        }
+    }
+
+    private static void run(int methods, boolean print) {
+        StringBuilder text = generateActivity(methods);
+        int lines = countLines(text);
+        int[] colors = IncrementalHighlighterTest.colors();
+        SyntaxLexer lexer = new JavaLexer(false);
+        int editOffset = lineStart(text, lines / 2);
+        int visibleStart = lineStart(text, lines / 2 - VISIBLE_LINES / 2);
+        int visibleEnd = lineStart(text, lines / 2 + VISIBLE_LINES / 2);
+
+        long start = System.nanoTime();
+        int spans = 0;
+        for (int i = 0; i < KEYSTROKES; i++) {
+            text.insert(editOffset + i, 'a');
+            spans += IncrementalHighlighterTest.fullLex(lexer, colors, text, visibleStart, visibleEnd).size();
+        }
+        long full = System.nanoTime() - start;
+        text.delete(editOffset, editOffset + KEYSTROKES);
+
+        IncrementalHighlighterTest.RecordingSpans target = new IncrementalHighlighterTest.RecordingSpans();
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(lexer, colors, text, target);
+        highlighter.applySpans(text, 0, text.length());
+        start = System.nanoTime();
+        for (int i = 0; i < KEYSTROKES; i++) {
+            text.insert(editOffset + i, 'a');
+            highlighter.onTextChanged(text, editOffset + i, 0, 1);
+            highlighter.applySpans(text, visibleStart, visibleEnd);
+            spans -= target.spans.size();
+        }
+        long incremental = System.nanoTime() - start;
+        text.delete(editOffset, editOffset + KEYSTROKES);
+        highlighter.setText(text);
+
+        // Worst case, every line after the edit changes its state, but only the visible ones get lexed
+        highlighter.applySpans(text, 0, text.length());
+        start = System.nanoTime();
+        for (int i = 0; i < KEYSTROKES; i++) {
+            boolean open = (i & 1) == 0;
+            if (open) {
+                text.insert(editOffset, "/*");
+                highlighter.onTextChanged(text, editOffset, 0, 2);
+            } else {
+                text.delete(editOffset, editOffset + 2);
+                highlighter.onTextChanged(text, editOffset, 2, 0);
+            }
+            highlighter.applySpans(text, visibleStart, visibleEnd);
+        }
+        long comment = System.nanoTime() - start;
+
+        if (spans != 0) {
+            throw new AssertionError("Incremental and full lexing resulted in different spans");
+        }
+        if (print) {
+            System.out.printf("%8d %20d %22d %22d%n", lines,
+                    full / KEYSTROKES / 1000, incremental / KEYSTROKES / 1000, comment / KEYSTROKES / 1000);
+        }
+    }
+
+    /**
+     * @return An activity like generated ones, with 6 lines per method
+     */
+    private static StringBuilder generateActivity(int methods) {
+        StringBuilder text = new StringBuilder();
+        text.append("package com.my.newproject;\n\n")
+                .append("import android.app.Activity;\nimport android.os.Bundle;\nimport android.widget.TextView;\n\n")
+                .append("public class MainActivity extends Activity {\n\n")
+                .append("    private TextView textview1;\n    private double counter = 0;\n\n")
+                .append("    @Override\n    protected void onCreate(Bundle _savedInstanceState) {\n")
+                .append("        super.onCreate(_savedInstanceState);\n        setContentView(R.layout.main);\n    }\n");
+        for (int i = 0; i < methods; i++) {
+            text.append("\n    /* Generated for event ").append(i).append(" */\n")
+                    .append("    public void _method").append(i).append("(final String _text) {\n")
+                    .append("        counter = counter + ").append(i).append(".5;\n")
+                    .append("        textview1.setText(\"Clicked \" + _text + String.valueOf((long) (counter)));\n")
+                    .append("    }\n");
+        }
+        text.append("}\n");
+        return text;
+    }
+
+    private static int countLines(CharSequence text) {
+        int lines = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    private static int lineStart(CharSequence text, int line) {
+        int offset = 0;
+        for (int i = 0; i < line; offset++) {
+            if (text.charAt(offset) == '\n') i++;
+        }
+        return offset;
+    }
+}
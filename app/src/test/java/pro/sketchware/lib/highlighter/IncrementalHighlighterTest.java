@@ -0,0 +1,146 @@
+package pro.sketchware.lib.highlighter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IncrementalHighlighterTest {
+
+    private static final String[] JAVA_SNIPPETS = {
+            "\n", "\n", " ", "/*", "*/", "//", "\"", "\"\"\"", "'", "\\", "@Override", "public ", "class ",
+            "MainActivity", "onCreate(", ")", "{", "}", ";", "0x1F", "1.5e-3", "int x = 1;", "String s = \"a\";",
+    };
+    private static final String[] XML_SNIPPETS = {
+            "\n", "\n", " ", "<", ">", "/>", "<!--", "-->", "<![CDATA[", "]]>", "\"", "'", "=", "<LinearLayout",
+            "android:id=\"@+id/text\"", "</LinearLayout>", "<?xml version=\"1.0\"?>", "text",
+    };
+
+    @Test
+    public void tokenizesLikeAFullJavaLex() {
+        fuzz(new JavaLexer(false), JAVA_SNIPPETS, 1);
+    }
+
+    @Test
+    public void tokenizesLikeAFullKotlinLex() {
+        fuzz(new JavaLexer(true), JAVA_SNIPPETS, 2);
+    }
+
+    @Test
+    public void tokenizesLikeAFullXmlLex() {
+        fuzz(new XmlLexer(), XML_SNIPPETS, 3);
+    }
+
+    @Test
+    public void onlySpansVisibleLines() {
+        String text = "int a;\nint b;\nint c;";
+        RecordingSpans spans = new RecordingSpans();
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(new JavaLexer(false), colors(), text, spans);
+
+        highlighter.applySpans(text, 7, 13);
+        assertEquals(List.of("7-10:1", "12-13:7"), spans.spans);
+
+        highlighter.removeSpans();
+        assertEquals(List.of(), spans.spans);
+    }
+
+    @Test
+    public void recoversFromMissedChanges() {
+        StringBuilder text = new StringBuilder("int a;");
+        RecordingSpans spans = new RecordingSpans();
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(new JavaLexer(false), colors(), text, spans);
+
+        text.insert(0, "/* ");
+        highlighter.applySpans(text, 0, text.length());
+        assertEquals(List.of("0-9:5"), spans.spans);
+    }
+
+    /**
+     * Randomly edits text, reporting every change to the highlighter, and compares the spans for a random viewport
+     * with the ones a lex of the whole text from its start results in. Viewports are only applied every few edits,
+     * so that lines are left to be lexed lazily in between.
+     */
+    private static void fuzz(SyntaxLexer lexer, String[] snippets, long seed) {
+        Random random = new Random(seed);
+        int[] colors = colors();
+        StringBuilder text = new StringBuilder();
+        RecordingSpans spans = new RecordingSpans();
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(lexer, colors, text, spans);
+
+        for (int step = 0; step < 20_000; step++) {
+            int start = random.nextInt(text.length() + 1);
+            int before = random.nextInt(4) == 0 ? random.nextInt(Math.min(40, text.length() - start) + 1) : 0;
+            String inserted = before > 0 && random.nextBoolean() ? "" : snippets[random.nextInt(snippets.length)];
+            text.replace(start, start + before, inserted);
+            highlighter.onTextChanged(text, start, before, inserted.length());
+
+            if (random.nextInt(3) == 0) {
+                int visibleStart = random.nextInt(text.length() + 1);
+                int visibleEnd = visibleStart + random.nextInt(text.length() - visibleStart + 1);
+                highlighter.applySpans(text, visibleStart, visibleEnd);
+                assertEquals("Spans after step " + step + " of:\n" + text,
+                        fullLex(lexer, colors, text, visibleStart, visibleEnd), spans.spans);
+            }
+            if (text.length() > 4000) {
+                text.setLength(0);
+                highlighter.setText(text);
+            }
+        }
+    }
+
+    /**
+     * @return Spans of the lines between two offsets, after lexing every line from the start of the text
+     */
+    static List<String> fullLex(SyntaxLexer lexer, int[] colors, CharSequence text, int visibleStart, int visibleEnd) {
+        List<String> spans = new ArrayList<>();
+        SyntaxLexer.Tokens tokens = new SyntaxLexer.Tokens();
+        int state = SyntaxLexer.STATE_INITIAL;
+        int lineStart = 0;
+        while (lineStart <= text.length()) {
+            int lineEnd = lineStart;
+            while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            tokens.clear();
+            state = lexer.tokenizeLine(text, lineStart, lineEnd, state, tokens);
+            // A line is visible if it contains an offset of the viewport, the end of the text belonging to the last line
+            boolean visible = lineEnd >= visibleStart && lineStart <= visibleEnd;
+            if (visible) {
+                int[] lineTokens = tokens.toArray(0);
+                for (int i = 0; i < lineTokens.length; i += 3) {
+                    spans.add(lineTokens[i] + "-" + lineTokens[i + 1] + ":" + colors[lineTokens[i + 2]]);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return spans;
+    }
+
+    /**
+     * @return A different non-zero color for every token type
+     */
+    static int[] colors() {
+        int[] colors = new int[SyntaxLexer.TOKEN_TYPE_COUNT];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = i + 1;
+        }
+        return colors;
+    }
+
+    static class RecordingSpans implements SpanTarget {
+        final List<String> spans = new ArrayList<>();
+
+        @Override
+        public void setSpan(int start, int end, int color) {
+            spans.add(start + "-" + end + ":" + color);
+        }
+
+        @Override
+        public void removeSpans() {
+            spans.clear();
+        }
+    }
+}